@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.store.kahadb.disk.index.BTreeIndex;
+import org.apache.activemq.store.kahadb.disk.page.PageFile;
+import org.apache.activemq.store.kahadb.disk.page.Transaction;
+import org.apache.activemq.store.kahadb.disk.util.LongMarshaller;
+import org.apache.activemq.util.IOHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Puts and gets random keys of a {@link BTreeIndex}, like the order and location
+ * indexes of KahaDB, each in its own page file transaction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BTreeIndexBenchmark {
+
+    @Param({"100000"})
+    public int keyCount;
+
+    private File directory;
+    private PageFile pageFile;
+    private BTreeIndex<Long, Long> index;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("btree-benchmark").toFile();
+        pageFile = new PageFile(directory, "index");
+        pageFile.setEnableDiskSyncs(false);
+        pageFile.load();
+
+        Transaction tx = pageFile.tx();
+        index = new BTreeIndex<>(pageFile, tx.allocate().getPageId());
+        index.setKeyMarshaller(LongMarshaller.INSTANCE);
+        index.setValueMarshaller(LongMarshaller.INSTANCE);
+        index.load(tx);
+        for (long key = 0; key < keyCount; key++) {
+            index.put(tx, key, key);
+        }
+        tx.commit();
+        pageFile.flush();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        pageFile.unload();
+        IOHelper.delete(directory);
+    }
+
+    @Benchmark
+    public Long put() throws Exception {
+        long key = ThreadLocalRandom.current().nextLong(keyCount);
+        Transaction tx = pageFile.tx();
+        Long previous = index.put(tx, key, key + 1);
+        tx.commit();
+        return previous;
+    }
+
+    @Benchmark
+    public Long get() throws Exception {
+        long key = ThreadLocalRandom.current().nextLong(keyCount);
+        Transaction tx = pageFile.tx();
+        Long value = index.get(tx, key);
+        tx.commit();
+        return value;
+    }
+}
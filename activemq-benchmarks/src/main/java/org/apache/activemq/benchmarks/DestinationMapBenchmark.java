@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.filter.CopyOnWriteDestinationMap;
+import org.apache.activemq.filter.DestinationMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looks up the values of concrete and wildcard destinations in a {@link DestinationMap}
+ * that holds a tree of topics, like the subscription and policy maps of a broker,
+ * and in a {@link CopyOnWriteDestinationMap} that holds the same tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DestinationMapBenchmark {
+
+    // number of children at each of the three levels of the destination tree
+    @Param({"10", "30"})
+    public int fanOut;
+
+    @Param({"false", "true"})
+    public boolean copyOnWrite;
+
+    private DestinationMap map;
+    private ActiveMQDestination concrete;
+    private ActiveMQDestination anyChild;
+    private ActiveMQDestination anyDescendant;
+    private ActiveMQDestination composite;
+
+    @Setup
+    public void setUp() {
+        List<PolicyEntry> entries = new ArrayList<PolicyEntry>();
+        for (int i = 0; i < fanOut; i++) {
+            for (int j = 0; j < fanOut; j++) {
+                for (int k = 0; k < fanOut; k++) {
+                    entries.add(createEntry("prices." + i + "." + j + "." + k));
+                }
+                entries.add(createEntry("prices." + i + "." + j + ".>"));
+            }
+        }
+        if (copyOnWrite) {
+            // the entries are added with a single copy of the tree
+            PolicyMap policyMap = new PolicyMap();
+            policyMap.setPolicyEntries(entries);
+            map = policyMap;
+        } else {
+            map = new DestinationMap();
+            for (PolicyEntry entry : entries) {
+                map.put(entry.getDestination(), entry);
+            }
+        }
+        concrete = new ActiveMQTopic("prices.1.2.3");
+        anyChild = new ActiveMQTopic("prices.1.*.3");
+        anyDescendant = new ActiveMQTopic("prices.1.>");
+        composite = new ActiveMQTopic("prices.1.2.3,prices.4.5.6,prices.7.8.9");
+    }
+
+    private static PolicyEntry createEntry(String name) {
+        PolicyEntry entry = new PolicyEntry();
+        entry.setTopic(name);
+        return entry;
+    }
+
+    @Benchmark
+    public Set<?> getConcrete() {
+        return map.get(concrete);
+    }
+
+    @Benchmark
+    public Set<?> getAnyChildWildcard() {
+        return map.get(anyChild);
+    }
+
+    @Benchmark
+    public Set<?> getAnyDescendantWildcard() {
+        return map.get(anyDescendant);
+    }
+
+    @Benchmark
+    public Set<?> getComposite() {
+        return map.get(composite);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Appends records to and reads records back from a KahaDB {@link Journal}.
+ * Appends are not synced to disk so the batching of the appender is measured
+ * rather than the disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    @Param({"256", "4096"})
+    public int recordSize;
+
+    @Param({"10000"})
+    public int recordCount;
+
+    private File directory;
+    private Journal journal;
+    private ByteSequence record;
+    private Location[] locations;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("journal-benchmark").toFile();
+        journal = new Journal();
+        journal.setDirectory(directory);
+        journal.start();
+
+        record = new ByteSequence(new byte[recordSize]);
+        locations = new Location[recordCount];
+        for (int i = 0; i < recordCount; i++) {
+            locations[i] = journal.write(record, false);
+        }
+        journal.write(record, true);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        journal.close();
+        IOHelper.delete(directory);
+    }
+
+    @Benchmark
+    public Location append() throws Exception {
+        return journal.write(record, false);
+    }
+
+    @Benchmark
+    public ByteSequence read() throws Exception {
+        return journal.read(locations[ThreadLocalRandom.current().nextInt(recordCount)]);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads one property of a message received with marshalled properties, by
+ * unmarshalling all the properties or by peeking at the one property.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessagePropertyBenchmark {
+
+    @Param({"1", "10", "40"})
+    public int properties;
+
+    private Message message;
+    private String name;
+
+    @Setup
+    public void setUp() throws Exception {
+        ActiveMQTextMessage textMessage = new ActiveMQTextMessage();
+        textMessage.setMessageId(new MessageId("ID:benchmark:1:1:1"));
+        textMessage.setDestination(new ActiveMQQueue("benchmark.queue"));
+        for (int i = 0; i < properties; i++) {
+            textMessage.setProperty("property" + i, i % 2 == 0 ? (Object) ("value" + i) : (Object) i);
+        }
+        textMessage.setText("benchmark");
+
+        OpenWireFormat wireFormat = new OpenWireFormat();
+        wireFormat.setCacheEnabled(false);
+        wireFormat.setTightEncodingEnabled(true);
+        message = (Message) wireFormat.unmarshal(wireFormat.marshal(textMessage));
+        name = "property" + (properties / 2);
+    }
+
+    @Benchmark
+    public Object getProperty() throws Exception {
+        // a copy of the message still has its properties marshalled
+        return message.copy().getProperty(name);
+    }
+
+    @Benchmark
+    public Object peekProperty() throws Exception {
+        return message.copy().peekProperty(name);
+    }
+}
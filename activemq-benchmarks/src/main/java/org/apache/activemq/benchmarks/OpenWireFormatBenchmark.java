@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.CommandTypes;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.command.DataStructure;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.command.ProducerInfo;
+import org.apache.activemq.command.SessionId;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.util.ByteSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Marshals and unmarshals the most frequent OpenWire commands, with tight and
+ * loose encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenWireFormatBenchmark {
+
+    @Param({"ActiveMQTextMessage", "MessageDispatch", "MessageAck", "ConsumerInfo", "ProducerInfo"})
+    public String commandType;
+
+    @Param({"true", "false"})
+    public boolean tightEncoding;
+
+    @Param({"1024"})
+    public int messageSize;
+
+    private OpenWireFormat wireFormat;
+    private DataStructure command;
+    private ByteSequence marshalled;
+
+    @Setup
+    public void setUp() throws Exception {
+        wireFormat = new OpenWireFormat(CommandTypes.PROTOCOL_VERSION);
+        wireFormat.setTightEncodingEnabled(tightEncoding);
+        command = createCommand();
+        marshalled = wireFormat.marshal(command);
+    }
+
+    @Benchmark
+    public ByteSequence marshal() throws Exception {
+        return wireFormat.marshal(command);
+    }
+
+    @Benchmark
+    public Object unmarshal() throws Exception {
+        return wireFormat.unmarshal(marshalled);
+    }
+
+    private DataStructure createCommand() throws Exception {
+        ActiveMQQueue destination = new ActiveMQQueue("benchmark.queue");
+        SessionId sessionId = new SessionId(new ConnectionId("ID:benchmark-1"), 1);
+        ProducerId producerId = new ProducerId(sessionId, 1);
+        ConsumerId consumerId = new ConsumerId(sessionId, 1);
+
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setMessageId(new MessageId(producerId, 1));
+        message.setProducerId(producerId);
+        message.setDestination(destination);
+        message.setPersistent(true);
+        message.setProperty("region", "emea");
+        message.setProperty("priority", 4);
+        StringBuilder text = new StringBuilder(messageSize);
+        while (text.length() < messageSize) {
+            text.append('x');
+        }
+        message.setText(text.toString());
+
+        switch (commandType) {
+        case "ActiveMQTextMessage":
+            return message;
+        case "MessageDispatch":
+            MessageDispatch dispatch = new MessageDispatch();
+            dispatch.setConsumerId(consumerId);
+            dispatch.setDestination(destination);
+            dispatch.setMessage(message);
+            dispatch.setRedeliveryCounter(0);
+            return dispatch;
+        case "MessageAck":
+            MessageAck ack = new MessageAck(message, MessageAck.STANDARD_ACK_TYPE, 1);
+            ack.setConsumerId(consumerId);
+            return ack;
+        case "ConsumerInfo":
+            ConsumerInfo consumerInfo = new ConsumerInfo(consumerId);
+            consumerInfo.setDestination(destination);
+            consumerInfo.setSelector("region = 'emea'");
+            consumerInfo.setPrefetchSize(1000);
+            return consumerInfo;
+        case "ProducerInfo":
+            ProducerInfo producerInfo = new ProducerInfo(producerId);
+            producerInfo.setDestination(destination);
+            return producerInfo;
+        default:
+            throw new IllegalArgumentException("Unknown command type: " + commandType);
+        }
+    }
+}
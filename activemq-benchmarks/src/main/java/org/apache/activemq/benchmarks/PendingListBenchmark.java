@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmarks;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.region.IndirectMessageReference;
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.cursors.OrderedPendingList;
+import org.apache.activemq.broker.region.cursors.PendingList;
+import org.apache.activemq.broker.region.cursors.PrioritizedPendingList;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adds, iterates and removes messages of the {@link OrderedPendingList} and
+ * {@link PrioritizedPendingList} that back the dispatch cursors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PendingListBenchmark {
+
+    @Param({"ordered", "prioritized"})
+    public String listType;
+
+    @Param({"1000"})
+    public int messageCount;
+
+    private MessageReference[] messages;
+    private PendingList list;
+
+    @Setup
+    public void setUp() throws Exception {
+        ActiveMQQueue destination = new ActiveMQQueue("benchmark.queue");
+        messages = new MessageReference[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setMessageId(new MessageId("ID:benchmark:1:1:" + i));
+            message.setDestination(destination);
+            message.setPriority((byte) (i % 10));
+            messages[i] = new IndirectMessageReference(message);
+        }
+        list = createList();
+        for (MessageReference message : messages) {
+            list.addMessageLast(message);
+        }
+    }
+
+    private PendingList createList() {
+        return "ordered".equals(listType) ? new OrderedPendingList() : new PrioritizedPendingList();
+    }
+
+    @Benchmark
+    public PendingList addMessageLast() {
+        PendingList added = createList();
+        for (MessageReference message : messages) {
+            added.addMessageLast(message);
+        }
+        return added;
+    }
+
+    @Benchmark
+    public int iterate() {
+        int count = 0;
+        for (Iterator<MessageReference> iterator = list.iterator(); iterator.hasNext(); ) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return list.contains(messages[messageCount / 2]);
+    }
+
+    @Benchmark
+    public PendingList addAndRemove() {
+        PendingList added = createList();
+        for (MessageReference message : messages) {
+            added.addMessageLast(message);
+        }
+        // remove in dispatch order, from the head of the list
+        for (Iterator<MessageReference> iterator = added.iterator(); iterator.hasNext(); ) {
+            iterator.next();
+            iterator.remove();
+        }
+        return added;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.filter.SelectorCompiler;
+import org.apache.activemq.selector.SelectorParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses selectors with {@link SelectorParser} and evaluates the resulting
+ * {@link BooleanExpression} against a message, either interpreted or compiled
+ * by the {@link SelectorCompiler}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorBenchmark {
+
+    @Param({
+        "region = 'emea'",
+        "region = 'emea' AND quantity > 100",
+        "quantity >= 100 AND price < 120.0 AND region <> 'apac'",
+        "region IN ('apac', 'amer', 'emea') OR quantity BETWEEN 10 AND 20",
+        "JMSType LIKE 'order.%' AND NOT (status = 'cancelled')",
+        "quantity * 2 + price / 4 > 250.5"})
+    public String selector;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private BooleanExpression expression;
+    private MessageEvaluationContext context;
+
+    @Setup
+    public void setUp() throws Exception {
+        SelectorCompiler.setEnabled(compiled);
+        SelectorParser.clearCache();
+        expression = SelectorParser.parse(selector);
+
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setMessageId(new MessageId("ID:benchmark:1:1:1"));
+        message.setDestination(new ActiveMQQueue("benchmark.queue"));
+        message.setType("order.created");
+        message.setProperty("region", "emea");
+        message.setProperty("status", "open");
+        message.setProperty("quantity", 150);
+        message.setProperty("price", 99.5d);
+        message.setText("benchmark");
+
+        context = new MessageEvaluationContext();
+        context.setDestination(message.getDestination());
+        context.setMessageReference(message);
+    }
+
+    @Benchmark
+    public BooleanExpression parse() throws Exception {
+        // bypass the cache of parsed selectors
+        SelectorParser.clearCache();
+        return SelectorParser.parse(selector);
+    }
+
+    @Benchmark
+    public boolean matches() throws Exception {
+        return expression.matches(context);
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.activemq.broker;
 import org.apache.activemq.Service;
 import org.apache.activemq.broker.region.ConnectorStatistics;
 import org.apache.activemq.command.BrokerInfo;
+import org.apache.activemq.transport.nio.ByteBufferPool;
 
 /**
  * A connector creates and manages client connections that talk to the Broker.
@@ -84,4 +85,10 @@ public interface Connector extends Service {
      * @return true if connector is started
      */
     public boolean isStarted();
+
+    /**
+     * @return the pool of the buffers the NIO transports read frames into, which
+     * is shared by the connectors
+     */
+    ByteBufferPool getBufferPool();
 }
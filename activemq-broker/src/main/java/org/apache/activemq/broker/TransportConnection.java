@@ -22,17 +22,19 @@ import java.net.SocketException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.transaction.xa.XAResource;
@@ -81,6 +83,7 @@ import org.apache.activemq.network.MBeanNetworkListener;
 import org.apache.activemq.network.NetworkBridgeConfiguration;
 import org.apache.activemq.network.NetworkBridgeFactory;
 import org.apache.activemq.network.NetworkConnector;
+import org.apache.activemq.openwire.OpenWireFormat;
 import org.apache.activemq.security.MessageAuthorizationPolicy;
 import org.apache.activemq.state.CommandVisitor;
 import org.apache.activemq.state.ConnectionState;
@@ -93,10 +96,12 @@ import org.apache.activemq.thread.TaskRunner;
 import org.apache.activemq.thread.TaskRunnerFactory;
 import org.apache.activemq.transaction.Transaction;
 import org.apache.activemq.transport.DefaultTransportListener;
+import org.apache.activemq.transport.MutexTransport;
 import org.apache.activemq.transport.ResponseCorrelator;
 import org.apache.activemq.transport.TransmitCallback;
 import org.apache.activemq.transport.Transport;
 import org.apache.activemq.transport.TransportDisposedIOException;
+import org.apache.activemq.transport.tcp.TcpTransport;
 import org.apache.activemq.util.IntrospectionSupport;
 import org.apache.activemq.util.MarshallingSupport;
 import org.apache.activemq.util.NetworkBridgeUtils;
@@ -118,7 +123,8 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
     protected final Map<ConnectionId, ConnectionState> brokerConnectionStates;
     // The broker and wireformat info that was exchanged.
     protected BrokerInfo brokerInfo;
-    protected final List<Command> dispatchQueue = new LinkedList<>();
+    protected final Queue<Command> dispatchQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger dispatchQueueSize = new AtomicInteger();
     protected TaskRunner taskRunner;
     protected final AtomicReference<Throwable> transportException = new AtomicReference<>();
     protected AtomicBoolean dispatchStopped = new AtomicBoolean(false);
@@ -161,6 +167,13 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
     private TransportConnectionStateRegister connectionStateRegister = new SingleTransportConnectionStateRegister();
     private final ReentrantReadWriteLock serviceLock = new ReentrantReadWriteLock();
     private String duplexNetworkConnectorId;
+    private int dispatchBatchSize = 1;
+    private int dispatchBatchBytes = 64 * 1024;
+    private long dispatchBatchLatency = 1;
+    // the socket transport whose flush is deferred while writing a batch, null if batches are not written
+    private final TcpTransport batchTransport;
+    // the lock the transport is written under
+    private final Lock batchWriteLock;
 
     /**
      * @param taskRunnerFactory - can be null if you want direct dispatch to the transport
@@ -178,10 +191,24 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
         if (connector != null) {
             this.statistics.setParent(connector.getStatistics());
             this.messageAuthorizationPolicy = connector.getMessageAuthorizationPolicy();
+            this.dispatchBatchSize = connector.getDispatchBatchSize();
+            this.dispatchBatchBytes = connector.getDispatchBatchBytes();
+            this.dispatchBatchLatency = connector.getDispatchBatchLatency();
         }
         this.taskRunnerFactory = taskRunnerFactory;
         this.stopTaskRunnerFactory = stopTaskRunnerFactory;
         this.transport = transport;
+        // batches are written to the socket's output buffer and flushed explicitly under the write lock
+        // of the MutexTransport, which only OpenWire over TCP/NIO supports
+        TcpTransport tcpTransport = transport.narrow(TcpTransport.class);
+        MutexTransport mutexTransport = transport.narrow(MutexTransport.class);
+        if (tcpTransport != null && mutexTransport != null && tcpTransport.getWireFormat() instanceof OpenWireFormat) {
+            this.batchTransport = tcpTransport;
+            this.batchWriteLock = mutexTransport.getWriteLock();
+        } else {
+            this.batchTransport = null;
+            this.batchWriteLock = null;
+        }
         if( this.transport instanceof BrokerServiceAware ) {
             ((BrokerServiceAware)this.transport).setBrokerService(brokerService);
         }
@@ -227,9 +254,7 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
      */
     @Override
     public int getDispatchQueueSize() {
-        synchronized (dispatchQueue) {
-            return dispatchQueue.size();
-        }
+        return dispatchQueueSize.get();
     }
 
     public void serviceTransportException(IOException e) {
@@ -944,9 +969,8 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
             if (taskRunner == null) {
                 dispatchSync(message);
             } else {
-                synchronized (dispatchQueue) {
-                    dispatchQueue.add(message);
-                }
+                dispatchQueue.add(message);
+                dispatchQueueSize.incrementAndGet();
                 try {
                     taskRunner.wakeup();
                 } catch (InterruptedException e) {
@@ -954,17 +978,76 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
                 }
             }
         } else {
-            if (message.isMessageDispatch()) {
-                MessageDispatch md = (MessageDispatch) message;
-                TransmitCallback sub = md.getTransmitCallback();
-                broker.postProcessDispatch(md);
-                if (sub != null) {
-                    sub.onFailure();
+            dispatchFailed(message);
+        }
+    }
+
+    private void dispatchFailed(Command command) {
+        if (command.isMessageDispatch()) {
+            MessageDispatch md = (MessageDispatch) command;
+            TransmitCallback sub = md.getTransmitCallback();
+            broker.postProcessDispatch(md);
+            if (sub != null) {
+                sub.onFailure();
+            }
+        }
+    }
+
+    private Command pollDispatchQueue() {
+        Command command = dispatchQueue.poll();
+        if (command != null) {
+            dispatchQueueSize.decrementAndGet();
+        }
+        return command;
+    }
+
+    /**
+     * Writes the command and the commands queued after it, up to the batch size, bytes
+     * and latency, and flushes the socket at the end of the batch. Only the flushes of
+     * the dispatch thread are deferred, commands other threads send in between are
+     * flushed right away.
+     */
+    private void processDispatchBatch(Command command) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(dispatchBatchLatency);
+        int count = 1;
+        long bytes = getDispatchSize(command);
+        Command next = null;
+        batchTransport.setFlushDeferred(true);
+        try {
+            while (command != null) {
+                next = count < dispatchBatchSize && bytes < dispatchBatchBytes && System.nanoTime() < deadline ? pollDispatchQueue() : null;
+                processDispatch(command);
+                command = next;
+                next = null;
+                count++;
+                if (command != null) {
+                    bytes += getDispatchSize(command);
                 }
             }
+        } finally {
+            batchTransport.setFlushDeferred(false);
+            if (next != null) {
+                dispatchFailed(next);
+            }
+            // also when the last command was not written, as when the connection is
+            // stopping or the dispatch is rejected
+            batchWriteLock.lock();
+            try {
+                batchTransport.flush();
+            } finally {
+                batchWriteLock.unlock();
+            }
         }
     }
 
+    private static int getDispatchSize(Command command) {
+        if (command.isMessageDispatch()) {
+            Message message = ((MessageDispatch) command).getMessage();
+            return message != null ? message.getSize() : 0;
+        }
+        return 0;
+    }
+
     protected void processDispatch(Command command) throws IOException {
         MessageDispatch messageDispatch = (MessageDispatch) (command.isMessageDispatch() ? command : null);
         try {
@@ -1020,14 +1103,15 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
                 return false;
             }
             if (!dispatchStopped.get()) {
-                Command command = null;
-                synchronized (dispatchQueue) {
-                    if (dispatchQueue.isEmpty()) {
-                        return false;
-                    }
-                    command = dispatchQueue.remove(0);
+                Command command = pollDispatchQueue();
+                if (command == null) {
+                    return false;
+                }
+                if (batchTransport != null && dispatchBatchSize > 1) {
+                    processDispatchBatch(command);
+                } else {
+                    processDispatch(command);
                 }
-                processDispatch(command);
                 return true;
             }
             return false;
@@ -1206,19 +1290,8 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
         active = false;
         // Run the MessageDispatch callbacks so that message references get
         // cleaned up.
-        synchronized (dispatchQueue) {
-            for (Iterator<Command> iter = dispatchQueue.iterator(); iter.hasNext(); ) {
-                Command command = iter.next();
-                if (command.isMessageDispatch()) {
-                    MessageDispatch md = (MessageDispatch) command;
-                    TransmitCallback sub = md.getTransmitCallback();
-                    broker.postProcessDispatch(md);
-                    if (sub != null) {
-                        sub.onFailure();
-                    }
-                }
-            }
-            dispatchQueue.clear();
+        for (Command command = pollDispatchQueue(); command != null; command = pollDispatchQueue()) {
+            dispatchFailed(command);
         }
         //
         // Remove all logical connection associated with this connection
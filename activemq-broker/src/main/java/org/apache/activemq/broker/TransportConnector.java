@@ -42,6 +42,7 @@ import org.apache.activemq.transport.TransportFactorySupport;
 import org.apache.activemq.transport.TransportServer;
 import org.apache.activemq.transport.discovery.DiscoveryAgent;
 import org.apache.activemq.transport.discovery.DiscoveryAgentFactory;
+import org.apache.activemq.transport.nio.ByteBufferPool;
 import org.apache.activemq.util.ServiceStopper;
 import org.apache.activemq.util.ServiceSupport;
 import org.slf4j.Logger;
@@ -80,6 +81,9 @@ public class TransportConnector implements Connector, BrokerServiceAware {
     private boolean allowLinkStealing = false;
     private boolean warnOnRemoteClose = false;
     private boolean displayStackTrace = false;
+    private int dispatchBatchSize = 1;
+    private int dispatchBatchBytes = 64 * 1024;
+    private long dispatchBatchLatency = 1;
 
     LinkedList<String> peerBrokers = new LinkedList<String>();
     private AtomicBoolean started = new AtomicBoolean(false);
@@ -131,6 +135,9 @@ public class TransportConnector implements Connector, BrokerServiceAware {
         rc.setPublishedAddressPolicy(getPublishedAddressPolicy());
         rc.setAllowLinkStealing(allowLinkStealing);
         rc.setWarnOnRemoteClose(isWarnOnRemoteClose());
+        rc.setDispatchBatchSize(getDispatchBatchSize());
+        rc.setDispatchBatchBytes(getDispatchBatchBytes());
+        rc.setDispatchBatchLatency(getDispatchBatchLatency());
         return rc;
     }
 
@@ -687,6 +694,42 @@ public class TransportConnector implements Connector, BrokerServiceAware {
         this.displayStackTrace = displayStackTrace;
     }
 
+    public int getDispatchBatchSize() {
+        return dispatchBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of queued commands a connection writes to its socket
+     * with a single flush. The default of 1 flushes every command. Batches are
+     * only written by OpenWire connections over a socket with async dispatch.
+     */
+    public void setDispatchBatchSize(int dispatchBatchSize) {
+        this.dispatchBatchSize = dispatchBatchSize;
+    }
+
+    public int getDispatchBatchBytes() {
+        return dispatchBatchBytes;
+    }
+
+    /**
+     * Sets the size of the messages after which a connection ends a batch of commands.
+     */
+    public void setDispatchBatchBytes(int dispatchBatchBytes) {
+        this.dispatchBatchBytes = dispatchBatchBytes;
+    }
+
+    public long getDispatchBatchLatency() {
+        return dispatchBatchLatency;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a connection ends a batch of commands,
+     * which bounds how long a written command can wait for the flush of its batch.
+     */
+    public void setDispatchBatchLatency(long dispatchBatchLatency) {
+        this.dispatchBatchLatency = dispatchBatchLatency;
+    }
+
     @Override
     public long getMaxConnectionExceededCount() {
         return (server != null ? server.getMaxConnectionExceededCount() : 0l);
@@ -696,4 +739,9 @@ public class TransportConnector implements Connector, BrokerServiceAware {
     public boolean isStarted() {
         return started.get();
     }
+
+    @Override
+    public ByteBufferPool getBufferPool() {
+        return ByteBufferPool.getInstance();
+    }
 }
@@ -146,4 +146,24 @@ public class ConnectorView implements ConnectorViewMBean {
     public boolean isStarted() {
         return this.connector.isStarted();
     }
+
+    @Override
+    public long getBufferPoolPooledBytes() {
+        return this.connector.getBufferPool().getPooledBytes();
+    }
+
+    @Override
+    public long getBufferPoolMaxPooledBytes() {
+        return this.connector.getBufferPool().getMaxPooledBytes();
+    }
+
+    @Override
+    public long getBufferPoolAcquireCount() {
+        return this.connector.getBufferPool().getAcquireCount();
+    }
+
+    @Override
+    public long getBufferPoolAllocationCount() {
+        return this.connector.getBufferPool().getAllocationCount();
+    }
 }
@@ -95,4 +95,29 @@ public interface ConnectorViewMBean extends Service {
      */
     @MBeanInfo("Connector started")
     boolean isStarted();
+
+    /**
+     * @return the number of bytes of free buffers held by the buffer pool of the
+     * NIO transports, which is shared by the connectors
+     */
+    @MBeanInfo("Bytes of free buffers held by the NIO buffer pool shared by the connectors")
+    long getBufferPoolPooledBytes();
+
+    /**
+     * @return the maximum number of bytes of free buffers the buffer pool holds
+     */
+    @MBeanInfo("Maximum bytes of free buffers held by the NIO buffer pool")
+    long getBufferPoolMaxPooledBytes();
+
+    /**
+     * @return the number of buffers handed out by the buffer pool
+     */
+    @MBeanInfo("Number of buffers handed out by the NIO buffer pool")
+    long getBufferPoolAcquireCount();
+
+    /**
+     * @return the number of buffers the buffer pool had to allocate
+     */
+    @MBeanInfo("Number of buffers allocated by the NIO buffer pool")
+    long getBufferPoolAllocationCount();
 }
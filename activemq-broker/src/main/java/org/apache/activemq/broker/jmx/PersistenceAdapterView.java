@@ -17,6 +17,8 @@
 package org.apache.activemq.broker.jmx;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.activemq.management.CountStatisticImpl;
+import org.apache.activemq.management.SizeStatisticImpl;
 import org.apache.activemq.management.TimeStatisticImpl;
 import org.apache.activemq.store.PersistenceAdapter;
 import org.apache.activemq.store.PersistenceAdapterStatistics;
@@ -98,6 +100,18 @@ public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
                 result.put("slowReadTime", getTimeStatisticAsMap(persistenceAdapterStatistics.getSlowReadTime()));
                 result.put("writeTime", getTimeStatisticAsMap(persistenceAdapterStatistics.getWriteTime()));
                 result.put("readTime", getTimeStatisticAsMap(persistenceAdapterStatistics.getReadTime()));
+                result.put("journalWriteBatchSize", getSizeStatisticAsMap(persistenceAdapterStatistics.getJournalWriteBatchSize()));
+                result.put("journalSyncTime", getTimeStatisticAsMap(persistenceAdapterStatistics.getJournalSyncTime()));
+                result.put("journalWriteBatchLatency", getTimeStatisticAsMap(persistenceAdapterStatistics.getJournalWriteBatchLatency()));
+                result.put("pageCacheHits", getCountStatisticAsMap(persistenceAdapterStatistics.getPageCacheHits()));
+                result.put("pageCacheMisses", getCountStatisticAsMap(persistenceAdapterStatistics.getPageCacheMisses()));
+                result.put("pageCacheEvictions", getCountStatisticAsMap(persistenceAdapterStatistics.getPageCacheEvictions()));
+                result.put("checkpointTime", getTimeStatisticAsMap(persistenceAdapterStatistics.getCheckpointTime()));
+                result.put("checkpointStallTime", getTimeStatisticAsMap(persistenceAdapterStatistics.getCheckpointStallTime()));
+                result.put("journalCompactedSize", getSizeStatisticAsMap(persistenceAdapterStatistics.getJournalCompactedSize()));
+                result.put("jdbcGroupCommitBatchSize", getSizeStatisticAsMap(persistenceAdapterStatistics.getJdbcGroupCommitBatchSize()));
+                result.put("jdbcGroupCommitTime", getTimeStatisticAsMap(persistenceAdapterStatistics.getJdbcGroupCommitTime()));
+                result.put("jdbcRecoveryPrefetchHits", getCountStatisticAsMap(persistenceAdapterStatistics.getJdbcRecoveryPrefetchHits()));
                 return mapper.writeValueAsString(result);
             } catch (IOException e) {
                 return e.toString();
@@ -122,6 +136,28 @@ public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
         return result;
     }
 
+    private Map<String, Object> getSizeStatisticAsMap(final SizeStatisticImpl sizeStatistic) {
+        Map<String, Object> result = new HashMap<String, Object>();
+
+        result.put("count", sizeStatistic.getCount());
+        result.put("maxSize", sizeStatistic.getMaxSize());
+        result.put("minSize", sizeStatistic.getMinSize());
+        result.put("totalSize", sizeStatistic.getTotalSize());
+        result.put("averageSize", sizeStatistic.getAverageSize());
+        result.put("averageSizeExMinMax", sizeStatistic.getAverageSizeExcludingMinMax());
+
+        return result;
+    }
+
+    private Map<String, Object> getCountStatisticAsMap(final CountStatisticImpl countStatistic) {
+        Map<String, Object> result = new HashMap<String, Object>();
+
+        result.put("count", countStatistic.getCount());
+        result.put("lastSampleTime", countStatistic.getLastSampleTime());
+
+        return result;
+    }
+
     public void setDataViewCallable(Callable<String> dataViewCallable) {
         this.dataViewCallable = dataViewCallable;
     }
@@ -27,6 +27,7 @@ import jakarta.jms.JMSException;
 import org.apache.activemq.broker.ConnectionContext;
 import org.apache.activemq.broker.region.Queue;
 import org.apache.activemq.broker.region.QueueMessageReference;
+import org.apache.activemq.broker.region.ShardedQueue;
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.Message;
 import org.apache.activemq.util.BrokerSupport;
@@ -257,4 +258,28 @@ public class QueueView extends DestinationView implements QueueViewMBean {
         Queue queue = (Queue) destination;
         return queue.isDispatchPaused();
     }
+
+    @Override
+    public int getParallelDispatchThreads() {
+        Queue queue = (Queue) destination;
+        return queue.getParallelDispatchThreads();
+    }
+
+    @Override
+    public double getDispatchThreadUtilization() {
+        Queue queue = (Queue) destination;
+        return queue.getDispatchThreadUtilization();
+    }
+
+    @Override
+    public double getParallelDispatchUtilization() {
+        Queue queue = (Queue) destination;
+        return queue.getParallelDispatchUtilization();
+    }
+
+    @Override
+    public int getQueueShards() {
+        Queue queue = (Queue) destination;
+        return queue instanceof ShardedQueue ? ((ShardedQueue) queue).getShardCount() : 1;
+    }
 }
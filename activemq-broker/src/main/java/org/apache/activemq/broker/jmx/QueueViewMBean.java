@@ -219,5 +219,29 @@ public interface QueueViewMBean extends DestinationViewMBean {
     @MBeanInfo("Dispatch to consumers is paused")
     boolean isPaused();
 
+    /**
+     * @return the number of threads that add dispatched messages to the consumers
+     */
+    @MBeanInfo("Number of threads that add dispatched messages to the consumers, 0 when the queue dispatches on its own thread")
+    int getParallelDispatchThreads();
+
+    /**
+     * @return the percentage of time the queue spent dispatching messages
+     */
+    @MBeanInfo("Percentage of time the queue spent dispatching messages since it was started")
+    double getDispatchThreadUtilization();
+
+    /**
+     * @return the percentage of time the parallel dispatch threads were busy
+     */
+    @MBeanInfo("Percentage of time the parallel dispatch threads spent adding messages to consumers since they were started")
+    double getParallelDispatchUtilization();
+
+    /**
+     * @return the number of shards that receive the messages sent to the queue
+     */
+    @MBeanInfo("Number of shards that receive the messages sent to the queue, the statistics of the queue include all its shards")
+    int getQueueShards();
+
 
 }
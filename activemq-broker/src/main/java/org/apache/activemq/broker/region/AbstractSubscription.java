@@ -171,6 +171,12 @@ public abstract class AbstractSubscription implements Subscription {
         // its valid so lets actually update it now
         info.setSelector(selector);
         this.selectorExpression = newSelector;
+        for (Destination destination : destinations) {
+            if (destination instanceof Topic) {
+                // dispatch policies may have indexed the old selector
+                ((Topic) destination).consumersChanged();
+            }
+        }
     }
 
     @Override
@@ -17,7 +17,16 @@
 package org.apache.activemq.broker.region;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+
+import jakarta.jms.InvalidDestinationException;
+
 import org.apache.activemq.advisory.AdvisorySupport;
 import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.ConnectionContext;
@@ -45,6 +54,8 @@ public class DestinationFactoryImpl extends DestinationFactory {
     protected final PersistenceAdapter persistenceAdapter;
     protected RegionBroker broker;
     private final BrokerService brokerService;
+    // the shard stores of each queue, whatever its current number of shards
+    private Map<ActiveMQDestination, List<ActiveMQQueue>> storedShards;
 
     public DestinationFactoryImpl(BrokerService brokerService, TaskRunnerFactory taskRunnerFactory, PersistenceAdapter persistenceAdapter) {
         this.brokerService = brokerService;
@@ -65,7 +76,42 @@ public class DestinationFactoryImpl extends DestinationFactory {
 
     @Override
     public Set<ActiveMQDestination> getDestinations() {
-        return persistenceAdapter.getDestinations();
+        Set<ActiveMQDestination> destinations = persistenceAdapter.getDestinations();
+        Map<ActiveMQDestination, List<ActiveMQQueue>> shards = new HashMap<ActiveMQDestination, List<ActiveMQQueue>>();
+        for (Iterator<ActiveMQDestination> iter = destinations.iterator(); iter.hasNext();) {
+            ActiveMQDestination destination = iter.next();
+            // the shards of a sharded queue are created with the queue
+            if (ShardedQueue.isShard(destination)) {
+                iter.remove();
+                addStoredShard(shards, (ActiveMQQueue) destination);
+            }
+        }
+        // a queue with messages left only in its shards is still recovered
+        destinations.addAll(shards.keySet());
+        synchronized (this) {
+            storedShards = shards;
+        }
+        return destinations;
+    }
+
+    private static void addStoredShard(Map<ActiveMQDestination, List<ActiveMQQueue>> shards, ActiveMQQueue shard) {
+        ActiveMQDestination logical = ShardedQueue.getLogicalDestination(shard);
+        List<ActiveMQQueue> stored = shards.get(logical);
+        if (stored == null) {
+            stored = new ArrayList<ActiveMQQueue>();
+            shards.put(logical, stored);
+        }
+        if (!stored.contains(shard)) {
+            stored.add(shard);
+        }
+    }
+
+    private synchronized List<ActiveMQQueue> getStoredShards(ActiveMQDestination destination) {
+        if (storedShards == null) {
+            getDestinations();
+        }
+        List<ActiveMQQueue> stored = storedShards.get(destination);
+        return stored == null ? Collections.<ActiveMQQueue>emptyList() : new ArrayList<ActiveMQQueue>(stored);
     }
 
     /**
@@ -81,9 +127,20 @@ public class DestinationFactoryImpl extends DestinationFactory {
                 queue.initialize();
                 return queue;
             } else {
+                if (ShardedQueue.isShard(destination)) {
+                    throw new InvalidDestinationException("The queue name " + destination.getPhysicalName() + " is reserved for a shard of "
+                            + ShardedQueue.getLogicalDestination(destination).getPhysicalName());
+                }
                 MessageStore store = persistenceAdapter.createQueueMessageStore((ActiveMQQueue)destination);
-                Queue queue = new Queue(brokerService, destination, store, destinationStatistics, taskRunnerFactory);
-                configureQueue(queue, destination);
+                int queueShards = Math.max(getQueueShards(destination), 1);
+                List<ActiveMQQueue> drainedShards = getDrainedShards(context, destination, queueShards);
+                Queue queue;
+                if (queueShards > 1 || !drainedShards.isEmpty()) {
+                    queue = createShardedQueue(destination, store, destinationStatistics, queueShards, drainedShards);
+                } else {
+                    queue = new Queue(brokerService, destination, store, destinationStatistics, taskRunnerFactory);
+                    configureQueue(queue, destination);
+                }
                 queue.initialize();
                 return queue;
             }
@@ -111,6 +168,12 @@ public class DestinationFactoryImpl extends DestinationFactory {
         if (!destination.isTemporary()) {
             if (destination.isQueue()) {
                 persistenceAdapter.removeQueueMessageStore((ActiveMQQueue) destination);
+                for (ActiveMQQueue shard : getStoredShards(destination)) {
+                    persistenceAdapter.removeQueueMessageStore(shard);
+                }
+                synchronized (this) {
+                    storedShards.remove(destination);
+                }
             }
             else if (!AdvisorySupport.isAdvisoryTopic(destination)) {
                 persistenceAdapter.removeTopicMessageStore((ActiveMQTopic) destination);
@@ -118,6 +181,71 @@ public class DestinationFactoryImpl extends DestinationFactory {
         }
     }
 
+    /**
+     * Returns the shards of the queue left in the store by a larger number of
+     * shards, or by a policy that no longer shards the queue, which still hold
+     * messages. The empty ones are removed from the store.
+     */
+    private List<ActiveMQQueue> getDrainedShards(ConnectionContext context, ActiveMQDestination destination, int queueShards) throws Exception {
+        List<ActiveMQQueue> drained = new ArrayList<ActiveMQQueue>();
+        for (ActiveMQQueue shard : getStoredShards(destination)) {
+            if (ShardedQueue.getShardIndex(shard) < queueShards) {
+                continue;
+            }
+            MessageStore store = persistenceAdapter.createQueueMessageStore(shard);
+            if (store.isEmpty()) {
+                store.removeAllMessages(context);
+                persistenceAdapter.removeQueueMessageStore(shard);
+                synchronized (this) {
+                    storedShards.get(destination).remove(shard);
+                }
+            } else {
+                drained.add(shard);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Creates a queue with the given number of shards, and with the given
+     * shards of the queue left in the store by a larger number of shards, which
+     * are drained but get no new messages.
+     */
+    protected ShardedQueue createShardedQueue(ActiveMQDestination destination, MessageStore store,
+            DestinationStatistics destinationStatistics, int queueShards, List<ActiveMQQueue> drainedShards) throws Exception {
+        ShardedQueue queue = new ShardedQueue(brokerService, destination, store, destinationStatistics, taskRunnerFactory);
+        configureQueue(queue, destination);
+        for (int i = 1; i < queueShards; i++) {
+            queue.addShard(createShard(queue, ShardedQueue.getShardDestination(destination, i)), true);
+        }
+        for (ActiveMQQueue shard : drainedShards) {
+            queue.addShard(createShard(queue, shard), false);
+        }
+        return queue;
+    }
+
+    private Queue createShard(ShardedQueue queue, ActiveMQQueue shardDestination) throws Exception {
+        MessageStore store = persistenceAdapter.createQueueMessageStore(shardDestination);
+        synchronized (this) {
+            if (storedShards != null) {
+                addStoredShard(storedShards, shardDestination);
+            }
+        }
+        Queue shard = new Queue(brokerService, shardDestination, store, queue.getDestinationStatistics(), taskRunnerFactory);
+        configureQueue(shard, queue.getActiveMQDestination());
+        return shard;
+    }
+
+    protected int getQueueShards(ActiveMQDestination destination) {
+        if (broker != null && broker.getDestinationPolicy() != null && !ShardedQueue.isShard(destination)) {
+            PolicyEntry entry = broker.getDestinationPolicy().getEntryFor(destination);
+            if (entry != null) {
+                return entry.getQueueShards();
+            }
+        }
+        return 0;
+    }
+
     protected void configureQueue(Queue queue, ActiveMQDestination destination) {
         if (broker == null) {
             throw new IllegalStateException("broker property is not set");
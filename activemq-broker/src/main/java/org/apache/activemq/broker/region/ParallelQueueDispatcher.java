@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.broker.region.cursors.PendingList;
+import org.apache.activemq.thread.TaskRunnerFactory;
+
+/**
+ * Adds the messages a {@link Queue} dispatches to its subscriptions on a set of
+ * workers, so the dispatch thread of the queue only selects the subscription of
+ * each message while the subscriptions send them. <br>
+ * The workers run their tasks one at a time on the threads of the broker's
+ * {@link TaskRunnerFactory}, so a queue holds no threads of its own. A
+ * subscription is always served by the same worker, so it receives its
+ * messages in the order they were selected for it. The selection of a
+ * subscription, and with it the message group and exclusive consumer rules,
+ * stays on the dispatch thread, which waits for the workers at the end of each
+ * dispatch, so no message is on its way to a subscription while the queue adds
+ * or removes subscriptions.
+ */
+final class ParallelQueueDispatcher {
+
+    private final Worker[] workers;
+    private final TaskRunnerFactory taskRunnerFactory;
+    private final String name;
+    private final long startTime = System.nanoTime();
+    private final AtomicLong busyTime = new AtomicLong();
+
+    // the state of the current dispatch, the maps and lists are only used by the dispatch thread
+    private final Map<Subscription, AtomicInteger> inFlight = new HashMap<Subscription, AtomicInteger>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final Object completion = new Object();
+    // the messages that failed by the order they were dispatched in
+    private final TreeMap<Long, MessageReference> failed = new TreeMap<Long, MessageReference>();
+    private long dispatched;
+    private Exception failure;
+
+    ParallelQueueDispatcher(String name, int threads, TaskRunnerFactory taskRunnerFactory) {
+        this.name = "ActiveMQ Queue Dispatch:" + name;
+        this.taskRunnerFactory = taskRunnerFactory;
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    /**
+     * @return true if the subscription is full or will be once the messages
+     *         on their way to it are added.
+     */
+    boolean isFull(Subscription subscription) {
+        if (subscription.isFull()) {
+            return true;
+        }
+        AtomicInteger count = inFlight.get(subscription);
+        return count != null && count.get() >= subscription.countBeforeFull();
+    }
+
+    /**
+     * Adds the message to the subscription on the worker of the subscription.
+     */
+    void dispatch(final Subscription subscription, final MessageReference node) {
+        AtomicInteger count = inFlight.get(subscription);
+        if (count == null) {
+            count = new AtomicInteger();
+            inFlight.put(subscription, count);
+        }
+        final AtomicInteger subscriptionCount = count;
+        final long sequence = dispatched++;
+        subscriptionCount.incrementAndGet();
+        outstanding.incrementAndGet();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    subscription.add(node);
+                } catch (Exception e) {
+                    synchronized (completion) {
+                        failed.put(sequence, node);
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    }
+                } finally {
+                    subscriptionCount.decrementAndGet();
+                    busyTime.addAndGet(System.nanoTime() - start);
+                    if (outstanding.decrementAndGet() == 0) {
+                        synchronized (completion) {
+                            completion.notifyAll();
+                        }
+                    }
+                }
+            }
+        };
+        int worker = (subscription.getConsumerInfo().getConsumerId().hashCode() & Integer.MAX_VALUE) % workers.length;
+        workers[worker].execute(task);
+    }
+
+    /**
+     * Waits until the messages of the current dispatch have been added to their
+     * subscriptions. The messages a subscription failed to add are put back at
+     * the head of the list and the first failure is thrown.
+     */
+    void awaitDispatched(PendingList list) throws Exception {
+        boolean interrupted = false;
+        Exception exception;
+        synchronized (completion) {
+            while (outstanding.get() > 0) {
+                try {
+                    completion.wait();
+                } catch (InterruptedException e) {
+                    // the messages must not be left on their way to a subscription
+                    interrupted = true;
+                }
+            }
+            // last first, so they are back at the head in the order they were dispatched in
+            for (MessageReference node : failed.descendingMap().values()) {
+                list.addMessageFirst(node);
+            }
+            failed.clear();
+            exception = failure;
+            failure = null;
+        }
+        inFlight.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * @return the percentage of time the workers spent adding messages to
+     *         subscriptions since the dispatcher was created.
+     */
+    double getUtilization() {
+        long elapsed = (System.nanoTime() - startTime) * workers.length;
+        return elapsed > 0 ? busyTime.get() * 100.0 / elapsed : 0;
+    }
+
+    /**
+     * Runs the tasks given to it one at a time and in order, on a thread of the task
+     * runner factory that is only held while it has tasks.
+     */
+    private final class Worker implements Runnable {
+
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    taskRunnerFactory.execute(this, name);
+                } catch (RejectedExecutionException e) {
+                    // the broker is stopping, add the messages on the calling thread
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+            } finally {
+                scheduled.set(false);
+                // tasks added after the last poll, or left behind by an error
+                schedule();
+            }
+        }
+    }
+}
@@ -138,6 +138,10 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
     private CountDownLatch consumersBeforeStartsLatch;
     private final AtomicLong pendingWakeups = new AtomicLong();
     private boolean allConsumersExclusiveByDefault = false;
+    private int parallelDispatchThreads = 0;
+    private volatile ParallelQueueDispatcher parallelDispatcher;
+    private final AtomicLong dispatchTime = new AtomicLong();
+    private volatile long dispatchStartTime = System.nanoTime();
 
     private volatile boolean resetNeeded;
 
@@ -1026,6 +1030,8 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
             }
             systemUsage.getMemoryUsage().addUsageListener(this);
             messages.start();
+            dispatchStartTime = System.nanoTime();
+            updateParallelDispatcher(parallelDispatchThreads);
             if (getExpireMessagesPeriod() > 0) {
                 scheduler.executePeriodically(expireMessagesTask, getExpireMessagesPeriod());
             }
@@ -1039,6 +1045,7 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
             if (taskRunner != null) {
                 taskRunner.shutdown();
             }
+            updateParallelDispatcher(0);
             if (this.executor != null) {
                 ThreadPoolUtils.shutdownNow(executor);
                 executor = null;
@@ -1154,6 +1161,52 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
         this.consumersBeforeDispatchStarts = consumersBeforeDispatchStarts;
     }
 
+    public int getParallelDispatchThreads() {
+        return parallelDispatchThreads;
+    }
+
+    /**
+     * Sets the number of threads that add the dispatched messages to the
+     * subscriptions, so that the dispatch thread of the queue only selects the
+     * subscription of each message. The threads are borrowed from the broker's
+     * task runner factory while there are messages to add. Zero, the default,
+     * adds them on the dispatch thread. Not used with optimized dispatch.
+     */
+    public void setParallelDispatchThreads(int parallelDispatchThreads) {
+        this.parallelDispatchThreads = parallelDispatchThreads;
+        if (started.get()) {
+            updateParallelDispatcher(parallelDispatchThreads);
+        }
+    }
+
+    private void updateParallelDispatcher(int threads) {
+        ParallelQueueDispatcher dispatcher = threads > 0 ? new ParallelQueueDispatcher(getName(), threads, taskFactory) : null;
+        // swap between two dispatches, so the previous dispatcher has no messages left to add
+        pagedInPendingDispatchLock.writeLock().lock();
+        try {
+            parallelDispatcher = dispatcher;
+        } finally {
+            pagedInPendingDispatchLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the percentage of time the queue spent dispatching messages since it was started
+     */
+    public double getDispatchThreadUtilization() {
+        long elapsed = System.nanoTime() - dispatchStartTime;
+        return elapsed > 0 ? dispatchTime.get() * 100.0 / elapsed : 0;
+    }
+
+    /**
+     * @return the percentage of time the parallel dispatch threads spent adding
+     *         messages to subscriptions since they were started, or 0 if there are none
+     */
+    public double getParallelDispatchUtilization() {
+        ParallelQueueDispatcher dispatcher = parallelDispatcher;
+        return dispatcher != null ? dispatcher.getUtilization() : 0;
+    }
+
     public void setAllConsumersExclusiveByDefault(boolean allConsumersExclusiveByDefault) {
         this.allConsumersExclusiveByDefault = allConsumersExclusiveByDefault;
     }
@@ -2134,6 +2187,7 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
         boolean doWakeUp = false;
 
         pagedInPendingDispatchLock.writeLock().lock();
+        long start = System.nanoTime();
         try {
             if (isPrioritizedMessages() && !dispatchPendingList.isEmpty() && list != null && !list.isEmpty()) {
                 // merge all to select priority order
@@ -2161,6 +2215,7 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
                 }
             }
         } finally {
+            dispatchTime.addAndGet(System.nanoTime() - start);
             pagedInPendingDispatchLock.writeLock().unlock();
         }
 
@@ -2190,6 +2245,21 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
 
         Set<Subscription> fullConsumers = new HashSet<Subscription>(this.consumers.size());
 
+        // messages are added on this thread when the queue dispatches on the sending threads,
+        // or redispatches the messages of a removed subscription while it holds the consumers
+        // lock, as a subscription could call back into the queue while adding them
+        ParallelQueueDispatcher dispatcher = optimizedDispatch || consumersLock.isWriteLockedByCurrentThread() ? null : parallelDispatcher;
+        try {
+            return doActualDispatch(list, consumers, fullConsumers, dispatcher);
+        } finally {
+            if (dispatcher != null) {
+                dispatcher.awaitDispatched(list);
+            }
+        }
+    }
+
+    private PendingList doActualDispatch(PendingList list, List<Subscription> consumers, Set<Subscription> fullConsumers,
+            ParallelQueueDispatcher dispatcher) throws Exception {
         for (Iterator<MessageReference> iterator = list.iterator(); iterator.hasNext();) {
 
             MessageReference node = iterator.next();
@@ -2199,10 +2269,14 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
                     continue;
                 }
                 if (!fullConsumers.contains(s)) {
-                    if (!s.isFull()) {
+                    if (dispatcher != null ? !dispatcher.isFull(s) : !s.isFull()) {
                         if (dispatchSelector.canSelect(s, node) && assignMessageGroup(s, (QueueMessageReference)node) && !((QueueMessageReference) node).isAcked() ) {
                             // Dispatch it.
-                            s.add(node);
+                            if (dispatcher != null) {
+                                dispatcher.dispatch(s, node);
+                            } else {
+                                s.add(node);
+                            }
                             LOG.trace("assigned {} to consumer {}", node.getMessageId(), s.getConsumerInfo().getConsumerId());
                             iterator.remove();
                             target = s;
@@ -2214,8 +2288,9 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
                         fullConsumers.add(s);
 
                         //For full consumers we need to mark that they are slow and
-                        // then call the broker.slowConsumer() hook if implemented
-                        if (s instanceof PrefetchSubscription) {
+                        // then call the broker.slowConsumer() hook if implemented,
+                        // unless they are only full of the messages still on their way to them
+                        if (s instanceof PrefetchSubscription && (dispatcher == null || s.isFull())) {
                             final PrefetchSubscription sub = (PrefetchSubscription) s;
                             if (!sub.isSlowConsumer()) {
                                 sub.setSlowConsumer(true);
@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.ProducerBrokerExchange;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.thread.TaskRunnerFactory;
+
+/**
+ * A Queue whose messages are spread over a number of shards, each of them a
+ * {@link Queue} with its own cursor, message store and dispatch task, so the
+ * messages of one queue are stored and dispatched by several threads. <br>
+ * The ShardedQueue is the first shard, the other shards are internal queues
+ * named after the queue with a {@link #SHARD_SEPARATOR} and their index, which
+ * are never registered with a region. The messages of a message group are sent
+ * to the same shard, other messages are sent to the shards in turn. Every
+ * consumer of the queue consumes from all the shards, and the statistics of
+ * the shards are added to the statistics of the queue. <br>
+ * Messages are only ordered within a shard, so a sharded queue does not keep
+ * the order of the messages that are not in a group.
+ */
+public class ShardedQueue extends Queue {
+
+    public static final String SHARD_SEPARATOR = "::shard-";
+
+    private final List<Queue> shards = new CopyOnWriteArrayList<Queue>();
+    // this queue and the shards that receive new messages
+    private volatile Queue[] sendShards = new Queue[] {this};
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    public ShardedQueue(BrokerService brokerService, ActiveMQDestination destination, MessageStore store,
+            DestinationStatistics parentStats, TaskRunnerFactory taskFactory) throws Exception {
+        super(brokerService, destination, store, parentStats, taskFactory);
+    }
+
+    /**
+     * Adds a shard created with the statistics of this queue as its parent
+     * statistics. Shards must be added before the queue is initialized.
+     *
+     * @param acceptsSends false for a shard that is only drained, such as a
+     *        shard left in the store when the number of shards was reduced
+     */
+    public void addShard(Queue shard, boolean acceptsSends) {
+        // the consumers of the shards are the consumers of this queue
+        shard.getDestinationStatistics().getConsumers().setParent(null);
+        shards.add(shard);
+        if (acceptsSends) {
+            Queue[] targets = new Queue[sendShards.length + 1];
+            System.arraycopy(sendShards, 0, targets, 0, sendShards.length);
+            targets[sendShards.length] = shard;
+            sendShards = targets;
+        }
+    }
+
+    /**
+     * @return the shards of this queue other than the queue itself
+     */
+    public List<Queue> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    /**
+     * @return the number of shards that receive new messages, including this queue
+     */
+    public int getShardCount() {
+        return sendShards.length;
+    }
+
+    @Override
+    public void initialize() throws Exception {
+        super.initialize();
+        for (Queue shard : shards) {
+            shard.initialize();
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start();
+        for (Queue shard : shards) {
+            shard.start();
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        for (Queue shard : shards) {
+            shard.stop();
+        }
+        super.stop();
+    }
+
+    @Override
+    public void dispose(ConnectionContext context) throws IOException {
+        for (Queue shard : shards) {
+            shard.dispose(context);
+        }
+        super.dispose(context);
+    }
+
+    @Override
+    public void gc() {
+        super.gc();
+        for (Queue shard : shards) {
+            shard.gc();
+        }
+    }
+
+    @Override
+    public void send(ProducerBrokerExchange producerExchange, Message message) throws Exception {
+        Queue shard = selectShard(message);
+        if (shard == this) {
+            super.send(producerExchange, message);
+        } else {
+            shard.send(producerExchange, message);
+        }
+    }
+
+    Queue selectShard(Message message) {
+        Queue[] targets = sendShards;
+        String groupId = message.getGroupID();
+        int hash = groupId != null ? groupId.hashCode() : nextShard.getAndIncrement();
+        return targets[(hash & Integer.MAX_VALUE) % targets.length];
+    }
+
+    @Override
+    public void addSubscription(ConnectionContext context, Subscription sub) throws Exception {
+        super.addSubscription(context, sub);
+        for (Queue shard : shards) {
+            shard.addSubscription(context, sub);
+        }
+    }
+
+    @Override
+    public void removeSubscription(ConnectionContext context, Subscription sub, long lastDeliveredSequenceId) throws Exception {
+        super.removeSubscription(context, sub, lastDeliveredSequenceId);
+        for (Queue shard : shards) {
+            shard.removeSubscription(context, sub, lastDeliveredSequenceId);
+        }
+    }
+
+    @Override
+    public Message[] browse() {
+        List<Message> browseList = new ArrayList<Message>();
+        doBrowse(browseList, getMaxBrowsePageSize());
+        for (Queue shard : shards) {
+            shard.doBrowse(browseList, getMaxBrowsePageSize());
+        }
+        return browseList.toArray(new Message[browseList.size()]);
+    }
+
+    @Override
+    public QueueMessageReference getMessage(String id) {
+        QueueMessageReference ref = super.getMessage(id);
+        for (int i = 0; ref == null && i < shards.size(); i++) {
+            ref = shards.get(i).getMessage(id);
+        }
+        return ref;
+    }
+
+    @Override
+    public void purge() throws Exception {
+        for (Queue shard : shards) {
+            shard.purge();
+        }
+        super.purge();
+    }
+
+    @Override
+    public int removeMatchingMessages(MessageReferenceFilter filter, int maximumMessages) throws Exception {
+        int removed = super.removeMatchingMessages(filter, maximumMessages);
+        for (int i = 0; i < shards.size() && !isDone(removed, maximumMessages); i++) {
+            removed += shards.get(i).removeMatchingMessages(filter, remaining(removed, maximumMessages));
+        }
+        return removed;
+    }
+
+    @Override
+    public int copyMatchingMessages(ConnectionContext context, MessageReferenceFilter filter, ActiveMQDestination dest,
+            int maximumMessages) throws Exception {
+        if (destination.equals(dest)) {
+            return 0;
+        }
+        int copied = super.copyMatchingMessages(context, filter, dest, maximumMessages);
+        for (int i = 0; i < shards.size() && !isDone(copied, maximumMessages); i++) {
+            copied += shards.get(i).copyMatchingMessages(context, filter, dest, remaining(copied, maximumMessages));
+        }
+        return copied;
+    }
+
+    @Override
+    public boolean moveMessageTo(ConnectionContext context, QueueMessageReference m, ActiveMQDestination dest) throws Exception {
+        Object owner = m.getRegionDestination();
+        if (owner != this && shards.contains(owner)) {
+            return ((Queue) owner).moveMessageTo(context, m, dest);
+        }
+        return super.moveMessageTo(context, m, dest);
+    }
+
+    @Override
+    public int moveMatchingMessagesTo(ConnectionContext context, MessageReferenceFilter filter,
+            ActiveMQDestination dest, int maximumMessages) throws Exception {
+        if (destination.equals(dest)) {
+            return 0;
+        }
+        int moved = super.moveMatchingMessagesTo(context, filter, dest, maximumMessages);
+        for (int i = 0; i < shards.size() && !isDone(moved, maximumMessages); i++) {
+            moved += shards.get(i).moveMatchingMessagesTo(context, filter, dest, remaining(moved, maximumMessages));
+        }
+        return moved;
+    }
+
+    @Override
+    public int retryMessages(ConnectionContext context, int maximumMessages) throws Exception {
+        int restored = super.retryMessages(context, maximumMessages);
+        for (int i = 0; i < shards.size() && !isDone(restored, maximumMessages); i++) {
+            restored += shards.get(i).retryMessages(context, remaining(restored, maximumMessages));
+        }
+        return restored;
+    }
+
+    @Override
+    public void pauseDispatch() {
+        super.pauseDispatch();
+        for (Queue shard : shards) {
+            shard.pauseDispatch();
+        }
+    }
+
+    @Override
+    public void resumeDispatch() {
+        super.resumeDispatch();
+        for (Queue shard : shards) {
+            shard.resumeDispatch();
+        }
+    }
+
+    private static boolean isDone(int count, int maximumMessages) {
+        return maximumMessages > 0 && count >= maximumMessages;
+    }
+
+    private static int remaining(int count, int maximumMessages) {
+        return maximumMessages > 0 ? maximumMessages - count : maximumMessages;
+    }
+
+    /**
+     * @return the destination of the shard of a queue with the given index
+     */
+    public static ActiveMQQueue getShardDestination(ActiveMQDestination destination, int index) {
+        return new ActiveMQQueue(destination.getPhysicalName() + SHARD_SEPARATOR + index);
+    }
+
+    /**
+     * @return the index of the shard of a sharded queue, or -1 if the destination is not a shard
+     */
+    public static int getShardIndex(ActiveMQDestination destination) {
+        if (!destination.isQueue() || destination.isTemporary()) {
+            return -1;
+        }
+        String name = destination.getPhysicalName();
+        int separator = name.lastIndexOf(SHARD_SEPARATOR);
+        if (separator <= 0) {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(name.substring(separator + SHARD_SEPARATOR.length()));
+            return index > 0 ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static boolean isShard(ActiveMQDestination destination) {
+        return getShardIndex(destination) > 0;
+    }
+
+    /**
+     * @return the queue a shard belongs to, or null if the destination is not a shard
+     */
+    public static ActiveMQQueue getLogicalDestination(ActiveMQDestination destination) {
+        if (!isShard(destination)) {
+            return null;
+        }
+        String name = destination.getPhysicalName();
+        return new ActiveMQQueue(name.substring(0, name.lastIndexOf(SHARD_SEPARATOR)));
+    }
+}
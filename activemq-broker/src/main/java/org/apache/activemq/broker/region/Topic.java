@@ -29,6 +29,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.activemq.advisory.AdvisorySupport;
@@ -77,6 +78,9 @@ public class Topic extends BaseDestination implements Task {
     protected static final Logger LOG = LoggerFactory.getLogger(Topic.class);
     private final TopicMessageStore topicStore;
     protected final CopyOnWriteArrayList<Subscription> consumers = new CopyOnWriteArrayList<Subscription>();
+    // bumped whenever the subscriptions messages are dispatched to or their selectors change
+    private final AtomicLong consumersVersion = new AtomicLong();
+    private volatile Object consumersIndex;
     private final ReentrantReadWriteLock dispatchLock = new ReentrantReadWriteLock();
     private DispatchPolicy dispatchPolicy = new SimpleDispatchPolicy();
     private SubscriptionRecoveryPolicy subscriptionRecoveryPolicy;
@@ -127,6 +131,30 @@ public class Topic extends BaseDestination implements Task {
         }
     }
 
+    /**
+     * @return a version of the subscriptions messages are dispatched to, which changes
+     *         whenever a subscription is added or removed or the selector of one changes.
+     */
+    public long getConsumersVersion() {
+        return consumersVersion.get();
+    }
+
+    void consumersChanged() {
+        consumersVersion.incrementAndGet();
+    }
+
+    /**
+     * @return the index of the subscriptions built by the dispatch policy, kept
+     *         with the topic so that it goes away with it
+     */
+    public Object getConsumersIndex() {
+        return consumersIndex;
+    }
+
+    public void setConsumersIndex(Object consumersIndex) {
+        this.consumersIndex = consumersIndex;
+    }
+
     public boolean lock(MessageReference node, LockOwner sub) {
         return true;
     }
@@ -147,6 +175,7 @@ public class Topic extends BaseDestination implements Task {
                         if (!consumers.contains(sub)){
                             sub.add(context, this);
                             consumers.add(sub);
+                            consumersChanged();
                             applyRecovery=true;
                             super.addSubscription(context, sub);
                         }
@@ -163,6 +192,7 @@ public class Topic extends BaseDestination implements Task {
                     if (!consumers.contains(sub)){
                         sub.add(context, this);
                         consumers.add(sub);
+                        consumersChanged();
                         super.addSubscription(context, sub);
                     }
                 }
@@ -191,6 +221,7 @@ public class Topic extends BaseDestination implements Task {
 
                     if (!hasSubscription) {
                         consumers.add(sub);
+                        consumersChanged();
                     }
                 }
             }
@@ -204,6 +235,7 @@ public class Topic extends BaseDestination implements Task {
             boolean removed = false;
             synchronized (consumers) {
                 removed = consumers.remove(sub);
+                consumersChanged();
             }
             if (removed) {
                 super.removeSubscription(context, sub, lastDeliveredSequenceId);
@@ -221,6 +253,7 @@ public class Topic extends BaseDestination implements Task {
                 // deactivate and remove
                 removed.deactivate(false, 0l);
                 consumers.remove(removed);
+                consumersChanged();
             }
         }
     }
@@ -283,11 +316,13 @@ public class Topic extends BaseDestination implements Task {
                     subscription.setSelector(subscription.getConsumerInfo().getSelector());
                     synchronized (consumers) {
                         consumers.remove(subscription);
+                        consumersChanged();
                     }
                 } else {
                     synchronized (consumers) {
                         if (!consumers.contains(subscription)) {
                             consumers.add(subscription);
+                            consumersChanged();
                         }
                     }
                 }
@@ -306,6 +341,7 @@ public class Topic extends BaseDestination implements Task {
                 // This destination might be a pattern
                 synchronized (consumers) {
                     consumers.add(subscription);
+                    consumersChanged();
                     topicStore.addSubscription(info, subscription.getConsumerInfo().isRetroactive());
                 }
             }
@@ -352,6 +388,7 @@ public class Topic extends BaseDestination implements Task {
     public void deactivate(ConnectionContext context, DurableTopicSubscription sub, List<MessageReference> dispatched) throws Exception {
         synchronized (consumers) {
             consumers.remove(sub);
+            consumersChanged();
         }
         sub.remove(context, this, dispatched);
     }
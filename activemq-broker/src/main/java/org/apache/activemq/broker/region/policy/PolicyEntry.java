@@ -78,6 +78,8 @@ public class PolicyEntry extends DestinationMapEntry {
     private boolean lazyDispatch=false;
     private int timeBeforeDispatchStarts = 0;
     private int consumersBeforeDispatchStarts = 0;
+    private int parallelDispatchThreads = 0;
+    private int queueShards = 0;
     private boolean advisoryForSlowConsumers;
     private boolean advisoryForFastProducers;
     private boolean advisoryForDiscardingMessages;
@@ -137,6 +139,7 @@ public class PolicyEntry extends DestinationMapEntry {
         queue.setLazyDispatch(isLazyDispatch());
         queue.setTimeBeforeDispatchStarts(getTimeBeforeDispatchStarts());
         queue.setConsumersBeforeDispatchStarts(getConsumersBeforeDispatchStarts());
+        queue.setParallelDispatchThreads(getParallelDispatchThreads());
         queue.setAllConsumersExclusiveByDefault(isAllConsumersExclusiveByDefault());
         queue.setPersistJMSRedelivered(isPersistJMSRedelivered());
     }
@@ -178,6 +181,9 @@ public class PolicyEntry extends DestinationMapEntry {
         if (isUpdate("consumersBeforeDispatchStarts", includedProperties)) {
             queue.setConsumersBeforeDispatchStarts(getConsumersBeforeDispatchStarts());
         }
+        if (isUpdate("parallelDispatchThreads", includedProperties)) {
+            queue.setParallelDispatchThreads(getParallelDispatchThreads());
+        }
         if (isUpdate("allConsumersExclusiveByDefault", includedProperties)) {
             queue.setAllConsumersExclusiveByDefault(isAllConsumersExclusiveByDefault());
         }
@@ -781,6 +787,38 @@ public class PolicyEntry extends DestinationMapEntry {
         this.consumersBeforeDispatchStarts = consumersBeforeDispatchStarts;
     }
 
+    public int getParallelDispatchThreads() {
+        return parallelDispatchThreads;
+    }
+
+    /**
+     * Sets the number of threads a queue uses to add the messages it dispatches
+     * to its consumers, for queues with many consumers whose dispatch thread
+     * cannot keep up. The threads come from the broker's shared task runner pool. Message groups and exclusive consumers are honoured, and
+     * each consumer receives its messages in order. Zero, the default, dispatches
+     * on the queue's own thread. A consumer on a synchronous VM transport must not
+     * create or close consumers of the queue from its message listener.
+     */
+    public void setParallelDispatchThreads(int parallelDispatchThreads) {
+        this.parallelDispatchThreads = parallelDispatchThreads;
+    }
+
+    public int getQueueShards() {
+        return queueShards;
+    }
+
+    /**
+     * Sets the number of shards of a queue, each with its own cursor, store and
+     * dispatch thread, for queues that do not need their messages in order.
+     * The messages of a message group are kept in one shard and in order.
+     * Values below two, the default, create an ordinary queue. The number of
+     * shards is only read when the queue is created. When it is reduced, the
+     * shards left in the store are drained by the queue until they are empty.
+     */
+    public void setQueueShards(int queueShards) {
+        this.queueShards = queueShards;
+    }
+
     /**
      * @return the advisoryForSlowConsumers
      */
@@ -19,7 +19,7 @@ package org.apache.activemq.broker.region.policy;
 import java.util.List;
 
 import org.apache.activemq.command.ActiveMQDestination;
-import org.apache.activemq.filter.DestinationMap;
+import org.apache.activemq.filter.CopyOnWriteDestinationMap;
 import org.apache.activemq.filter.DestinationMapEntry;
 
 /**
@@ -31,7 +31,7 @@ import org.apache.activemq.filter.DestinationMapEntry;
  * 
  * 
  */
-public class PolicyMap extends DestinationMap {
+public class PolicyMap extends CopyOnWriteDestinationMap {
 
     private PolicyEntry defaultEntry;
 
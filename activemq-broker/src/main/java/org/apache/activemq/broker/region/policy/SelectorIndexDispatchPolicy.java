@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.policy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.jms.JMSException;
+
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.broker.region.Topic;
+import org.apache.activemq.broker.region.TopicSubscription;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.filter.SelectorIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatch policy that sends a message to every subscription that matches the
+ * message, like {@link SimpleDispatchPolicy}, but only evaluates the selectors of
+ * the subscriptions that could match it. The selectors of the subscriptions of a
+ * topic are indexed by a {@link SelectorIndex} that is rebuilt when the
+ * {@link Topic#getConsumersVersion() version} of its subscriptions changes, so the
+ * cost of dispatching a message grows with the number of subscriptions it could
+ * match rather than with the number of subscriptions of a topic with many
+ * selective subscribers. The index is kept by its topic, messages that do not
+ * come from a topic are dispatched like {@link SimpleDispatchPolicy} does.
+ * <p>
+ * Durable subscriptions are always evaluated, as they are told about the messages
+ * that do not match their selector.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class SelectorIndexDispatchPolicy extends SimpleDispatchPolicy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SelectorIndexDispatchPolicy.class);
+
+    @Override
+    public boolean dispatch(MessageReference node, MessageEvaluationContext msgContext, List<Subscription> consumers) throws Exception {
+        Object destination = node.getRegionDestination();
+        if (!(destination instanceof Topic)) {
+            return super.dispatch(node, msgContext, consumers);
+        }
+        SubscriptionIndex index = getIndex((Topic) destination, consumers);
+
+        List<Subscription> candidates = new ArrayList<Subscription>(index.selectors.getUnindexed());
+        try {
+            index.selectors.addCandidates(msgContext, candidates);
+        } catch (JMSException e) {
+            LOG.debug("Failed to find the subscriptions of {} by their selector: {}", node.getMessageId(), e.getMessage(), e);
+            return super.dispatch(node, msgContext, consumers);
+        }
+
+        int count = 0;
+        for (Subscription sub : candidates) {
+            // Only dispatch to interested subscriptions
+            if (!sub.matches(node, msgContext)) {
+                sub.unmatched(node);
+                continue;
+            }
+
+            sub.add(node);
+            count++;
+        }
+
+        return count > 0;
+    }
+
+    private SubscriptionIndex getIndex(Topic topic, List<Subscription> consumers) {
+        // the policy can be shared by many topics, so each index is kept by its topic
+        Object current = topic.getConsumersIndex();
+        // read before the index is built, so changes made while it is built rebuild it again
+        long version = topic.getConsumersVersion();
+        if (current instanceof SubscriptionIndex && ((SubscriptionIndex) current).version == version) {
+            return (SubscriptionIndex) current;
+        }
+        SubscriptionIndex index = new SubscriptionIndex(consumers, version);
+        topic.setConsumersIndex(index);
+        return index;
+    }
+
+    /**
+     * The selector index of the subscriptions of a topic at some point in time.
+     */
+    private static final class SubscriptionIndex {
+
+        private final long version;
+        private final SelectorIndex<Subscription> selectors = new SelectorIndex<Subscription>();
+
+        SubscriptionIndex(List<Subscription> consumers, long version) {
+            this.version = version;
+            for (Subscription sub : consumers) {
+                // Don't deliver to browsers
+                if (sub.getConsumerInfo().isBrowser()) {
+                    continue;
+                }
+                BooleanExpression selectorExpression = null;
+                if (sub instanceof TopicSubscription) {
+                    selectorExpression = ((TopicSubscription) sub).getSelectorExpression();
+                }
+                selectors.add(sub, selectorExpression);
+            }
+        }
+    }
+}
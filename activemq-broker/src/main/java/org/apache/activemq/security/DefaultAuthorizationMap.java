@@ -22,7 +22,7 @@ import java.security.Principal;
 import java.util.*;
 
 import org.apache.activemq.command.ActiveMQDestination;
-import org.apache.activemq.filter.DestinationMap;
+import org.apache.activemq.filter.CopyOnWriteDestinationMap;
 import org.apache.activemq.filter.DestinationMapEntry;
 
 /**
@@ -33,7 +33,7 @@ import org.apache.activemq.filter.DestinationMapEntry;
  *
  *
  */
-public class DefaultAuthorizationMap extends DestinationMap implements AuthorizationMap {
+public class DefaultAuthorizationMap extends CopyOnWriteDestinationMap implements AuthorizationMap {
 
     public static final String DEFAULT_GROUP_CLASS = "org.apache.activemq.jaas.GroupPrincipal";
 
@@ -153,7 +153,7 @@ public class DefaultAuthorizationMap extends DestinationMap implements Authoriza
      */
     @Override
     @SuppressWarnings("rawtypes")
-    public synchronized Set get(ActiveMQDestination key) {
+    public Set get(ActiveMQDestination key) {
         if (key.isComposite()) {
             ActiveMQDestination[] destinations = key.getCompositeDestinations();
             Set answer = null;
@@ -16,6 +16,8 @@
  */
 package org.apache.activemq.store;
 
+import org.apache.activemq.management.CountStatisticImpl;
+import org.apache.activemq.management.SizeStatisticImpl;
 import org.apache.activemq.management.StatsImpl;
 import org.apache.activemq.management.TimeStatisticImpl;
 
@@ -27,6 +29,23 @@ public class PersistenceAdapterStatistics extends StatsImpl {
     protected TimeStatisticImpl writeTime;
     protected TimeStatisticImpl readTime;
 
+    protected SizeStatisticImpl journalWriteBatchSize;
+    protected TimeStatisticImpl journalSyncTime;
+    protected TimeStatisticImpl journalWriteBatchLatency;
+
+    protected CountStatisticImpl pageCacheHits;
+    protected CountStatisticImpl pageCacheMisses;
+    protected CountStatisticImpl pageCacheEvictions;
+
+    protected TimeStatisticImpl checkpointTime;
+    protected TimeStatisticImpl checkpointStallTime;
+
+    protected SizeStatisticImpl journalCompactedSize;
+
+    protected SizeStatisticImpl jdbcGroupCommitBatchSize;
+    protected TimeStatisticImpl jdbcGroupCommitTime;
+    protected CountStatisticImpl jdbcRecoveryPrefetchHits;
+
     public PersistenceAdapterStatistics() {
     	slowCleanupTime = new TimeStatisticImpl("slowCleanupTime", "Slow time to cleanup data in the PersistentAdapter.");
     	slowWriteTime = new TimeStatisticImpl("slowWriteTime", "Slow time to write data to the PersistentAdapter.");
@@ -39,6 +58,36 @@ public class PersistenceAdapterStatistics extends StatsImpl {
         readTime = new TimeStatisticImpl("readTime", "Time to read data from the PersistentAdapter.");
         addStatistic("writeTime", writeTime);
         addStatistic("readTime", readTime);
+
+        journalWriteBatchSize = new SizeStatisticImpl("journalWriteBatchSize", "Size of the batches written to the journal.");
+        journalSyncTime = new TimeStatisticImpl("journalSyncTime", "micros", "Time to force a journal batch to disk.");
+        journalWriteBatchLatency = new TimeStatisticImpl("journalWriteBatchLatency", "micros", "Time from writing a journal batch until its writers are completed.");
+        addStatistic("journalWriteBatchSize", journalWriteBatchSize);
+        addStatistic("journalSyncTime", journalSyncTime);
+        addStatistic("journalWriteBatchLatency", journalWriteBatchLatency);
+
+        pageCacheHits = new CountStatisticImpl("pageCacheHits", "Index page reads served from the off heap page cache.");
+        pageCacheMisses = new CountStatisticImpl("pageCacheMisses", "Index page reads not found in the off heap page cache.");
+        pageCacheEvictions = new CountStatisticImpl("pageCacheEvictions", "Pages evicted from the off heap page cache.");
+        addStatistic("pageCacheHits", pageCacheHits);
+        addStatistic("pageCacheMisses", pageCacheMisses);
+        addStatistic("pageCacheEvictions", pageCacheEvictions);
+
+        checkpointTime = new TimeStatisticImpl("checkpointTime", "Time to checkpoint the index of the PersistentAdapter.");
+        checkpointStallTime = new TimeStatisticImpl("checkpointStallTime", "Time index updates were blocked by a checkpoint.");
+        addStatistic("checkpointTime", checkpointTime);
+        addStatistic("checkpointStallTime", checkpointStallTime);
+
+        journalCompactedSize = new SizeStatisticImpl("journalCompactedSize", "Size of the messages forwarded from each compacted journal data file.");
+        addStatistic("journalCompactedSize", journalCompactedSize);
+
+        jdbcGroupCommitBatchSize = new SizeStatisticImpl("jdbcGroupCommitBatchSize", "Number of writes committed together by the JDBC group commit writer.");
+        jdbcGroupCommitTime = new TimeStatisticImpl("jdbcGroupCommitTime", "micros", "Time to execute and commit a JDBC group commit batch.");
+        addStatistic("jdbcGroupCommitBatchSize", jdbcGroupCommitBatchSize);
+        addStatistic("jdbcGroupCommitTime", jdbcGroupCommitTime);
+
+        jdbcRecoveryPrefetchHits = new CountStatisticImpl("jdbcRecoveryPrefetchHits", "Messages the JDBC queue cursors recovered from pages read ahead.");
+        addStatistic("jdbcRecoveryPrefetchHits", jdbcRecoveryPrefetchHits);
     }
 
     public void addSlowCleanupTime(final long time) {
@@ -61,6 +110,54 @@ public class PersistenceAdapterStatistics extends StatsImpl {
         readTime.addTime(time);
     }
 
+    public void addJournalWriteBatchSize(final long size) {
+        journalWriteBatchSize.addSize(size);
+    }
+
+    public void addJournalSyncTime(final long time) {
+        journalSyncTime.addTime(time);
+    }
+
+    public void addJournalWriteBatchLatency(final long time) {
+        journalWriteBatchLatency.addTime(time);
+    }
+
+    public void addPageCacheHits(final long count) {
+        pageCacheHits.add(count);
+    }
+
+    public void addPageCacheMisses(final long count) {
+        pageCacheMisses.add(count);
+    }
+
+    public void addPageCacheEvictions(final long count) {
+        pageCacheEvictions.add(count);
+    }
+
+    public void addCheckpointTime(final long time) {
+        checkpointTime.addTime(time);
+    }
+
+    public void addCheckpointStallTime(final long time) {
+        checkpointStallTime.addTime(time);
+    }
+
+    public void addJournalCompactedSize(final long size) {
+        journalCompactedSize.addSize(size);
+    }
+
+    public void addJdbcGroupCommitBatchSize(final long size) {
+        jdbcGroupCommitBatchSize.addSize(size);
+    }
+
+    public void addJdbcGroupCommitTime(final long time) {
+        jdbcGroupCommitTime.addTime(time);
+    }
+
+    public void addJdbcRecoveryPrefetchHits(final long count) {
+        jdbcRecoveryPrefetchHits.add(count);
+    }
+
     @Override
     public void setEnabled(boolean enabled) {
         super.setEnabled(enabled);
@@ -69,6 +166,18 @@ public class PersistenceAdapterStatistics extends StatsImpl {
         slowReadTime.setEnabled(enabled);
         writeTime.setEnabled(enabled);
         readTime.setEnabled(enabled);
+        journalWriteBatchSize.setEnabled(enabled);
+        journalSyncTime.setEnabled(enabled);
+        journalWriteBatchLatency.setEnabled(enabled);
+        pageCacheHits.setEnabled(enabled);
+        pageCacheMisses.setEnabled(enabled);
+        pageCacheEvictions.setEnabled(enabled);
+        checkpointTime.setEnabled(enabled);
+        checkpointStallTime.setEnabled(enabled);
+        journalCompactedSize.setEnabled(enabled);
+        jdbcGroupCommitBatchSize.setEnabled(enabled);
+        jdbcGroupCommitTime.setEnabled(enabled);
+        jdbcRecoveryPrefetchHits.setEnabled(enabled);
     }
     
     public TimeStatisticImpl getSlowCleanupTime() {
@@ -88,6 +197,54 @@ public class PersistenceAdapterStatistics extends StatsImpl {
 
     public TimeStatisticImpl getReadTime() { return readTime; }
 
+    public SizeStatisticImpl getJournalWriteBatchSize() {
+        return journalWriteBatchSize;
+    }
+
+    public TimeStatisticImpl getJournalSyncTime() {
+        return journalSyncTime;
+    }
+
+    public TimeStatisticImpl getJournalWriteBatchLatency() {
+        return journalWriteBatchLatency;
+    }
+
+    public CountStatisticImpl getPageCacheHits() {
+        return pageCacheHits;
+    }
+
+    public CountStatisticImpl getPageCacheMisses() {
+        return pageCacheMisses;
+    }
+
+    public CountStatisticImpl getPageCacheEvictions() {
+        return pageCacheEvictions;
+    }
+
+    public TimeStatisticImpl getCheckpointTime() {
+        return checkpointTime;
+    }
+
+    public TimeStatisticImpl getCheckpointStallTime() {
+        return checkpointStallTime;
+    }
+
+    public SizeStatisticImpl getJournalCompactedSize() {
+        return journalCompactedSize;
+    }
+
+    public SizeStatisticImpl getJdbcGroupCommitBatchSize() {
+        return jdbcGroupCommitBatchSize;
+    }
+
+    public TimeStatisticImpl getJdbcGroupCommitTime() {
+        return jdbcGroupCommitTime;
+    }
+
+    public CountStatisticImpl getJdbcRecoveryPrefetchHits() {
+        return jdbcRecoveryPrefetchHits;
+    }
+
     @Override
     public void reset() {
         if (isDoReset()) {
@@ -96,6 +253,18 @@ public class PersistenceAdapterStatistics extends StatsImpl {
             slowCleanupTime.reset();
             slowWriteTime.reset();
             slowReadTime.reset();
+            journalWriteBatchSize.reset();
+            journalSyncTime.reset();
+            journalWriteBatchLatency.reset();
+            pageCacheHits.reset();
+            pageCacheMisses.reset();
+            pageCacheEvictions.reset();
+            checkpointTime.reset();
+            checkpointStallTime.reset();
+            journalCompactedSize.reset();
+            jdbcGroupCommitBatchSize.reset();
+            jdbcGroupCommitTime.reset();
+            jdbcRecoveryPrefetchHits.reset();
         }
     }
 
@@ -106,12 +275,36 @@ public class PersistenceAdapterStatistics extends StatsImpl {
             slowCleanupTime.setParent(parent.slowCleanupTime);
             slowWriteTime.setParent(parent.slowWriteTime);
             slowReadTime.setParent(parent.slowReadTime);
+            journalWriteBatchSize.setParent(parent.journalWriteBatchSize);
+            journalSyncTime.setParent(parent.journalSyncTime);
+            journalWriteBatchLatency.setParent(parent.journalWriteBatchLatency);
+            pageCacheHits.setParent(parent.pageCacheHits);
+            pageCacheMisses.setParent(parent.pageCacheMisses);
+            pageCacheEvictions.setParent(parent.pageCacheEvictions);
+            checkpointTime.setParent(parent.checkpointTime);
+            checkpointStallTime.setParent(parent.checkpointStallTime);
+            journalCompactedSize.setParent(parent.journalCompactedSize);
+            jdbcGroupCommitBatchSize.setParent(parent.jdbcGroupCommitBatchSize);
+            jdbcGroupCommitTime.setParent(parent.jdbcGroupCommitTime);
+            jdbcRecoveryPrefetchHits.setParent(parent.jdbcRecoveryPrefetchHits);
         } else {
             writeTime.setParent(null);
             readTime.setParent(null);
             slowCleanupTime.setParent(null);
             slowWriteTime.setParent(null);
             slowReadTime.setParent(null);
+            journalWriteBatchSize.setParent(null);
+            journalSyncTime.setParent(null);
+            journalWriteBatchLatency.setParent(null);
+            pageCacheHits.setParent(null);
+            pageCacheMisses.setParent(null);
+            pageCacheEvictions.setParent(null);
+            checkpointTime.setParent(null);
+            checkpointStallTime.setParent(null);
+            journalCompactedSize.setParent(null);
+            jdbcGroupCommitBatchSize.setParent(null);
+            jdbcGroupCommitTime.setParent(null);
+            jdbcRecoveryPrefetchHits.setParent(null);
         }
 
     }
@@ -94,6 +94,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     protected boolean droppable;
     protected boolean jmsXGroupFirstForConsumer;
 
+    private transient Object cachedMarshalledForm;
     private transient short referenceCount;
     private transient ActiveMQConnection connection;
     transient MessageDestination regionDestination;
@@ -205,6 +206,28 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
         return result;
     }
 
+    /**
+     * Returns the named property like {@link #getProperty(String)}, but while the
+     * properties are marshalled only the named property is decoded and the
+     * properties stay marshalled, so reading a few properties of a message, as
+     * a selector does, does not unmarshal all of them.
+     */
+    public Object peekProperty(String name) throws IOException {
+        Map<String, Object> properties = this.properties;
+        if (properties == null) {
+            ByteSequence marshalledProperties = this.marshalledProperties;
+            if (marshalledProperties == null) {
+                return null;
+            }
+            Object result = MarshallingSupport.unmarshalPrimitiveMapValue(marshalledProperties, name);
+            if (result instanceof UTF8Buffer) {
+                result = result.toString();
+            }
+            return result;
+        }
+        return getProperty(name);
+    }
+
     @SuppressWarnings("unchecked")
     public Map<String, Object> getProperties() throws IOException {
         if (properties == null) {
@@ -219,6 +242,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     public void clearProperties() {
         marshalledProperties = null;
         properties = null;
+        cachedMarshalledForm = null;
     }
 
     public void setProperty(String name, Object value) throws IOException {
@@ -232,6 +256,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     protected void lazyCreateProperties() throws IOException {
+        cachedMarshalledForm = null;
         if (properties == null) {
             if (marshalledProperties == null) {
                 properties = new HashMap<String, Object>();
@@ -287,6 +312,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setProducerId(ProducerId producerId) {
         this.producerId = producerId;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -298,6 +324,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setDestination(ActiveMQDestination destination) {
         this.destination = destination;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -309,6 +336,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setTransactionId(TransactionId transactionId) {
         this.transactionId = transactionId;
+        cachedMarshalledForm = null;
     }
 
     public boolean isInTransaction() {
@@ -324,6 +352,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setOriginalDestination(ActiveMQDestination destination) {
         this.originalDestination = destination;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -336,6 +365,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setMessageId(MessageId messageId) {
         this.messageId = messageId;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -347,6 +377,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setOriginalTransactionId(TransactionId transactionId) {
         this.originalTransactionId = transactionId;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -359,6 +390,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setGroupID(String groupID) {
         this.groupID = groupID;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -371,6 +403,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setGroupSequence(int groupSequence) {
         this.groupSequence = groupSequence;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -382,6 +415,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setCorrelationId(String correlationId) {
         this.correlationId = correlationId;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -394,6 +428,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setPersistent(boolean deliveryMode) {
         this.persistent = deliveryMode;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -406,6 +441,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setExpiration(long expiration) {
         this.expiration = expiration;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -423,6 +459,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
         } else {
             this.priority = priority;
         }
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -434,6 +471,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setReplyTo(ActiveMQDestination replyTo) {
         this.replyTo = replyTo;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -445,6 +483,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -456,6 +495,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setType(String type) {
         this.type = type;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -467,6 +507,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setContent(ByteSequence content) {
         this.content = content;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -478,6 +519,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setMarshalledProperties(ByteSequence marshalledProperties) {
         this.marshalledProperties = marshalledProperties;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -489,6 +531,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setDataStructure(DataStructure data) {
         this.dataStructure = data;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -507,6 +550,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setTargetConsumerId(ConsumerId targetConsumerId) {
         this.targetConsumerId = targetConsumerId;
+        cachedMarshalledForm = null;
     }
 
     @Override
@@ -529,6 +573,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setCompressed(boolean compressed) {
         this.compressed = compressed;
+        cachedMarshalledForm = null;
     }
 
     public boolean isRedelivered() {
@@ -575,6 +620,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setBrokerPath(BrokerId[] brokerPath) {
         this.brokerPath = brokerPath;
+        cachedMarshalledForm = null;
     }
 
     public boolean isReadOnlyProperties() {
@@ -614,6 +660,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setArrival(long arrival) {
         this.arrival = arrival;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -629,6 +676,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setUserID(String jmsxUserID) {
         this.userID = jmsxUserID;
+        cachedMarshalledForm = null;
     }
 
     @Override
@@ -672,6 +720,19 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
         return true;
     }
 
+    /**
+     * Returns the marshalled form of this message that a wire format cached to
+     * write the message again without marshalling it, or null. Changing a
+     * marshalled field of the message clears it.
+     */
+    public Object getCachedMarshalledForm() {
+        return cachedMarshalledForm;
+    }
+
+    public void setCachedMarshalledForm(Object cachedMarshalledForm) {
+        this.cachedMarshalledForm = cachedMarshalledForm;
+    }
+
     @Override
 	public int incrementReferenceCount() {
         int rc;
@@ -749,6 +810,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
      */
     public void setRecievedByDFBridge(boolean recievedByDFBridge) {
         this.recievedByDFBridge = recievedByDFBridge;
+        cachedMarshalledForm = null;
     }
 
     public void onMessageRolledBack() {
@@ -764,6 +826,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setDroppable(boolean droppable) {
         this.droppable = droppable;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -778,6 +841,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setCluster(BrokerId[] cluster) {
         this.cluster = cluster;
+        cachedMarshalledForm = null;
     }
 
     @Override
@@ -794,6 +858,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setBrokerInTime(long brokerInTime) {
         this.brokerInTime = brokerInTime;
+        cachedMarshalledForm = null;
     }
 
     /**
@@ -821,6 +886,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setJMSXGroupFirstForConsumer(boolean val) {
         jmsXGroupFirstForConsumer = val;
+        cachedMarshalledForm = null;
     }
 
     public void compress() throws IOException {
@@ -0,0 +1,231 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.filter;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.activemq.command.ActiveMQDestination;
+
+/**
+ * A {@link DestinationMap} for maps that are looked up much more often than they
+ * change, such as policy and authorization maps. <br>
+ * Lookups do not lock the map: the destination trees are never modified once
+ * they are visible to a lookup, a change copies the trees, modifies the copy
+ * and then replaces the trees with it. The values found for a destination are
+ * cached until the map changes, so repeated lookups of a destination do not
+ * walk the trees again. <br>
+ * Changing the map copies all of its trees, so this map is not suited to maps
+ * that change frequently.
+ */
+public class CopyOnWriteDestinationMap extends DestinationMap {
+
+    private volatile Snapshot snapshot = new Snapshot();
+    // the trees modified by the changes of setEntries, published once they are all made
+    private Snapshot pending;
+    private int cacheSize = 10000;
+
+    /**
+     * The trees of the map and the values found in them.
+     */
+    private static final class Snapshot {
+
+        final DestinationMapNode queueRootNode;
+        final DestinationMapNode tempQueueRootNode;
+        final DestinationMapNode topicRootNode;
+        final DestinationMapNode tempTopicRootNode;
+        final ConcurrentMap<ActiveMQDestination, Set<Object>> matches = new ConcurrentHashMap<ActiveMQDestination, Set<Object>>();
+        final ConcurrentMap<ActiveMQDestination, Set<Object>> shallowMatches = new ConcurrentHashMap<ActiveMQDestination, Set<Object>>();
+
+        Snapshot() {
+            this(new DestinationMapNode(null), new DestinationMapNode(null), new DestinationMapNode(null), new DestinationMapNode(null));
+        }
+
+        Snapshot(DestinationMapNode queueRootNode, DestinationMapNode tempQueueRootNode, DestinationMapNode topicRootNode, DestinationMapNode tempTopicRootNode) {
+            this.queueRootNode = queueRootNode;
+            this.tempQueueRootNode = tempQueueRootNode;
+            this.topicRootNode = topicRootNode;
+            this.tempTopicRootNode = tempTopicRootNode;
+        }
+
+        Snapshot copy() {
+            return new Snapshot(queueRootNode.copy(), tempQueueRootNode.copy(), topicRootNode.copy(), tempTopicRootNode.copy());
+        }
+
+        DestinationMapNode getRootNode(ActiveMQDestination key) {
+            if (key.isTemporary()) {
+                return key.isQueue() ? tempQueueRootNode : tempTopicRootNode;
+            } else {
+                return key.isQueue() ? queueRootNode : topicRootNode;
+            }
+        }
+    }
+
+    @SuppressWarnings({"rawtypes"})
+    @Override
+    public Set get(ActiveMQDestination key) {
+        return unsynchronizedGet(key);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Override
+    protected Set findWildcardMatches(ActiveMQDestination key, boolean deep) {
+        Snapshot snapshot = this.snapshot;
+        ConcurrentMap<ActiveMQDestination, Set<Object>> cache = deep ? snapshot.matches : snapshot.shallowMatches;
+        Set<Object> answer = cache.get(key);
+        if (answer == null) {
+            answer = new HashSet<Object>();
+            snapshot.getRootNode(key).appendMatchingValues((Set) answer, key.getDestinationPaths(), 0, deep);
+            if (cache.size() < cacheSize) {
+                cache.put(key, answer);
+            }
+        }
+        // the callers may modify the set they get
+        return new HashSet<Object>(answer);
+    }
+
+    @Override
+    public void put(ActiveMQDestination key, Object value) {
+        unsynchronizedPut(key, value);
+    }
+
+    @Override
+    public synchronized void unsynchronizedPut(ActiveMQDestination key, Object value) {
+        Snapshot copy = pending != null ? pending : snapshot.copy();
+        put(copy, key, value);
+        publish(copy);
+    }
+
+    private static void put(Snapshot snapshot, ActiveMQDestination key, Object value) {
+        if (key.isComposite()) {
+            for (ActiveMQDestination childDestination : key.getCompositeDestinations()) {
+                put(snapshot, childDestination, value);
+            }
+        } else {
+            snapshot.getRootNode(key).add(key.getDestinationPaths(), 0, value);
+        }
+    }
+
+    @Override
+    public void remove(ActiveMQDestination key, Object value) {
+        unsynchronizedRemove(key, value);
+    }
+
+    @Override
+    public synchronized void unsynchronizedRemove(ActiveMQDestination key, Object value) {
+        Snapshot copy = pending != null ? pending : snapshot.copy();
+        remove(copy, key, value);
+        publish(copy);
+    }
+
+    private static void remove(Snapshot snapshot, ActiveMQDestination key, Object value) {
+        if (key.isComposite()) {
+            for (ActiveMQDestination childDestination : key.getCompositeDestinations()) {
+                remove(snapshot, childDestination, value);
+            }
+        } else {
+            snapshot.getRootNode(key).remove(key.getDestinationPaths(), 0, value);
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Override
+    public synchronized Set removeAll(ActiveMQDestination key) {
+        Set rc = new HashSet();
+        if (key.isComposite()) {
+            for (ActiveMQDestination childDestination : key.getCompositeDestinations()) {
+                rc.add(removeAll(childDestination));
+            }
+            return rc;
+        }
+        Snapshot copy = pending != null ? pending : snapshot.copy();
+        copy.getRootNode(key).removeAll(rc, key.getDestinationPaths(), 0);
+        publish(copy);
+        return rc;
+    }
+
+    @SuppressWarnings({"rawtypes"})
+    @Override
+    protected synchronized void setEntries(List<DestinationMapEntry> entries) {
+        // make all the changes to one copy of the trees
+        pending = snapshot.copy();
+        try {
+            super.setEntries(entries);
+            snapshot = pending;
+        } finally {
+            pending = null;
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        snapshot = new Snapshot();
+    }
+
+    private void publish(Snapshot copy) {
+        if (pending == null) {
+            snapshot = copy;
+        }
+    }
+
+    /**
+     * Returns the root node of the queue tree, which must not be modified
+     */
+    @Override
+    public DestinationMapNode getQueueRootNode() {
+        return snapshot.queueRootNode;
+    }
+
+    /**
+     * Returns the root node of the topic tree, which must not be modified
+     */
+    @Override
+    public DestinationMapNode getTopicRootNode() {
+        return snapshot.topicRootNode;
+    }
+
+    /**
+     * Returns the root node of the temporary queue tree, which must not be modified
+     */
+    @Override
+    public DestinationMapNode getTempQueueRootNode() {
+        return snapshot.tempQueueRootNode;
+    }
+
+    /**
+     * Returns the root node of the temporary topic tree, which must not be modified
+     */
+    @Override
+    public DestinationMapNode getTempTopicRootNode() {
+        return snapshot.tempTopicRootNode;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the maximum number of destinations whose values are cached until the map changes
+     */
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+}
@@ -128,11 +128,11 @@ public class DestinationMap {
     }
 
     public int getTopicRootChildCount() {
-        return topicRootNode.getChildCount();
+        return getTopicRootNode().getChildCount();
     }
 
     public int getQueueRootChildCount() {
-        return queueRootNode.getChildCount();
+        return getQueueRootNode().getChildCount();
     }
 
     public DestinationMapNode getQueueRootNode() {
@@ -263,15 +263,15 @@ public class DestinationMap {
     protected DestinationMapNode getRootNode(ActiveMQDestination key) {
         if (key.isTemporary()) {
             if (key.isQueue()) {
-                return tempQueueRootNode;
+                return getTempQueueRootNode();
             } else {
-                return tempTopicRootNode;
+                return getTempTopicRootNode();
             }
         } else {
             if (key.isQueue()) {
-                return queueRootNode;
+                return getQueueRootNode();
             } else {
-                return topicRootNode;
+                return getTopicRootNode();
             }
         }
     }
@@ -284,7 +284,7 @@ public class DestinationMap {
     }
 
     public boolean isEmpty() {
-        return queueRootNode.isEmpty() && topicRootNode.isEmpty() && tempQueueRootNode.isEmpty() && tempTopicRootNode.isEmpty();
+        return getQueueRootNode().isEmpty() && getTopicRootNode().isEmpty() && getTempQueueRootNode().isEmpty() && getTempTopicRootNode().isEmpty();
     }
 
     public static Set union(Set existing, Set candidates) {
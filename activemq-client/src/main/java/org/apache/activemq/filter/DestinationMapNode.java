@@ -196,6 +196,24 @@ public class DestinationMapNode implements DestinationNode {
         }
     }
 
+    /**
+     * Returns a copy of this node and of the nodes below it, which shares the
+     * values but none of the nodes with this node
+     */
+    public DestinationMapNode copy() {
+        DestinationMapNode answer = new DestinationMapNode(null);
+        copyInto(answer);
+        return answer;
+    }
+
+    private void copyInto(DestinationMapNode node) {
+        node.values.addAll(values);
+        for (DestinationNode child : childNodes.values()) {
+            DestinationMapNode childNode = (DestinationMapNode) child;
+            childNode.copyInto(node.getChildOrCreate(childNode.getPath()));
+        }
+    }
+
     /**
      * Factory method to create a child node
      */
@@ -17,6 +17,7 @@
 package org.apache.activemq.filter;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.activemq.broker.region.MessageReference;
 import org.apache.activemq.command.ActiveMQDestination;
@@ -38,6 +39,10 @@ public class MessageEvaluationContext {
     protected boolean dropped;
     protected Message message;
     protected ActiveMQDestination destination;
+    // the properties read by the selectors evaluated against the message
+    private String[] propertyNames;
+    private Object[] propertyValues;
+    private int propertyCount;
 
     public MessageEvaluationContext() {
     }
@@ -61,6 +66,32 @@ public class MessageEvaluationContext {
         return message;
     }
 
+    /**
+     * Returns a property of the message, decoding only that property when the
+     * properties of the message are still marshalled. The properties read are
+     * kept until the message is cleared, as the selectors evaluated against the
+     * message often read the same properties.
+     */
+    public Object getProperty(String name) throws IOException {
+        for (int i = 0; i < propertyCount; i++) {
+            if (propertyNames[i].equals(name)) {
+                return propertyValues[i];
+            }
+        }
+        Object value = getMessage().peekProperty(name);
+        if (propertyNames == null) {
+            propertyNames = new String[4];
+            propertyValues = new Object[4];
+        } else if (propertyCount == propertyNames.length) {
+            propertyNames = Arrays.copyOf(propertyNames, propertyCount * 2);
+            propertyValues = Arrays.copyOf(propertyValues, propertyCount * 2);
+        }
+        propertyNames[propertyCount] = name;
+        propertyValues[propertyCount] = value;
+        propertyCount++;
+        return value;
+    }
+
     public void setMessageReference(MessageReference messageReference) {
         if (this.messageReference != messageReference) {
             clearMessageCache();
@@ -91,6 +122,10 @@ public class MessageEvaluationContext {
         message = null;
         dropped = false;
         loaded = false;
+        if (propertyCount > 0) {
+            Arrays.fill(propertyValues, 0, propertyCount, null);
+            propertyCount = 0;
+        }
     }
 
     public MessageReference getMessageReference() {
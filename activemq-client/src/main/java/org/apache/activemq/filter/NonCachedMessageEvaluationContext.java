@@ -32,6 +32,10 @@ public class NonCachedMessageEvaluationContext extends MessageEvaluationContext
         return messageReference != null ? messageReference.getMessage():null;
     }
 
+    public Object getProperty(String name) throws IOException {
+        return getMessage().peekProperty(name);
+    }
+
     public void setMessageReference(MessageReference messageReference) {
         this.messageReference = messageReference;
     }
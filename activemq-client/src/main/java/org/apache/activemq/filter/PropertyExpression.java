@@ -147,7 +147,7 @@ public class PropertyExpression implements Expression {
                 Object userId = message.getUserID();
                 if (userId == null) {
                     try {
-                        userId = message.getProperty("JMSXUserID");
+                        userId = message.peekProperty("JMSXUserID");
                     } catch (IOException e) {
                     }
                 }
@@ -225,7 +225,7 @@ public class PropertyExpression implements Expression {
                 return jmsPropertyExpression.evaluate(message.getMessage());
             }
             try {
-                return message.getMessage().getProperty(name);
+                return message.getProperty(name);
             } catch (IOException ioe) {
                 throw JMSExceptionSupport.create("Could not get property: " + name + " reason: " + ioe.getMessage(), ioe);
             }
@@ -240,7 +240,7 @@ public class PropertyExpression implements Expression {
             return jmsPropertyExpression.evaluate(message);
         }
         try {
-            return message.getProperty(name);
+            return message.peekProperty(name);
         } catch (IOException ioe) {
             throw JMSExceptionSupport.create(ioe);
         }
@@ -0,0 +1,500 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.filter;
+
+import java.util.Collection;
+import java.util.List;
+
+import jakarta.jms.JMSException;
+
+/**
+ * Compiles the expression tree created by the selector parser into a tree of
+ * predicates specialized for the operands of each node. A comparison of a
+ * property with a numeric constant converts the constant once and compares
+ * the property value as a primitive, and a comparison with a string constant
+ * or an IN list compares the value directly, so the per message conversions
+ * of {@link ComparisonExpression} and the dispatch through the generic
+ * expression nodes are avoided. <p/> Nodes that can not be compiled, and
+ * property values of a type the compiled node does not expect, are evaluated
+ * by the original expression, so a compiled selector always gives the same
+ * result as the interpreted one.
+ */
+public final class SelectorCompiler {
+
+    private static volatile boolean enabled = Boolean.getBoolean("org.apache.activemq.COMPILE_SELECTORS");
+
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+    private static final int UNKNOWN = -1;
+
+    private SelectorCompiler() {
+    }
+
+    /**
+     * @return true if the selector parser compiles the selectors it parses.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets if the selector parser compiles the selectors it parses from now on,
+     * selectors parsed before are still cached by the parser.
+     */
+    public static void setEnabled(boolean enabled) {
+        SelectorCompiler.enabled = enabled;
+    }
+
+    /**
+     * @return a compiled version of the expression, or the expression itself if
+     *         none of its nodes can be compiled.
+     */
+    public static BooleanExpression compile(BooleanExpression expression) {
+        if (expression == null || expression instanceof CompiledExpression) {
+            return expression;
+        }
+        Predicate predicate = compilePredicate(expression);
+        if (predicate instanceof Interpreted) {
+            return expression;
+        }
+        return new CompiledExpression(expression, predicate);
+    }
+
+    /**
+     * @return the expression a compiled expression was created from, or the expression itself.
+     */
+    public static BooleanExpression getInterpretedExpression(BooleanExpression expression) {
+        if (expression instanceof CompiledExpression) {
+            return ((CompiledExpression) expression).expression;
+        }
+        return expression;
+    }
+
+    private static Predicate compilePredicate(BooleanExpression expression) {
+        if (expression instanceof LogicExpression) {
+            List<BooleanExpression> expressions = ((LogicExpression) expression).expressions;
+            Predicate[] predicates = new Predicate[expressions.size()];
+            boolean compiled = false;
+            for (int i = 0; i < predicates.length; i++) {
+                predicates[i] = compilePredicate(expressions.get(i));
+                compiled |= !(predicates[i] instanceof Interpreted);
+            }
+            if (!compiled) {
+                return new Interpreted(expression);
+            }
+            if ("AND".equals(((LogicExpression) expression).getExpressionSymbol())) {
+                return new And(predicates);
+            } else if ("OR".equals(((LogicExpression) expression).getExpressionSymbol())) {
+                return new Or(predicates);
+            }
+            return new Interpreted(expression);
+        }
+
+        if (expression instanceof UnaryExpression.NotExpression) {
+            Expression right = ((UnaryExpression.NotExpression) expression).getRight();
+            if (right instanceof BooleanExpression) {
+                Predicate predicate = compilePredicate((BooleanExpression) right);
+                if (!(predicate instanceof Interpreted)) {
+                    return new Not(predicate);
+                }
+            }
+            return new Interpreted(expression);
+        }
+
+        if (expression instanceof UnaryExpression.InExpression) {
+            UnaryExpression.InExpression in = (UnaryExpression.InExpression) expression;
+            return new In((PropertyExpression) in.getRight(), in.inList, in.not);
+        }
+
+        if (expression instanceof ComparisonExpression) {
+            ComparisonExpression comparison = (ComparisonExpression) expression;
+            // only property op constant, the conversions of constant op property differ
+            if (comparison.convertStringExpressions || !(comparison.getLeft() instanceof PropertyExpression)) {
+                return new Interpreted(expression);
+            }
+            PropertyExpression property = (PropertyExpression) comparison.getLeft();
+            String symbol = comparison.getExpressionSymbol();
+            if (comparison.getRight() == ConstantExpression.NULL) {
+                return "=".equals(symbol) ? new IsNull(property) : new Interpreted(expression);
+            }
+            Object constant = getConstant(comparison.getRight());
+            if (constant instanceof String && "=".equals(symbol)) {
+                return new StringEquals(comparison, property, (String) constant);
+            }
+            if (constant instanceof Integer || constant instanceof Long || constant instanceof Double) {
+                int operator = NumericComparison.getOperator(symbol);
+                if (operator >= 0) {
+                    return new NumericComparison(comparison, property, operator, (Number) constant);
+                }
+            }
+        }
+        return new Interpreted(expression);
+    }
+
+    /**
+     * @return the value of a constant or of a negated numeric constant, or null.
+     */
+    private static Object getConstant(Expression expression) {
+        if (expression instanceof ConstantExpression) {
+            return ((ConstantExpression) expression).getValue();
+        }
+        if (expression instanceof UnaryExpression && "-".equals(((UnaryExpression) expression).getExpressionSymbol())
+                && ((UnaryExpression) expression).getRight() instanceof ConstantExpression
+                && ((ConstantExpression) ((UnaryExpression) expression).getRight()).getValue() instanceof Number) {
+            try {
+                return expression.evaluate(null);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A selector compiled by the {@link SelectorCompiler}.
+     */
+    public static final class CompiledExpression implements BooleanExpression {
+
+        private final BooleanExpression expression;
+        private final Predicate predicate;
+
+        CompiledExpression(BooleanExpression expression, Predicate predicate) {
+            this.expression = expression;
+            this.predicate = predicate;
+        }
+
+        @Override
+        public boolean matches(MessageEvaluationContext message) throws JMSException {
+            return predicate.matches(message);
+        }
+
+        @Override
+        public Object evaluate(MessageEvaluationContext message) throws JMSException {
+            switch (predicate.evaluate(message)) {
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+            }
+        }
+
+        /**
+         * @return the interpreted expression this expression was compiled from.
+         */
+        public BooleanExpression getExpression() {
+            return expression;
+        }
+
+        @Override
+        public String toString() {
+            return expression.toString();
+        }
+    }
+
+    /**
+     * A compiled node, evaluated to TRUE, FALSE or UNKNOWN like the three valued
+     * logic of the interpreted expressions.
+     */
+    abstract static class Predicate {
+
+        abstract boolean matches(MessageEvaluationContext message) throws JMSException;
+
+        abstract int evaluate(MessageEvaluationContext message) throws JMSException;
+    }
+
+    private static final class Interpreted extends Predicate {
+
+        private final BooleanExpression expression;
+
+        Interpreted(BooleanExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        boolean matches(MessageEvaluationContext message) throws JMSException {
+            return expression.matches(message);
+        }
+
+        @Override
+        int evaluate(MessageEvaluationContext message) throws JMSException {
+            return interpret(expression, message);
+        }
+    }
+
+    private static int interpret(BooleanExpression expression, MessageEvaluationContext message) throws JMSException {
+        Boolean value = (Boolean) expression.evaluate(message);
+        if (value == null) {
+            return UNKNOWN;
+        }
+        return value.booleanValue() ? TRUE : FALSE;
+    }
+
+    private static final class And extends Predicate {
+
+        private final Predicate[] predicates;
+
+        And(Predicate[] predicates) {
+            this.predicates = predicates;
+        }
+
+        @Override
+        boolean matches(MessageEvaluationContext message) throws JMSException {
+            for (Predicate predicate : predicates) {
+                if (!predicate.matches(message)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int evaluate(MessageEvaluationContext message) throws JMSException {
+            int result = TRUE;
+            for (Predicate predicate : predicates) {
+                int value = predicate.evaluate(message);
+                if (value == FALSE) {
+                    return FALSE;
+                }
+                if (value == UNKNOWN) {
+                    result = UNKNOWN;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class Or extends Predicate {
+
+        private final Predicate[] predicates;
+
+        Or(Predicate[] predicates) {
+            this.predicates = predicates;
+        }
+
+        @Override
+        boolean matches(MessageEvaluationContext message) throws JMSException {
+            for (Predicate predicate : predicates) {
+                if (predicate.matches(message)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int evaluate(MessageEvaluationContext message) throws JMSException {
+            int result = FALSE;
+            for (Predicate predicate : predicates) {
+                int value = predicate.evaluate(message);
+                if (value == TRUE) {
+                    return TRUE;
+                }
+                if (value == UNKNOWN) {
+                    result = UNKNOWN;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class Not extends Predicate {
+
+        private final Predicate predicate;
+
+        Not(Predicate predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        boolean matches(MessageEvaluationContext message) throws JMSException {
+            // NOT NULL returns NULL that eventually fails the selector
+            return predicate.evaluate(message) == FALSE;
+        }
+
+        @Override
+        int evaluate(MessageEvaluationContext message) throws JMSException {
+            int value = predicate.evaluate(message);
+            if (value == UNKNOWN) {
+                return UNKNOWN;
+            }
+            return value == TRUE ? FALSE : TRUE;
+        }
+    }
+
+    private static final class IsNull extends Predicate {
+
+        private final PropertyExpression property;
+
+        IsNull(PropertyExpression property) {
+            this.property = property;
+        }
+
+        @Override
+        boolean matches(MessageEvaluationContext message) throws JMSException {
+            return property.evaluate(message) == null;
+        }
+
+        @Override
+        int evaluate(MessageEvaluationContext message) throws JMSException {
+            return property.evaluate(message) == null ? TRUE : FALSE;
+        }
+    }
+
+    private static final class In extends Predicate {
+
+        private final PropertyExpression property;
+        private final Collection<?> inList;
+        private final boolean not;
+
+        In(PropertyExpression property, Collection<?> inList, boolean not) {
+            this.property = property;
+            this.inList = inList;
+            this.not = not;
+        }
+
+        @Override
+        boolean matches(MessageEvaluationContext message) throws JMSException {
+            return evaluate(message) == TRUE;
+        }
+
+        @Override
+        int evaluate(MessageEvaluationContext message) throws JMSException {
+            Object value = property.evaluate(message);
+            if (value == null || value.getClass() != String.class) {
+                return UNKNOWN;
+            }
+            return (inList != null && inList.contains(value)) ^ not ? TRUE : FALSE;
+        }
+    }
+
+    private static final class StringEquals extends Predicate {
+
+        private final BooleanExpression expression;
+        private final PropertyExpression property;
+        private final String constant;
+
+        StringEquals(BooleanExpression expression, PropertyExpression property, String constant) {
+            this.expression = expression;
+            this.property = property;
+            this.constant = constant;
+        }
+
+        @Override
+        boolean matches(MessageEvaluationContext message) throws JMSException {
+            return evaluate(message) == TRUE;
+        }
+
+        @Override
+        int evaluate(MessageEvaluationContext message) throws JMSException {
+            Object value = property.evaluate(message);
+            if (value == null) {
+                return UNKNOWN;
+            }
+            if (value.getClass() != String.class) {
+                return interpret(expression, message);
+            }
+            return constant.equals(value) ? TRUE : FALSE;
+        }
+    }
+
+    private static final class NumericComparison extends Predicate {
+
+        private static final int EQUAL = 0;
+        private static final int GREATER_THAN = 1;
+        private static final int GREATER_THAN_EQUAL = 2;
+        private static final int LESS_THAN = 3;
+        private static final int LESS_THAN_EQUAL = 4;
+
+        private final BooleanExpression expression;
+        private final PropertyExpression property;
+        private final int operator;
+        // the constant as converted by ComparisonExpression for each type of value
+        private final boolean integral;
+        private final long longConstant;
+        private final float floatConstant;
+        private final double doubleConstant;
+
+        NumericComparison(BooleanExpression expression, PropertyExpression property, int operator, Number constant) {
+            this.expression = expression;
+            this.property = property;
+            this.operator = operator;
+            this.integral = !(constant instanceof Double);
+            this.longConstant = constant.longValue();
+            this.floatConstant = constant.floatValue();
+            this.doubleConstant = constant.doubleValue();
+        }
+
+        static int getOperator(String symbol) {
+            if ("=".equals(symbol)) {
+                return EQUAL;
+            } else if (">".equals(symbol)) {
+                return GREATER_THAN;
+            } else if (">=".equals(symbol)) {
+                return GREATER_THAN_EQUAL;
+            } else if ("<".equals(symbol)) {
+                return LESS_THAN;
+            } else if ("<=".equals(symbol)) {
+                return LESS_THAN_EQUAL;
+            }
+            return -1;
+        }
+
+        @Override
+        boolean matches(MessageEvaluationContext message) throws JMSException {
+            return evaluate(message) == TRUE;
+        }
+
+        @Override
+        int evaluate(MessageEvaluationContext message) throws JMSException {
+            Object value = property.evaluate(message);
+            if (value == null) {
+                return UNKNOWN;
+            }
+            Class<?> type = value.getClass();
+            int answer;
+            if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+                long longValue = ((Number) value).longValue();
+                answer = integral ? Long.compare(longValue, longConstant) : Double.compare(longValue, doubleConstant);
+            } else if (type == Double.class) {
+                answer = Double.compare(((Double) value).doubleValue(), doubleConstant);
+            } else if (type == Float.class) {
+                float floatValue = ((Float) value).floatValue();
+                answer = integral ? Float.compare(floatValue, floatConstant) : Double.compare(floatValue, doubleConstant);
+            } else {
+                return interpret(expression, message);
+            }
+            return asBoolean(answer) ? TRUE : FALSE;
+        }
+
+        private boolean asBoolean(int answer) {
+            switch (operator) {
+            case EQUAL:
+                return answer == 0;
+            case GREATER_THAN:
+                return answer > 0;
+            case GREATER_THAN_EQUAL:
+                return answer >= 0;
+            case LESS_THAN:
+                return answer < 0;
+            default:
+                return answer <= 0;
+            }
+        }
+    }
+}
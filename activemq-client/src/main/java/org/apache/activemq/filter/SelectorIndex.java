@@ -0,0 +1,276 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import jakarta.jms.JMSException;
+
+/**
+ * A SelectorIndex finds the values, typically subscriptions, whose selector could
+ * match a message without evaluating the selector of every value. <p/> A selector
+ * is indexed by one predicate of its top level AND that every matching message
+ * must satisfy: a property equal to a string or numeric constant, a property IN a
+ * list of strings, or a property compared with a numeric constant by &gt;, &gt;=,
+ * &lt; or &lt;=. Equal and IN predicates are kept in a hash map per property and
+ * the numeric bounds in sorted maps, so the candidates for a message are found
+ * with one lookup per indexed property. <p/> The candidates are a superset of the
+ * values whose selector matches, so their selector still has to be evaluated.
+ * Values without a selector or with a selector that has no such predicate are
+ * never indexed, and are returned by {@link #getUnindexed()}. <p/> A SelectorIndex
+ * is not modified once built, so it can be used by several threads at once.
+ */
+public class SelectorIndex<T> {
+
+    private final Map<String, PropertyIndex<T>> properties = new HashMap<String, PropertyIndex<T>>();
+    private final List<PropertyIndex<T>> propertyList = new ArrayList<PropertyIndex<T>>();
+    private final List<T> unindexed = new ArrayList<T>();
+
+    /**
+     * Adds a value to the index, by a predicate of its selector when there is one.
+     *
+     * @return true if the value was indexed, false if it was added to the unindexed values.
+     */
+    public boolean add(T value, BooleanExpression selector) {
+        if (selector != null && (indexEquals(value, selector) || indexBound(value, selector))) {
+            return true;
+        }
+        unindexed.add(value);
+        return false;
+    }
+
+    /**
+     * @return the values that are candidates for every message.
+     */
+    public List<T> getUnindexed() {
+        return unindexed;
+    }
+
+    /**
+     * Adds the indexed values whose selector could match the message to the candidates.
+     */
+    public void addCandidates(MessageEvaluationContext message, Collection<T> candidates) throws JMSException {
+        for (int i = 0; i < propertyList.size(); i++) {
+            propertyList.get(i).addCandidates(message, candidates);
+        }
+    }
+
+    private boolean indexEquals(T value, BooleanExpression selector) {
+        selector = SelectorCompiler.getInterpretedExpression(selector);
+        if (selector instanceof LogicExpression) {
+            if (!"AND".equals(((LogicExpression) selector).getExpressionSymbol())) {
+                return false;
+            }
+            for (BooleanExpression expression : ((LogicExpression) selector).expressions) {
+                if (indexEquals(value, expression)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (selector instanceof UnaryExpression.InExpression) {
+            UnaryExpression.InExpression in = (UnaryExpression.InExpression) selector;
+            if (in.not || in.inList == null) {
+                return false;
+            }
+            PropertyIndex<T> index = getPropertyIndex((PropertyExpression) in.getRight());
+            Set<Object> elements = new HashSet<Object>();
+            for (Object element : in.inList) {
+                if (elements.add(element)) {
+                    index.addEqual(element, value);
+                }
+            }
+            index.all.add(value);
+            return true;
+        }
+
+        if (selector instanceof ComparisonExpression && "=".equals(((ComparisonExpression) selector).getExpressionSymbol())) {
+            ComparisonExpression comparison = (ComparisonExpression) selector;
+            if (comparison.convertStringExpressions) {
+                return false;
+            }
+            Expression left = comparison.getLeft();
+            Expression right = comparison.getRight();
+            if (right instanceof PropertyExpression) {
+                left = comparison.getRight();
+                right = comparison.getLeft();
+            }
+            if (!(left instanceof PropertyExpression) || !(right instanceof ConstantExpression)) {
+                return false;
+            }
+            Object constant = ((ConstantExpression) right).getValue();
+            Object key;
+            if (constant instanceof String) {
+                key = constant;
+            } else if (isIndexableNumber(constant)) {
+                key = ((Number) constant).doubleValue();
+            } else {
+                return false;
+            }
+            PropertyIndex<T> index = getPropertyIndex((PropertyExpression) left);
+            index.addEqual(key, value);
+            index.all.add(value);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean indexBound(T value, BooleanExpression selector) {
+        selector = SelectorCompiler.getInterpretedExpression(selector);
+        if (selector instanceof LogicExpression) {
+            if (!"AND".equals(((LogicExpression) selector).getExpressionSymbol())) {
+                return false;
+            }
+            for (BooleanExpression expression : ((LogicExpression) selector).expressions) {
+                if (indexBound(value, expression)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (!(selector instanceof ComparisonExpression)) {
+            return false;
+        }
+        ComparisonExpression comparison = (ComparisonExpression) selector;
+        if (comparison.convertStringExpressions) {
+            return false;
+        }
+        String symbol = comparison.getExpressionSymbol();
+        boolean lower;
+        if (">".equals(symbol) || ">=".equals(symbol)) {
+            lower = true;
+        } else if ("<".equals(symbol) || "<=".equals(symbol)) {
+            lower = false;
+        } else {
+            return false;
+        }
+        Expression left = comparison.getLeft();
+        Expression right = comparison.getRight();
+        if (right instanceof PropertyExpression) {
+            // 5 < property is a lower bound of the property
+            left = comparison.getRight();
+            right = comparison.getLeft();
+            lower = !lower;
+        }
+        if (!(left instanceof PropertyExpression) || !(right instanceof ConstantExpression)) {
+            return false;
+        }
+        Object constant = ((ConstantExpression) right).getValue();
+        if (!isIndexableNumber(constant)) {
+            return false;
+        }
+        getPropertyIndex((PropertyExpression) left).addBound(((Number) constant).doubleValue(), lower, value);
+        return true;
+    }
+
+    /**
+     * Only the constants the selector parser creates for numeric literals are indexed,
+     * a message property is compared with those by converting both to long or double.
+     */
+    private static boolean isIndexableNumber(Object constant) {
+        return constant instanceof Integer || constant instanceof Long || constant instanceof Double;
+    }
+
+    private PropertyIndex<T> getPropertyIndex(PropertyExpression property) {
+        PropertyIndex<T> index = properties.get(property.getName());
+        if (index == null) {
+            index = new PropertyIndex<T>(property);
+            properties.put(property.getName(), index);
+            propertyList.add(index);
+        }
+        return index;
+    }
+
+    private static final class PropertyIndex<T> {
+
+        private final PropertyExpression property;
+        // every value indexed by the property
+        private final List<T> all = new ArrayList<T>();
+        // string constants and numeric constants as doubles
+        private final Map<Object, List<T>> equal = new HashMap<Object, List<T>>();
+        // values that can only match when the property is at least the key
+        private final TreeMap<Double, List<T>> lowerBounds = new TreeMap<Double, List<T>>();
+        // values that can only match when the property is at most the key
+        private final TreeMap<Double, List<T>> upperBounds = new TreeMap<Double, List<T>>();
+
+        PropertyIndex(PropertyExpression property) {
+            this.property = property;
+        }
+
+        void addEqual(Object key, T value) {
+            List<T> values = equal.get(key);
+            if (values == null) {
+                values = new ArrayList<T>(1);
+                equal.put(key, values);
+            }
+            values.add(value);
+        }
+
+        void addBound(double key, boolean lower, T value) {
+            TreeMap<Double, List<T>> bounds = lower ? lowerBounds : upperBounds;
+            List<T> values = bounds.get(key);
+            if (values == null) {
+                values = new ArrayList<T>(1);
+                bounds.put(key, values);
+            }
+            values.add(value);
+            all.add(value);
+        }
+
+        void addCandidates(MessageEvaluationContext message, Collection<T> candidates) throws JMSException {
+            Object value = property.evaluate(message);
+            if (value instanceof String) {
+                addAll(equal.get(value), candidates);
+            } else if (value instanceof Float) {
+                // a float is compared with an integral constant by rounding the constant
+                // to a float, which the double keys do not account for
+                candidates.addAll(all);
+            } else if (value instanceof Number) {
+                // the conversions of the comparison are exact for the double keys, except
+                // for longs beyond 2^53 whose double rounds to the key of a neighbour, so
+                // the bounds are inclusive
+                Double key = ((Number) value).doubleValue();
+                addAll(equal.get(key), candidates);
+                if (!lowerBounds.isEmpty()) {
+                    for (List<T> values : lowerBounds.headMap(key, true).values()) {
+                        candidates.addAll(values);
+                    }
+                }
+                if (!upperBounds.isEmpty()) {
+                    for (List<T> values : upperBounds.tailMap(key, true).values()) {
+                        candidates.addAll(values);
+                    }
+                }
+            }
+        }
+
+        private static <T> void addAll(List<T> values, Collection<T> candidates) {
+            if (values != null) {
+                candidates.addAll(values);
+            }
+        }
+    }
+}
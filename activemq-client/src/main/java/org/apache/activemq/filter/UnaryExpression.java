@@ -70,55 +70,66 @@ public abstract class UnaryExpression implements Expression {
         } else {
             t = new HashSet<Object>(elements);
         }
-        final Collection inList = t;
 
-        return new BooleanUnaryExpression(right) {
-            public Object evaluate(MessageEvaluationContext message) throws JMSException {
+        return new InExpression(right, t, not);
+    }
 
-                Object rvalue = right.evaluate(message);
-                if (rvalue == null) {
-                    return null;
-                }
-                if (rvalue.getClass() != String.class) {
-                    return null;
-                }
+    static class InExpression extends BooleanUnaryExpression {
 
-                if ((inList != null && inList.contains(rvalue)) ^ not) {
-                    return Boolean.TRUE;
-                } else {
-                    return Boolean.FALSE;
-                }
-            }
+        final Collection inList;
+        final boolean not;
 
-            public String toString() {
-                StringBuffer answer = new StringBuffer();
-                answer.append(right);
-                answer.append(" ");
-                answer.append(getExpressionSymbol());
-                answer.append(" ( ");
-
-                int count = 0;
-                for (Iterator i = inList.iterator(); i.hasNext();) {
-                    Object o = (Object)i.next();
-                    if (count != 0) {
-                        answer.append(", ");
-                    }
-                    answer.append(o);
-                    count++;
-                }
+        InExpression(PropertyExpression right, Collection inList, boolean not) {
+            super(right);
+            this.inList = inList;
+            this.not = not;
+        }
 
-                answer.append(" )");
-                return answer.toString();
+        public Object evaluate(MessageEvaluationContext message) throws JMSException {
+
+            Object rvalue = right.evaluate(message);
+            if (rvalue == null) {
+                return null;
+            }
+            if (rvalue.getClass() != String.class) {
+                return null;
             }
 
-            public String getExpressionSymbol() {
-                if (not) {
-                    return "NOT IN";
-                } else {
-                    return "IN";
+            if ((inList != null && inList.contains(rvalue)) ^ not) {
+                return Boolean.TRUE;
+            } else {
+                return Boolean.FALSE;
+            }
+        }
+
+        public String toString() {
+            StringBuffer answer = new StringBuffer();
+            answer.append(right);
+            answer.append(" ");
+            answer.append(getExpressionSymbol());
+            answer.append(" ( ");
+
+            int count = 0;
+            for (Iterator i = inList.iterator(); i.hasNext();) {
+                Object o = (Object)i.next();
+                if (count != 0) {
+                    answer.append(", ");
                 }
+                answer.append(o);
+                count++;
             }
-        };
+
+            answer.append(" )");
+            return answer.toString();
+        }
+
+        public String getExpressionSymbol() {
+            if (not) {
+                return "NOT IN";
+            } else {
+                return "IN";
+            }
+        }
     }
 
     abstract static class BooleanUnaryExpression extends UnaryExpression implements BooleanExpression {
@@ -242,7 +253,7 @@ public abstract class UnaryExpression implements Expression {
      */
     public abstract String getExpressionSymbol();
 
-    private static class NotExpression extends BooleanUnaryExpression {
+    static class NotExpression extends BooleanUnaryExpression {
         public NotExpression(BooleanExpression right) {
             super(right);
         }
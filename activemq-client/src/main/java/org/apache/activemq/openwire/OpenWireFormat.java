@@ -19,12 +19,15 @@ package org.apache.activemq.openwire;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.activemq.command.CommandTypes;
 import org.apache.activemq.command.DataStructure;
+import org.apache.activemq.command.Message;
 import org.apache.activemq.command.WireFormatInfo;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.ByteSequenceData;
@@ -57,6 +60,9 @@ public final class OpenWireFormat implements WireFormat {
     private boolean sizePrefixDisabled;
     private boolean maxFrameSizeEnabled = true;
     private long maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private boolean cachedFrameEnabled;
+    // the cached frames of the nested messages of the command being marshalled
+    private ArrayDeque<ByteSequence> pendingFrames = new ArrayDeque<ByteSequence>();
 
     // The following fields are used for value caching
     private short nextMarshallCacheIndex;
@@ -94,6 +100,7 @@ public final class OpenWireFormat implements WireFormat {
         answer.sizePrefixDisabled = sizePrefixDisabled;
         answer.preferedWireFormatInfo = preferedWireFormatInfo;
         answer.maxFrameSizeEnabled = maxFrameSizeEnabled;
+        answer.cachedFrameEnabled = cachedFrameEnabled;
         return answer;
     }
 
@@ -126,6 +133,7 @@ public final class OpenWireFormat implements WireFormat {
     @Override
     public synchronized ByteSequence marshal(Object command) throws IOException {
 
+        pendingFrames.clear();
         if (cacheEnabled) {
             runMarshallCacheEvictionSweep();
         }
@@ -216,6 +224,7 @@ public final class OpenWireFormat implements WireFormat {
     @Override
     public synchronized void marshal(Object o, DataOutput dataOut) throws IOException {
 
+        pendingFrames.clear();
         if (cacheEnabled) {
             runMarshallCacheEvictionSweep();
         }
@@ -395,11 +404,10 @@ public final class OpenWireFormat implements WireFormat {
         }
 
         if (o.isMarshallAware()) {
-            // MarshallAware ma = (MarshallAware)o;
-            ByteSequence sequence = null;
-            // sequence=ma.getCachedMarshalledForm(this);
+            ByteSequence sequence = getCachedFrame(o);
             bs.writeBoolean(sequence != null);
             if (sequence != null) {
+                pendingFrames.add(sequence);
                 return 1 + sequence.getLength();
             }
         }
@@ -423,12 +431,11 @@ public final class OpenWireFormat implements WireFormat {
 
         if (o.isMarshallAware() && bs.readBoolean()) {
 
-            // We should not be doing any caching
-            throw new IOException("Corrupted stream");
-            // MarshallAware ma = (MarshallAware) o;
-            // ByteSequence sequence=ma.getCachedMarshalledForm(this);
-            // ds.write(sequence.getData(), sequence.getOffset(),
-            // sequence.getLength());
+            ByteSequence sequence = pendingFrames.poll();
+            if (sequence == null) {
+                throw new IOException("Corrupted stream");
+            }
+            ds.write(sequence.getData(), sequence.getOffset(), sequence.getLength());
 
         } else {
 
@@ -441,6 +448,51 @@ public final class OpenWireFormat implements WireFormat {
         }
     }
 
+    /**
+     * Returns the frame of a message that is written in place of marshalling the
+     * message, marshalling it and caching it on the message when the message has
+     * no frame for this format or changed since. The frame is a complete tight
+     * encoded command with a size prefix and its own boolean stream, which the
+     * unmarshalling of a nested object has always accepted.
+     */
+    private ByteSequence getCachedFrame(DataStructure o) throws IOException {
+        if (!cachedFrameEnabled || cacheEnabled || !(o instanceof Message)) {
+            return null;
+        }
+        Message message = (Message) o;
+        Object cached = message.getCachedMarshalledForm();
+        if (cached instanceof CachedFrame) {
+            ByteSequence frame = ((CachedFrame) cached).get(this, message);
+            if (frame != null) {
+                return frame;
+            }
+        }
+
+        byte type = o.getDataStructureType();
+        DataStreamMarshaller dsm = dataMarshallers[type & 0xFF];
+        if (dsm == null) {
+            throw new IOException("Unknown data type: " + type);
+        }
+        // the frame does its own pass over any message nested in the message
+        ArrayDeque<ByteSequence> outerFrames = pendingFrames;
+        pendingFrames = new ArrayDeque<ByteSequence>();
+        try {
+            BooleanStream bs = new BooleanStream();
+            int size = 1 + dsm.tightMarshal1(this, o, bs);
+            size += bs.marshalledSize();
+            DataByteArrayOutputStream frameOut = new DataByteArrayOutputStream(size + 4);
+            frameOut.writeInt(size);
+            frameOut.writeByte(type);
+            bs.marshal(frameOut);
+            dsm.tightMarshal2(this, o, frameOut, bs);
+            ByteSequence frame = frameOut.toByteSequence();
+            message.setCachedMarshalledForm(new CachedFrame(this, message, frame));
+            return frame;
+        } finally {
+            pendingFrames = outerFrames;
+        }
+    }
+
     public DataStructure tightUnmarshalNestedObject(DataInput dis, BooleanStream bs) throws IOException {
         if (bs.readBoolean()) {
 
@@ -631,6 +683,25 @@ public final class OpenWireFormat implements WireFormat {
         this.maxFrameSizeEnabled = maxFrameSizeEnabled;
     }
 
+    public boolean isCachedFrameEnabled() {
+        return cachedFrameEnabled;
+    }
+
+    /**
+     * Set whether the marshalled form of a message nested in a command, such as the
+     * message of a MessageDispatch, is cached on the message and written again as is
+     * when the message is sent to other consumers, instead of marshalling the
+     * message for each of them. Only applies when tight encoding is enabled and the
+     * cache is disabled, as the cache makes the marshalled form depend on the state
+     * of each connection. Note this is only applied to this format and will NOT be
+     * negotiated
+     *
+     * @param cachedFrameEnabled
+     */
+    public void setCachedFrameEnabled(boolean cachedFrameEnabled) {
+        this.cachedFrameEnabled = cachedFrameEnabled;
+    }
+
     public void renegotiateWireFormat(WireFormatInfo info) throws IOException {
 
         if (preferedWireFormatInfo == null) {
@@ -698,4 +769,38 @@ public final class OpenWireFormat implements WireFormat {
         }
         return version2;
     }
+
+    /**
+     * The frame of a message with the fields of the message and format it depends
+     * on that change without clearing the cached form of the message. It is only
+     * softly referenced so the frames of messages held in memory can be reclaimed.
+     */
+    private static final class CachedFrame extends SoftReference<ByteSequence> {
+
+        private final int version;
+        private final boolean stackTraceEnabled;
+        private final int commandId;
+        private final boolean responseRequired;
+        private final int redeliveryCounter;
+        private final long brokerOutTime;
+
+        CachedFrame(OpenWireFormat format, Message message, ByteSequence frame) {
+            super(frame);
+            this.version = format.version;
+            this.stackTraceEnabled = format.stackTraceEnabled;
+            this.commandId = message.getCommandId();
+            this.responseRequired = message.isResponseRequired();
+            this.redeliveryCounter = message.getRedeliveryCounter();
+            this.brokerOutTime = message.getBrokerOutTime();
+        }
+
+        ByteSequence get(OpenWireFormat format, Message message) {
+            if (version != format.version || stackTraceEnabled != format.stackTraceEnabled
+                || commandId != message.getCommandId() || responseRequired != message.isResponseRequired()
+                || redeliveryCounter != message.getRedeliveryCounter() || brokerOutTime != message.getBrokerOutTime()) {
+                return null;
+            }
+            return get();
+        }
+    }
 }
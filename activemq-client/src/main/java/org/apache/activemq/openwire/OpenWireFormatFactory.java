@@ -42,6 +42,7 @@ public class OpenWireFormatFactory implements WireFormatFactory {
     private int cacheSize = 1024;
     private long maxFrameSize = OpenWireFormat.DEFAULT_MAX_FRAME_SIZE;
     private boolean maxFrameSizeEnabled = true;
+    private boolean cachedFrameEnabled;
     private String host=null;
     private String providerName = ActiveMQConnectionMetaData.PROVIDER_NAME;
     private String providerVersion = ActiveMQConnectionMetaData.PROVIDER_VERSION;
@@ -83,6 +84,7 @@ public class OpenWireFormatFactory implements WireFormatFactory {
         f.setMaxFrameSize(maxFrameSize);
         f.setPreferedWireFormatInfo(info);
         f.setMaxFrameSizeEnabled(maxFrameSizeEnabled);
+        f.setCachedFrameEnabled(cachedFrameEnabled);
         return f;
     }
 
@@ -220,4 +222,19 @@ public class OpenWireFormatFactory implements WireFormatFactory {
     public boolean isMaxFrameSizeEnabled() {
         return this.maxFrameSizeEnabled;
     }
+
+    /**
+     * Set whether the marshalled form of a dispatched message is cached and reused for
+     * other consumers, which requires the cache to be disabled. Note this is only
+     * applied to this factory and will NOT be negotiated
+     *
+     * @param cachedFrameEnabled
+     */
+    public void setCachedFrameEnabled(boolean cachedFrameEnabled) {
+        this.cachedFrameEnabled = cachedFrameEnabled;
+    }
+
+    public boolean isCachedFrameEnabled() {
+        return this.cachedFrameEnabled;
+    }
 }
@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timing wheel that runs tasks once their delay has passed. <p/> A single
+ * daemon thread advances the wheel one tick at a time and runs the tasks of the
+ * bucket it reaches, so many outstanding timeouts share one timed wait instead of
+ * each parking a thread with its own deadline. Tasks run up to one tick late and
+ * must be short, as they run on the thread of the wheel. <p/> Scheduling and
+ * cancelling take no lock: new timeouts are handed to the thread of the wheel
+ * through a queue and a cancelled timeout is dropped when its bucket is reached.
+ * The thread is started on first use and waits without a deadline while no
+ * timeout is pending.
+ */
+public final class TimeoutWheel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeoutWheel.class);
+
+    private final String name;
+    private final long tickNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+    private volatile boolean idle;
+    private Thread thread;
+
+    // only used by the thread of the wheel
+    private long startNanos;
+    private long tick;
+    private int scheduled;
+
+    /**
+     * @param name the name of the thread of the wheel
+     * @param tickMillis the resolution of the wheel
+     * @param size the number of buckets, rounded up to a power of two
+     */
+    public TimeoutWheel(String name, long tickMillis, int size) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int length = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.buckets = new Timeout[length];
+        this.mask = length - 1;
+    }
+
+    /**
+     * Runs the task once the delay has passed, unless the returned timeout is
+     * cancelled first.
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long delayNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)), Long.MAX_VALUE / 4);
+        Timeout timeout = new Timeout(task, System.nanoTime() + delayNanos);
+        pending.add(timeout);
+        Thread current = thread;
+        if (current == null) {
+            current = start();
+        }
+        if (idle) {
+            LockSupport.unpark(current);
+        }
+        return timeout;
+    }
+
+    private synchronized Thread start() {
+        if (thread == null) {
+            Thread worker = new Thread(name) {
+                @Override
+                public void run() {
+                    TimeoutWheel.this.run();
+                }
+            };
+            worker.setDaemon(true);
+            worker.start();
+            thread = worker;
+        }
+        return thread;
+    }
+
+    private void run() {
+        startNanos = System.nanoTime();
+        while (true) {
+            transferPending();
+            if (scheduled == 0) {
+                idle = true;
+                if (pending.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                // nothing is in the buckets so the ticks can start over
+                startNanos = System.nanoTime();
+                tick = 0;
+                continue;
+            }
+
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+                continue;
+            }
+            expireBucket((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            // the tick at whose end the deadline has passed
+            long ticks = Math.max(tick, (timeout.deadline - startNanos + tickNanos - 1) / tickNanos - 1);
+            timeout.rounds = (ticks - tick) / buckets.length;
+            int index = (int) (ticks & mask);
+            timeout.next = buckets[index];
+            buckets[index] = timeout;
+            scheduled++;
+        }
+    }
+
+    private void expireBucket(int index) {
+        Timeout previous = null;
+        Timeout timeout = buckets[index];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            boolean remove;
+            if (timeout.isCancelled()) {
+                remove = true;
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+                remove = false;
+            } else {
+                remove = true;
+                timeout.expire();
+            }
+            if (remove) {
+                if (previous == null) {
+                    buckets[index] = next;
+                } else {
+                    previous.next = next;
+                }
+                timeout.next = null;
+                scheduled--;
+            } else {
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * A task scheduled on a {@link TimeoutWheel}.
+     */
+    public static final class Timeout {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        // only used by the thread of the wheel
+        private long rounds;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if the task was cancelled before it ran.
+         */
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (state.compareAndSet(PENDING, EXPIRED)) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    LOG.warn("Timeout task {} failed", task, e);
+                }
+            }
+        }
+    }
+}
@@ -22,17 +22,24 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.activemq.command.Response;
+import org.apache.activemq.thread.TimeoutWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class FutureResponse {
     private static final Logger LOG = LoggerFactory.getLogger(FutureResponse.class);
 
+    // times out the waits for a response, so that a timed wait does not need a timed park
+    private static final TimeoutWheel TIMEOUTS = new TimeoutWheel("ActiveMQ Response Timeouts", 10, 512);
+
     private final ResponseCallback responseCallback;
     private final TransportFilter transportFilter;
 
     private final ArrayBlockingQueue<Response> responseSlot = new ArrayBlockingQueue<Response>(1);
 
+    // the command id of the request, set by the ResponseCorrelator that awaits the response
+    int correlationId;
+
     public FutureResponse(ResponseCallback responseCallback) {
         this(responseCallback, null);
     }
@@ -45,7 +52,11 @@ public class FutureResponse {
     public Response getResult() throws IOException {
         boolean hasInterruptPending = Thread.interrupted();
         try {
-            return responseSlot.take();
+            Response result;
+            do {
+                result = responseSlot.take();
+            } while (result instanceof Expiry);
+            return result;
         } catch (InterruptedException e) {
             hasInterruptPending = false;
             throw dealWithInterrupt(e);
@@ -74,21 +85,41 @@ public class FutureResponse {
 
     public Response getResult(int timeout) throws IOException {
         final boolean wasInterrupted = Thread.interrupted();
+        Expiry expiry = null;
         try {
-            Response result = responseSlot.poll(timeout, TimeUnit.MILLISECONDS);
+            Response result = pollResult();
             if (result == null && timeout > 0) {
-                throw new RequestTimedOutIOException();
+                expiry = new Expiry();
+                expiry.timeout = TIMEOUTS.schedule(expiry, timeout);
+                do {
+                    result = responseSlot.take();
+                } while (result instanceof Expiry && result != expiry);
+                if (result == expiry) {
+                    throw new RequestTimedOutIOException();
+                }
             }
             return result;
         } catch (InterruptedException e) {
             throw dealWithInterrupt(e);
         } finally {
+            if (expiry != null) {
+                expiry.timeout.cancel();
+            }
             if (wasInterrupted) {
                 Thread.currentThread().interrupt();
             }
         }
     }
 
+    private Response pollResult() {
+        Response result;
+        do {
+            // an expiry of an earlier wait that fired after its response arrived is skipped
+            result = responseSlot.poll();
+        } while (result instanceof Expiry);
+        return result;
+    }
+
     public void set(Response result) {
         if (responseSlot.offer(result)) {
             if (responseCallback != null) {
@@ -96,4 +127,17 @@ public class FutureResponse {
             }
         }
     }
+
+    /**
+     * Put in the response slot when a timed wait expires, to wake up the waiting thread.
+     */
+    private final class Expiry extends Response implements Runnable {
+
+        private TimeoutWheel.Timeout timeout;
+
+        @Override
+        public void run() {
+            responseSlot.offer(this);
+        }
+    }
 }
@@ -96,6 +96,13 @@ public class MutexTransport extends TransportFilter {
         return next.toString();
     }
 
+    /**
+     * @return the lock held while a command is written to the transport
+     */
+    public ReentrantLock getWriteLock() {
+        return writeLock;
+    }
+
     public boolean isSyncOnCommand() {
         return syncOnCommand;
     }
@@ -17,10 +17,9 @@
 package org.apache.activemq.transport;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.activemq.command.Command;
 import org.apache.activemq.command.ExceptionResponse;
@@ -32,17 +31,18 @@ import org.slf4j.LoggerFactory;
 /**
  * Adds the incrementing sequence number to commands along with performing the
  * correlation of responses to requests to create a blocking request-response
- * semantics.
- * 
- * 
+ * semantics. <p/> The pending requests are kept without a lock, in a table
+ * indexed by the low bits of their command id, so that the threads of a
+ * connection sending synchronously do not contend with each other or with the
+ * thread receiving the responses.
  */
 public class ResponseCorrelator extends TransportFilter {
 
     private static final Logger LOG = LoggerFactory.getLogger(ResponseCorrelator.class);
-    private final Map<Integer, FutureResponse> requestMap = new HashMap<Integer, FutureResponse>();
+    private final RequestMap requestMap = new RequestMap();
     private IntSequenceGenerator sequenceGenerator;
     private final boolean debug = LOG.isDebugEnabled();
-    private IOException error;
+    private final AtomicReference<IOException> error = new AtomicReference<IOException>();
 
     public ResponseCorrelator(Transport next) {
         this(next, new IntSequenceGenerator());
@@ -65,11 +65,13 @@ public class ResponseCorrelator extends TransportFilter {
         command.setCommandId(sequenceGenerator.getNextSequenceId());
         command.setResponseRequired(true);
         FutureResponse future = new FutureResponse(responseCallback, this);
-        IOException priorError = null;
-        synchronized (requestMap) {
-            priorError = this.error;
-            if (priorError == null) {
-                requestMap.put(Integer.valueOf(command.getCommandId()), future);
+        IOException priorError = error.get();
+        if (priorError == null) {
+            requestMap.put(command.getCommandId(), future);
+            // a dispose that ran since the check fails the request, unless it missed it
+            priorError = error.get();
+            if (priorError != null && requestMap.remove(command.getCommandId()) == null) {
+                throw priorError;
             }
         }
 
@@ -89,7 +91,13 @@ public class ResponseCorrelator extends TransportFilter {
 
     public Object request(Object command, int timeout) throws IOException {
         FutureResponse response = asyncRequest(command, null);
-        return response.getResult(timeout);
+        try {
+            return response.getResult(timeout);
+        } catch (RequestTimedOutIOException e) {
+            // a response that never arrives must not keep the request around
+            requestMap.remove(((Command) command).getCommandId());
+            throw e;
+        }
     }
 
     public void onCommand(Object o) {
@@ -101,10 +109,7 @@ public class ResponseCorrelator extends TransportFilter {
         }
         if (command.isResponse()) {
             Response response = (Response)command;
-            FutureResponse future = null;
-            synchronized (requestMap) {
-                future = requestMap.remove(Integer.valueOf(response.getCorrelationId()));
-            }
+            FutureResponse future = requestMap.remove(response.getCorrelationId());
             if (future != null) {
                 future.set(response);
             } else {
@@ -133,19 +138,8 @@ public class ResponseCorrelator extends TransportFilter {
     }
 
     private void dispose(IOException error) {
-        ArrayList<FutureResponse> requests=null; 
-        synchronized(requestMap) {
-            if( this.error==null) {
-                this.error = error;
-                requests = new ArrayList<FutureResponse>(requestMap.values());
-                requestMap.clear();
-            }
-        }
-        if( requests!=null ) {
-            for (Iterator<FutureResponse> iter = requests.iterator(); iter.hasNext();) {
-                FutureResponse fr = iter.next();
-                fr.set(new ExceptionResponse(error));
-            }
+        if (this.error.compareAndSet(null, error)) {
+            requestMap.removeAll(error);
         }
     }
 
@@ -156,4 +150,54 @@ public class ResponseCorrelator extends TransportFilter {
     public String toString() {
         return next.toString();
     }
+
+    /**
+     * Maps the command ids of the pending requests to their futures. A request is
+     * kept in the slot of the low bits of its id, as ids are handed out in sequence
+     * the slot is normally free again by the time an id reuses it. A request whose
+     * slot is still taken goes to an overflow map.
+     */
+    private static final class RequestMap {
+
+        private static final int SLOTS = 1024;
+
+        private final AtomicReferenceArray<FutureResponse> slots = new AtomicReferenceArray<FutureResponse>(SLOTS);
+        private final ConcurrentHashMap<Integer, FutureResponse> overflow = new ConcurrentHashMap<Integer, FutureResponse>();
+
+        void put(int commandId, FutureResponse future) {
+            future.correlationId = commandId;
+            if (!slots.compareAndSet(commandId & (SLOTS - 1), null, future)) {
+                overflow.put(commandId, future);
+            }
+        }
+
+        FutureResponse remove(int commandId) {
+            int index = commandId & (SLOTS - 1);
+            FutureResponse future = slots.get(index);
+            if (future != null && future.correlationId == commandId && slots.compareAndSet(index, future, null)) {
+                return future;
+            }
+            return overflow.isEmpty() ? null : overflow.remove(commandId);
+        }
+
+        /**
+         * Removes every pending request and fails it with the error.
+         */
+        void removeAll(IOException error) {
+            for (int i = 0; i < SLOTS; i++) {
+                if (slots.get(i) != null) {
+                    FutureResponse future = slots.getAndSet(i, null);
+                    if (future != null) {
+                        future.set(new ExceptionResponse(error));
+                    }
+                }
+            }
+            for (Integer commandId : overflow.keySet()) {
+                FutureResponse future = overflow.remove(commandId);
+                if (future != null) {
+                    future.set(new ExceptionResponse(error));
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of the buffers the NIO transports read frames into, shared by all the
+ * transports so that a frame does not allocate a buffer of its size. <p/> Buffers
+ * are pooled in power of two size classes, direct and heap buffers apart, and a
+ * buffer is taken from the smallest class that fits the frame. Frames larger than
+ * the largest class get a buffer of their own that is not pooled. Released buffers
+ * are kept until the pool holds its maximum number of bytes, after which they are
+ * left to the garbage collector.
+ */
+public final class ByteBufferPool {
+
+    private static final int MIN_SHIFT = 10;
+
+    private static final ByteBufferPool SINGLETON = new ByteBufferPool(getDefaultMaxBufferSize(), getDefaultMaxPooledBytes());
+
+    private final int maxShift;
+    private final long maxPooledBytes;
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> directBuffers;
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> heapBuffers;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong allocationCount = new AtomicLong();
+
+    /**
+     * @param maxBufferSize the size of the largest pooled buffer, rounded up to a power of two
+     * @param maxPooledBytes the number of bytes of free buffers the pool keeps at most
+     */
+    public ByteBufferPool(int maxBufferSize, long maxPooledBytes) {
+        this.maxShift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, maxBufferSize - 1)));
+        this.maxPooledBytes = maxPooledBytes;
+        int classes = maxShift - MIN_SHIFT + 1;
+        this.directBuffers = new ArrayList<ConcurrentLinkedQueue<ByteBuffer>>(classes);
+        this.heapBuffers = new ArrayList<ConcurrentLinkedQueue<ByteBuffer>>(classes);
+        for (int i = 0; i < classes; i++) {
+            directBuffers.add(new ConcurrentLinkedQueue<ByteBuffer>());
+            heapBuffers.add(new ConcurrentLinkedQueue<ByteBuffer>());
+        }
+    }
+
+    public static ByteBufferPool getInstance() {
+        return SINGLETON;
+    }
+
+    private static int getDefaultMaxBufferSize() {
+        return Integer.getInteger("org.apache.activemq.transport.nio.ByteBufferPool.maxBufferSize", 1024 * 1024);
+    }
+
+    private static long getDefaultMaxPooledBytes() {
+        return Long.getLong("org.apache.activemq.transport.nio.ByteBufferPool.maxPooledBytes", 64L * 1024 * 1024);
+    }
+
+    /**
+     * @return a direct buffer positioned at zero with its limit set to the size.
+     */
+    public ByteBuffer acquireDirect(int size) {
+        return acquire(size, true);
+    }
+
+    /**
+     * @return a heap buffer positioned at zero with its limit set to the size.
+     */
+    public ByteBuffer acquireHeap(int size) {
+        return acquire(size, false);
+    }
+
+    private ByteBuffer acquire(int size, boolean direct) {
+        acquireCount.incrementAndGet();
+        int index = indexOf(size);
+        ByteBuffer buffer = null;
+        if (index >= 0) {
+            buffer = (direct ? directBuffers : heapBuffers).get(index).poll();
+        }
+        if (buffer == null) {
+            allocationCount.incrementAndGet();
+            int capacity = index >= 0 ? 1 << (index + MIN_SHIFT) : size;
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        } else {
+            pooledBytes.addAndGet(-buffer.capacity());
+            buffer.clear();
+        }
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer acquired from this pool. The buffer must no longer be used
+     * by the caller, buffers that do not fit a size class are ignored.
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1 || capacity < 1 << MIN_SHIFT || capacity > 1 << maxShift) {
+            return;
+        }
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        int index = Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT;
+        (buffer.isDirect() ? directBuffers : heapBuffers).get(index).offer(buffer);
+    }
+
+    private int indexOf(int size) {
+        if (size > 1 << maxShift) {
+            return -1;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(1, size - 1));
+        return Math.max(0, shift - MIN_SHIFT);
+    }
+
+    /**
+     * @return the number of bytes of the free buffers held by the pool.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * @return the number of buffers handed out by the pool.
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * @return the number of buffers the pool had to allocate.
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+}
@@ -246,6 +246,7 @@ public class NIOSSLTransport extends NIOTransport {
 
     @Override
     public void serviceRead() {
+        ByteBuffer plain = null;
         try {
             if (handshakeInProgress) {
                 doHandshake();
@@ -253,7 +254,7 @@ public class NIOSSLTransport extends NIOTransport {
 
             doOpenWireInit();
 
-            ByteBuffer plain = ByteBuffer.allocate(sslSession.getApplicationBufferSize());
+            plain = ByteBufferPool.getInstance().acquireHeap(sslSession.getApplicationBufferSize());
             plain.position(plain.limit());
 
             while (true) {
@@ -288,6 +289,10 @@ public class NIOSSLTransport extends NIOTransport {
             onException(e);
         } catch (Throwable e) {
             onException(IOExceptionSupport.create(e));
+        } finally {
+            if (plain != null) {
+                ByteBufferPool.getInstance().release(plain);
+            }
         }
     }
 
@@ -347,7 +352,7 @@ public class NIOSSLTransport extends NIOTransport {
 
             // now we got the data, lets reallocate and store the size for the marshaler.
             // if there's more data in plain, then the next call will start processing it.
-            currentBuffer = ByteBuffer.allocate(nextFrameSize + 4);
+            currentBuffer = ByteBufferPool.getInstance().acquireHeap(nextFrameSize + 4);
             currentBuffer.putInt(nextFrameSize);
 
         } else {
@@ -368,9 +373,11 @@ public class NIOSSLTransport extends NIOTransport {
                 } else {
                     currentBuffer.flip();
                     Object command = wireFormat.unmarshal(new DataInputStream(new NIOInputStream(currentBuffer)));
-                    doConsume(command);
-                    nextFrameSize = -1;
+                    // the command holds no reference to the frame once unmarshalled
+                    ByteBufferPool.getInstance().release(currentBuffer);
                     currentBuffer = null;
+                    nextFrameSize = -1;
+                    doConsume(command);
                }
             }
         }
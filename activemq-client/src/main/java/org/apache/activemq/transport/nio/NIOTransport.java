@@ -134,8 +134,7 @@ public class NIOTransport extends TcpTransport {
                     assert inputBuffer == currentBuffer;
 
                     // If the frame is too big to fit in our direct byte buffer,
-                    // Then allocate a non direct byte buffer of the right size
-                    // for it.
+                    // Then take a direct byte buffer that fits it from the pool.
                     inputBuffer.flip();
                     nextFrameSize = inputBuffer.getInt() + 4;
 
@@ -149,7 +148,7 @@ public class NIOTransport extends TcpTransport {
                     }
 
                     if (nextFrameSize > inputBuffer.capacity()) {
-                        currentBuffer = ByteBuffer.allocateDirect(nextFrameSize);
+                        currentBuffer = ByteBufferPool.getInstance().acquireDirect(nextFrameSize);
                         currentBuffer.putInt(nextFrameSize);
                     } else {
                         inputBuffer.limit(nextFrameSize);
@@ -159,12 +158,17 @@ public class NIOTransport extends TcpTransport {
                     currentBuffer.flip();
 
                     Object command = wireFormat.unmarshal(new DataInputStream(new NIOInputStream(currentBuffer)));
-                    doConsume(command);
+                    // the command holds no reference to the frame once unmarshalled
+                    if (currentBuffer != inputBuffer) {
+                        ByteBufferPool.getInstance().release(currentBuffer);
+                    }
 
                     nextFrameSize = -1;
                     inputBuffer.clear();
                     inputBuffer.limit(4);
                     currentBuffer = inputBuffer;
+
+                    doConsume(command);
                 }
 
             }
@@ -70,6 +70,8 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
     protected DataOutputStream dataOut;
     protected DataInputStream dataIn;
     protected TimeStampStream buffOut = null;
+    // the thread whose commands are not flushed
+    private volatile Thread flushDeferredThread;
 
     protected final InitBuffer initBuffer;
 
@@ -191,9 +193,37 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
     public void oneway(Object command) throws IOException {
         checkStarted();
         wireFormat.marshal(command, dataOut);
+        if (flushDeferredThread != Thread.currentThread()) {
+            dataOut.flush();
+        }
+    }
+
+    /**
+     * Writes the commands left in the output buffer to the socket. Must be
+     * called under the same lock as {@link #oneway(Object)}.
+     */
+    public void flush() throws IOException {
         dataOut.flush();
     }
 
+    /**
+     * @return true if the commands sent by the current thread are not flushed
+     */
+    public boolean isFlushDeferred() {
+        return flushDeferredThread == Thread.currentThread();
+    }
+
+    /**
+     * Sets whether the commands sent by the current thread are only written to
+     * the socket once the output buffer is full, so a writer that sends a batch
+     * of commands can defer the flush to the end of the batch, where it must
+     * {@link #flush()} the transport. Commands sent by other threads are still
+     * flushed, together with the commands of the batch sent before them.
+     */
+    public void setFlushDeferred(boolean flushDeferred) {
+        this.flushDeferredThread = flushDeferred ? Thread.currentThread() : null;
+    }
+
     /**
      * @return pretty print of 'this'
      */
@@ -17,18 +17,22 @@
 package org.apache.activemq.usage;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Used to keep track of how much of something is being used so that a
  * productive working set usage can be controlled. Main use case is manage
- * memory usage.
+ * memory usage. <p/> The usage is a striped counter that is changed without a lock.
+ * The lock is only taken when a change moves the percent usage to another step of
+ * percentUsageMinDelta, to update it, notify the listeners and wake the producers
+ * waiting for space.
  *
  * @org.apache.xbean.XBean
  *
  */
 public class MemoryUsage extends Usage<MemoryUsage> {
 
-    private long usage;
+    private final LongAdder usage = new LongAdder();
 
     public MemoryUsage() {
         this(null, null);
@@ -65,6 +69,9 @@ public class MemoryUsage extends Usage<MemoryUsage> {
         if (parent != null) {
             parent.waitForSpace();
         }
+        if (percentUsage < 100) {
+            return;
+        }
         usageLock.readLock().lock();
         try {
             if (percentUsage >= 100 && isStarted()) {
@@ -100,6 +107,9 @@ public class MemoryUsage extends Usage<MemoryUsage> {
                 return false;
             }
         }
+        if (percentUsage < 100) {
+            return true;
+        }
         usageLock.readLock().lock();
         try {
             if (percentUsage >= 100) {
@@ -129,12 +139,7 @@ public class MemoryUsage extends Usage<MemoryUsage> {
         if (parent != null && parent.isFull()) {
             return true;
         }
-        usageLock.readLock().lock();
-        try {
-            return percentUsage >= 100;
-        } finally {
-            usageLock.readLock().unlock();
-        }
+        return percentUsage >= 100;
     }
 
     /**
@@ -159,13 +164,8 @@ public class MemoryUsage extends Usage<MemoryUsage> {
             return;
         }
 
-        usageLock.writeLock().lock();
-        try {
-            usage += value;
-            setPercentUsage(caclPercentUsage());
-        } finally {
-            usageLock.writeLock().unlock();
-        }
+        usage.add(value);
+        updatePercentUsage();
 
         if (parent != null) {
             parent.increaseUsage(value);
@@ -182,31 +182,46 @@ public class MemoryUsage extends Usage<MemoryUsage> {
             return;
         }
 
-        usageLock.writeLock().lock();
-        try {
-            usage -= value;
-            setPercentUsage(caclPercentUsage());
-        } finally {
-            usageLock.writeLock().unlock();
-        }
+        usage.add(-value);
+        updatePercentUsage();
 
         if (parent != null) {
             parent.decreaseUsage(value);
         }
     }
 
+    /**
+     * Takes the lock only when the usage no longer matches the percent usage. The
+     * percent usage is checked again once set, so a change made by another thread
+     * while the lock was held is not missed.
+     */
+    private void updatePercentUsage() {
+        if (caclPercentUsage() != percentUsage) {
+            usageLock.writeLock().lock();
+            try {
+                int value;
+                while ((value = caclPercentUsage()) != percentUsage) {
+                    setPercentUsage(value);
+                }
+            } finally {
+                usageLock.writeLock().unlock();
+            }
+        }
+    }
+
     @Override
     protected long retrieveUsage() {
-        return usage;
+        return usage.sum();
     }
 
     @Override
     public long getUsage() {
-        return usage;
+        return usage.sum();
     }
 
     public void setUsage(long usage) {
-        this.usage = usage;
+        this.usage.reset();
+        this.usage.add(usage);
     }
 
     public void setPercentOfJvmHeap(int percentOfJvmHeap) {
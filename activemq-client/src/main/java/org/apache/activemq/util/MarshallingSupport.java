@@ -20,6 +20,7 @@ import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.UTFDataFormatException;
 import java.util.ArrayList;
@@ -101,6 +102,139 @@ public final class MarshallingSupport {
         }
     }
 
+    /**
+     * Finds the value of an entry of a primitive map marshalled by
+     * {@link #marshalPrimitiveMap(Map, DataOutputStream)} without unmarshalling
+     * the map. The keys are compared in their marshalled form and the values of
+     * the other entries are skipped, so only the value of the entry is decoded.
+     *
+     * @return the value of the entry, or null if the map has no such entry.
+     */
+    public static Object unmarshalPrimitiveMapValue(ByteSequence map, String name) throws IOException {
+        byte[] data = map.getData();
+        int pos = map.getOffset();
+        int end = pos + map.getLength();
+        int size = readInt(data, pos, end);
+        pos += 4;
+        for (int i = 0; i < size; i++) {
+            int nameLength = readUnsignedShort(data, pos, end);
+            pos += 2;
+            checkAvailable(pos, nameLength, end);
+            boolean found = equalsUTF(data, pos, nameLength, name);
+            pos += nameLength;
+            if (found) {
+                return unmarshalPrimitive(new DataInputStream(new ByteArrayInputStream(data, pos, end - pos)));
+            }
+            pos = skipPrimitive(data, pos, end);
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the bytes hold the name as written by {@link DataOutputStream#writeUTF(String)}.
+     */
+    private static boolean equalsUTF(byte[] data, int pos, int length, String name) {
+        int end = pos + length;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                if (pos >= end || data[pos++] != c) {
+                    return false;
+                }
+            } else if (c > 0x07FF) {
+                if (pos + 3 > end
+                    || data[pos++] != (byte) (0xE0 | ((c >> 12) & 0x0F))
+                    || data[pos++] != (byte) (0x80 | ((c >> 6) & 0x3F))
+                    || data[pos++] != (byte) (0x80 | (c & 0x3F))) {
+                    return false;
+                }
+            } else {
+                if (pos + 2 > end
+                    || data[pos++] != (byte) (0xC0 | ((c >> 6) & 0x1F))
+                    || data[pos++] != (byte) (0x80 | (c & 0x3F))) {
+                    return false;
+                }
+            }
+        }
+        return pos == end;
+    }
+
+    /**
+     * @return the position after the primitive marshalled at the position.
+     */
+    private static int skipPrimitive(byte[] data, int pos, int end) throws IOException {
+        checkAvailable(pos, 1, end);
+        byte type = data[pos++];
+        int length;
+        switch (type) {
+        case NULL:
+            length = 0;
+            break;
+        case BOOLEAN_TYPE:
+        case BYTE_TYPE:
+            length = 1;
+            break;
+        case CHAR_TYPE:
+        case SHORT_TYPE:
+            length = 2;
+            break;
+        case INTEGER_TYPE:
+        case FLOAT_TYPE:
+            length = 4;
+            break;
+        case LONG_TYPE:
+        case DOUBLE_TYPE:
+            length = 8;
+            break;
+        case STRING_TYPE:
+            length = readUnsignedShort(data, pos, end);
+            pos += 2;
+            break;
+        case BYTE_ARRAY_TYPE:
+        case BIG_STRING_TYPE:
+            length = readInt(data, pos, end);
+            pos += 4;
+            break;
+        case MAP_TYPE: {
+            int size = readInt(data, pos, end);
+            pos += 4;
+            for (int i = 0; i < size; i++) {
+                pos += 2 + readUnsignedShort(data, pos, end);
+                pos = skipPrimitive(data, pos, end);
+            }
+            return pos;
+        }
+        case LIST_TYPE: {
+            int size = readInt(data, pos, end);
+            pos += 4;
+            for (int i = 0; i < size; i++) {
+                pos = skipPrimitive(data, pos, end);
+            }
+            return pos;
+        }
+        default:
+            throw new IOException("Unknown primitive type: " + type);
+        }
+        checkAvailable(pos, length, end);
+        return pos + length;
+    }
+
+    private static int readInt(byte[] data, int pos, int end) throws IOException {
+        checkAvailable(pos, 4, end);
+        return ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+    }
+
+    private static int readUnsignedShort(byte[] data, int pos, int end) throws IOException {
+        checkAvailable(pos, 2, end);
+        return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+    }
+
+    private static void checkAvailable(int pos, int length, int end) throws IOException {
+        if (length < 0 || pos > end - length) {
+            throw new EOFException();
+        }
+    }
+
     public static void marshalPrimitiveList(List<Object> list, DataOutputStream out) throws IOException {
         out.writeInt(list.size());
         for (Object element : list) {
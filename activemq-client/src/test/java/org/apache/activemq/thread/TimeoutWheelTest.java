@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimeoutWheelTest {
+
+    private final TimeoutWheel wheel = new TimeoutWheel("testTimeoutWheel", 10, 8);
+
+    @Test
+    public void testTasksRunInDeadlineOrder() throws Exception {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(3);
+        wheel.schedule(new RecordingRunnable(order, 3, latch), 150);
+        wheel.schedule(new RecordingRunnable(order, 1, latch), 10);
+        wheel.schedule(new RecordingRunnable(order, 2, latch), 60);
+        assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+        assertEquals(3, order.size());
+        assertEquals(Integer.valueOf(1), order.get(0));
+        assertEquals(Integer.valueOf(2), order.get(1));
+        assertEquals(Integer.valueOf(3), order.get(2));
+    }
+
+    @Test
+    public void testTaskDoesNotRunBeforeItsDelay() throws Exception {
+        // the delay spans several rotations of the wheel
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        TimeoutWheel.Timeout timeout = wheel.schedule(new CountDownRunnable(latch), 300);
+        assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void testCancelledTaskNeverRuns() throws Exception {
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final CountDownLatch other = new CountDownLatch(1);
+        TimeoutWheel.Timeout timeout = wheel.schedule(new CountDownRunnable(cancelled), 50);
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        wheel.schedule(new CountDownRunnable(other), 100);
+        assertTrue(other.await(5000, TimeUnit.MILLISECONDS));
+        assertEquals(1, cancelled.getCount());
+    }
+
+    @Test
+    public void testScheduleAfterIdle() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            wheel.schedule(new CountDownRunnable(latch), 10);
+            assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+            Thread.sleep(50);
+        }
+    }
+
+    private static class CountDownRunnable implements Runnable {
+        final CountDownLatch latch;
+
+        CountDownRunnable(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            latch.countDown();
+        }
+    }
+
+    private static class RecordingRunnable implements Runnable {
+        final List<Integer> order;
+        final int id;
+        final CountDownLatch latch;
+
+        RecordingRunnable(List<Integer> order, int id, CountDownLatch latch) {
+            this.order = order;
+            this.id = id;
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            order.add(id);
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.command.Command;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.command.ExceptionResponse;
+import org.apache.activemq.command.Response;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.wireformat.WireFormat;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResponseCorrelatorTest {
+
+    private StubTransport stub;
+    private ResponseCorrelator correlator;
+
+    @Before
+    public void before() throws Exception {
+        stub = new StubTransport();
+        correlator = new ResponseCorrelator(stub);
+        correlator.setTransportListener(new DefaultTransportListener());
+        correlator.start();
+    }
+
+    @Test
+    public void testConcurrentRequestsGetTheirResponse() throws Exception {
+        stub.answer = true;
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 1000; i++) {
+                            Command command = new ConnectionInfo();
+                            Response response = (Response) correlator.request(command, 5000);
+                            if (response.getCorrelationId() != command.getCommandId()) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void testManyPendingRequests() throws Exception {
+        // more requests than slots are pending, so some wait in the overflow map
+        List<FutureResponse> futures = new ArrayList<FutureResponse>();
+        for (int i = 0; i < 3000; i++) {
+            futures.add(correlator.asyncRequest(new ConnectionInfo(), null));
+        }
+        List<Command> requests = new ArrayList<Command>(stub.sent);
+        for (int i = requests.size() - 1; i >= 0; i--) {
+            stub.respond(requests.get(i));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(requests.get(i).getCommandId(), futures.get(i).getResult(1000).getCorrelationId());
+        }
+    }
+
+    @Test
+    public void testRequestTimesOut() throws Exception {
+        Command command = new ConnectionInfo();
+        long start = System.nanoTime();
+        try {
+            correlator.request(command, 100);
+            fail("Expected a timeout");
+        } catch (RequestTimedOutIOException expected) {
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+
+        // a late response is dropped, and the next request is answered
+        stub.respond(command);
+        stub.answer = true;
+        Command next = new ConnectionInfo();
+        Response response = (Response) correlator.request(next, 1000);
+        assertEquals(next.getCommandId(), response.getCorrelationId());
+    }
+
+    @Test
+    public void testStopFailsPendingRequests() throws Exception {
+        FutureResponse future = correlator.asyncRequest(new ConnectionInfo(), null);
+        correlator.stop();
+        assertTrue(future.getResult(1000) instanceof ExceptionResponse);
+        try {
+            correlator.asyncRequest(new ConnectionInfo(), null);
+            fail("Expected the request to fail");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static class StubTransport extends TransportSupport {
+
+        final ConcurrentLinkedQueue<Command> sent = new ConcurrentLinkedQueue<Command>();
+        volatile boolean answer;
+
+        @Override
+        public void oneway(Object command) throws IOException {
+            if (answer) {
+                respond((Command) command);
+            } else {
+                sent.add((Command) command);
+            }
+        }
+
+        void respond(Command command) {
+            Response response = new Response();
+            response.setCorrelationId(command.getCommandId());
+            doConsume(response);
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public int getReceiveCounter() {
+            return 0;
+        }
+
+        @Override
+        public X509Certificate[] getPeerCertificates() {
+            return null;
+        }
+
+        @Override
+        public void setPeerCertificates(X509Certificate[] certificates) {
+        }
+
+        @Override
+        public WireFormat getWireFormat() {
+            return null;
+        }
+
+        @Override
+        protected void doStart() throws Exception {
+        }
+
+        @Override
+        protected void doStop(ServiceStopper stopper) throws Exception {
+        }
+    }
+}
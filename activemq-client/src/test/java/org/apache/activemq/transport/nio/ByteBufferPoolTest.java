@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+
+    @Test
+    public void testReleasedBufferIsReused() {
+        ByteBufferPool pool = new ByteBufferPool(64 * 1024, 1024 * 1024);
+        ByteBuffer buffer = pool.acquireDirect(3000);
+        assertTrue(buffer.isDirect());
+        assertEquals(4096, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(3000, buffer.limit());
+        buffer.putInt(42);
+        pool.release(buffer);
+        assertEquals(4096, pool.getPooledBytes());
+
+        ByteBuffer again = pool.acquireDirect(2100);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(2100, again.limit());
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(2, pool.getAcquireCount());
+        assertEquals(1, pool.getAllocationCount());
+    }
+
+    @Test
+    public void testDirectAndHeapBuffersArePooledApart() {
+        ByteBufferPool pool = new ByteBufferPool(64 * 1024, 1024 * 1024);
+        ByteBuffer direct = pool.acquireDirect(5000);
+        pool.release(direct);
+
+        ByteBuffer heap = pool.acquireHeap(5000);
+        assertFalse(heap.isDirect());
+        assertNotSame(direct, heap);
+        assertEquals(8192, heap.capacity());
+        pool.release(heap);
+        assertEquals(16384, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testLargeBuffersAreNotPooled() {
+        ByteBufferPool pool = new ByteBufferPool(64 * 1024, 1024 * 1024);
+        ByteBuffer buffer = pool.acquireHeap(100 * 1000);
+        assertEquals(100 * 1000, buffer.capacity());
+        pool.release(buffer);
+        assertEquals(0, pool.getPooledBytes());
+        assertNotSame(buffer, pool.acquireHeap(100 * 1000));
+    }
+
+    @Test
+    public void testPoolKeepsAtMostMaxPooledBytes() {
+        ByteBufferPool pool = new ByteBufferPool(64 * 1024, 16 * 1024);
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquireHeap(8192);
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            pool.release(buffers[i]);
+        }
+        assertEquals(16 * 1024, pool.getPooledBytes());
+        assertEquals(16 * 1024, pool.getMaxPooledBytes());
+    }
+
+    @Test
+    public void testSmallBuffersUseTheSmallestClass() {
+        ByteBufferPool pool = new ByteBufferPool(64 * 1024, 1024 * 1024);
+        assertEquals(1024, pool.acquireHeap(4).capacity());
+        assertEquals(1024, pool.acquireHeap(1024).capacity());
+        assertEquals(2048, pool.acquireHeap(1025).capacity());
+        assertEquals(64 * 1024, pool.acquireHeap(64 * 1024).capacity());
+    }
+}
@@ -94,6 +94,72 @@ public class MemoryUsageTest {
         assertFalse("did not get usage within limit", underTest.waitForSpace(500));
     }
 
+    @Test(timeout=30000)
+    public void testConcurrentChildrenKeepParentExact() throws Exception {
+        underTest.setLimit(100000);
+        underTest.start();
+        final int threads = 8;
+        final int increments = 10000;
+        final CountDownLatch increased = new CountDownLatch(threads);
+        final CountDownLatch decrease = new CountDownLatch(1);
+        final CountDownLatch decreased = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final MemoryUsage child = new MemoryUsage(underTest, "child" + i);
+            child.start();
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < increments; j++) {
+                            child.increaseUsage(1);
+                        }
+                        increased.countDown();
+                        decrease.await();
+                        for (int j = 0; j < increments; j++) {
+                            child.decreaseUsage(1);
+                        }
+                        decreased.countDown();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }).start();
+        }
+
+        assertTrue("increased", increased.await(20, TimeUnit.SECONDS));
+        assertEquals("usage is exact", threads * increments, underTest.getUsage());
+        assertEquals("percent usage is exact", 80, underTest.getPercentUsage());
+
+        decrease.countDown();
+        assertTrue("decreased", decreased.await(20, TimeUnit.SECONDS));
+        assertEquals("usage is back to zero", 0, underTest.getUsage());
+        assertEquals("percent usage is back to zero", 0, underTest.getPercentUsage());
+    }
+
+    @Test(timeout=5000)
+    public void testDecreaseWakesWaitForSpace() throws Exception {
+        underTest.setLimit(10);
+        underTest.start();
+        underTest.increaseUsage(10);
+        assertTrue(underTest.isFull());
+
+        final CountDownLatch gotSpace = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    underTest.waitForSpace();
+                    gotSpace.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).start();
+
+        assertFalse("still waiting", gotSpace.await(200, TimeUnit.MILLISECONDS));
+        underTest.decreaseUsage(5);
+        assertTrue("woken by the decrease", gotSpace.await(2, TimeUnit.SECONDS));
+        assertFalse(underTest.isFull());
+    }
+
     @Before
     public void setUp() throws Exception {
         underTest = new MemoryUsage();
@@ -0,0 +1,219 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.jdbc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.store.PersistenceAdapterStatistics;
+import org.apache.activemq.util.IOExceptionSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the writes of concurrent senders and acknowledgers into batches that
+ * share one JDBC transaction.
+ * <p>
+ * A caller queues its write and waits until the batch holding it is committed. The
+ * writer thread takes the queued writes, up to maxBatchSize of them, waiting at most
+ * maxWaitMillis for more to arrive, executes them all on a single
+ * {@link TransactionContext} and commits it once. With batch statements enabled on
+ * the adapter the rows of a batch go to the database as a few multi-row statements.
+ * If the batch fails it is rolled back and every write of the batch fails.
+ */
+class GroupCommitWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    /**
+     * A write of a single caller, executed by the writer thread in the batch context.
+     */
+    interface Write {
+        void execute(TransactionContext c) throws SQLException, IOException;
+    }
+
+    private static final class PendingWrite {
+        final Write write;
+        final CountDownLatch done = new CountDownLatch(1);
+        IOException error;
+
+        PendingWrite(Write write) {
+            this.write = write;
+        }
+    }
+
+    // queued by stop after the last write
+    private static final PendingWrite END = new PendingWrite(null);
+
+    private final JDBCPersistenceAdapter persistenceAdapter;
+    private final PersistenceAdapterStatistics statistics;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final LinkedBlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<PendingWrite>();
+    private final Object enqueueMutex = new Object();
+    private boolean running;
+    private Thread thread;
+
+    GroupCommitWriter(JDBCPersistenceAdapter persistenceAdapter, int maxBatchSize, long maxWaitMillis) {
+        this.persistenceAdapter = persistenceAdapter;
+        this.statistics = persistenceAdapter.getPersistenceAdapterStatistics();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+    }
+
+    void start() {
+        synchronized (enqueueMutex) {
+            running = true;
+            thread = new Thread("ActiveMQ JDBC Group Commit Writer") {
+                @Override
+                public void run() {
+                    processQueue();
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops taking writes, the writes already queued are still committed.
+     */
+    void stop() throws InterruptedException {
+        Thread toJoin;
+        synchronized (enqueueMutex) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            queue.add(END);
+            toJoin = thread;
+            thread = null;
+        }
+        toJoin.join();
+    }
+
+    /**
+     * Queues the write and waits until the batch it is part of is committed.
+     *
+     * @throws IOException if the batch could not be committed.
+     */
+    void write(Write write) throws IOException {
+        PendingWrite pending = new PendingWrite(write);
+        synchronized (enqueueMutex) {
+            if (!running) {
+                throw new IOException("The JDBC group commit writer is stopped");
+            }
+            queue.add(pending);
+        }
+        try {
+            pending.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the JDBC group commit");
+        }
+        if (pending.error != null) {
+            throw pending.error;
+        }
+    }
+
+    private void processQueue() {
+        List<PendingWrite> batch = new ArrayList<PendingWrite>();
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                takeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("JDBC group commit writer interrupted");
+                return;
+            }
+            // nothing is queued after the end marker, so it can only be the last write taken
+            if (batch.get(batch.size() - 1) == END) {
+                batch.remove(batch.size() - 1);
+                stopped = true;
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void takeBatch(List<PendingWrite> batch) throws InterruptedException {
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < maxBatchSize && batch.get(batch.size() - 1) != END) {
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void commit(List<PendingWrite> batch) {
+        long started = System.nanoTime();
+        IOException error = null;
+        TransactionContext c = null;
+        boolean executed = false;
+        try {
+            c = persistenceAdapter.getTransactionContext();
+            c.begin();
+            for (PendingWrite pending : batch) {
+                pending.write.execute(c);
+            }
+            executed = true;
+            // rolls back by itself when the commit fails
+            c.commit();
+        } catch (SQLException e) {
+            JDBCPersistenceAdapter.log("JDBC Failure: ", e);
+            error = IOExceptionSupport.create("Failed to commit a batch of " + batch.size() + " writes: " + e, e);
+        } catch (IOException e) {
+            error = e;
+        } catch (Throwable e) {
+            error = IOExceptionSupport.create(e);
+        } finally {
+            if (c != null && !executed) {
+                try {
+                    c.rollback();
+                } catch (Throwable e) {
+                    LOG.debug("Rollback of a failed group commit batch failed", e);
+                }
+            }
+        }
+
+        statistics.addJdbcGroupCommitBatchSize(batch.size());
+        statistics.addJdbcGroupCommitTime(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+        for (PendingWrite pending : batch) {
+            pending.error = error;
+            pending.done.countDown();
+        }
+    }
+}
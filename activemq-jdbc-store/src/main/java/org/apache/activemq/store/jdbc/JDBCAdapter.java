@@ -75,6 +75,32 @@ public interface JDBCAdapter {
 
     void doDeleteOldMessages(TransactionContext c) throws SQLException, IOException;
 
+    /**
+     * @return the first message id and the last acknowledged id that bound the messages
+     *         {@link #doDeleteOldMessages(TransactionContext, int, long, long)} can delete,
+     *         or null when there are none
+     */
+    long[] doGetOldMessagesRange(TransactionContext c) throws SQLException, IOException;
+
+    /**
+     * Deletes the acknowledged messages of the priority with an id from fromId, inclusive,
+     * to toId, exclusive.
+     *
+     * @return the number of messages deleted
+     */
+    int doDeleteOldMessages(TransactionContext c, int priority, long fromId, long toId) throws SQLException, IOException;
+
+    /**
+     * @return the first message id from fromId, inclusive, or -1 when there is none
+     */
+    long doGetNextMessageId(TransactionContext c, long fromId) throws SQLException, IOException;
+
+    /**
+     * @return the priorities the durable subscriptions acknowledge messages at, only 0
+     *         unless a topic has prioritized messages
+     */
+    Set<Integer> doGetDurableSubscriberPriorities(TransactionContext c) throws SQLException, IOException;
+
     long doGetLastMessageStoreSequenceId(TransactionContext c) throws SQLException, IOException;
 
     Set<ActiveMQDestination> doGetDestinations(TransactionContext c) throws SQLException, IOException;
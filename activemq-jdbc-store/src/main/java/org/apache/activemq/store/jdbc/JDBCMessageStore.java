@@ -26,6 +26,7 @@ import org.apache.activemq.command.XATransactionId;
 import org.apache.activemq.store.AbstractMessageStore;
 import org.apache.activemq.store.IndexListener;
 import org.apache.activemq.store.MessageRecoveryListener;
+import org.apache.activemq.usage.MemoryUsage;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.ByteSequenceData;
 import org.apache.activemq.util.IOExceptionSupport;
@@ -38,8 +39,11 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  *
@@ -74,6 +78,20 @@ public class JDBCMessageStore extends AbstractMessageStore {
     protected final TreeMap<Long, Message> rolledBackAcks = new TreeMap<Long, Message>();
     final long[] perPriorityLastRecovered = new long[10];
 
+    // the pages read ahead of the cursor, guarded by prefetchLock
+    private final Object prefetchLock = new Object();
+    private final LinkedList<Message> prefetched = new LinkedList<Message>();
+    // the last recovered positions the prefetched messages follow on from
+    private long[] prefetchedFrom;
+    // the last recovered positions after the last prefetched message
+    private long[] prefetchedTo;
+    private int prefetchPageSize;
+    private int prefetchGeneration;
+    private boolean prefetching;
+    private boolean prefetchedAll;
+    // the destination's memory usage the prefetched messages count against
+    private volatile MemoryUsage memoryUsage;
+
     public JDBCMessageStore(JDBCPersistenceAdapter persistenceAdapter, JDBCAdapter adapter, WireFormat wireFormat, ActiveMQDestination destination, ActiveMQMessageAudit audit) throws IOException {
         super(destination);
         this.persistenceAdapter = persistenceAdapter;
@@ -103,7 +121,7 @@ public class JDBCMessageStore extends AbstractMessageStore {
 
     @Override
     public void addMessage(final ConnectionContext context, final Message message) throws IOException {
-        MessageId messageId = message.getMessageId();
+        final MessageId messageId = message.getMessageId();
         if (audit != null && audit.isDuplicate(message)) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug(destination.getPhysicalName()
@@ -117,7 +135,7 @@ public class JDBCMessageStore extends AbstractMessageStore {
         final XATransactionId xaXid =  context != null ? context.getXid() : null;
 
         // Serialize the Message..
-        byte data[];
+        final byte data[];
         try {
             ByteSequence packet = wireFormat.marshal(message);
             data = ByteSequenceData.toByteArray(packet);
@@ -126,8 +144,10 @@ public class JDBCMessageStore extends AbstractMessageStore {
         }
 
         // Get a connection and insert the message into the DB.
-        TransactionContext c = persistenceAdapter.getTransactionContext(context);
-        long sequenceId;
+        final boolean groupCommit = xaXid == null && persistenceAdapter.isGroupCommit(context);
+        TransactionContext c = groupCommit ? null : persistenceAdapter.getTransactionContext(context);
+        Runnable completion = null;
+        final long sequenceId;
         synchronized (pendingAdditions) {
             sequenceId = persistenceAdapter.getNextSequenceId();
             final long sequence = sequenceId;
@@ -136,14 +156,14 @@ public class JDBCMessageStore extends AbstractMessageStore {
             if (xaXid == null) {
                 pendingAdditions.add(sequence);
 
-                c.onCompletion(new Runnable() {
+                completion = new Runnable() {
                     @Override
                     public void run() {
                         // jdbc close or jms commit - while futureOrSequenceLong==null ordered
                         // work will remain pending on the Queue
                         message.getMessageId().setFutureOrSequenceLong(sequence);
                     }
-                });
+                };
 
                 if (indexListener != null) {
                     indexListener.onAdd(new IndexListener.MessageContext(context, message, new Runnable() {
@@ -158,14 +178,28 @@ public class JDBCMessageStore extends AbstractMessageStore {
                 }
             }
         }
-        try {
-            adapter.doAddMessage(c, sequenceId, messageId, destination, data, message.getExpiration(),
-                    this.isPrioritizedMessages() ? message.getPriority() : 0, xaXid);
-        } catch (SQLException e) {
-            JDBCPersistenceAdapter.log("JDBC Failure: ", e);
-            throw IOExceptionSupport.create("Failed to broker message: " + messageId + " in container: " + e, e);
-        } finally {
-            c.close();
+        final byte priority = this.isPrioritizedMessages() ? message.getPriority() : 0;
+        if (groupCommit) {
+            final Runnable addCompletion = completion;
+            persistenceAdapter.getGroupCommitWriter().write(new GroupCommitWriter.Write() {
+                @Override
+                public void execute(TransactionContext c) throws SQLException, IOException {
+                    c.onCompletion(addCompletion);
+                    adapter.doAddMessage(c, sequenceId, messageId, destination, data, message.getExpiration(), priority, null);
+                }
+            });
+        } else {
+            if (completion != null) {
+                c.onCompletion(completion);
+            }
+            try {
+                adapter.doAddMessage(c, sequenceId, messageId, destination, data, message.getExpiration(), priority, xaXid);
+            } catch (SQLException e) {
+                JDBCPersistenceAdapter.log("JDBC Failure: ", e);
+                throw IOExceptionSupport.create("Failed to broker message: " + messageId + " in container: " + e, e);
+            } finally {
+                c.close();
+            }
         }
         if (xaXid == null) {
             onAdd(message, sequenceId, message.getPriority());
@@ -258,10 +292,22 @@ public class JDBCMessageStore extends AbstractMessageStore {
                 (Long) ack.getLastMessageId().getFutureOrSequenceLong() :
                 persistenceAdapter.getStoreSequenceIdForMessageId(context, ack.getLastMessageId(), destination)[0];
 
+        final XATransactionId xid = context != null ? context.getXid() : null;
+        if (xid == null && persistenceAdapter.isGroupCommit(context)) {
+            final long sequence = seq;
+            persistenceAdapter.getGroupCommitWriter().write(new GroupCommitWriter.Write() {
+                @Override
+                public void execute(TransactionContext c) throws SQLException, IOException {
+                    adapter.doRemoveMessage(c, sequence, null);
+                }
+            });
+            return;
+        }
+
         // Get a connection and remove the message from the DB
         TransactionContext c = persistenceAdapter.getTransactionContext(context);
         try {
-            adapter.doRemoveMessage(c, seq, context != null ? context.getXid() : null);
+            adapter.doRemoveMessage(c, seq, xid);
         } catch (SQLException e) {
             JDBCPersistenceAdapter.log("JDBC Failure: ", e);
             throw IOExceptionSupport.create("Failed to broker message: " + ack.getLastMessageId() + " in container: " + e, e);
@@ -316,6 +362,7 @@ public class JDBCMessageStore extends AbstractMessageStore {
      */
     @Override
     public void removeAllMessages(ConnectionContext context) throws IOException {
+        discardPrefetched();
         // Get a connection and remove the message from the DB
         TransactionContext c = persistenceAdapter.getTransactionContext(context);
         try {
@@ -354,6 +401,8 @@ public class JDBCMessageStore extends AbstractMessageStore {
      */
     @Override
     public void recoverNextMessages(int maxReturned, final MessageRecoveryListener listener) throws Exception {
+        final boolean prefetch = isRecoveryPrefetch();
+        final int[] recovered = new int[1];
         TransactionContext c = persistenceAdapter.getTransactionContext();
         try {
             if (LOG.isTraceEnabled()) {
@@ -362,6 +411,11 @@ public class JDBCMessageStore extends AbstractMessageStore {
 
             maxReturned -= recoverRolledBackAcks(maxReturned, listener);
 
+            if (prefetch && recoverPrefetched(maxReturned, listener)) {
+                schedulePrefetch(maxReturned, false);
+                return;
+            }
+
             adapter.doRecoverNextMessages(c, destination, perPriorityLastRecovered, minPendingSequeunceId(),
                     maxReturned, isPrioritizedMessages(), new JDBCMessageRecoveryListener() {
 
@@ -374,6 +428,7 @@ public class JDBCMessageStore extends AbstractMessageStore {
                         msg.getMessageId().setEntryLocator(sequenceId);
                         listener.recoverMessage(msg);
                         trackLastRecovered(sequenceId, msg.getPriority());
+                        recovered[0]++;
                         return true;
                     } else {
                         return false;
@@ -396,6 +451,10 @@ public class JDBCMessageStore extends AbstractMessageStore {
             c.close();
         }
 
+        // a short batch means the cursor has caught up with the store, nothing to read ahead
+        if (prefetch && maxReturned > 0 && recovered[0] == maxReturned) {
+            schedulePrefetch(maxReturned, true);
+        }
     }
 
     public void trackRollbackAck(Message message) {
@@ -437,6 +496,191 @@ public class JDBCMessageStore extends AbstractMessageStore {
         perPriorityLastRecovered[isPrioritizedMessages() ? priority : 0] = sequenceId;
     }
 
+    private boolean isRecoveryPrefetch() {
+        return persistenceAdapter.getRecoveryPrefetchDepth() > 0 && !persistenceAdapter.isUseExternalMessageReferences();
+    }
+
+    /**
+     * Hands the prefetched messages to the listener when they follow on from the
+     * last recovered positions, waiting for a page that is being read if there are
+     * none yet.
+     *
+     * @return false if the next messages have to be queried.
+     */
+    private boolean recoverPrefetched(int maxReturned, MessageRecoveryListener listener) throws Exception {
+        List<Message> messages = new ArrayList<Message>();
+        int generation;
+        synchronized (prefetchLock) {
+            if (prefetchedFrom == null || !Arrays.equals(prefetchedFrom, perPriorityLastRecovered)) {
+                // the cursor moved since the pages were read
+                discardPrefetched();
+                return false;
+            }
+            while (prefetched.isEmpty() && prefetching && persistenceAdapter.isStarted()) {
+                prefetchLock.wait(100);
+            }
+            if (prefetched.isEmpty() || prefetchedFrom == null) {
+                return false;
+            }
+            while (messages.size() < maxReturned && !prefetched.isEmpty()) {
+                messages.add(prefetched.removeFirst());
+            }
+            generation = prefetchGeneration;
+        }
+
+        int count = 0;
+        try {
+            while (count < messages.size() && listener.canRecoveryNextMessage()) {
+                Message msg = messages.get(count++);
+                listener.recoverMessage(msg);
+                trackLastRecovered((Long) msg.getMessageId().getEntryLocator(), msg.getPriority());
+            }
+        } finally {
+            // the recovered messages are accounted for by the cursor from now on
+            releasePrefetched(messages.subList(0, count));
+            persistenceAdapter.getPersistenceAdapterStatistics().addJdbcRecoveryPrefetchHits(count);
+            List<Message> unused = messages.subList(count, messages.size());
+            synchronized (prefetchLock) {
+                if (generation == prefetchGeneration) {
+                    // keep what the listener had no room for
+                    prefetched.addAll(0, unused);
+                    prefetchedFrom = perPriorityLastRecovered.clone();
+                } else {
+                    releasePrefetched(unused);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts reading the next page in the background unless the read ahead depth
+     * is reached. The first page follows on from the last recovered positions,
+     * the others from the last prefetched message.
+     */
+    private void schedulePrefetch(int pageSize, boolean fromLastRecovered) {
+        synchronized (prefetchLock) {
+            if (fromLastRecovered || prefetchedFrom == null) {
+                discardPrefetched();
+                prefetchedFrom = perPriorityLastRecovered.clone();
+                prefetchedTo = prefetchedFrom.clone();
+            }
+            prefetchPageSize = Math.max(prefetchPageSize, pageSize);
+            if (prefetching || prefetchedAll || prefetchPageSize == 0
+                    || prefetched.size() >= prefetchPageSize * persistenceAdapter.getRecoveryPrefetchDepth()
+                    || (memoryUsage != null && memoryUsage.isFull())) {
+                return;
+            }
+            Executor executor = persistenceAdapter.getRecoveryPrefetchExecutor();
+            if (executor == null) {
+                return;
+            }
+            prefetching = true;
+            final int generation = prefetchGeneration;
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        prefetch(generation);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                prefetching = false;
+            }
+        }
+    }
+
+    private void prefetch(int generation) {
+        final long[] last;
+        final int pageSize;
+        synchronized (prefetchLock) {
+            last = prefetchedTo.clone();
+            pageSize = prefetchPageSize;
+        }
+        final List<Message> page = new ArrayList<Message>(pageSize);
+        TransactionContext c = null;
+        try {
+            c = persistenceAdapter.getTransactionContext();
+            adapter.doRecoverNextMessages(c, destination, last.clone(), minPendingSequeunceId(),
+                    pageSize, isPrioritizedMessages(), new JDBCMessageRecoveryListener() {
+
+                @Override
+                public boolean recoverMessage(long sequenceId, byte[] data) throws Exception {
+                    Message msg = (Message) wireFormat.unmarshal(new ByteSequence(data));
+                    msg.getMessageId().setBrokerSequenceId(sequenceId);
+                    msg.getMessageId().setFutureOrSequenceLong(sequenceId);
+                    msg.getMessageId().setEntryLocator(sequenceId);
+                    page.add(msg);
+                    last[isPrioritizedMessages() ? msg.getPriority() : 0] = sequenceId;
+                    return true;
+                }
+
+                @Override
+                public boolean recoverMessageReference(String reference) throws Exception {
+                    return false;
+                }
+            });
+        } catch (Throwable e) {
+            LOG.debug("{} failed to read ahead the next messages", this, e);
+            page.clear();
+        } finally {
+            if (c != null) {
+                try {
+                    c.close();
+                } catch (Throwable ignored) {
+                }
+            }
+        }
+
+        synchronized (prefetchLock) {
+            prefetching = false;
+            if (generation == prefetchGeneration) {
+                prefetched.addAll(page);
+                if (memoryUsage != null) {
+                    memoryUsage.increaseUsage(sizeOf(page));
+                }
+                prefetchedTo = last;
+                // reached the end of the committed messages
+                prefetchedAll = page.size() < pageSize;
+            }
+            if (prefetchedFrom != null) {
+                // the next page, or the first one when the cursor moved while this one was read
+                schedulePrefetch(prefetchPageSize, false);
+            }
+            prefetchLock.notifyAll();
+        }
+    }
+
+    private void discardPrefetched() {
+        synchronized (prefetchLock) {
+            releasePrefetched(prefetched);
+            prefetched.clear();
+            prefetchedFrom = null;
+            prefetchedTo = null;
+            prefetchedAll = false;
+            prefetchGeneration++;
+        }
+    }
+
+    private void releasePrefetched(List<Message> messages) {
+        if (memoryUsage != null && !messages.isEmpty()) {
+            memoryUsage.decreaseUsage(sizeOf(messages));
+        }
+    }
+
+    private static long sizeOf(List<Message> messages) {
+        long size = 0;
+        for (Message message : messages) {
+            size += message.getSize();
+        }
+        return size;
+    }
+
+    @Override
+    public void setMemoryUsage(MemoryUsage memoryUsage) {
+        this.memoryUsage = memoryUsage;
+    }
+
     /**
      * @see org.apache.activemq.store.MessageStore#resetBatching()
      */
@@ -445,6 +689,7 @@ public class JDBCMessageStore extends AbstractMessageStore {
         if (LOG.isTraceEnabled()) {
             LOG.trace(this + " resetBatching. last recovered: " + Arrays.toString(perPriorityLastRecovered));
         }
+        discardPrefetched();
         setLastRecovered(-1);
     }
 
@@ -462,6 +707,7 @@ public class JDBCMessageStore extends AbstractMessageStore {
         }
         try {
             long[] storedValues = persistenceAdapter.getStoreSequenceIdForMessageId(null, messageId, destination);
+            discardPrefetched();
             setLastRecovered(storedValues[0]);
         } catch (IOException ignoredAsAlreadyLogged) {
             resetBatching();
@@ -26,7 +26,9 @@ import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
@@ -35,6 +37,8 @@ import org.apache.activemq.ActiveMQMessageAudit;
 import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.ConnectionContext;
 import org.apache.activemq.broker.Locker;
+import org.apache.activemq.broker.jmx.AnnotatedMBean;
+import org.apache.activemq.broker.jmx.PersistenceAdapterView;
 import org.apache.activemq.broker.scheduler.JobSchedulerStore;
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ActiveMQQueue;
@@ -46,6 +50,7 @@ import org.apache.activemq.command.ProducerId;
 import org.apache.activemq.openwire.OpenWireFormat;
 import org.apache.activemq.store.MessageStore;
 import org.apache.activemq.store.PersistenceAdapter;
+import org.apache.activemq.store.PersistenceAdapterStatistics;
 import org.apache.activemq.store.TopicMessageStore;
 import org.apache.activemq.store.TransactionStore;
 import org.apache.activemq.store.jdbc.adapter.DefaultJDBCAdapter;
@@ -61,6 +66,8 @@ import org.apache.activemq.wireformat.WireFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.apache.activemq.broker.jmx.BrokerMBeanSupport.createPersistenceAdapterName;
+
 /**
  * A {@link PersistenceAdapter} implementation using JDBC for persistence
  * storage.
@@ -96,6 +103,15 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
     private boolean changeAutoCommitAllowed = true;
     private int queryTimeout = -1;
     private int networkTimeout = -1;
+    private boolean groupCommit;
+    private int groupCommitMaxBatchSize = 500;
+    private long groupCommitMaxWaitMillis;
+    private GroupCommitWriter groupCommitWriter;
+    private int recoveryPrefetchDepth;
+    private int recoveryPrefetchThreads = 2;
+    private volatile ThreadPoolExecutor recoveryPrefetchExecutor;
+    private int cleanupBatchSize;
+    private long cleanupBatchDelay;
 
     protected int maxProducersToAudit=1024;
     protected int maxAuditDepth=1000;
@@ -106,6 +122,7 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
     protected LongSequenceGenerator sequenceGenerator = new LongSequenceGenerator();
     protected int maxRows = DefaultJDBCAdapter.MAX_ROWS;
     protected final HashMap<ActiveMQDestination, MessageStore> storeCache = new HashMap<>();
+    protected final PersistenceAdapterStatistics persistenceAdapterStatistics = new PersistenceAdapterStatistics();
 
     {
         setLockKeepAlivePeriod(DEFAULT_LOCK_KEEP_ALIVE_PERIOD);
@@ -334,7 +351,9 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
         }
 
         // Cleanup the db periodically.
-        if (cleanupPeriod > 0) {
+        if (cleanupPeriod > 0 && cleanupBatchSize > 0) {
+            scheduleBatchCleanup(null, 0);
+        } else if (cleanupPeriod > 0) {
             cleanupTicket = getScheduledThreadPoolExecutor().scheduleWithFixedDelay(new Runnable() {
                 @Override
                 public void run() {
@@ -343,6 +362,33 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
             }, 0, cleanupPeriod, TimeUnit.MILLISECONDS);
         }
         createMessageAudit();
+
+        if (recoveryPrefetchDepth > 0) {
+            // the pages are read on threads of their own so they never hold up the cleanup and the lock keep alive,
+            // and a page no thread is free for is read by the cursor when it needs it
+            recoveryPrefetchExecutor = new ThreadPoolExecutor(0, recoveryPrefetchThreads, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ActiveMQ JDBC PA Recovery Prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        if (groupCommit) {
+            groupCommitWriter = new GroupCommitWriter(this, groupCommitMaxBatchSize, groupCommitMaxWaitMillis);
+            groupCommitWriter.start();
+        }
+
+        if (brokerService != null && brokerService.isUseJmx()) {
+            PersistenceAdapterView view = new PersistenceAdapterView(this);
+            view.setPersistenceAdapterStatistics(persistenceAdapterStatistics);
+
+            AnnotatedMBean.registerMBean(brokerService.getManagementContext(), view,
+                    createPersistenceAdapterName(brokerService.getBrokerObjectName().toString(), toString()));
+        }
     }
 
     @Override
@@ -351,10 +397,26 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
             cleanupTicket.cancel(true);
             cleanupTicket = null;
         }
+        if (groupCommitWriter != null) {
+            groupCommitWriter.stop();
+            groupCommitWriter = null;
+        }
+        if (recoveryPrefetchExecutor != null) {
+            ThreadPoolUtils.shutdownNow(recoveryPrefetchExecutor);
+            recoveryPrefetchExecutor = null;
+        }
+        if (brokerService != null && brokerService.isUseJmx()) {
+            brokerService.getManagementContext().unregisterMBean(
+                    createPersistenceAdapterName(brokerService.getBrokerObjectName().toString(), toString()));
+        }
         closeDataSource(getDataSource());
     }
 
     public void cleanup() {
+        if (cleanupBatchSize > 0) {
+            cleanupInBatches();
+            return;
+        }
         TransactionContext c = null;
         try {
             LOG.debug("Cleaning up old messages.");
@@ -377,6 +439,111 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
         }
     }
 
+    /**
+     * Deletes the acknowledged messages a window of cleanupBatchSize message ids at a
+     * time, committing each window and pausing cleanupBatchDelay between them, so the
+     * exclusive connection and the row locks of the delete are held only briefly.
+     */
+    private void cleanupInBatches() {
+        BatchCleanup cleanup = new BatchCleanup();
+        try {
+            while (cleanup.deleteNextBatch()) {
+                if (cleanupBatchDelay > 0) {
+                    Thread.sleep(cleanupBatchDelay);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Schedules the next window of a periodic cleanup in batches, or the next cleanup
+     * when there is none, so the scheduler thread is not held between two windows.
+     */
+    private synchronized void scheduleBatchCleanup(final BatchCleanup cleanup, long delay) {
+        if (isStopping() || isStopped()) {
+            return;
+        }
+        cleanupTicket = getScheduledThreadPoolExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                BatchCleanup next = cleanup != null ? cleanup : new BatchCleanup();
+                if (next.deleteNextBatch()) {
+                    scheduleBatchCleanup(next, cleanupBatchDelay);
+                } else {
+                    scheduleBatchCleanup(null, cleanupPeriod);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A cleanup that deletes the acknowledged messages from the first message to the
+     * last acknowledged one, a window of cleanupBatchSize message ids at a time. A
+     * window starts at the next message that exists, and only deletes the priorities
+     * the durable subscriptions acknowledge at.
+     */
+    private class BatchCleanup {
+        private long from;
+        private long last;
+        private Set<Integer> priorities;
+        private int deleted;
+
+        BatchCleanup() {
+            LOG.debug("Cleaning up old messages in batches of {} ids.", cleanupBatchSize);
+        }
+
+        /**
+         * @return false when the cleanup is done
+         */
+        boolean deleteNextBatch() {
+            try {
+                TransactionContext c = getTransactionContext();
+                try {
+                    if (priorities == null) {
+                        long[] range = getAdapter().doGetOldMessagesRange(c);
+                        if (range == null) {
+                            return done();
+                        }
+                        from = range[0];
+                        last = range[1];
+                        priorities = getAdapter().doGetDurableSubscriberPriorities(c);
+                    } else {
+                        from = getAdapter().doGetNextMessageId(c, from);
+                    }
+                } finally {
+                    c.close();
+                }
+                if (from < 0 || from > last || isStopping()) {
+                    return done();
+                }
+                c = getTransactionContext();
+                try {
+                    c.getExclusiveConnection();
+                    for (int priority : priorities) {
+                        deleted += getAdapter().doDeleteOldMessages(c, priority, from, from + cleanupBatchSize);
+                    }
+                } finally {
+                    c.close();
+                }
+                from += cleanupBatchSize;
+                return from <= last || done();
+            } catch (IOException e) {
+                LOG.warn("Old message cleanup failed due to: " + e, e);
+            } catch (SQLException e) {
+                LOG.warn("Old message cleanup failed due to: " + e);
+                JDBCPersistenceAdapter.log("Failure Details: ", e);
+            }
+            return done();
+        }
+
+        private boolean done() {
+            LOG.debug("Cleanup done, deleted {} old message(s).", deleted);
+            return false;
+        }
+    }
+
     @Override
     public ScheduledThreadPoolExecutor getScheduledThreadPoolExecutor() {
         if (clockDaemon == null) {
@@ -514,6 +681,30 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
         return context.getSecurityContext() != null && context.getSecurityContext().isBrokerContext();
     }
 
+    /**
+     * @return true if a write of the given context is to be committed by the group
+     *         commit writer, which is not the case when the context is in the middle of
+     *         committing a transaction.
+     */
+    boolean isGroupCommit(ConnectionContext context) {
+        if (groupCommitWriter == null) {
+            return false;
+        }
+        if (context == null || isBrokerContext(context)) {
+            return true;
+        }
+        TransactionContext transactionContext = (TransactionContext) context.getLongTermStoreContext();
+        return transactionContext == null || !transactionContext.isInTransaction();
+    }
+
+    GroupCommitWriter getGroupCommitWriter() {
+        return groupCommitWriter;
+    }
+
+    public PersistenceAdapterStatistics getPersistenceAdapterStatistics() {
+        return persistenceAdapterStatistics;
+    }
+
     public TransactionContext getTransactionContext() throws IOException {
         TransactionContext answer = new TransactionContext(this, networkTimeout, queryTimeout);
         if (transactionIsolation > 0) {
@@ -552,6 +743,33 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
         this.cleanupPeriod = cleanupPeriod;
     }
 
+    public int getCleanupBatchSize() {
+        return cleanupBatchSize;
+    }
+
+    /**
+     * Sets the number of message ids each cleanup delete covers. Every batch is
+     * committed on its own, so a cleanup no longer holds the locks of one large
+     * delete across the whole message table. The default of 0 deletes the old
+     * messages of one priority per cleanup with a single statement.
+     */
+    public void setCleanupBatchSize(int cleanupBatchSize) {
+        this.cleanupBatchSize = cleanupBatchSize;
+    }
+
+    public long getCleanupBatchDelay() {
+        return cleanupBatchDelay;
+    }
+
+    /**
+     * Sets the number of milliseconds a cleanup pauses between two batches, to
+     * limit the rate of deletes when a cleanupBatchSize is set. The periodic
+     * cleanup schedules its next batch after the pause rather than waiting for it.
+     */
+    public void setCleanupBatchDelay(long cleanupBatchDelay) {
+        this.cleanupBatchDelay = cleanupBatchDelay;
+    }
+
     public boolean isChangeAutoCommitAllowed() {
         return changeAutoCommitAllowed;
     }
@@ -801,6 +1019,80 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
         this.maxRows = maxRows;
     }
 
+    public int getRecoveryPrefetchDepth() {
+        return recoveryPrefetchDepth;
+    }
+
+    /**
+     * Sets the number of pages of messages a queue reads ahead of its cursor. Each
+     * page is read in the background with the same query as a cursor batch, starting
+     * after the last message read, so the next batch is usually in memory by the
+     * time the cursor asks for it. The messages read ahead count against the memory
+     * usage of the queue, and no page is read ahead while it is full. The default of
+     * 0 reads every batch on demand.
+     */
+    public void setRecoveryPrefetchDepth(int recoveryPrefetchDepth) {
+        this.recoveryPrefetchDepth = recoveryPrefetchDepth;
+    }
+
+    public int getRecoveryPrefetchThreads() {
+        return recoveryPrefetchThreads;
+    }
+
+    /**
+     * Sets the number of threads the pages read ahead by the queues are read on, two
+     * by default. A page is only read ahead when one of these threads is free.
+     */
+    public void setRecoveryPrefetchThreads(int recoveryPrefetchThreads) {
+        this.recoveryPrefetchThreads = recoveryPrefetchThreads;
+    }
+
+    /**
+     * @return the executor that reads ahead the pages of the queues, null when the
+     *         adapter is stopped or does not read ahead.
+     */
+    ThreadPoolExecutor getRecoveryPrefetchExecutor() {
+        return recoveryPrefetchExecutor;
+    }
+
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    /**
+     * When true, the message adds and acks that are not part of a transaction are
+     * queued to a writer thread that commits the writes of concurrent producers and
+     * consumers together, in one JDBC transaction per batch. Each caller still
+     * returns only once its write is committed.
+     */
+    public void setGroupCommit(boolean groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
+    public int getGroupCommitMaxBatchSize() {
+        return groupCommitMaxBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of writes committed in one group commit batch.
+     */
+    public void setGroupCommitMaxBatchSize(int groupCommitMaxBatchSize) {
+        this.groupCommitMaxBatchSize = groupCommitMaxBatchSize;
+    }
+
+    public long getGroupCommitMaxWaitMillis() {
+        return groupCommitMaxWaitMillis;
+    }
+
+    /**
+     * Sets how long a group commit batch waits for more writes before it is
+     * committed. With the default of 0 a batch holds the writes queued while the
+     * previous batch was being committed.
+     */
+    public void setGroupCommitMaxWaitMillis(long groupCommitMaxWaitMillis) {
+        this.groupCommitMaxWaitMillis = groupCommitMaxWaitMillis;
+    }
+
     public void recover(JdbcMemoryTransactionStore jdbcMemoryTransactionStore) throws IOException {
         TransactionContext c = getTransactionContext();
         try {
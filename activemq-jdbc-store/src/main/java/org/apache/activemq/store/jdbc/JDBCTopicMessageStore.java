@@ -70,13 +70,27 @@ public class JDBCTopicMessageStore extends JDBCMessageStore implements TopicMess
     }
 
     @Override
-    public void acknowledge(ConnectionContext context, String clientId, String subscriptionName, MessageId messageId, MessageAck ack) throws IOException {
+    public void acknowledge(ConnectionContext context, final String clientId, final String subscriptionName, final MessageId messageId, MessageAck ack) throws IOException {
         if (ack != null && ack.isUnmatchedAck()) {
             if (LOG.isTraceEnabled()) {
                 LOG.trace("ignoring unmatched selector ack for: " + messageId + ", cleanup will get to this message after subsequent acks.");
             }
             return;
         }
+        if ((context == null || context.getXid() == null) && persistenceAdapter.isGroupCommit(context)) {
+            persistenceAdapter.getGroupCommitWriter().write(new GroupCommitWriter.Write() {
+                @Override
+                public void execute(TransactionContext c) throws SQLException, IOException {
+                    long[] res = getCachedStoreSequenceId(c, destination, messageId);
+                    if (isPrioritizedMessages()) {
+                        adapter.doSetLastAckWithPriority(c, destination, null, clientId, subscriptionName, res[0], res[1]);
+                    } else {
+                        adapter.doSetLastAck(c, destination, null, clientId, subscriptionName, res[0], res[1]);
+                    }
+                }
+            });
+            return;
+        }
         TransactionContext c = persistenceAdapter.getTransactionContext(context);
         try {
             long[] res = getCachedStoreSequenceId(c, destination, messageId);
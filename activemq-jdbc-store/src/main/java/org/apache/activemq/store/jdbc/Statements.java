@@ -75,6 +75,10 @@ public class Statements {
     private String insertDurablePriorityAckStatement;
     private String updateDurableLastAckStatement;
     private String deleteOldMessagesStatementWithPriority;
+    private String deleteOldMessagesInRangeStatementWithPriority;
+    private String findFirstSequenceIdInMsgsStatement;
+    private String findNextSequenceIdInMsgsStatement;
+    private String findDurableSubPrioritiesStatement;
     private String durableSubscriberMessageCountStatementWithPriority;
     private String dropAckPKAlterStatementEnd;
     private String updateXidFlagStatement;
@@ -240,6 +244,27 @@ public class Statements {
         return findLastSequenceIdInMsgsStatement;
     }
 
+    public String getFindFirstSequenceIdInMsgsStatement() {
+        if (findFirstSequenceIdInMsgsStatement == null) {
+            findFirstSequenceIdInMsgsStatement = "SELECT MIN(ID) FROM " + getFullMessageTableName();
+        }
+        return findFirstSequenceIdInMsgsStatement;
+    }
+
+    public String getFindNextSequenceIdInMsgsStatement() {
+        if (findNextSequenceIdInMsgsStatement == null) {
+            findNextSequenceIdInMsgsStatement = "SELECT MIN(ID) FROM " + getFullMessageTableName() + " WHERE ID >= ?";
+        }
+        return findNextSequenceIdInMsgsStatement;
+    }
+
+    public String getFindDurableSubPrioritiesStatement() {
+        if (findDurableSubPrioritiesStatement == null) {
+            findDurableSubPrioritiesStatement = "SELECT DISTINCT PRIORITY FROM " + getFullAckTableName();
+        }
+        return findDurableSubPrioritiesStatement;
+    }
+
     public String getLastProducerSequenceIdStatement() {
         if (lastProducerSequenceIdStatement == null) {
             lastProducerSequenceIdStatement = "SELECT MAX(MSGID_SEQ) FROM " + getFullMessageTableName()
@@ -424,6 +449,20 @@ public class Statements {
         return deleteOldMessagesStatementWithPriority;
     }
 
+    public String getDeleteOldMessagesInRangeStatementWithPriority() {
+        if (deleteOldMessagesInRangeStatementWithPriority == null) {
+            deleteOldMessagesInRangeStatementWithPriority = "DELETE FROM " + getFullMessageTableName()
+                                         + " WHERE (PRIORITY=? AND ID >= ? AND ID < ? AND ID <= "
+                                         + "     ( SELECT min(" + getFullAckTableName() + ".LAST_ACKED_ID)"
+                                         + "       FROM " + getFullAckTableName() + " WHERE "
+                                         +          getFullAckTableName() + ".CONTAINER="
+                                         +          getFullMessageTableName() + ".CONTAINER"
+                                         + "        AND " + getFullAckTableName() + ".PRIORITY=?)"
+                                         + "   )";
+        }
+        return deleteOldMessagesInRangeStatementWithPriority;
+    }
+
     public String getLockCreateStatement() {
         if (lockCreateStatement == null) {
             lockCreateStatement = "SELECT * FROM " + getFullLockTableName();
@@ -792,6 +831,10 @@ public class Statements {
         this.deleteOldMessagesStatementWithPriority = deleteOldMessagesStatementWithPriority;
     }
 
+    public void setDeleteOldMessagesInRangeStatementWithPriority(String deleteOldMessagesInRangeStatementWithPriority) {
+        this.deleteOldMessagesInRangeStatementWithPriority = deleteOldMessagesInRangeStatementWithPriority;
+    }
+
     public void setDeleteSubscriptionStatement(String deleteSubscriptionStatment) {
         this.deleteSubscriptionStatement = deleteSubscriptionStatment;
     }
@@ -828,6 +871,18 @@ public class Statements {
         this.findLastSequenceIdInMsgsStatement = findLastSequenceIdInMsgs;
     }
 
+    public void setFindFirstSequenceIdInMsgsStatement(String findFirstSequenceIdInMsgsStatement) {
+        this.findFirstSequenceIdInMsgsStatement = findFirstSequenceIdInMsgsStatement;
+    }
+
+    public void setFindNextSequenceIdInMsgsStatement(String findNextSequenceIdInMsgsStatement) {
+        this.findNextSequenceIdInMsgsStatement = findNextSequenceIdInMsgsStatement;
+    }
+
+    public void setFindDurableSubPrioritiesStatement(String findDurableSubPrioritiesStatement) {
+        this.findDurableSubPrioritiesStatement = findDurableSubPrioritiesStatement;
+    }
+
     public void setFindMessageSequenceIdStatement(String findMessageSequenceIdStatment) {
         this.findMessageSequenceIdStatement = findMessageSequenceIdStatment;
     }
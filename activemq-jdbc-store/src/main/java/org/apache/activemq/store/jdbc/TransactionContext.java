@@ -286,6 +286,10 @@ public class TransactionContext {
         completions.add(runnable);
     }
 
+    public boolean isInTransaction() {
+        return inTx;
+    }
+
     final private class UnlockOnCloseConnection implements Connection {
 
         private final Connection delegate;
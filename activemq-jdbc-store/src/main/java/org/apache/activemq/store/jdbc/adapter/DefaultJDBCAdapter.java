@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -836,6 +837,94 @@ public class DefaultJDBCAdapter implements JDBCAdapter {
         }
     }
 
+    @Override
+    public long[] doGetOldMessagesRange(TransactionContext c) throws SQLException, IOException {
+        PreparedStatement s = null;
+        ResultSet rs = null;
+        try {
+            s = c.getConnection().prepareStatement(this.statements.getFindFirstSequenceIdInMsgsStatement());
+            rs = s.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            long first = rs.getLong(1);
+            if (rs.wasNull()) {
+                return null;
+            }
+            rs.close();
+            s.close();
+            s = c.getConnection().prepareStatement(this.statements.getFindLastSequenceIdInAcksStatement());
+            rs = s.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            long last = rs.getLong(1);
+            if (rs.wasNull() || last < first) {
+                return null;
+            }
+            return new long[] {first, last};
+        } finally {
+            close(rs);
+            close(s);
+        }
+    }
+
+    @Override
+    public int doDeleteOldMessages(TransactionContext c, int priority, long fromId, long toId) throws SQLException, IOException {
+        PreparedStatement s = null;
+        try {
+            s = c.getExclusiveConnection().prepareStatement(this.statements.getDeleteOldMessagesInRangeStatementWithPriority());
+            s.setInt(1, priority);
+            s.setLong(2, fromId);
+            s.setLong(3, toId);
+            s.setInt(4, priority);
+            int i = s.executeUpdate();
+            LOG.debug("Deleted " + i + " old message(s) at priority: " + priority + " with ids from: " + fromId + " to: " + toId);
+            return i;
+        } finally {
+            close(s);
+        }
+    }
+
+    @Override
+    public long doGetNextMessageId(TransactionContext c, long fromId) throws SQLException, IOException {
+        PreparedStatement s = null;
+        ResultSet rs = null;
+        try {
+            s = c.getConnection().prepareStatement(this.statements.getFindNextSequenceIdInMsgsStatement());
+            s.setLong(1, fromId);
+            rs = s.executeQuery();
+            if (rs.next()) {
+                long id = rs.getLong(1);
+                if (!rs.wasNull()) {
+                    return id;
+                }
+            }
+            return -1;
+        } finally {
+            close(rs);
+            close(s);
+        }
+    }
+
+    @Override
+    public Set<Integer> doGetDurableSubscriberPriorities(TransactionContext c) throws SQLException, IOException {
+        PreparedStatement s = null;
+        ResultSet rs = null;
+        try {
+            s = c.getConnection().prepareStatement(this.statements.getFindDurableSubPrioritiesStatement());
+            rs = s.executeQuery();
+            Set<Integer> priorities = new TreeSet<Integer>();
+            while (rs.next()) {
+                priorities.add(rs.getInt(1));
+            }
+            return priorities;
+        } finally {
+            close(rs);
+            close(s);
+        }
+    }
+
     @Override
     public long doGetLastAckedDurableSubscriberMessageId(TransactionContext c, ActiveMQDestination destination,
             String clientId, String subscriberName) throws SQLException, IOException {
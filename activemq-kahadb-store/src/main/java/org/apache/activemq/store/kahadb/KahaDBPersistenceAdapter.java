@@ -52,6 +52,7 @@ import javax.management.ObjectName;
 import java.io.File;
 import java.io.IOException;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.Callable;
 
 import static org.apache.activemq.broker.jmx.BrokerMBeanSupport.createPersistenceAdapterName;
@@ -524,6 +525,72 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         this.letter.setIndexCacheSize(indexCacheSize);
     }
 
+    public long getIndexOffHeapCacheSize() {
+        return this.letter.getIndexOffHeapCacheSize();
+    }
+
+    /**
+     * Set the size of the off heap index cache, 0 disables it
+     * When set using Xbean, values of the form "20 Mb", "1024kb", and "1g" can be used
+     * @org.apache.xbean.Property propertyEditor="org.apache.activemq.util.MemoryPropertyEditor"
+     * @param indexOffHeapCacheSize
+     *            the number of bytes of direct memory used to cache index pages
+     */
+    public void setIndexOffHeapCacheSize(long indexOffHeapCacheSize) {
+        this.letter.setIndexOffHeapCacheSize(indexOffHeapCacheSize);
+    }
+
+    public int getIndexLockStripes() {
+        return this.letter.getIndexLockStripes();
+    }
+
+    /**
+     * @param indexLockStripes
+     *            the number of lock stripes that let index updates of different destinations run
+     *            concurrently, 0 (the default) serializes all index updates
+     */
+    public void setIndexLockStripes(int indexLockStripes) {
+        this.letter.setIndexLockStripes(indexLockStripes);
+    }
+
+    public boolean isIncrementalCheckpoint() {
+        return this.letter.isIncrementalCheckpoint();
+    }
+
+    /**
+     * @param incrementalCheckpoint
+     *            when true the checkpoint writes the index pages without blocking index updates
+     */
+    public void setIncrementalCheckpoint(boolean incrementalCheckpoint) {
+        this.letter.setIncrementalCheckpoint(incrementalCheckpoint);
+    }
+
+    public int getJournalReplayThreads() {
+        return this.letter.getJournalReplayThreads();
+    }
+
+    /**
+     * @param journalReplayThreads
+     *            the number of threads that read the journal while it is replayed on recovery,
+     *            0 (the default) replays it on a single thread
+     */
+    public void setJournalReplayThreads(int journalReplayThreads) {
+        this.letter.setJournalReplayThreads(journalReplayThreads);
+    }
+
+    public boolean isLazyRecovery() {
+        return this.letter.isLazyRecovery();
+    }
+
+    /**
+     * @param lazyRecovery
+     *            when true the journal is replayed in the background on start and destinations
+     *            become available as their journal records are replayed
+     */
+    public void setLazyRecovery(boolean lazyRecovery) {
+        this.letter.setLazyRecovery(lazyRecovery);
+    }
+
     /**
      * Get the ignoreMissingJournalfiles
      *
@@ -589,6 +656,30 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         this.letter.setPreallocationStrategy(preallocationStrategy);
     }
 
+    public String getJournalAppenderType() {
+        return letter.getJournalAppenderType();
+    }
+
+    /**
+     * @param journalAppenderType
+     *      the journal appender to use, one of DEFAULT, CALLER_BUFFERING or GROUP_COMMIT
+     */
+    public void setJournalAppenderType(String journalAppenderType) {
+        this.letter.setJournalAppenderType(journalAppenderType);
+    }
+
+    public long getJournalMappedReadBudget() {
+        return letter.getJournalMappedReadBudget();
+    }
+
+    /**
+     * @param journalMappedReadBudget
+     *      the number of bytes of journal data files that may be memory mapped for reads, 0 disables mapped reads
+     */
+    public void setJournalMappedReadBudget(long journalMappedReadBudget) {
+        this.letter.setJournalMappedReadBudget(journalMappedReadBudget);
+    }
+
     public boolean isArchiveDataLogs() {
         return letter.isArchiveDataLogs();
     }
@@ -749,6 +840,43 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         letter.setEnableAckCompaction(enableAckCompaction);
     }
 
+    /**
+     * Returns whether journal compaction is enabled
+     *
+     * @return enableJournalCompaction
+     */
+    public boolean isEnableJournalCompaction() {
+        return letter.isEnableJournalCompaction();
+    }
+
+    /**
+     * Configure if the messages of sparse journal data files are forwarded on cleanup
+     *
+     * @param enableJournalCompaction
+     */
+    public void setEnableJournalCompaction(boolean enableJournalCompaction) {
+        letter.setEnableJournalCompaction(enableJournalCompaction);
+    }
+
+    public int getJournalCompactionThreshold() {
+        return letter.getJournalCompactionThreshold();
+    }
+
+    /**
+     * @param journalCompactionThreshold
+     *      the utilization percentage below which journal data files are compacted
+     */
+    public void setJournalCompactionThreshold(int journalCompactionThreshold) {
+        letter.setJournalCompactionThreshold(journalCompactionThreshold);
+    }
+
+    /**
+     * @return the percentage of each journal data file that holds messages still referenced by the index
+     */
+    public SortedMap<Integer, Integer> getJournalFileUtilization() throws IOException {
+        return letter.getJournalFileUtilization();
+    }
+
     /**
      * Whether non-blocking subscription statistics have been enabled
      *
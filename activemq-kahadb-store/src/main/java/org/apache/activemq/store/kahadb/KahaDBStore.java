@@ -33,6 +33,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -81,7 +82,7 @@ import org.apache.activemq.store.kahadb.data.KahaSubscriptionCommand;
 import org.apache.activemq.store.kahadb.data.KahaUpdateMessageCommand;
 import org.apache.activemq.store.kahadb.disk.journal.Location;
 import org.apache.activemq.store.kahadb.disk.page.Transaction;
-import org.apache.activemq.store.kahadb.disk.util.SequenceSet;
+import org.apache.activemq.store.kahadb.disk.util.LongSequenceSet;
 import org.apache.activemq.store.kahadb.scheduler.JobSchedulerStoreImpl;
 import org.apache.activemq.usage.MemoryUsage;
 import org.apache.activemq.usage.SystemUsage;
@@ -120,6 +121,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
     private int maxAsyncJobs = MAX_ASYNC_JOBS;
     private final KahaDBTransactionStore transactionStore;
     private TransactionIdTransformer transactionIdTransformer;
+    private final Set<String> deferredRecoveredDestinations = new HashSet<String>();
 
     public KahaDBStore() {
         this.transactionStore = new KahaDBTransactionStore(this);
@@ -618,11 +620,11 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
             // operations... but for now we must
             // externally synchronize...
             Location location;
-            indexLock.writeLock().lock();
+            DestinationIndexLock lock = lockIndex(dest);
             try {
                 location = findMessageLocation(key, dest);
             } finally {
-                indexLock.writeLock().unlock();
+                lock.unlock();
             }
             if (location == null) {
                 return null;
@@ -633,7 +635,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
 
         @Override
         public boolean isEmpty() throws IOException {
-            indexLock.writeLock().lock();
+            DestinationIndexLock lock = lockIndex(dest);
             try {
                 return pageFile.tx().execute(new Transaction.CallableClosure<Boolean, IOException>() {
                     @Override
@@ -645,7 +647,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                     }
                 });
             } finally {
-                indexLock.writeLock().unlock();
+                lock.unlock();
             }
         }
 
@@ -745,7 +747,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
         @Override
         public void resetBatching() {
             if (pageFile.isLoaded()) {
-                indexLock.writeLock().lock();
+                DestinationIndexLock lock = lockIndex(dest);
                 try {
                     pageFile.tx().execute(new Transaction.Closure<Exception>() {
                         @Override
@@ -758,14 +760,14 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                 } catch (Exception e) {
                     LOG.error("Failed to reset batching",e);
                 } finally {
-                    indexLock.writeLock().unlock();
+                    lock.unlock();
                 }
             }
         }
 
         @Override
         public void setBatch(final MessageId identity) throws IOException {
-            indexLock.writeLock().lock();
+            DestinationIndexLock lock = lockIndex(dest);
             try {
                 pageFile.tx().execute(new Transaction.Closure<IOException>() {
                     @Override
@@ -780,7 +782,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                     }
                 });
             } finally {
-                indexLock.writeLock().unlock();
+                lock.unlock();
             }
         }
 
@@ -1025,7 +1027,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                 return (int)this.messageStoreSubStats.getMessageCount(subscriptionKey).getCount();
             } else {
 
-                indexLock.writeLock().lock();
+                DestinationIndexLock lock = lockIndex(dest);
                 try {
                     return pageFile.tx().execute(new Transaction.CallableClosure<Integer, IOException>() {
                         @Override
@@ -1041,7 +1043,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                         }
                     });
                 } finally {
-                    indexLock.writeLock().unlock();
+                    lock.unlock();
                 }
             }
         }
@@ -1053,7 +1055,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
             if (isEnableSubscriptionStatistics()) {
                 return this.messageStoreSubStats.getMessageSize(subscriptionKey).getTotalSize();
             } else {
-                indexLock.writeLock().lock();
+                DestinationIndexLock lock = lockIndex(dest);
                 try {
                     return pageFile.tx().execute(new Transaction.CallableClosure<Long, IOException>() {
                         @Override
@@ -1069,7 +1071,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                         }
                     });
                 } finally {
-                    indexLock.writeLock().unlock();
+                    lock.unlock();
                 }
             }
         }
@@ -1127,13 +1129,13 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                     public void execute(Transaction tx) throws Exception {
                         StoredDestination sd = getStoredDestination(dest, tx);
                         LastAck cursorPos = getLastAck(tx, sd, subscriptionKey);
-                        SequenceSet subAckPositions = getSequenceSet(tx, sd, subscriptionKey);
+                        LongSequenceSet subAckPositions = getSequenceSet(tx, sd, subscriptionKey);
                         //If we have ackPositions tracked then compare the first one as individual acknowledge mode
                         //may have bumped lastAck even though there are earlier messages to still consume
                         if (subAckPositions != null && !subAckPositions.isEmpty()
-                                && subAckPositions.getHead().getFirst() < cursorPos.lastAckedSequence) {
+                                && subAckPositions.first() < cursorPos.lastAckedSequence) {
                             //we have messages to ack before lastAckedSequence
-                            sd.orderIndex.setBatch(tx, subAckPositions.getHead().getFirst() - 1);
+                            sd.orderIndex.setBatch(tx, subAckPositions.first() - 1);
                         } else {
                             subAckPositions = null;
                             sd.orderIndex.setBatch(tx, cursorPos);
@@ -1175,7 +1177,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                         StoredDestination sd = getStoredDestination(dest, tx);
                         sd.orderIndex.resetCursorPosition();
                         MessageOrderCursor moc = sd.subscriptionCursors.get(subscriptionKey);
-                        SequenceSet subAckPositions = null;
+                        LongSequenceSet subAckPositions = null;
                         if (moc == null) {
                             LastAck pos = getLastAck(tx, sd, subscriptionKey);
                             if (pos == null) {
@@ -1186,9 +1188,9 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                             //If we have ackPositions tracked then compare the first one as individual acknowledge mode
                             //may have bumped lastAck even though there are earlier messages to still consume
                             if (subAckPositions != null && !subAckPositions.isEmpty()
-                                    && subAckPositions.getHead().getFirst() < pos.lastAckedSequence) {
+                                    && subAckPositions.first() < pos.lastAckedSequence) {
                                 //we have messages to ack before lastAckedSequence
-                                sd.orderIndex.setBatch(tx, subAckPositions.getHead().getFirst() - 1);
+                                sd.orderIndex.setBatch(tx, subAckPositions.first() - 1);
                             } else {
                                 subAckPositions = null;
                                 sd.orderIndex.setBatch(tx, pos);
@@ -1235,7 +1237,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
         public void resetBatching(String clientId, String subscriptionName) {
             try {
                 final String subscriptionKey = subscriptionKey(clientId, subscriptionName);
-                indexLock.writeLock().lock();
+                DestinationIndexLock lock = lockIndex(dest);
                 try {
                     pageFile.tx().execute(new Transaction.Closure<IOException>() {
                         @Override
@@ -1245,7 +1247,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                         }
                     });
                 }finally {
-                    indexLock.writeLock().unlock();
+                    lock.unlock();
                 }
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -1265,6 +1267,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
     @Override
     public MessageStore createQueueMessageStore(ActiveMQQueue destination) throws IOException {
         String key = key(convert(destination));
+        awaitRecoveredDestination(key);
         MessageStore store = storeCache.get(key(convert(destination)));
         if (store == null) {
             final MessageStore queueStore = this.transactionStore.proxy(new KahaDBMessageStore(destination));
@@ -1280,6 +1283,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
     @Override
     public TopicMessageStore createTopicMessageStore(ActiveMQTopic destination) throws IOException {
         String key = key(convert(destination));
+        awaitRecoveredDestination(key);
         MessageStore store = storeCache.get(key(convert(destination)));
         if (store == null) {
             final TopicMessageStore topicStore = this.transactionStore.proxy(new KahaDBTopicMessageStore(destination));
@@ -1331,6 +1335,10 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
                         for (Iterator<Entry<String, StoredDestination>> iterator = metadata.destinations.iterator(tx); iterator
                                 .hasNext();) {
                             Entry<String, StoredDestination> entry = iterator.next();
+                            // destinations still being recovered are added once they are recovered
+                            if (isRecoveringDestination(entry.getKey())) {
+                                continue;
+                            }
                             //Removing isEmpty topic check - see AMQ-5875
                             rc.add(convert(entry.getKey()));
                         }
@@ -1345,6 +1353,81 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
         }
     }
 
+    @Override
+    protected void destinationRecovered(String key) {
+        // add the destination that was left out of getDestinations() when the broker started
+        if (brokerService == null) {
+            return;
+        }
+        // the recovery must not wait for the broker: a client creating a recovering destination
+        // holds the destinations lock of its region while it waits for the recovery
+        synchronized (deferredRecoveredDestinations) {
+            if (!deferredRecoveredDestinations.isEmpty()) {
+                deferredRecoveredDestinations.add(key);
+                return;
+            }
+            deferredRecoveredDestinations.add(key);
+        }
+        try {
+            brokerService.getTaskRunnerFactory().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!brokerService.waitUntilStarted()) {
+                        synchronized (deferredRecoveredDestinations) {
+                            deferredRecoveredDestinations.clear();
+                        }
+                        return;
+                    }
+                    while (true) {
+                        List<String> keys;
+                        synchronized (deferredRecoveredDestinations) {
+                            keys = new ArrayList<String>(deferredRecoveredDestinations);
+                            if (keys.isEmpty()) {
+                                return;
+                            }
+                        }
+                        for (String key : keys) {
+                            addRecoveredDestination(key);
+                        }
+                        synchronized (deferredRecoveredDestinations) {
+                            deferredRecoveredDestinations.removeAll(keys);
+                        }
+                    }
+                }
+            }, "ActiveMQ KahaDB Recovered Destinations");
+        } catch (RejectedExecutionException e) {
+            // the broker is stopping
+            LOG.debug("Recovered destination {} not added", key, e);
+            synchronized (deferredRecoveredDestinations) {
+                deferredRecoveredDestinations.clear();
+            }
+        }
+    }
+
+    private void addRecoveredDestination(final String key) {
+        ActiveMQDestination destination = convert(key);
+        try {
+            boolean stored;
+            indexLock.writeLock().lock();
+            try {
+                stored = pageFile.tx().execute(new Transaction.CallableClosure<Boolean, IOException>() {
+                    @Override
+                    public Boolean execute(Transaction tx) throws IOException {
+                        return metadata.destinations.containsKey(tx, key);
+                    }
+                });
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            // the replay may have removed it
+            if (stored) {
+                brokerService.getDestination(destination);
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to add recovered destination {}", destination, e);
+        }
+    }
+
     @Override
     public long getLastMessageBrokerSequenceId() throws IOException {
         return 0;
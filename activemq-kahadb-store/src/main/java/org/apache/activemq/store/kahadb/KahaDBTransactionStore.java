@@ -273,6 +273,7 @@ public class KahaDBTransactionStore implements TransactionStore {
 
     @Override
     public synchronized void recover(TransactionRecoveryListener listener) throws IOException {
+        theStore.awaitRecoveredTransactions();
         for (Map.Entry<TransactionId, List<Operation>> entry : theStore.preparedTransactions.entrySet()) {
             XATransactionId xid = (XATransactionId) entry.getKey();
             ArrayList<Message> messageList = new ArrayList<>();
@@ -47,17 +47,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.activemq.ActiveMQMessageAuditNoSync;
@@ -101,6 +108,7 @@ import org.apache.activemq.store.kahadb.disk.page.Page;
 import org.apache.activemq.store.kahadb.disk.page.PageFile;
 import org.apache.activemq.store.kahadb.disk.page.Transaction;
 import org.apache.activemq.store.kahadb.disk.util.LocationMarshaller;
+import org.apache.activemq.store.kahadb.disk.util.LongSequenceSet;
 import org.apache.activemq.store.kahadb.disk.util.LongMarshaller;
 import org.apache.activemq.store.kahadb.disk.util.Marshaller;
 import org.apache.activemq.store.kahadb.disk.util.Sequence;
@@ -136,10 +144,12 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     static final int OPEN_STATE = 2;
     static final long NOT_ACKED = -1;
 
-    static final int VERSION = 7;
+    static final int VERSION = 8;
 
     static final byte COMPACTED_JOURNAL_FILE = DataFile.STANDARD_LOG_FILE + 1;
 
+    static final int JOURNAL_COMPACTION_BATCH_SIZE = 100;
+
     protected class Metadata {
         protected Page<Metadata> page;
         protected int state;
@@ -278,10 +288,14 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     int setIndexWriteBatchSize = PageFile.DEFAULT_WRITE_BATCH_SIZE;
     private String preallocationScope = Journal.PreallocationScope.ENTIRE_JOURNAL.name();
     private String preallocationStrategy = Journal.PreallocationStrategy.SPARSE_FILE.name();
+    private String journalAppenderType = Journal.JournalAppenderType.DEFAULT.name();
+    private long journalMappedReadBudget = 0;
 
     protected AtomicBoolean opened = new AtomicBoolean();
     private boolean ignoreMissingJournalfiles = false;
     private int indexCacheSize = 10000;
+    private long indexOffHeapCacheSize = 0;
+    private int indexLockStripes = 0;
     private boolean checkForCorruptJournalFiles = false;
     protected PurgeRecoveredXATransactionStrategy purgeRecoveredXATransactionStrategy = PurgeRecoveredXATransactionStrategy.NEVER;
     private boolean checksumJournalFiles = true;
@@ -293,12 +307,26 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     private boolean enableIndexRecoveryFile = true;
     private boolean enableIndexPageCaching = true;
     ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private boolean incrementalCheckpoint = false;
+    private int journalReplayThreads = 0;
+    private boolean lazyRecovery = false;
+    // Destinations a lazy recovery has still to replay journal records of, with the location of
+    // their last record, a null location waits for the whole journal to be replayed.
+    private final Map<String, Location> recoveringDestinations = new HashMap<>();
+    // Guarded by recoveringDestinations.
+    private boolean scanningRecoveringDestinations;
+    private boolean lazyRecoveryInProgress;
+    private IOException lazyRecoveryFailure;
+    private boolean recoveringXATransactions;
 
     private boolean enableAckCompaction = true;
     private int compactAcksAfterNoGC = 10;
     private boolean compactAcksIgnoresStoreGrowth = false;
     private int checkPointCyclesWithNoGC;
     private int journalLogOnLastCompactionCheck;
+    private boolean enableJournalCompaction = false;
+    private int journalCompactionThreshold = 25;
+    private final AtomicBoolean journalCompactionScheduled = new AtomicBoolean();
     private boolean enableSubscriptionStatistics = false;
 
     //only set when using JournalDiskSyncStrategy.PERIODIC
@@ -371,6 +399,12 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                             }
                         }
                     }
+                    if (metadata.version < VERSION) {
+                        // record the new version with the upgraded indexes so that a crash before the
+                        // next checkpoint does not upgrade them again, nor do destinations added later
+                        metadata.version = VERSION;
+                        tx.store(metadata.page, metadataMarshaller, true);
+                    }
                 }
             });
             pageFile.flush();
@@ -483,7 +517,11 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 pageFile = null;
                 loadPageFile();
             }
-            recover();
+            if (lazyRecovery) {
+                startLazyRecovery();
+            } else {
+                recover();
+            }
             startCheckpoint();
         }
     }
@@ -512,6 +550,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
     public void close() throws IOException, InterruptedException {
         if (opened.compareAndSet(true, false)) {
+            awaitLazyRecovery();
             checkpointLock.writeLock().lock();
             try {
                 if (metadata.page != null) {
@@ -706,31 +745,35 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             Location recoveryPosition = requiresJournalReplay ? journal.getNextLocation(null) : lastIndoubtPosition;
             if (recoveryPosition != null) {
                 int redoCounter = 0;
-                int dataFileRotationTracker = recoveryPosition.getDataFileId();
                 LOG.info("Recovering from the journal @" + recoveryPosition);
-                while (recoveryPosition != null) {
-                    try {
-                        JournalCommand<?> message = load(recoveryPosition);
-                        metadata.lastUpdate = recoveryPosition;
-                        process(message, recoveryPosition, lastIndoubtPosition);
-                        redoCounter++;
-                    } catch (IOException failedRecovery) {
-                        if (isIgnoreMissingJournalfiles()) {
-                            LOG.debug("Failed to recover data at position:" + recoveryPosition, failedRecovery);
-                            // track this dud location
-                            journal.corruptRecoveryLocation(recoveryPosition);
-                        } else {
-                            throw new IOException("Failed to recover data at position:" + recoveryPosition, failedRecovery);
+                if (journalReplayThreads > 1) {
+                    redoCounter = replayJournalInParallel(recoveryPosition, lastIndoubtPosition);
+                } else {
+                    int dataFileRotationTracker = recoveryPosition.getDataFileId();
+                    while (recoveryPosition != null) {
+                        try {
+                            JournalCommand<?> message = load(recoveryPosition);
+                            metadata.lastUpdate = recoveryPosition;
+                            process(message, recoveryPosition, lastIndoubtPosition);
+                            redoCounter++;
+                        } catch (IOException failedRecovery) {
+                            if (isIgnoreMissingJournalfiles()) {
+                                LOG.debug("Failed to recover data at position:" + recoveryPosition, failedRecovery);
+                                // track this dud location
+                                journal.corruptRecoveryLocation(recoveryPosition);
+                            } else {
+                                throw new IOException("Failed to recover data at position:" + recoveryPosition, failedRecovery);
+                            }
+                        }
+                        recoveryPosition = journal.getNextLocation(recoveryPosition);
+                        // hold on to the minimum number of open files during recovery
+                        if (recoveryPosition != null && dataFileRotationTracker != recoveryPosition.getDataFileId()) {
+                            dataFileRotationTracker = recoveryPosition.getDataFileId();
+                            journal.cleanup();
+                        }
+                        if (LOG.isInfoEnabled() && redoCounter % 100000 == 0) {
+                            LOG.info("@" + recoveryPosition + ", " + redoCounter + " entries recovered ..");
                         }
-                    }
-                    recoveryPosition = journal.getNextLocation(recoveryPosition);
-                    // hold on to the minimum number of open files during recovery
-                    if (recoveryPosition != null && dataFileRotationTracker != recoveryPosition.getDataFileId()) {
-                        dataFileRotationTracker = recoveryPosition.getDataFileId();
-                        journal.cleanup();
-                    }
-                    if (LOG.isInfoEnabled() && redoCounter % 100000 == 0) {
-                        LOG.info("@" + recoveryPosition + ", " + redoCounter + " entries recovered ..");
                     }
                 }
                 if (LOG.isInfoEnabled()) {
@@ -747,53 +790,570 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 }
             });
 
-            // rollback any recovered inflight local transactions, and discard any inflight XA transactions.
-            Set<TransactionId> toRollback = new HashSet<>();
-            Set<TransactionId> toDiscard = new HashSet<>();
-            synchronized (inflightTransactions) {
-                for (Iterator<TransactionId> it = inflightTransactions.keySet().iterator(); it.hasNext(); ) {
-                    TransactionId id = it.next();
-                    if (id.isLocalTransaction()) {
-                        toRollback.add(id);
+            recoverInflightTransactions(null);
+
+        } finally {
+            this.indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replays the journal in the background. The journal is scanned once to find the
+     * destinations that have records to replay; each of them becomes available once the
+     * replay is past its last record, until then creating its message store waits. Until
+     * the scan is done every destination is considered to be recovering.
+     * <p>
+     * Index updates that never made it to the journal are undone before new records can be
+     * appended, and checkpoints are deferred until the whole journal is replayed.
+     */
+    private void startLazyRecovery() throws IOException {
+        final Location lastIndoubtPosition;
+        final Location recoveryPosition;
+        final Location journalEnd;
+        final Set<String> storedKeys;
+        this.indexLock.writeLock().lock();
+        try {
+            boolean requiresJournalReplay = recoverProducerAudit();
+            requiresJournalReplay |= recoverAckMessageFileMap();
+            lastIndoubtPosition = getRecoveryPosition();
+            recoveryPosition = requiresJournalReplay ? journal.getNextLocation(null) : lastIndoubtPosition;
+
+            // We may have to undo some index updates.
+            pageFile.tx().execute(new Transaction.Closure<IOException>() {
+                @Override
+                public void execute(Transaction tx) throws IOException {
+                    recoverIndex(tx);
+                }
+            });
+
+            if (recoveryPosition == null) {
+                return;
+            }
+            // records appended from here on are added to the index as they are written
+            journalEnd = journal.getLastAppendLocation();
+            storedKeys = new HashSet<>(storedDestinations.keySet());
+        } finally {
+            this.indexLock.writeLock().unlock();
+        }
+
+        synchronized (recoveringDestinations) {
+            recoveringDestinations.clear();
+            scanningRecoveringDestinations = true;
+            lazyRecoveryInProgress = true;
+            lazyRecoveryFailure = null;
+        }
+        LOG.info("Recovering the journal @" + recoveryPosition + " in the background, destinations are available once their journal records are replayed");
+
+        Thread recoveryThread = new Thread("ActiveMQ Journal Lazy Recovery") {
+            @Override
+            public void run() {
+                replayLazily(recoveryPosition, journalEnd, lastIndoubtPosition, storedKeys);
+                if (!isLazyRecoveryIncomplete()) {
+                    lazyRecoveryCompleted();
+                }
+            }
+        };
+        recoveryThread.setDaemon(true);
+        recoveryThread.start();
+    }
+
+    /**
+     * Finds the destinations that are updated by the journal records to replay and the
+     * location of the last record of each, the destinations of transactions that are not
+     * completed in the journal wait for the whole replay.
+     */
+    private void scanRecoveringDestinations(Location recoveryPosition, Location journalEnd, final Location lastIndoubtPosition,
+            TreeMap<Location, List<String>> verifications, Set<TransactionId> recoveredTransactions) throws IOException {
+        final Map<String, Location> lastUpdates = new HashMap<>();
+        final Map<TransactionId, Set<String>> transactionDestinations = new HashMap<>();
+        final AtomicBoolean xaTransactions = new AtomicBoolean();
+        for (Location location = recoveryPosition; location != null && location.compareTo(journalEnd) < 0; location = journal.getNextLocation(location)) {
+            if (lastIndoubtPosition == null || location.compareTo(lastIndoubtPosition) < 0) {
+                // only the producer audit is recovered from these
+                continue;
+            }
+            JournalCommand<?> data;
+            try {
+                data = load(location);
+            } catch (IOException e) {
+                // the replay deals with records that cannot be read
+                continue;
+            }
+            final Location current = location;
+            data.visit(new Visitor() {
+                @Override
+                public void visit(KahaAddMessageCommand command) throws IOException {
+                    update(command.getDestination(), command.hasTransactionInfo() ? command.getTransactionInfo() : null);
+                }
+
+                @Override
+                public void visit(KahaRemoveMessageCommand command) throws IOException {
+                    update(command.getDestination(), command.hasTransactionInfo() ? command.getTransactionInfo() : null);
+                }
+
+                @Override
+                public void visit(KahaUpdateMessageCommand command) throws IOException {
+                    update(command.getMessage().getDestination(), null);
+                }
+
+                @Override
+                public void visit(KahaSubscriptionCommand command) throws IOException {
+                    update(command.getDestination(), null);
+                }
+
+                @Override
+                public void visit(KahaRemoveDestinationCommand command) throws IOException {
+                    update(command.getDestination(), null);
+                }
+
+                @Override
+                public void visit(KahaPrepareCommand command) throws IOException {
+                    xaTransactions.set(true);
+                }
+
+                @Override
+                public void visit(KahaCommitCommand command) throws IOException {
+                    completed(command.getTransactionInfo());
+                }
+
+                @Override
+                public void visit(KahaRollbackCommand command) throws IOException {
+                    completed(command.getTransactionInfo());
+                }
+
+                private void update(KahaDestination destination, KahaTransactionInfo transactionInfo) {
+                    if (transactionInfo == null) {
+                        lastUpdates.put(key(destination), current);
                     } else {
-                        toDiscard.add(id);
+                        TransactionId id = TransactionIdConversion.convert(transactionInfo);
+                        Set<String> keys = transactionDestinations.get(id);
+                        if (keys == null) {
+                            keys = new HashSet<>();
+                            transactionDestinations.put(id, keys);
+                        }
+                        keys.add(key(destination));
                     }
                 }
-                for (TransactionId tx: toRollback) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("rolling back recovered indoubt local transaction " + tx);
+
+                private void completed(KahaTransactionInfo transactionInfo) {
+                    Set<String> keys = transactionDestinations.remove(TransactionIdConversion.convert(transactionInfo));
+                    if (keys != null) {
+                        for (String key : keys) {
+                            lastUpdates.put(key, current);
+                        }
                     }
-                    store(new KahaRollbackCommand().setTransactionInfo(TransactionIdConversion.convertToLocal(tx)), false, null, null);
                 }
-                for (TransactionId tx: toDiscard) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("discarding recovered in-flight XA transaction " + tx);
+            });
+        }
+
+        for (Entry<TransactionId, Set<String>> entry : transactionDestinations.entrySet()) {
+            if (entry.getKey().isXATransaction()) {
+                xaTransactions.set(true);
+            }
+            for (String key : entry.getValue()) {
+                lastUpdates.put(key, null);
+            }
+        }
+        recoveredTransactions.addAll(transactionDestinations.keySet());
+
+        for (Entry<String, Location> entry : lastUpdates.entrySet()) {
+            if (entry.getValue() != null) {
+                List<String> keys = verifications.get(entry.getValue());
+                if (keys == null) {
+                    keys = new ArrayList<>();
+                    verifications.put(entry.getValue(), keys);
+                }
+                keys.add(entry.getKey());
+            }
+        }
+        synchronized (recoveringDestinations) {
+            recoveringDestinations.putAll(lastUpdates);
+            recoveringXATransactions = xaTransactions.get();
+            scanningRecoveringDestinations = false;
+            recoveringDestinations.notifyAll();
+        }
+    }
+
+    private void replayLazily(Location recoveryPosition, Location journalEnd, Location lastIndoubtPosition, Set<String> storedKeys) {
+        long start = System.currentTimeMillis();
+        try {
+            TreeMap<Location, List<String>> verifications = new TreeMap<>();
+            Set<TransactionId> recoveredTransactions = new HashSet<>();
+            scanRecoveringDestinations(recoveryPosition, journalEnd, lastIndoubtPosition, verifications, recoveredTransactions);
+
+            // the stored destinations without journal records to replay are available now
+            List<String> available = new ArrayList<>();
+            int recovering;
+            synchronized (recoveringDestinations) {
+                for (String key : storedKeys) {
+                    if (!recoveringDestinations.containsKey(key)) {
+                        available.add(key);
                     }
-                    inflightTransactions.remove(tx);
                 }
+                recovering = recoveringDestinations.size();
+            }
+            LOG.info("Journal scanned in " + ((System.currentTimeMillis() - start) / 1000.0f) + " seconds, " + recovering
+                    + " destinations are available once their journal records are replayed");
+            for (String key : available) {
+                destinationRecovered(key);
             }
 
-            synchronized (preparedTransactions) {
-                Set<TransactionId> txIds = new LinkedHashSet<TransactionId>(preparedTransactions.keySet());
-                for (TransactionId txId : txIds) {
-                    switch (purgeRecoveredXATransactionStrategy){
-                        case NEVER:
-                            LOG.warn("Recovered prepared XA TX: [{}]", txId);
-                            break;
-                        case COMMIT:
-                            store(new KahaCommitCommand().setTransactionInfo(TransactionIdConversion.convert(txId)), false, null, null);
-                            LOG.warn("Recovered and Committing prepared XA TX: [{}]", txId);
-                            break;
-                        case ROLLBACK:
-                            store(new KahaRollbackCommand().setTransactionInfo(TransactionIdConversion.convert(txId)), false, null, null);
-                            LOG.warn("Recovered and Rolling Back prepared XA TX: [{}]", txId);
-                            break;
+            int redoCounter = 0;
+            int dataFileRotationTracker = recoveryPosition.getDataFileId();
+            Location location = recoveryPosition;
+            // records appended since the broker started are already in the index
+            while (location != null && location.compareTo(journalEnd) < 0) {
+                // lock the index one record at a time, so updates of recovered destinations go on
+                this.indexLock.writeLock().lock();
+                try {
+                    JournalCommand<?> message = load(location);
+                    if (metadata.lastUpdate == null || metadata.lastUpdate.compareTo(location) < 0) {
+                        metadata.lastUpdate = location;
+                    }
+                    process(message, location, lastIndoubtPosition);
+                    redoCounter++;
+                } catch (IOException failedRecovery) {
+                    if (isIgnoreMissingJournalfiles()) {
+                        LOG.debug("Failed to recover data at position:" + location, failedRecovery);
+                        // track this dud location
+                        journal.corruptRecoveryLocation(location);
+                    } else {
+                        throw new IOException("Failed to recover data at position:" + location, failedRecovery);
+                    }
+                } finally {
+                    this.indexLock.writeLock().unlock();
+                }
+
+                if (!verifications.isEmpty() && verifications.firstKey().compareTo(location) <= 0) {
+                    List<String> recovered = new ArrayList<>();
+                    synchronized (recoveringDestinations) {
+                        while (!verifications.isEmpty() && verifications.firstKey().compareTo(location) <= 0) {
+                            for (String key : verifications.pollFirstEntry().getValue()) {
+                                recoveringDestinations.remove(key);
+                                recovered.add(key);
+                            }
+                        }
+                        recoveringDestinations.notifyAll();
+                    }
+                    for (String key : recovered) {
+                        destinationRecovered(key);
                     }
                 }
+
+                location = journal.getNextLocation(location);
+                // hold on to the minimum number of open files during recovery
+                if (location != null && dataFileRotationTracker != location.getDataFileId()) {
+                    dataFileRotationTracker = location.getDataFileId();
+                    journal.cleanup();
+                }
+                if (LOG.isInfoEnabled() && redoCounter % 100000 == 0) {
+                    LOG.info("@" + location + ", " + redoCounter + " entries recovered ..");
+                }
             }
 
+            this.indexLock.writeLock().lock();
+            try {
+                recoverInflightTransactions(recoveredTransactions);
+            } finally {
+                this.indexLock.writeLock().unlock();
+            }
+
+            // destinations of transactions left open in the journal
+            List<String> recovered;
+            synchronized (recoveringDestinations) {
+                recovered = new ArrayList<>(recoveringDestinations.keySet());
+                recoveringDestinations.clear();
+                lazyRecoveryInProgress = false;
+                recoveringDestinations.notifyAll();
+            }
+            for (String key : recovered) {
+                destinationRecovered(key);
+            }
+            if (LOG.isInfoEnabled()) {
+                long end = System.currentTimeMillis();
+                LOG.info("Recovery replayed " + redoCounter + " operations from the journal in the background in " + ((end - start) / 1000.0f) + " seconds.");
+            }
+        } catch (Throwable e) {
+            LOG.error("Recovery of the journal failed", e);
+            IOException failure = IOExceptionSupport.create(e);
+            synchronized (recoveringDestinations) {
+                lazyRecoveryFailure = failure;
+                lazyRecoveryInProgress = false;
+                scanningRecoveringDestinations = false;
+                recoveringDestinations.notifyAll();
+            }
+            if (brokerService != null) {
+                brokerService.handleIOException(failure);
+            }
+        }
+    }
+
+    /**
+     * Called by a lazy recovery as soon as a destination that was not available when the
+     * store started is, either because the journal scan found no records of it to replay
+     * or because they have been replayed.
+     *
+     * @param key
+     *      the key of the recovered destination
+     */
+    protected void destinationRecovered(String key) {
+    }
+
+    /**
+     * Called once a lazy recovery has replayed the whole journal.
+     */
+    protected void lazyRecoveryCompleted() {
+    }
+
+    private boolean isLazyRecoveryIncomplete() {
+        synchronized (recoveringDestinations) {
+            return lazyRecoveryInProgress || lazyRecoveryFailure != null;
+        }
+    }
+
+    protected boolean isRecoveringDestination(String key) {
+        synchronized (recoveringDestinations) {
+            return scanningRecoveringDestinations || recoveringDestinations.containsKey(key);
+        }
+    }
+
+    /**
+     * Waits until a lazy recovery has replayed the journal records of a destination.
+     */
+    protected void awaitRecoveredDestination(String key) throws IOException {
+        synchronized (recoveringDestinations) {
+            while (scanningRecoveringDestinations || recoveringDestinations.containsKey(key)) {
+                if (lazyRecoveryFailure != null) {
+                    throw IOExceptionSupport.create("Recovery of destination " + key + " failed", lazyRecoveryFailure);
+                }
+                try {
+                    recoveringDestinations.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until a lazy recovery has recovered the prepared XA transactions of the journal.
+     */
+    void awaitRecoveredTransactions() throws IOException {
+        synchronized (recoveringDestinations) {
+            while (scanningRecoveringDestinations) {
+                try {
+                    recoveringDestinations.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (recoveringXATransactions) {
+                awaitLazyRecovery();
+            }
+        }
+    }
+
+    private void awaitLazyRecovery() throws InterruptedIOException {
+        synchronized (recoveringDestinations) {
+            while (lazyRecoveryInProgress) {
+                try {
+                    recoveringDestinations.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param recoveredTransactions
+     *      the transactions found in the replayed journal, or null when no transaction was
+     *      started since the journal was replayed
+     */
+    private void recoverInflightTransactions(Set<TransactionId> recoveredTransactions) throws IOException {
+        // rollback any recovered inflight local transactions, and discard any inflight XA transactions.
+        Set<TransactionId> toRollback = new HashSet<>();
+        Set<TransactionId> toDiscard = new HashSet<>();
+        synchronized (inflightTransactions) {
+            for (Iterator<TransactionId> it = inflightTransactions.keySet().iterator(); it.hasNext(); ) {
+                TransactionId id = it.next();
+                if (recoveredTransactions != null && !recoveredTransactions.contains(id)) {
+                    continue;
+                }
+                if (id.isLocalTransaction()) {
+                    toRollback.add(id);
+                } else {
+                    toDiscard.add(id);
+                }
+            }
+            for (TransactionId tx: toRollback) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("rolling back recovered indoubt local transaction " + tx);
+                }
+                store(new KahaRollbackCommand().setTransactionInfo(TransactionIdConversion.convertToLocal(tx)), false, null, null);
+            }
+            for (TransactionId tx: toDiscard) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("discarding recovered in-flight XA transaction " + tx);
+                }
+                inflightTransactions.remove(tx);
+            }
+        }
+
+        synchronized (preparedTransactions) {
+            Set<TransactionId> txIds = new LinkedHashSet<TransactionId>(preparedTransactions.keySet());
+            if (recoveredTransactions != null) {
+                txIds.retainAll(recoveredTransactions);
+            }
+            for (TransactionId txId : txIds) {
+                switch (purgeRecoveredXATransactionStrategy){
+                    case NEVER:
+                        LOG.warn("Recovered prepared XA TX: [{}]", txId);
+                        break;
+                    case COMMIT:
+                        store(new KahaCommitCommand().setTransactionInfo(TransactionIdConversion.convert(txId)), false, null, null);
+                        LOG.warn("Recovered and Committing prepared XA TX: [{}]", txId);
+                        break;
+                    case ROLLBACK:
+                        store(new KahaRollbackCommand().setTransactionInfo(TransactionIdConversion.convert(txId)), false, null, null);
+                        LOG.warn("Recovered and Rolling Back prepared XA TX: [{}]", txId);
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the journal from the recovery position with the records of each data file
+     * read and decoded by a pool of journalReplayThreads, a few data files ahead of the
+     * index. The index updates are applied on the calling thread in journal order, as
+     * updates of different destinations share transactions, the producer audit and the
+     * last update location.
+     *
+     * @return the number of replayed journal records
+     */
+    private int replayJournalInParallel(final Location recoveryPosition, final Location lastIndoubtPosition) throws IOException {
+        final List<Integer> dataFileIds = new ArrayList<>(new TreeMap<>(journal.getFileMap()).tailMap(recoveryPosition.getDataFileId()).keySet());
+        ExecutorService executor = Executors.newFixedThreadPool(journalReplayThreads, new ThreadFactory() {
+            private final AtomicLong workerCount = new AtomicLong();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ActiveMQ Journal Replay Worker " + workerCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        int redoCounter = 0;
+        int progress = 0;
+        LinkedList<Future<List<ReplayRecord>>> dataFilesRead = new LinkedList<>();
+        int nextDataFile = 0;
+        try {
+            for (int i = 0; i < dataFileIds.size(); i++) {
+                // keep the workers a few data files ahead of the index updates, so the
+                // decoded records held in memory are bounded
+                while (nextDataFile < dataFileIds.size() && nextDataFile <= i + journalReplayThreads) {
+                    final Location start = nextDataFile == 0 ? recoveryPosition : null;
+                    final int dataFileId = dataFileIds.get(nextDataFile);
+                    final Integer nextDataFileId = nextDataFile + 1 < dataFileIds.size() ? dataFileIds.get(nextDataFile + 1) : null;
+                    dataFilesRead.add(executor.submit(new Callable<List<ReplayRecord>>() {
+                        @Override
+                        public List<ReplayRecord> call() {
+                            return readDataFile(dataFileId, start, nextDataFileId);
+                        }
+                    }));
+                    nextDataFile++;
+                }
+
+                List<ReplayRecord> records;
+                try {
+                    records = dataFilesRead.removeFirst().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while replaying the journal");
+                } catch (ExecutionException e) {
+                    throw IOExceptionSupport.create(e.getCause());
+                }
+
+                for (ReplayRecord record : records) {
+                    if (record.location == null) {
+                        throw record.failure;
+                    }
+                    try {
+                        if (record.failure != null) {
+                            throw record.failure;
+                        }
+                        metadata.lastUpdate = record.location;
+                        process(record.command, record.location, lastIndoubtPosition);
+                        redoCounter++;
+                    } catch (IOException failedRecovery) {
+                        if (isIgnoreMissingJournalfiles()) {
+                            LOG.debug("Failed to recover data at position:" + record.location, failedRecovery);
+                            // track this dud location
+                            journal.corruptRecoveryLocation(record.location);
+                        } else {
+                            throw new IOException("Failed to recover data at position:" + record.location, failedRecovery);
+                        }
+                    }
+                }
+                journal.cleanup();
+
+                int done = (i + 1) * 100 / dataFileIds.size();
+                if (done / 10 > progress / 10) {
+                    progress = done;
+                    LOG.info("Recovered journal data file " + dataFileIds.get(i) + ", " + (i + 1) + " of " + dataFileIds.size()
+                            + " data files (" + done + "%), " + redoCounter + " entries recovered ..");
+                } else if (LOG.isDebugEnabled()) {
+                    LOG.debug("Recovered journal data file " + dataFileIds.get(i) + ", " + (i + 1) + " of " + dataFileIds.size()
+                            + " data files, " + redoCounter + " entries recovered ..");
+                }
+            }
         } finally {
-            this.indexLock.writeLock().unlock();
+            executor.shutdownNow();
+        }
+        return redoCounter;
+    }
+
+    /**
+     * Reads and decodes the records of a single data file, starting at the given location
+     * or at the start of the file. A failure to read a record is kept with its location so
+     * it is handled like in a sequential replay, a failure to scan the data file ends it.
+     */
+    private List<ReplayRecord> readDataFile(int dataFileId, Location start, Integer nextDataFileId) {
+        List<ReplayRecord> records = new ArrayList<>();
+        try {
+            Location limit = nextDataFileId != null ? new Location(nextDataFileId, 0) : null;
+            Location location = start;
+            if (location == null) {
+                location = journal.getNextLocation(new Location(dataFileId, 0), limit);
+            }
+            while (location != null && location.getDataFileId() == dataFileId) {
+                try {
+                    records.add(new ReplayRecord(location, load(location), null));
+                } catch (IOException failure) {
+                    records.add(new ReplayRecord(location, null, failure));
+                }
+                location = journal.getNextLocation(location, limit);
+            }
+        } catch (Throwable failure) {
+            records.add(new ReplayRecord(null, null, IOExceptionSupport.create("Failed to scan journal data file " + dataFileId, failure)));
+        }
+        return records;
+    }
+
+    private static final class ReplayRecord {
+        final Location location;
+        final JournalCommand<?> command;
+        final IOException failure;
+
+        ReplayRecord(Location location, JournalCommand<?> command, IOException failure) {
+            this.location = location;
+            this.command = command;
+            this.failure = failure;
         }
     }
 
@@ -1334,7 +1894,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             List<Operation> inflightTx = getInflightTx(command.getTransactionInfo());
             inflightTx.add(new AddOperation(command, location, runWithIndexLock));
         } else {
-            this.indexLock.writeLock().lock();
+            DestinationIndexLock lock = lockIndex(command.getDestination());
             try {
                 pageFile.tx().execute(new Transaction.Closure<IOException>() {
                     @Override
@@ -1347,13 +1907,13 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 });
 
             } finally {
-                this.indexLock.writeLock().unlock();
+                lock.unlock();
             }
         }
     }
 
     protected void process(final KahaUpdateMessageCommand command, final Location location) throws IOException {
-        this.indexLock.writeLock().lock();
+        DestinationIndexLock lock = lockIndex(command.getMessage().getDestination());
         try {
             pageFile.tx().execute(new Transaction.Closure<IOException>() {
                 @Override
@@ -1362,7 +1922,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 }
             });
         } finally {
-            this.indexLock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
@@ -1372,7 +1932,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
            List<Operation> inflightTx = getInflightTx(command.getTransactionInfo());
            inflightTx.add(new RemoveOperation(command, location));
         } else {
-            this.indexLock.writeLock().lock();
+            DestinationIndexLock lock = lockIndex(command.getDestination());
             try {
                 pageFile.tx().execute(new Transaction.Closure<IOException>() {
                     @Override
@@ -1381,7 +1941,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                     }
                 });
             } finally {
-                this.indexLock.writeLock().unlock();
+                lock.unlock();
             }
         }
     }
@@ -1524,6 +2084,77 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     // /////////////////////////////////////////////////////////////////
 
     protected final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    // Guards index state shared by all destinations when destination updates run concurrently.
+    private final Object sharedIndexStateMutex = new Object();
+    private DestinationIndexLock[] destinationIndexLocks;
+    private final DestinationIndexLock exclusiveIndexLock = new DestinationIndexLock(null, false);
+    private final DestinationIndexLock sharedIndexLock = new DestinationIndexLock(null, true);
+
+    /**
+     * The lock held for an index operation that only touches the index of one destination.
+     */
+    protected final class DestinationIndexLock {
+        private final ReentrantLock stripe;
+        private final boolean shared;
+
+        private DestinationIndexLock(ReentrantLock stripe, boolean shared) {
+            this.stripe = stripe;
+            this.shared = shared;
+        }
+
+        public void unlock() {
+            if (stripe != null) {
+                stripe.unlock();
+                indexLock.readLock().unlock();
+            } else if (shared) {
+                indexLock.readLock().unlock();
+            } else {
+                indexLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Locks the index for an operation that only reads or updates the index of the given
+     * destination. By default this is the index write lock. When index lock striping is
+     * enabled, the index read lock and the stripe of the destination are held instead, so
+     * destinations of other stripes are updated concurrently, while the checkpoint and all
+     * updates of index state shared by destinations still exclude them with the write lock.
+     * <p>
+     * A destination that isn't loaded yet is locked with the write lock, as loading it
+     * updates the shared destination index.
+     */
+    protected DestinationIndexLock lockIndex(KahaDestination destination) {
+        DestinationIndexLock[] stripes = destinationIndexLocks;
+        if (stripes != null) {
+            String key = key(destination);
+            indexLock.readLock().lock();
+            if (storedDestinations.containsKey(key)) {
+                DestinationIndexLock lock = stripes[(key.hashCode() & Integer.MAX_VALUE) % stripes.length];
+                lock.stripe.lock();
+                return lock;
+            }
+            indexLock.readLock().unlock();
+        }
+        indexLock.writeLock().lock();
+        return exclusiveIndexLock;
+    }
+
+    /**
+     * Locks the index for an operation that only reads the index of a loaded destination.
+     * This is the index read lock, plus the stripe of the destination when index lock
+     * striping is enabled, as the updates of a striped destination hold the read lock too.
+     */
+    private DestinationIndexLock lockIndexForRead(String key) {
+        indexLock.readLock().lock();
+        DestinationIndexLock[] stripes = destinationIndexLocks;
+        if (stripes != null) {
+            DestinationIndexLock lock = stripes[(key.hashCode() & Integer.MAX_VALUE) % stripes.length];
+            lock.stripe.lock();
+            return lock;
+        }
+        return sharedIndexLock;
+    }
     private final HashSet<Integer> journalFilesBeingReplicated = new HashSet<>();
 
     long updateIndex(Transaction tx, KahaAddMessageCommand command, Location location) throws IOException {
@@ -1550,7 +2181,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 if (sd.subscriptions != null && !sd.subscriptions.isEmpty(tx)) {
                     addAckLocationForNewMessage(tx, command.getDestination(), sd, id);
                 }
-                metadata.lastUpdate = location;
+                updateLastUpdate(location);
             } else {
 
                 MessageKeys messageKeys = sd.orderIndex.get(tx, previous);
@@ -1569,10 +2200,12 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             sd.locationIndex.put(tx, location, previous);
             // ensure sequence is not broken
             sd.orderIndex.revertNextMessageId();
-            metadata.lastUpdate = location;
+            updateLastUpdate(location);
         }
         // record this id in any event, initial send or recovery
-        metadata.producerSequenceIdTracker.isDuplicate(command.getMessageId());
+        synchronized (sharedIndexStateMutex) {
+            metadata.producerSequenceIdTracker.isDuplicate(command.getMessageId());
+        }
 
        return id;
     }
@@ -1612,9 +2245,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
                 //update all the subscription metrics
                 if (enableSubscriptionStatistics && sd.ackPositions != null && location.getSize() != previousKeys.location.getSize()) {
-                    Iterator<Entry<String, SequenceSet>> iter = sd.ackPositions.iterator(tx);
+                    Iterator<Entry<String, LongSequenceSet>> iter = sd.ackPositions.iterator(tx);
                     while (iter.hasNext()) {
-                        Entry<String, SequenceSet> e = iter.next();
+                        Entry<String, LongSequenceSet> e = iter.next();
                         if (e.getValue().contains(id)) {
                             incrementAndAddSizeToStoreStat(key(command.getDestination()), e.getKey(), location.getSize());
                             decrementAndSubSizeToStoreStat(key(command.getDestination()), e.getKey(), previousKeys.location.getSize());
@@ -1627,7 +2260,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                     sd.locationIndex.remove(tx, previousKeys.location);
                 }
             }
-            metadata.lastUpdate = location;
+            updateLastUpdate(location);
         } else {
             //Add the message if it can't be found
             this.updateIndex(tx, command, location);
@@ -1646,7 +2279,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                     sd.locationIndex.remove(tx, keys.location);
                     decrementAndSubSizeToStoreStat(tx, command.getDestination(), keys.location.getSize());
                     recordAckMessageReferenceLocation(ackLocation, keys.location);
-                    metadata.lastUpdate = ackLocation;
+                    updateLastUpdate(ackLocation);
                 }  else if (LOG.isDebugEnabled()) {
                     LOG.debug("message not found in order index: " + sequenceId  + " for: " + command.getMessageId());
                 }
@@ -1673,7 +2306,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 }
                 // The following method handles deleting un-referenced messages.
                 removeAckLocation(command, tx, sd, subscriptionKey, sequence);
-                metadata.lastUpdate = ackLocation;
+                updateLastUpdate(ackLocation);
             } else if (LOG.isDebugEnabled()) {
                 LOG.debug("on ack, no message sequence exists for id: " + command.getMessageId() + " and sub: " + command.getSubscriptionKey());
             }
@@ -1682,17 +2315,32 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     }
 
     private void recordAckMessageReferenceLocation(Location ackLocation, Location messageLocation) {
-        Set<Integer> referenceFileIds = metadata.ackMessageFileMap.get(Integer.valueOf(ackLocation.getDataFileId()));
-        if (referenceFileIds == null) {
-            referenceFileIds = new HashSet<>();
-            referenceFileIds.add(messageLocation.getDataFileId());
-            metadata.ackMessageFileMap.put(ackLocation.getDataFileId(), referenceFileIds);
-            metadata.ackMessageFileMapDirtyFlag.lazySet(true);
+        synchronized (sharedIndexStateMutex) {
+            Set<Integer> referenceFileIds = metadata.ackMessageFileMap.get(Integer.valueOf(ackLocation.getDataFileId()));
+            if (referenceFileIds == null) {
+                referenceFileIds = new HashSet<>();
+                referenceFileIds.add(messageLocation.getDataFileId());
+                metadata.ackMessageFileMap.put(ackLocation.getDataFileId(), referenceFileIds);
+                metadata.ackMessageFileMapDirtyFlag.lazySet(true);
 
-        } else {
-            Integer id = Integer.valueOf(messageLocation.getDataFileId());
-            if (!referenceFileIds.contains(id)) {
-                referenceFileIds.add(id);
+            } else {
+                Integer id = Integer.valueOf(messageLocation.getDataFileId());
+                if (!referenceFileIds.contains(id)) {
+                    referenceFileIds.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the location of the last index update. Updates of different destinations may
+     * complete out of order when index lock striping is enabled, the checkpoint only reads
+     * the value once all of them are done.
+     */
+    private void updateLastUpdate(Location location) {
+        synchronized (sharedIndexStateMutex) {
+            if (destinationIndexLocks == null || metadata.lastUpdate == null || metadata.lastUpdate.compareTo(location) < 0) {
+                metadata.lastUpdate = location;
             }
         }
     }
@@ -1780,9 +2428,20 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 clearStoreStats(command.getDestination());
             }
         }
-    }
+    }
+
+    private void checkpointUpdate(final boolean cleanup) throws IOException {
+        if (isLazyRecoveryIncomplete()) {
+            // the last update must not move past journal records that are not replayed yet
+            LOG.debug("Checkpoint deferred until the journal is recovered");
+            return;
+        }
+        if (incrementalCheckpoint && opened.get()) {
+            incrementalCheckpointUpdate(cleanup);
+            return;
+        }
 
-    private void checkpointUpdate(final boolean cleanup) throws IOException {
+        long start = System.currentTimeMillis();
         checkpointLock.writeLock().lock();
         try {
             this.indexLock.writeLock().lock();
@@ -1803,6 +2462,52 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         } finally {
             checkpointLock.writeLock().unlock();
         }
+        long totalTimeMillis = System.currentTimeMillis() - start;
+        persistenceAdapterStatistics.addCheckpointTime(totalTimeMillis);
+        persistenceAdapterStatistics.addCheckpointStallTime(totalTimeMillis);
+    }
+
+    /**
+     * Checkpoints the index without blocking index updates while the dirty pages are
+     * written. Only the update of the metadata and the selection of the journal files to
+     * gc hold the index lock; the pages are then flushed while updates continue, the page
+     * file keeps the image of a page that is being written apart from newer updates of it.
+     * The checkpoint lock is downgraded to a read lock while flushing, so other checkpoints
+     * and close wait for the journal files to be removed once their pages are on disk.
+     */
+    private void incrementalCheckpointUpdate(final boolean cleanup) throws IOException {
+        long start = System.currentTimeMillis();
+        long stallTimeMillis;
+        Set<Integer> filesToGc;
+        checkpointLock.writeLock().lock();
+        try {
+            this.indexLock.writeLock().lock();
+            long locked = System.currentTimeMillis();
+            try {
+                filesToGc = pageFile.tx().execute(new Transaction.CallableClosure<Set<Integer>, IOException>() {
+                    @Override
+                    public Set<Integer> execute(Transaction tx) throws IOException {
+                        return checkpointUpdate(tx, cleanup);
+                    }
+                });
+            } finally {
+                this.indexLock.writeLock().unlock();
+            }
+            stallTimeMillis = System.currentTimeMillis() - locked;
+            checkpointLock.readLock().lock();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+
+        try {
+            pageFile.flushConcurrently();
+            // after the index update such that partial removal does not leave dangling references in the index.
+            journal.removeDataFiles(filesToGc);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        persistenceAdapterStatistics.addCheckpointTime(System.currentTimeMillis() - start);
+        persistenceAdapterStatistics.addCheckpointStallTime(stallTimeMillis);
     }
 
     /**
@@ -1938,12 +2643,11 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                         if (!gcCandidateSet.isEmpty() && gcCandidateSet.first() == dataFileId) {
                             final StoredDestination destination = entry.getValue();
                             final String subscriptionKey = subscription.getKey();
-                            SequenceSet pendingAcks = destination.ackPositions.get(tx, subscriptionKey);
+                            LongSequenceSet pendingAcks = destination.ackPositions.get(tx, subscriptionKey);
 
                             // When pending is size one that is the next message Id meaning there
                             // are no pending messages currently.
-                            if (pendingAcks == null || pendingAcks.isEmpty() ||
-                                (pendingAcks.size() == 1 && pendingAcks.getTail().range() == 1)) {
+                            if (pendingAcks == null || pendingAcks.isEmpty() || pendingAcks.rangeSize() == 1) {
 
                                 if (LOG.isTraceEnabled()) {
                                     LOG.trace("Found candidate for rewrite: sub {} on {} from file {}", subscriptionKey, entry.getKey(), dataFileId);
@@ -1965,7 +2669,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                         if (LOG.isTraceEnabled()) {
                             final StoredDestination destination = entry.getValue();
                             final String subscriptionKey = subscription.getKey();
-                            final SequenceSet pendingAcks = destination.ackPositions.get(tx, subscriptionKey);
+                            final LongSequenceSet pendingAcks = destination.ackPositions.get(tx, subscriptionKey);
                             LOG.trace("sub {} on {} in dataFile {} has pendingCount {}", subscriptionKey, entry.getKey(), dataFileId, pendingAcks.rangeSize()-1);
                         }
                         gcCandidateSet.remove(dataFileId);
@@ -2052,6 +2756,15 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
                 journalLogOnLastCompactionCheck = journal.getCurrentDataFileId();
             }
+
+            if (isEnableJournalCompaction() && scheduler != null && journalCompactionScheduled.compareAndSet(false, true)) {
+                try {
+                    scheduler.execute(new JournalCompactionRunner());
+                } catch (Exception ex) {
+                    journalCompactionScheduled.set(false);
+                    LOG.warn("Error on queueing the Journal Compactor", ex);
+                }
+            }
         }
         MDC.remove("activemq.persistenceDir");
 
@@ -2165,6 +2878,299 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         return false;
     }
 
+    private final class JournalCompactionRunner implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                if (compactJournal() > 0) {
+                    // Checkpoint so the compacted data files are removed
+                    checkpointUpdate(true);
+                }
+            } catch (IOException ioe) {
+                LOG.error("Journal compaction failed", ioe);
+                brokerService.handleIOException(ioe);
+            } catch (Throwable e) {
+                LOG.error("Journal compaction failed", e);
+                brokerService.handleIOException(IOExceptionSupport.create(e));
+            } finally {
+                journalCompactionScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of message data each journal data file holds that is still
+     * referenced by the index, in bytes.
+     */
+    public SortedMap<Integer, Long> getJournalFileLiveData() throws IOException {
+        final SortedMap<Integer, Long> liveData = new TreeMap<>();
+        for (Integer dataFileId : journal.getFileMap().keySet()) {
+            liveData.put(dataFileId, 0L);
+        }
+        for (final String key : getStoredDestinationKeys()) {
+            DestinationIndexLock lock = lockIndexForRead(key);
+            try {
+                pageFile.tx().execute(new Transaction.Closure<IOException>() {
+                    @Override
+                    public void execute(Transaction tx) throws IOException {
+                        StoredDestination sd = storedDestinations.get(key);
+                        if (sd == null) {
+                            return;
+                        }
+                        Iterator<Entry<Long, MessageKeys>> iterator = sd.orderIndex.iterator(tx, new MessageOrderCursor());
+                        while (iterator.hasNext()) {
+                            Location location = iterator.next().getValue().location;
+                            Long size = liveData.get(location.getDataFileId());
+                            if (size != null) {
+                                liveData.put(location.getDataFileId(), size + Math.max(location.getSize(), 0));
+                            }
+                        }
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+        }
+        return liveData;
+    }
+
+    /**
+     * Returns the percentage of each journal data file that holds message data still
+     * referenced by the index.
+     */
+    public SortedMap<Integer, Integer> getJournalFileUtilization() throws IOException {
+        SortedMap<Integer, Integer> utilization = new TreeMap<>();
+        for (Entry<Integer, Long> entry : getJournalFileLiveData().entrySet()) {
+            utilization.put(entry.getKey(), utilization(entry.getKey(), entry.getValue()));
+        }
+        return utilization;
+    }
+
+    private int utilization(int dataFileId, long liveData) {
+        DataFile dataFile = journal.getDataFileById(dataFileId);
+        if (dataFile == null || dataFile.getLength() == 0) {
+            return 0;
+        }
+        return (int) Math.min(100, liveData * 100 / dataFile.getLength());
+    }
+
+    private List<String> getStoredDestinationKeys() {
+        indexLock.readLock().lock();
+        try {
+            return new ArrayList<>(storedDestinations.keySet());
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the messages that are still referenced in journal data files with a
+     * utilization below the journal compaction threshold to the current data file, so
+     * the sparse data files can be removed by the next cleanup.
+     *
+     * @return the number of data files compacted
+     */
+    int compactJournal() throws IOException {
+        if (!opened.get() || isLazyRecoveryIncomplete()) {
+            return 0;
+        }
+        SortedMap<Integer, Long> liveData = getJournalFileLiveData();
+        List<Integer> candidates = new ArrayList<>();
+        indexLock.writeLock().lock();
+        try {
+            Set<Integer> subscriptionDataFiles = getSubscriptionDataFiles();
+            Location lastUpdate = metadata.lastUpdate;
+            for (Entry<Integer, Long> entry : liveData.entrySet()) {
+                int dataFileId = entry.getKey();
+                DataFile dataFile = journal.getDataFileById(dataFileId);
+                // empty data files are removed by the cleanup, or held by acks the ack compaction forwards
+                if (dataFile == null || entry.getValue() == 0 || dataFile.getTypeCode() == COMPACTED_JOURNAL_FILE) {
+                    continue;
+                }
+                // the cleanup won't remove data files past the last update
+                if (lastUpdate == null || dataFileId >= lastUpdate.getDataFileId()) {
+                    break;
+                }
+                // subscriptions with pending messages can't be rewritten
+                if (subscriptionDataFiles.contains(dataFileId) || journalFilesBeingReplicated.contains(dataFileId)
+                        || blockedFromCompaction(dataFileId)) {
+                    continue;
+                }
+                if (utilization(dataFileId, entry.getValue()) < journalCompactionThreshold) {
+                    candidates.add(dataFileId);
+                }
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+
+        if (!candidates.isEmpty()) {
+            LOG.debug("Compacting journal data files: {}", candidates);
+        }
+        List<Integer> compacted = new ArrayList<>();
+        for (Integer dataFileId : candidates) {
+            if (!opened.get()) {
+                break;
+            }
+            long size = forwardAllMessages(dataFileId);
+            persistenceAdapterStatistics.addJournalCompactedSize(size);
+            compacted.add(dataFileId);
+            LOG.info("Compacted journal data file {}, forwarded {} bytes of messages", dataFileId, size);
+        }
+
+        // acks of messages in data files that are kept would keep the compacted data files too
+        for (Integer dataFileId : compacted) {
+            Set<Integer> journalLogsReferenced = null;
+            indexLock.writeLock().lock();
+            try {
+                Set<Integer> referenced = metadata.ackMessageFileMap.get(dataFileId);
+                if (referenced != null) {
+                    journalLogsReferenced = new HashSet<>(referenced);
+                    journalLogsReferenced.removeAll(compacted);
+                    journalLogsReferenced.retainAll(journal.getFileMap().keySet());
+                }
+                if (metadata.producerSequenceIdTrackerLocation != null
+                        && metadata.producerSequenceIdTrackerLocation.getDataFileId() == dataFileId) {
+                    // rewrite so we don't prevent gc
+                    metadata.producerSequenceIdTracker.setModified(true);
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            if (journalLogsReferenced != null && !journalLogsReferenced.isEmpty()) {
+                checkpointLock.readLock().lock();
+                try {
+                    forwardAllAcks(dataFileId, journalLogsReferenced);
+                } finally {
+                    checkpointLock.readLock().unlock();
+                }
+            }
+        }
+        return compacted.size();
+    }
+
+    // called with the index lock held
+    private Set<Integer> getSubscriptionDataFiles() throws IOException {
+        final Set<Integer> dataFiles = new HashSet<>();
+        pageFile.tx().execute(new Transaction.Closure<IOException>() {
+            @Override
+            public void execute(Transaction tx) throws IOException {
+                for (StoredDestination sd : storedDestinations.values()) {
+                    if (sd.subLocations != null) {
+                        Iterator<Entry<String, Location>> iterator = sd.subLocations.iterator(tx);
+                        while (iterator.hasNext()) {
+                            dataFiles.add(iterator.next().getValue().getDataFileId());
+                        }
+                    }
+                }
+            }
+        });
+        return dataFiles;
+    }
+
+    /**
+     * Forwards the messages of a journal data file that are still referenced by the index
+     * to the current data file.
+     *
+     * @return the size of the forwarded messages
+     */
+    private long forwardAllMessages(final int journalToRead) throws IOException {
+        final Map<String, List<Location>> locations = new LinkedHashMap<>();
+        for (final String key : getStoredDestinationKeys()) {
+            DestinationIndexLock lock = lockIndexForRead(key);
+            try {
+                pageFile.tx().execute(new Transaction.Closure<IOException>() {
+                    @Override
+                    public void execute(Transaction tx) throws IOException {
+                        StoredDestination sd = storedDestinations.get(key);
+                        if (sd == null) {
+                            return;
+                        }
+                        Iterator<Entry<Location, Long>> iterator = sd.locationIndex.iterator(tx, new Location(journalToRead, 0), new Location(journalToRead + 1, 0));
+                        List<Location> destinationLocations = new ArrayList<>();
+                        while (iterator.hasNext()) {
+                            Location location = iterator.next().getKey();
+                            if (location.getDataFileId() == journalToRead) {
+                                destinationLocations.add(location);
+                            }
+                        }
+                        if (!destinationLocations.isEmpty()) {
+                            locations.put(key, destinationLocations);
+                        }
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long forwarded = 0;
+        for (Entry<String, List<Location>> entry : locations.entrySet()) {
+            List<Location> destinationLocations = entry.getValue();
+            for (int i = 0; i < destinationLocations.size(); i += JOURNAL_COMPACTION_BATCH_SIZE) {
+                forwarded += forwardMessages(entry.getKey(), destinationLocations.subList(i, Math.min(i + JOURNAL_COMPACTION_BATCH_SIZE, destinationLocations.size())));
+            }
+        }
+        return forwarded;
+    }
+
+    private long forwardMessages(final String key, List<Location> locations) throws IOException {
+        // read outside of the locks, the messages are checked to still be referenced before they are forwarded
+        List<KahaAddMessageCommand> commands = new ArrayList<>(locations.size());
+        for (Location location : locations) {
+            JournalCommand<?> command = null;
+            try {
+                command = load(location);
+            } catch (IOException ex) {
+                LOG.trace("Error loading command during message forward: {}", location);
+            }
+            if (command instanceof KahaAddMessageCommand) {
+                commands.add((KahaAddMessageCommand) command);
+            } else if (command instanceof KahaUpdateMessageCommand) {
+                commands.add(((KahaUpdateMessageCommand) command).getMessage());
+            } else {
+                commands.add(null);
+            }
+        }
+
+        long forwarded = 0;
+        // No other journal write can be in progress, so an ack that is already in the
+        // journal is also in the index and no ack can come before the forwarded message.
+        checkpointLock.writeLock().lock();
+        try {
+            for (int i = 0; i < locations.size(); i++) {
+                final Location location = locations.get(i);
+                KahaAddMessageCommand command = commands.get(i);
+                if (command == null || !isReferenced(key, location)) {
+                    continue;
+                }
+                command.clearTransactionInfo();
+                // an update moves the message in the index to its new location
+                Location forwardedLocation = store(new KahaUpdateMessageCommand().setMessage(command), false, null, null);
+                forwarded += forwardedLocation.getSize();
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        return forwarded;
+    }
+
+    private boolean isReferenced(final String key, final Location location) throws IOException {
+        indexLock.writeLock().lock();
+        try {
+            return pageFile.tx().execute(new Transaction.CallableClosure<Boolean, IOException>() {
+                @Override
+                public Boolean execute(Transaction tx) throws IOException {
+                    StoredDestination sd = storedDestinations.get(key);
+                    return sd != null && sd.locationIndex.get(tx, location) != null;
+                }
+            });
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
     private void forwardAllAcks(Integer journalToRead, Set<Integer> journalLogsReferenced) throws IllegalStateException, IOException {
         LOG.trace("Attempting to move all acks in journal:{} to the front. Referenced files:{}", journalToRead, journalLogsReferenced);
 
@@ -2473,7 +3479,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         BTreeIndex<String, KahaSubscriptionCommand> subscriptions;
         BTreeIndex<String, LastAck> subscriptionAcks;
         HashMap<String, MessageOrderCursor> subscriptionCursors;
-        ListIndex<String, SequenceSet> ackPositions;
+        ListIndex<String, LongSequenceSet> ackPositions;
         ListIndex<String, Location> subLocations;
 
         // Transient data used to track which Messages are no longer needed.
@@ -2577,14 +3583,15 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                                 }
                             }
                             // Now move the pending messages to ack data into the store backed
-                            // structure.
-                            value.ackPositions = new ListIndex<>(pageFile, tx.allocate());
-                            value.ackPositions.setKeyMarshaller(StringMarshaller.INSTANCE);
-                            value.ackPositions.setValueMarshaller(SequenceSet.Marshaller.INSTANCE);
-                            value.ackPositions.load(tx);
+                            // structure, in the version 7 format that is upgraded on load.
+                            ListIndex<String, SequenceSet> ackPositions = new ListIndex<>(pageFile, tx.allocate());
+                            ackPositions.setKeyMarshaller(StringMarshaller.INSTANCE);
+                            ackPositions.setValueMarshaller(SequenceSet.Marshaller.INSTANCE);
+                            ackPositions.load(tx);
                             for(String subscriptionKey : temp.keySet()) {
-                                value.ackPositions.put(tx, subscriptionKey, temp.get(subscriptionKey));
+                                ackPositions.put(tx, subscriptionKey, temp.get(subscriptionKey));
                             }
+                            value.ackPositions = new ListIndex<>(pageFile, ackPositions.getHeadPageId());
 
                         }
                     });
@@ -2775,8 +3782,11 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             rc.subscriptionAcks.setValueMarshaller(new LastAckMarshaller());
             rc.subscriptionAcks.load(tx);
 
+            if (metadata.version < 8) {
+                upgradeAckPositions(tx, rc);
+            }
             rc.ackPositions.setKeyMarshaller(StringMarshaller.INSTANCE);
-            rc.ackPositions.setValueMarshaller(SequenceSet.Marshaller.INSTANCE);
+            rc.ackPositions.setValueMarshaller(LongSequenceSet.Marshaller.INSTANCE);
             rc.ackPositions.load(tx);
 
             rc.subLocations.setKeyMarshaller(StringMarshaller.INSTANCE);
@@ -2817,14 +3827,12 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 }
             } else {
                 // update based on ackPositions for unmatched, last entry is always the next
-                Iterator<Entry<String, SequenceSet>> subscriptions = rc.ackPositions.iterator(tx);
+                Iterator<Entry<String, LongSequenceSet>> subscriptions = rc.ackPositions.iterator(tx);
                 while (subscriptions.hasNext()) {
-                    Entry<String, SequenceSet> subscription = subscriptions.next();
-                    SequenceSet pendingAcks = subscription.getValue();
+                    Entry<String, LongSequenceSet> subscription = subscriptions.next();
+                    LongSequenceSet pendingAcks = subscription.getValue();
                     if (pendingAcks != null && !pendingAcks.isEmpty()) {
-                        for (Long sequenceId : pendingAcks) {
-                            rc.orderIndex.nextMessageId = Math.max(rc.orderIndex.nextMessageId, sequenceId);
-                        }
+                        rc.orderIndex.nextMessageId = Math.max(rc.orderIndex.nextMessageId, pendingAcks.last());
                     }
                 }
             }
@@ -2837,6 +3845,39 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         return rc;
     }
 
+    /**
+     * Moves the ack positions of a topic from the linked sequence sets written by
+     * version 7 and earlier to a new list of primitive sequence sets.
+     */
+    private void upgradeAckPositions(Transaction tx, StoredDestination rc) throws IOException {
+        ListIndex<String, SequenceSet> oldAckPositions = new ListIndex<>(pageFile, rc.ackPositions.getHeadPageId());
+        oldAckPositions.setKeyMarshaller(StringMarshaller.INSTANCE);
+        oldAckPositions.setValueMarshaller(SequenceSet.Marshaller.INSTANCE);
+        oldAckPositions.load(tx);
+
+        LinkedHashMap<String, LongSequenceSet> temp = new LinkedHashMap<>();
+        Iterator<Entry<String, SequenceSet>> iterator = oldAckPositions.iterator(tx);
+        while (iterator.hasNext()) {
+            Entry<String, SequenceSet> entry = iterator.next();
+            LongSequenceSet pendingAcks = new LongSequenceSet();
+            for (Sequence sequence = entry.getValue().getHead(); sequence != null; sequence = sequence.getNext()) {
+                pendingAcks.add(sequence.getFirst(), sequence.getLast());
+            }
+            temp.put(entry.getKey(), pendingAcks);
+        }
+        oldAckPositions.clear(tx);
+        oldAckPositions.unload(tx);
+        tx.free(oldAckPositions.getHeadPageId());
+
+        rc.ackPositions = new ListIndex<>(pageFile, tx.allocate());
+        rc.ackPositions.setKeyMarshaller(StringMarshaller.INSTANCE);
+        rc.ackPositions.setValueMarshaller(LongSequenceSet.Marshaller.INSTANCE);
+        rc.ackPositions.load(tx);
+        for (Entry<String, LongSequenceSet> entry : temp.entrySet()) {
+            rc.ackPositions.put(tx, entry.getKey(), entry.getValue());
+        }
+    }
+
     /**
      * Clear the counter for the destination, if one exists.
      *
@@ -3049,9 +4090,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     }
 
     private void addAckLocation(Transaction tx, StoredDestination sd, Long messageSequence, String subscriptionKey) throws IOException {
-        SequenceSet sequences = sd.ackPositions.get(tx, subscriptionKey);
+        LongSequenceSet sequences = sd.ackPositions.get(tx, subscriptionKey);
         if (sequences == null) {
-            sequences = new SequenceSet();
+            sequences = new LongSequenceSet();
             sequences.add(messageSequence);
             sd.ackPositions.add(tx, subscriptionKey, sequences);
         } else {
@@ -3062,13 +4103,10 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
     // new sub is interested in potentially all existing messages
     private void addAckLocationForRetroactiveSub(Transaction tx, StoredDestination sd, String subscriptionKey) throws IOException {
-        SequenceSet allOutstanding = new SequenceSet();
-        Iterator<Map.Entry<String, SequenceSet>> iterator = sd.ackPositions.iterator(tx);
+        LongSequenceSet allOutstanding = new LongSequenceSet();
+        Iterator<Map.Entry<String, LongSequenceSet>> iterator = sd.ackPositions.iterator(tx);
         while (iterator.hasNext()) {
-            SequenceSet set = iterator.next().getValue();
-            for (Long entry : set) {
-                allOutstanding.add(entry);
-            }
+            allOutstanding.addAll(iterator.next().getValue());
         }
         sd.ackPositions.put(tx, subscriptionKey, allOutstanding);
     }
@@ -3077,13 +4115,13 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     private void addAckLocationForNewMessage(Transaction tx, KahaDestination kahaDest,
             StoredDestination sd, Long messageSequence) throws IOException {
         for(String subscriptionKey : sd.subscriptionCache) {
-            SequenceSet sequences = sd.ackPositions.get(tx, subscriptionKey);
+            LongSequenceSet sequences = sd.ackPositions.get(tx, subscriptionKey);
             if (sequences == null) {
-                sequences = new SequenceSet();
-                sequences.add(new Sequence(messageSequence, messageSequence + 1));
+                sequences = new LongSequenceSet();
+                sequences.add(messageSequence, messageSequence + 1);
                 sd.ackPositions.add(tx, subscriptionKey, sequences);
             } else {
-                sequences.add(new Sequence(messageSequence, messageSequence + 1));
+                sequences.add(messageSequence, messageSequence + 1);
                 sd.ackPositions.put(tx, subscriptionKey, sequences);
             }
 
@@ -3095,7 +4133,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     private void removeAckLocationsForSub(KahaSubscriptionCommand command,
             Transaction tx, StoredDestination sd, String subscriptionKey) throws IOException {
         if (!sd.ackPositions.isEmpty(tx)) {
-            SequenceSet sequences = sd.ackPositions.remove(tx, subscriptionKey);
+            LongSequenceSet sequences = sd.ackPositions.remove(tx, subscriptionKey);
             if (sequences == null || sequences.isEmpty()) {
                 return;
             }
@@ -3126,7 +4164,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
     private boolean isSequenceReferenced(final Transaction tx, final StoredDestination sd, final Long sequenceId) throws IOException {
         for(String subscriptionKey : sd.subscriptionCache) {
-            SequenceSet sequence = sd.ackPositions.get(tx, subscriptionKey);
+            LongSequenceSet sequence = sd.ackPositions.get(tx, subscriptionKey);
             if (sequence != null && sequence.contains(sequenceId)) {
                 return true;
             }
@@ -3146,7 +4184,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             Long messageSequence) throws IOException {
         // Remove the sub from the previous location set..
         if (messageSequence != null) {
-            SequenceSet range = sd.ackPositions.get(tx, subscriptionKey);
+            LongSequenceSet range = sd.ackPositions.get(tx, subscriptionKey);
             if (range != null && !range.isEmpty()) {
                 range.remove(messageSequence);
                 if (!range.isEmpty()) {
@@ -3182,9 +4220,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         return sd.subscriptionAcks.get(tx, subscriptionKey);
     }
 
-    protected SequenceSet getSequenceSet(Transaction tx, StoredDestination sd, String subscriptionKey) throws IOException {
+    protected LongSequenceSet getSequenceSet(Transaction tx, StoredDestination sd, String subscriptionKey) throws IOException {
         if (sd.ackPositions != null) {
-            final SequenceSet messageSequences = sd.ackPositions.get(tx, subscriptionKey);
+            final LongSequenceSet messageSequences = sd.ackPositions.get(tx, subscriptionKey);
             return messageSequences;
         }
 
@@ -3193,7 +4231,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
     protected long getStoredMessageCount(Transaction tx, StoredDestination sd, String subscriptionKey) throws IOException {
         if (sd.ackPositions != null) {
-            SequenceSet messageSequences = sd.ackPositions.get(tx, subscriptionKey);
+            LongSequenceSet messageSequences = sd.ackPositions.get(tx, subscriptionKey);
             if (messageSequences != null) {
                 long result = messageSequences.rangeSize();
                 // if there's anything in the range the last value is always the nextMessage marker, so remove 1.
@@ -3217,7 +4255,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     protected Map<String, AtomicLong> getStoredMessageSize(Transaction tx, StoredDestination sd, List<String> subscriptionKeys) throws IOException {
 
         final Map<String, AtomicLong> subPendingMessageSizes = new HashMap<>();
-        final Map<String, SequenceSet> messageSequencesMap = new HashMap<>();
+        final Map<String, LongSequenceSet> messageSequencesMap = new HashMap<>();
 
         if (sd.ackPositions != null) {
             Long recoveryPosition = null;
@@ -3226,9 +4264,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             //that needs to still be acked
             for (String subscriptionKey : subscriptionKeys) {
                 subPendingMessageSizes.put(subscriptionKey, new AtomicLong());
-                final SequenceSet messageSequences = sd.ackPositions.get(tx, subscriptionKey);
+                final LongSequenceSet messageSequences = sd.ackPositions.get(tx, subscriptionKey);
                 if (messageSequences != null && !messageSequences.isEmpty()) {
-                    final long head = messageSequences.getHead().getFirst();
+                    final long head = messageSequences.first();
                     recoveryPosition = recoveryPosition != null ? Math.min(recoveryPosition, head) : head;
                     //cache the SequenceSet to speed up recovery of metrics below and avoid a second index hit
                     messageSequencesMap.put(subscriptionKey, messageSequences);
@@ -3246,9 +4284,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 //For each message in the index check if each subscription needs to ack the message still
                 //if the ackPositions SequenceSet contains the message then it has not been acked and should be
                 //added to the pending metrics for that subscription
-                for (Entry<String, SequenceSet> seqEntry : messageSequencesMap.entrySet()) {
+                for (Entry<String, LongSequenceSet> seqEntry : messageSequencesMap.entrySet()) {
                     final String subscriptionKey = seqEntry.getKey();
-                    final SequenceSet messageSequences = messageSequencesMap.get(subscriptionKey);
+                    final LongSequenceSet messageSequences = messageSequencesMap.get(subscriptionKey);
                     if (messageSequences.contains(messageEntry.getKey())) {
                         subPendingMessageSizes.get(subscriptionKey).addAndGet(messageEntry.getValue().location.getSize());
                     }
@@ -3264,15 +4302,13 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
         if (sd.ackPositions != null) {
             //grab the messages attached to this subscription
-            SequenceSet messageSequences = sd.ackPositions.get(tx, subscriptionKey);
+            LongSequenceSet messageSequences = sd.ackPositions.get(tx, subscriptionKey);
 
             if (messageSequences != null && !messageSequences.isEmpty()) {
-                final Sequence head = messageSequences.getHead();
-
                 //get an iterator over the order index starting at the first unacked message
                 //and go over each message to add up the size
                 Iterator<Entry<Long, MessageKeys>> iterator = sd.orderIndex.iterator(tx,
-                        new MessageOrderCursor(head.getFirst()));
+                        new MessageOrderCursor(messageSequences.first()));
 
                 final boolean contiguousRange = messageSequences.size() == 1;
                 while (iterator.hasNext()) {
@@ -3387,6 +4423,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         index.setEnableDiskSyncs(isEnableIndexDiskSyncs());
         index.setEnableRecoveryFile(isEnableIndexRecoveryFile());
         index.setEnablePageCaching(isEnableIndexPageCaching());
+        index.setOffHeapPageCacheSize(indexOffHeapCacheSize);
+        index.setPersistenceAdapterStatistics(persistenceAdapterStatistics);
         return index;
     }
 
@@ -3404,6 +4442,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         manager.setPreallocationStrategy(
                 Journal.PreallocationStrategy.valueOf(preallocationStrategy.trim().toUpperCase()));
         manager.setJournalDiskSyncStrategy(journalDiskSyncStrategy);
+        manager.setJournalAppenderType(Journal.JournalAppenderType.valueOf(journalAppenderType.trim().toUpperCase()));
+        manager.setPersistenceAdapterStatistics(persistenceAdapterStatistics);
+        manager.setMappedReadBudget(journalMappedReadBudget);
         if (getDirectoryArchive() != null) {
             IOHelper.mkdirs(getDirectoryArchive());
             manager.setDirectoryArchive(getDirectoryArchive());
@@ -3592,6 +4633,104 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         this.indexCacheSize = indexCacheSize;
     }
 
+    public long getIndexOffHeapCacheSize() {
+        return indexOffHeapCacheSize;
+    }
+
+    /**
+     * Sets the number of bytes of direct memory used to keep index pages off the heap, so a
+     * large part of the index can be cached with a small indexCacheSize.
+     * <p>
+     * A value of 0 (the default) disables the off heap index cache.
+     *
+     * @param indexOffHeapCacheSize
+     *      the size of the off heap index cache in bytes
+     */
+    public void setIndexOffHeapCacheSize(long indexOffHeapCacheSize) {
+        this.indexOffHeapCacheSize = indexOffHeapCacheSize;
+    }
+
+    public int getIndexLockStripes() {
+        return indexLockStripes;
+    }
+
+    /**
+     * Sets the number of lock stripes used for index updates of single destinations, so
+     * message adds and acks of destinations in different stripes update the index
+     * concurrently. Transactions, subscription changes, destination removal and the
+     * checkpoint still lock the whole index.
+     * <p>
+     * A value of 0 (the default) serializes all index updates on a single lock.
+     *
+     * @param indexLockStripes
+     *      the number of stripes, 0 disables striping
+     */
+    public void setIndexLockStripes(int indexLockStripes) {
+        this.indexLockStripes = indexLockStripes;
+        if (indexLockStripes > 0) {
+            DestinationIndexLock[] stripes = new DestinationIndexLock[indexLockStripes];
+            for (int i = 0; i < indexLockStripes; i++) {
+                stripes[i] = new DestinationIndexLock(new ReentrantLock(), false);
+            }
+            this.destinationIndexLocks = stripes;
+        } else {
+            this.destinationIndexLocks = null;
+        }
+    }
+
+    public boolean isIncrementalCheckpoint() {
+        return incrementalCheckpoint;
+    }
+
+    /**
+     * Sets whether the checkpoint writes the dirty index pages without holding the index
+     * lock, so sends and acks are not blocked while a large index is flushed to disk.
+     * <p>
+     * Disabled by default, the index is then locked for the whole checkpoint.
+     *
+     * @param incrementalCheckpoint
+     *      true to flush the index while index updates continue
+     */
+    public void setIncrementalCheckpoint(boolean incrementalCheckpoint) {
+        this.incrementalCheckpoint = incrementalCheckpoint;
+    }
+
+    public int getJournalReplayThreads() {
+        return journalReplayThreads;
+    }
+
+    public boolean isLazyRecovery() {
+        return lazyRecovery;
+    }
+
+    /**
+     * Sets whether the journal is replayed in the background on start, so the store is
+     * available as soon as the index is loaded. Destinations with journal records since the
+     * last checkpoint become available one by one as their records are replayed, the others
+     * once the journal has been scanned for them.
+     * <p>
+     * Disabled by default, start then waits for the journal to be replayed.
+     *
+     * @param lazyRecovery
+     *      true to replay the journal in the background
+     */
+    public void setLazyRecovery(boolean lazyRecovery) {
+        this.lazyRecovery = lazyRecovery;
+    }
+
+    /**
+     * Sets the number of threads that read and decode the journal data files while the
+     * journal is replayed on recovery, the index updates are still applied in journal order.
+     * <p>
+     * A value of 0 or 1 (the default is 0) replays the journal on a single thread.
+     *
+     * @param journalReplayThreads
+     *      the number of threads reading the journal on recovery
+     */
+    public void setJournalReplayThreads(int journalReplayThreads) {
+        this.journalReplayThreads = journalReplayThreads;
+    }
+
     public boolean isCheckForCorruptJournalFiles() {
         return checkForCorruptJournalFiles;
     }
@@ -4167,6 +5306,40 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         this.preallocationStrategy = preallocationStrategy;
     }
 
+    public String getJournalAppenderType() {
+        return journalAppenderType;
+    }
+
+    /**
+     * Sets the appender used to write the journal. GROUP_COMMIT pipelines batch writes
+     * with the disk syncs of previous batches, which helps when many producers do
+     * small synchronous sends.
+     *
+     * @param journalAppenderType
+     *      one of DEFAULT, CALLER_BUFFERING or GROUP_COMMIT
+     */
+    public void setJournalAppenderType(String journalAppenderType) {
+        this.journalAppenderType = journalAppenderType;
+    }
+
+    public long getJournalMappedReadBudget() {
+        return journalMappedReadBudget;
+    }
+
+    /**
+     * Sets the number of bytes of journal data files that may be memory mapped to serve
+     * reads from data files that are no longer written to. Least recently read files are
+     * unmapped when the budget is exceeded.
+     * <p>
+     * A value of 0 (the default) disables memory mapped reads.
+     *
+     * @param journalMappedReadBudget
+     *      the maximum number of mapped bytes
+     */
+    public void setJournalMappedReadBudget(long journalMappedReadBudget) {
+        this.journalMappedReadBudget = journalMappedReadBudget;
+    }
+
     public int getCompactAcksAfterNoGC() {
         return compactAcksAfterNoGC;
     }
@@ -4206,6 +5379,44 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         this.compactAcksIgnoresStoreGrowth = compactAcksIgnoresStoreGrowth;
     }
 
+    /**
+     * Returns whether journal compaction is enabled
+     *
+     * @return enableJournalCompaction
+     */
+    public boolean isEnableJournalCompaction() {
+        return enableJournalCompaction;
+    }
+
+    /**
+     * Configure if the messages of sparse journal data files are forwarded to the current
+     * data file on cleanup, so a data file isn't kept for the few messages left in it.
+     * Finding the sparse data files reads the location of every message in the index, so
+     * this is defaulted to off.
+     *
+     * @param enableJournalCompaction
+     */
+    public void setEnableJournalCompaction(boolean enableJournalCompaction) {
+        this.enableJournalCompaction = enableJournalCompaction;
+    }
+
+    /**
+     * @return the utilization percentage below which journal data files are compacted
+     */
+    public int getJournalCompactionThreshold() {
+        return journalCompactionThreshold;
+    }
+
+    /**
+     * Sets the percentage of a journal data file that must hold messages still referenced
+     * by the index for the data file not to be compacted, defaults to 25.
+     *
+     * @param journalCompactionThreshold
+     */
+    public void setJournalCompactionThreshold(int journalCompactionThreshold) {
+        this.journalCompactionThreshold = journalCompactionThreshold;
+    }
+
     /**
      * Returns whether Ack compaction is enabled
      *
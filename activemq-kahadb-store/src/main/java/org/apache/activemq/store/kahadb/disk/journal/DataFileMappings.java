@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.apache.activemq.util.ByteSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read only memory mappings of sealed journal data files. Records are read straight
+ * from the mapped file without a seek and read call per record. Mappings are created
+ * on first use and kept in LRU order; the least recently used mappings are unmapped
+ * when the total mapped size would exceed the configured budget.
+ * <p>
+ * Only data files that are no longer appended to should be read through here, a read
+ * that falls outside of the mapped range returns null so the caller can fall back to
+ * a {@link DataFileAccessor}.
+ */
+final class DataFileMappings {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataFileMappings.class);
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Throwable e) {
+            LOG.debug("Unable to eagerly unmap journal data files, unmapping is left to the garbage collector", e);
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final long budget;
+    private final LinkedHashMap<Integer, Mapping> mappings = new LinkedHashMap<Integer, Mapping>(16, 0.75f, true);
+    private long mappedSize;
+    private boolean closed;
+
+    private static final class Mapping {
+        final MappedByteBuffer buffer;
+        int references;
+        boolean evicted;
+
+        Mapping(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    DataFileMappings(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return the record at the location or null if it is not covered by a mapping
+     */
+    ByteSequence readRecord(DataFile dataFile, Location location) throws IOException {
+        Mapping mapping = acquire(dataFile);
+        if (mapping == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = mapping.buffer.duplicate();
+            int offset = location.getOffset();
+            if (location.getSize() == Location.NOT_SET) {
+                if (offset + Journal.RECORD_HEAD_SPACE > buffer.limit()) {
+                    return null;
+                }
+                location.setSize(buffer.getInt(offset));
+                location.setType(buffer.get(offset + 4));
+            }
+            int size = location.getSize();
+            if (size < Journal.RECORD_HEAD_SPACE || (long) offset + size > buffer.limit()) {
+                return null;
+            }
+            byte[] data = new byte[size - Journal.RECORD_HEAD_SPACE];
+            buffer.position(offset + Journal.RECORD_HEAD_SPACE);
+            buffer.get(data);
+            return new ByteSequence(data, 0, data.length);
+        } finally {
+            release(mapping);
+        }
+    }
+
+    /**
+     * @return true if the location size and type were read from a mapping
+     */
+    boolean readLocationDetails(DataFile dataFile, Location location) throws IOException {
+        Mapping mapping = acquire(dataFile);
+        if (mapping == null) {
+            return false;
+        }
+        try {
+            int offset = location.getOffset();
+            if (offset + Journal.RECORD_HEAD_SPACE > mapping.buffer.limit()) {
+                return false;
+            }
+            location.setSize(mapping.buffer.getInt(offset));
+            location.setType(mapping.buffer.get(offset + 4));
+            return true;
+        } finally {
+            release(mapping);
+        }
+    }
+
+    synchronized long getMappedSize() {
+        return mappedSize;
+    }
+
+    synchronized int getMappingCount() {
+        return mappings.size();
+    }
+
+    synchronized void unmap(DataFile dataFile) {
+        Mapping mapping = mappings.remove(dataFile.getDataFileId());
+        if (mapping != null) {
+            evict(mapping);
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        for (Mapping mapping : mappings.values()) {
+            evict(mapping);
+        }
+        mappings.clear();
+    }
+
+    private Mapping acquire(DataFile dataFile) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            Mapping mapping = mappings.get(dataFile.getDataFileId());
+            if (mapping == null) {
+                long length = dataFile.getLength();
+                if (length <= 0 || length > budget) {
+                    return null;
+                }
+                makeRoom(length);
+                mapping = new Mapping(map(dataFile, length));
+                mappings.put(dataFile.getDataFileId(), mapping);
+                mappedSize += mapping.buffer.capacity();
+            }
+            mapping.references++;
+            return mapping;
+        }
+    }
+
+    private synchronized void release(Mapping mapping) {
+        mapping.references--;
+        if (mapping.evicted && mapping.references == 0) {
+            unmap(mapping.buffer);
+        }
+    }
+
+    private void makeRoom(long length) {
+        for (Iterator<Mapping> iter = mappings.values().iterator(); iter.hasNext() && mappedSize + length > budget;) {
+            Mapping eldest = iter.next();
+            iter.remove();
+            evict(eldest);
+        }
+    }
+
+    private void evict(Mapping mapping) {
+        mappedSize -= mapping.buffer.capacity();
+        mapping.evicted = true;
+        if (mapping.references == 0) {
+            unmap(mapping.buffer);
+        }
+    }
+
+    private static MappedByteBuffer map(DataFile dataFile, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(dataFile.getFile(), "r")) {
+            // never map past the end of the file, the mapping remains valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, raf.length()));
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (Throwable e) {
+                LOG.trace("Failed to unmap journal data file", e);
+            }
+        }
+    }
+}
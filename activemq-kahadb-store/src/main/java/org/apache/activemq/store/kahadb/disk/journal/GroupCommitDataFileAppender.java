@@ -0,0 +1,374 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.Checksum;
+
+import org.apache.activemq.store.PersistenceAdapterStatistics;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOExceptionSupport;
+import org.apache.activemq.util.RecoverableRandomAccessFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A batching writer that pipelines data file writes with disk syncs.
+ * <p>
+ * The writer thread gathers each batch into a reused direct buffer and writes the
+ * batch control record and the batch records with a single gathering write on the
+ * file channel. The written batch is then handed to a sync thread, so batch N+1 can
+ * be written while batch N is being forced to disk. Batches that are queued for the
+ * sync thread together share a single force call, and completion of the writers is
+ * always signalled in batch order.
+ */
+class GroupCommitDataFileAppender extends DataFileAppender {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitDataFileAppender.class);
+
+    public static final String PROPERTY_MAX_PENDING_SYNC_BATCHES = "org.apache.kahadb.journal.appender.MAX_PENDING_SYNC_BATCHES";
+    public static final int maxPendingSyncBatches = Integer.parseInt(System.getProperty(PROPERTY_MAX_PENDING_SYNC_BATCHES, "16"));
+
+    private static final PendingSync END = new PendingSync(null, null, null, false, false, 0);
+    private static final long HAND_OFF_POLL_MILLIS = 100;
+    private static final long CLOSE_HAND_OFF_TIMEOUT_MILLIS = 30000;
+
+    private final BlockingQueue<PendingSync> pendingSyncs = new LinkedBlockingQueue<PendingSync>(maxPendingSyncBatches);
+    private final ByteBuffer controlRecord = ByteBuffer.allocateDirect(Journal.BATCH_CONTROL_RECORD_SIZE);
+    private ByteBuffer batchBuffer;
+
+    private static final class PendingSync {
+        final WriteBatch batch;
+        final DataFile dataFile;
+        final RecoverableRandomAccessFile file;
+        final boolean forceToDisk;
+        final boolean close;
+        final long started;
+
+        PendingSync(WriteBatch batch, DataFile dataFile, RecoverableRandomAccessFile file, boolean forceToDisk, boolean close, long started) {
+            this.batch = batch;
+            this.dataFile = dataFile;
+            this.file = file;
+            this.forceToDisk = forceToDisk;
+            this.close = close;
+            this.started = started;
+        }
+    }
+
+    public GroupCommitDataFileAppender(Journal dataManager) {
+        super(dataManager);
+    }
+
+    /**
+     * The write loop of the pipeline. Batches are taken from the enqueue side exactly
+     * as in {@link DataFileAppender}, written to the current data file and then passed
+     * on to the sync thread which does the force calls and signals the writers.
+     */
+    @Override
+    protected void processQueue() {
+        Thread syncThread = new Thread() {
+            @Override
+            public void run() {
+                processSyncs();
+            }
+        };
+        syncThread.setPriority(Thread.MAX_PRIORITY);
+        syncThread.setDaemon(true);
+        syncThread.setName("ActiveMQ Data File Syncer");
+        syncThread.start();
+
+        DataFile dataFile = null;
+        RecoverableRandomAccessFile file = null;
+        WriteBatch wb = null;
+        try {
+            while (true) {
+
+                // Block till we get a command.
+                synchronized (enqueueMutex) {
+                    while (true) {
+                        if (nextWriteBatch != null) {
+                            wb = nextWriteBatch;
+                            nextWriteBatch = null;
+                            break;
+                        }
+                        if (shutdown) {
+                            return;
+                        }
+                        enqueueMutex.wait();
+                    }
+                    enqueueMutex.notifyAll();
+                }
+
+                if (dataFile != wb.dataFile) {
+                    if (file != null) {
+                        // the sync thread closes the file once the batches written to it are done
+                        handOff(syncThread, new PendingSync(null, dataFile, file, false, true, 0), Long.MAX_VALUE);
+                    }
+                    dataFile = wb.dataFile;
+                    file = dataFile.appendRandomAccessFile();
+                }
+
+                long started = System.nanoTime();
+                boolean forceToDisk = writeBatch(file, wb);
+                handOff(syncThread, new PendingSync(wb, dataFile, file, forceToDisk, false, started), Long.MAX_VALUE);
+                wb = null;
+            }
+        } catch (Throwable error) {
+            logger.warn("Journal failed while writing at: " + (dataFile != null ? dataFile.getDataFileId() : null), error);
+            synchronized (enqueueMutex) {
+                shutdown = true;
+                running = false;
+                signalError(wb, error);
+                if (nextWriteBatch != null) {
+                    signalError(nextWriteBatch, error);
+                    nextWriteBatch = null;
+                    enqueueMutex.notifyAll();
+                }
+            }
+        } finally {
+            long deadline = System.currentTimeMillis() + CLOSE_HAND_OFF_TIMEOUT_MILLIS;
+            try {
+                if (file != null) {
+                    handOff(syncThread, new PendingSync(null, dataFile, file, false, true, 0), deadline);
+                    file = null;
+                }
+                handOff(syncThread, END, deadline);
+                syncThread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (Throwable error) {
+                logger.warn("Journal sync thread did not complete on close", error);
+            }
+            if (syncThread.isAlive() || !pendingSyncs.isEmpty()) {
+                failPendingSyncs(dataFile, file);
+            }
+            shutdownDone.countDown();
+            running = false;
+        }
+    }
+
+    /**
+     * Queues a written batch for the sync thread, waiting while the queue is full.
+     * Fails instead of waiting when the sync thread is no longer running or the
+     * deadline has passed.
+     */
+    private void handOff(Thread syncThread, PendingSync pending, long deadline) throws InterruptedException, IOException {
+        while (!pendingSyncs.offer(pending, HAND_OFF_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!syncThread.isAlive()) {
+                throw new IOException("Journal sync thread is not running");
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IOException("Timed out waiting for the journal sync thread");
+            }
+        }
+    }
+
+    /**
+     * Fails the batches the sync thread did not take and closes their files, so the
+     * writers waiting on them are released when the sync thread is gone or stuck.
+     */
+    private void failPendingSyncs(DataFile dataFile, RecoverableRandomAccessFile file) {
+        IOException failure = new IOException("Journal sync thread did not complete the pending writes");
+        List<PendingSync> remaining = new ArrayList<PendingSync>();
+        pendingSyncs.drainTo(remaining);
+        for (PendingSync pending : remaining) {
+            if (pending.batch != null) {
+                signalError(pending.batch, failure);
+            } else if (pending.close) {
+                closeQuietly(pending.dataFile, pending.file);
+            }
+        }
+        if (file != null) {
+            closeQuietly(dataFile, file);
+        }
+    }
+
+    private static void closeQuietly(DataFile dataFile, RecoverableRandomAccessFile file) {
+        try {
+            dataFile.closeRandomAccessFile(file);
+        } catch (IOException e) {
+            logger.warn("Failed to close journal data file: " + dataFile, e);
+        }
+    }
+
+    private boolean writeBatch(RecoverableRandomAccessFile file, WriteBatch wb) throws IOException {
+        final int recordsLength = wb.size - Journal.BATCH_CONTROL_RECORD_SIZE;
+        final int bufferLength = recordsLength + Journal.EOF_RECORD.length;
+
+        ByteBuffer records;
+        if (bufferLength <= maxWriteBatchSize + Journal.EOF_RECORD.length) {
+            if (batchBuffer == null) {
+                batchBuffer = ByteBuffer.allocateDirect(maxWriteBatchSize + Journal.EOF_RECORD.length);
+            }
+            records = batchBuffer;
+            records.clear();
+        } else {
+            // a single record larger than the batch size, don't hold on to a buffer for it
+            records = ByteBuffer.allocate(bufferLength);
+        }
+
+        boolean forceToDisk = false;
+        Journal.WriteCommand write = wb.writes.getHead();
+        while (write != null) {
+            forceToDisk |= write.sync | (syncOnComplete && write.onComplete != null);
+            records.putInt(write.location.getSize());
+            records.put(write.location.getType());
+            records.put(write.data.getData(), write.data.getOffset(), write.data.getLength());
+            write = write.getNext();
+        }
+
+        // append 'unset', zero length next batch so read can always find eof
+        records.put(Journal.EOF_RECORD);
+        records.flip();
+
+        long checksumValue = 0;
+        if (journal.isChecksum()) {
+            ByteBuffer checksummed = records.duplicate();
+            checksummed.limit(recordsLength);
+            Checksum checksum = new Adler32();
+            checksum.update(checksummed);
+            checksumValue = checksum.getValue();
+        }
+
+        controlRecord.clear();
+        controlRecord.put(Journal.BATCH_CONTROL_RECORD_HEADER);
+        controlRecord.putInt(recordsLength);
+        controlRecord.putLong(checksumValue);
+        controlRecord.flip();
+
+        ReplicationTarget replicationTarget = journal.getReplicationTarget();
+        ByteSequence sequence = null;
+        if (replicationTarget != null) {
+            sequence = toByteSequence(controlRecord.duplicate(), records.duplicate());
+        }
+
+        // Now do the 1 big write.
+        final ByteBuffer[] buffers = new ByteBuffer[] {controlRecord, records};
+        FileChannel channel = file.getChannel();
+        channel.position(wb.offset);
+        long remaining = controlRecord.remaining() + records.remaining();
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+
+        PersistenceAdapterStatistics statistics = journal.getPersistenceAdapterStatistics();
+        if (statistics != null) {
+            statistics.addJournalWriteBatchSize(wb.size);
+        }
+
+        if (replicationTarget != null) {
+            replicationTarget.replicate(wb.writes.getHead().location, sequence, forceToDisk);
+        }
+
+        return forceToDisk;
+    }
+
+    private static ByteSequence toByteSequence(ByteBuffer control, ByteBuffer records) {
+        byte[] data = new byte[control.remaining() + records.remaining()];
+        int controlLength = control.remaining();
+        control.get(data, 0, controlLength);
+        records.get(data, controlLength, records.remaining());
+        return new ByteSequence(data);
+    }
+
+    /**
+     * The sync loop of the pipeline. Drains all batches written since the last pass,
+     * forces each file they were written to at most once and then signals the batches
+     * in the order they were written.
+     */
+    private void processSyncs() {
+        final List<PendingSync> drained = new ArrayList<PendingSync>();
+        IOException failure = null;
+        try {
+            while (true) {
+                drained.add(pendingSyncs.take());
+                pendingSyncs.drainTo(drained);
+
+                RecoverableRandomAccessFile synced = null;
+                for (PendingSync pending : drained) {
+                    if (pending == END) {
+                        return;
+                    }
+
+                    if (pending.close) {
+                        try {
+                            if (periodicSync && failure == null) {
+                                if (logger.isTraceEnabled()) {
+                                    logger.trace("Syncing file {} on rotate", pending.dataFile.getFile().getName());
+                                }
+                                pending.file.sync();
+                            }
+                            pending.dataFile.closeRandomAccessFile(pending.file);
+                        } catch (IOException e) {
+                            logger.warn("Failed to close journal data file: " + pending.dataFile, e);
+                        }
+                        continue;
+                    }
+
+                    if (failure != null) {
+                        signalError(pending.batch, failure);
+                        continue;
+                    }
+
+                    try {
+                        if (pending.forceToDisk && pending.file != synced) {
+                            long start = System.nanoTime();
+                            pending.file.sync();
+                            synced = pending.file;
+                            PersistenceAdapterStatistics statistics = journal.getPersistenceAdapterStatistics();
+                            if (statistics != null) {
+                                statistics.addJournalSyncTime(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                            }
+                        }
+                    } catch (Throwable error) {
+                        logger.warn("Journal failed while syncing at: " + pending.batch.dataFile.getDataFileId() + ":" + pending.batch.offset, error);
+                        failure = error instanceof IOException ? (IOException) error : IOExceptionSupport.create(error);
+                        synchronized (enqueueMutex) {
+                            shutdown = true;
+                            enqueueMutex.notifyAll();
+                        }
+                        signalError(pending.batch, failure);
+                        continue;
+                    }
+
+                    Journal.WriteCommand lastWrite = pending.batch.writes.getTail();
+                    journal.setLastAppendLocation(lastWrite.location);
+                    signalDone(pending.batch);
+
+                    PersistenceAdapterStatistics statistics = journal.getPersistenceAdapterStatistics();
+                    if (statistics != null) {
+                        statistics.addJournalWriteBatchLatency(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - pending.started));
+                    }
+                }
+                drained.clear();
+            }
+        } catch (Throwable error) {
+            logger.warn("Journal sync thread failed", error);
+            for (PendingSync pending : drained) {
+                if (pending.batch != null && pending.batch.latch.getCount() > 0) {
+                    signalError(pending.batch, error);
+                }
+            }
+        }
+    }
+}
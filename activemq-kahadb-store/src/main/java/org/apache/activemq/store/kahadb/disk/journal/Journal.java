@@ -46,6 +46,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.Adler32;
 import java.util.zip.Checksum;
 
+import org.apache.activemq.store.PersistenceAdapterStatistics;
 import org.apache.activemq.store.kahadb.disk.util.LinkedNode;
 import org.apache.activemq.store.kahadb.disk.util.LinkedNodeList;
 import org.apache.activemq.store.kahadb.disk.util.Sequence;
@@ -151,6 +152,12 @@ public class Journal {
         NEVER;
     }
 
+    public enum JournalAppenderType {
+        DEFAULT,
+        CALLER_BUFFERING,
+        GROUP_COMMIT;
+    }
+
     private static byte[] createBatchControlRecordHeader() {
         try (DataByteArrayOutputStream os = new DataByteArrayOutputStream();) {
             os.writeInt(BATCH_CONTROL_RECORD_SIZE);
@@ -216,6 +223,8 @@ public class Journal {
 
     protected FileAppender appender;
     protected DataFileAccessorPool accessorPool;
+    protected DataFileMappings mappings;
+    protected long mappedReadBudget;
 
     protected Map<Integer, DataFile> fileMap = new HashMap<Integer, DataFile>();
     protected Map<File, DataFile> fileByFileMap = new LinkedHashMap<File, DataFile>();
@@ -241,6 +250,8 @@ public class Journal {
     private long cleanupInterval = DEFAULT_CLEANUP_INTERVAL;
 
     protected JournalDiskSyncStrategy journalDiskSyncStrategy = JournalDiskSyncStrategy.ALWAYS;
+    protected JournalAppenderType journalAppenderType = JournalAppenderType.DEFAULT;
+    private PersistenceAdapterStatistics persistenceAdapterStatistics;
 
     public interface DataFileRemovedListener {
         void fileRemoved(DataFile datafile);
@@ -255,9 +266,12 @@ public class Journal {
 
         long start = System.currentTimeMillis();
         accessorPool = new DataFileAccessorPool(this);
+        if (mappedReadBudget > 0) {
+            mappings = new DataFileMappings(mappedReadBudget);
+        }
         started = true;
 
-        appender = callerBufferAppender ? new CallerBufferingDataFileAppender(this) : new DataFileAppender(this);
+        appender = createAppender();
 
         File[] files = directory.listFiles(new FilenameFilter() {
             @Override
@@ -360,6 +374,17 @@ public class Journal {
         LOG.trace("Startup took: "+(end-start)+" ms");
     }
 
+    protected FileAppender createAppender() {
+        switch (journalAppenderType) {
+            case GROUP_COMMIT:
+                return new GroupCommitDataFileAppender(this);
+            case CALLER_BUFFERING:
+                return new CallerBufferingDataFileAppender(this);
+            default:
+                return callerBufferAppender ? new CallerBufferingDataFileAppender(this) : new DataFileAppender(this);
+        }
+    }
+
     private ByteBuffer allocateDirectBuffer(int size) {
         ByteBuffer buffer = ByteBuffer.allocateDirect(size);
         buffer.put(EOF_RECORD);
@@ -741,6 +766,10 @@ public class Journal {
             }
             ThreadPoolUtils.shutdownGraceful(scheduler, 4000);
             accessorPool.close();
+            if (mappings != null) {
+                mappings.close();
+                mappings = null;
+            }
         }
         // the appender can be calling back to to the journal blocking a close AMQ-5620
         appender.close();
@@ -764,6 +793,9 @@ public class Journal {
         // Close all open file handles...
         appender.close();
         accessorPool.close();
+        if (mappings != null) {
+            mappings.close();
+        }
 
         boolean result = true;
         for (Iterator<DataFile> i = fileMap.values().iterator(); i.hasNext();) {
@@ -790,7 +822,11 @@ public class Journal {
         }
         // reopen open file handles...
         accessorPool = new DataFileAccessorPool(this);
-        appender = new DataFileAppender(this);
+        if (mappedReadBudget > 0) {
+            mappings = new DataFileMappings(mappedReadBudget);
+        }
+        // the configured appender type, not always the default appender, after a reset
+        appender = createAppender();
         return result;
     }
 
@@ -816,6 +852,10 @@ public class Journal {
 
     private void forceRemoveDataFile(DataFile dataFile) throws IOException {
         accessorPool.disposeDataFileAccessors(dataFile);
+        DataFileMappings mappings = this.mappings;
+        if (mappings != null) {
+            mappings.unmap(dataFile);
+        }
         totalLength.addAndGet(-dataFile.getLength());
         if (archiveDataLogs) {
             File directoryArchive = getDirectoryArchive();
@@ -916,14 +956,16 @@ public class Journal {
             }
 
             // Load in location size and type.
-            DataFileAccessor reader = accessorPool.openDataFileAccessor(dataFile);
-            try {
-                reader.readLocationDetails(cur);
-            } catch (EOFException eof) {
-                LOG.trace("EOF on next: " + location + ", cur: " + cur);
-                throw eof;
-            } finally {
-                accessorPool.closeDataFileAccessor(reader);
+            if (!readMappedLocationDetails(dataFile, cur)) {
+                DataFileAccessor reader = accessorPool.openDataFileAccessor(dataFile);
+                try {
+                    reader.readLocationDetails(cur);
+                } catch (EOFException eof) {
+                    LOG.trace("EOF on next: " + location + ", cur: " + cur);
+                    throw eof;
+                } finally {
+                    accessorPool.closeDataFileAccessor(reader);
+                }
             }
 
             Sequence corruptedRange = dataFile.corruptedBlocks.get(cur.getOffset());
@@ -947,6 +989,16 @@ public class Journal {
 
     public ByteSequence read(Location location) throws IOException, IllegalStateException {
         DataFile dataFile = getDataFile(location);
+        DataFileMappings mappings = this.mappings;
+        if (mappings != null && isSealed(dataFile)) {
+            if (!location.isValid()) {
+                throw new IOException("Invalid location: " + location);
+            }
+            ByteSequence rc = mappings.readRecord(dataFile, location);
+            if (rc != null) {
+                return rc;
+            }
+        }
         DataFileAccessor reader = accessorPool.openDataFileAccessor(dataFile);
         ByteSequence rc = null;
         try {
@@ -957,6 +1009,17 @@ public class Journal {
         return rc;
     }
 
+    private boolean readMappedLocationDetails(DataFile dataFile, Location location) throws IOException {
+        DataFileMappings mappings = this.mappings;
+        return mappings != null && isSealed(dataFile) && mappings.readLocationDetails(dataFile, location);
+    }
+
+    // once the appender completed a batch in a later file this one is no longer appended to
+    private boolean isSealed(DataFile dataFile) {
+        Location lastAppended = lastAppendLocation.get();
+        return lastAppended != null && dataFile.getDataFileId() < lastAppended.getDataFileId();
+    }
+
     public Location write(ByteSequence data, boolean sync) throws IOException, IllegalStateException {
         Location loc = appender.storeItem(data, Location.USER_TYPE, sync);
         return loc;
@@ -1160,6 +1223,40 @@ public class Journal {
         return JournalDiskSyncStrategy.PERIODIC.equals(journalDiskSyncStrategy);
     }
 
+    public long getMappedReadBudget() {
+        return mappedReadBudget;
+    }
+
+    /**
+     * Sets the number of bytes of sealed data files that may be memory mapped for
+     * reads. A value of 0 (the default) reads every record through a file accessor.
+     *
+     * @param mappedReadBudget
+     */
+    public void setMappedReadBudget(long mappedReadBudget) {
+        this.mappedReadBudget = mappedReadBudget;
+    }
+
+    DataFileMappings getMappings() {
+        return mappings;
+    }
+
+    public JournalAppenderType getJournalAppenderType() {
+        return journalAppenderType;
+    }
+
+    public void setJournalAppenderType(JournalAppenderType journalAppenderType) {
+        this.journalAppenderType = journalAppenderType;
+    }
+
+    public PersistenceAdapterStatistics getPersistenceAdapterStatistics() {
+        return persistenceAdapterStatistics;
+    }
+
+    public void setPersistenceAdapterStatistics(PersistenceAdapterStatistics persistenceAdapterStatistics) {
+        this.persistenceAdapterStatistics = persistenceAdapterStatistics;
+    }
+
     public void setDataFileRemovedListener(DataFileRemovedListener dataFileRemovedListener) {
         this.dataFileRemovedListener = dataFileRemovedListener;
     }
@@ -0,0 +1,378 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.page;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.activemq.store.PersistenceAdapterStatistics;
+
+/**
+ * A cache of the on disk image of pages that is kept in direct memory, so a large
+ * part of the index can be kept in memory without growing the heap.
+ * <p>
+ * The cache is split into lock striped segments. Each segment owns a fixed number of
+ * page sized slots in direct buffers that are allocated as the segment fills up, and
+ * an open addressing index of page id to slot. When a segment is full, a slot is
+ * reclaimed with a generalized clock: every hit raises the usage count of a slot, the
+ * clock hand lowers it and evicts the first slot whose count has dropped to zero.
+ * <p>
+ * Cached pages still have to be unmarshalled on every hit, so this cache is meant to
+ * back a small on heap page cache rather than to replace it.
+ * <p>
+ * Hits, misses and evictions are counted per segment and handed to the statistics in
+ * batches, so the counters don't put a shared lock back on the read path.
+ */
+final class OffHeapPageCache {
+
+    private static final long EMPTY = -1;
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MAX_USAGE = 3;
+    private static final int CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int STATISTICS_BATCH = 64;
+
+    private final int pageSize;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    OffHeapPageCache(long capacity, int pageSize, PersistenceAdapterStatistics statistics) {
+        long pages = capacity / pageSize;
+        if (pages < 1) {
+            throw new IllegalArgumentException("Off heap page cache of " + capacity + " bytes cannot hold a page of " + pageSize + " bytes");
+        }
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 <= pages) {
+            segmentCount *= 2;
+        }
+        long segmentPages = pages / segmentCount;
+        if (segmentPages > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("Off heap page cache of " + capacity + " bytes is too large for a page size of " + pageSize);
+        }
+
+        this.pageSize = pageSize;
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment((int) segmentPages, pageSize, statistics);
+        }
+    }
+
+    /**
+     * Copies the cached image of a page into the given array.
+     *
+     * @return true if the page was in the cache
+     */
+    boolean get(long pageId, byte[] data) {
+        long hash = hash(pageId);
+        Segment segment = segments[(int) (hash >>> 32) & segmentMask];
+        synchronized (segment) {
+            return segment.get(pageId, (int) hash, data);
+        }
+    }
+
+    /**
+     * Stores or replaces the cached image of a page, evicting another page when the
+     * segment the page belongs to is full.
+     */
+    void put(long pageId, byte[] data) {
+        long hash = hash(pageId);
+        Segment segment = segments[(int) (hash >>> 32) & segmentMask];
+        synchronized (segment) {
+            segment.writes++;
+            segment.put(pageId, (int) hash, data);
+        }
+    }
+
+    /**
+     * Returns the write stamp of the segment a page belongs to, to be handed to
+     * {@link #fill(long, byte[], long)} once the page has been read from disk.
+     */
+    long writeStamp(long pageId) {
+        long hash = hash(pageId);
+        Segment segment = segments[(int) (hash >>> 32) & segmentMask];
+        synchronized (segment) {
+            return segment.writes;
+        }
+    }
+
+    /**
+     * Stores the image of a page read from disk, unless the segment the page belongs to
+     * has been written to since the given stamp was taken, in which case the image read
+     * may already be stale.
+     *
+     * @return true if the page was stored
+     */
+    boolean fill(long pageId, byte[] data, long stamp) {
+        long hash = hash(pageId);
+        Segment segment = segments[(int) (hash >>> 32) & segmentMask];
+        synchronized (segment) {
+            if (segment.writes != stamp) {
+                return false;
+            }
+            segment.put(pageId, (int) hash, data);
+            return true;
+        }
+    }
+
+    void remove(long pageId) {
+        long hash = hash(pageId);
+        Segment segment = segments[(int) (hash >>> 32) & segmentMask];
+        synchronized (segment) {
+            segment.writes++;
+            segment.remove(pageId, (int) hash);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    long getCapacity() {
+        return (long) segments.length * segments[0].slots * pageSize;
+    }
+
+    long getHits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    long getEvictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    /**
+     * Hands the counts not yet published to the statistics.
+     */
+    void flushStatistics() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.flushStatistics();
+            }
+        }
+    }
+
+    private static long hash(long pageId) {
+        // murmur3 finalizer, the high half picks the segment the low half the index bucket
+        long h = pageId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Segment {
+        final int slots;
+        final int pageSize;
+        final int slotsPerChunk;
+        final ByteBuffer[] chunks;
+        final long[] slotPageIds;
+        final byte[] usage;
+
+        // open addressing index of page id to slot, linear probing
+        final long[] keys;
+        final int[] values;
+        final int mask;
+
+        final PersistenceAdapterStatistics statistics;
+        long hits;
+        long misses;
+        long evictions;
+        int unpublished;
+        long publishedHits;
+        long publishedMisses;
+        long publishedEvictions;
+
+        int allocated;
+        int size;
+        int hand;
+        // bumped by every put and remove, so fills of images read before a write can be refused
+        long writes;
+
+        Segment(int slots, int pageSize, PersistenceAdapterStatistics statistics) {
+            this.slots = slots;
+            this.statistics = statistics;
+            this.pageSize = pageSize;
+            this.slotsPerChunk = Math.max(1, Math.min(slots, CHUNK_SIZE / pageSize));
+            this.chunks = new ByteBuffer[(slots + slotsPerChunk - 1) / slotsPerChunk];
+            this.slotPageIds = new long[slots];
+            this.usage = new byte[slots];
+            int tableSize = Integer.highestOneBit(Math.max(2, slots * 2 - 1)) << 1;
+            this.keys = new long[tableSize];
+            this.values = new int[tableSize];
+            this.mask = tableSize - 1;
+            Arrays.fill(keys, EMPTY);
+            Arrays.fill(slotPageIds, EMPTY);
+        }
+
+        boolean get(long pageId, int hash, byte[] data) {
+            int slot = indexOf(pageId, hash);
+            if (slot < 0) {
+                misses++;
+                countedEvent();
+                return false;
+            }
+            hits++;
+            countedEvent();
+            ByteBuffer chunk = chunks[slot / slotsPerChunk];
+            chunk.position((slot % slotsPerChunk) * pageSize);
+            chunk.get(data, 0, Math.min(data.length, pageSize));
+            if (usage[slot] < MAX_USAGE) {
+                usage[slot]++;
+            }
+            return true;
+        }
+
+        void put(long pageId, int hash, byte[] data) {
+            int slot = indexOf(pageId, hash);
+            if (slot < 0) {
+                if (allocated < slots) {
+                    slot = allocated++;
+                } else {
+                    slot = nextVictim();
+                    long victim = slotPageIds[slot];
+                    if (victim != EMPTY) {
+                        removeIndex(victim, (int) hash(victim));
+                        size--;
+                        evictions++;
+                        countedEvent();
+                    }
+                }
+                insertIndex(pageId, hash, slot);
+                slotPageIds[slot] = pageId;
+                usage[slot] = 1;
+                size++;
+            }
+            ByteBuffer chunk = chunks[slot / slotsPerChunk];
+            if (chunk == null) {
+                int chunkSlots = Math.min(slotsPerChunk, slots - (slot / slotsPerChunk) * slotsPerChunk);
+                chunk = ByteBuffer.allocateDirect(chunkSlots * pageSize);
+                chunks[slot / slotsPerChunk] = chunk;
+            }
+            chunk.position((slot % slotsPerChunk) * pageSize);
+            chunk.put(data, 0, Math.min(data.length, pageSize));
+        }
+
+        void remove(long pageId, int hash) {
+            int slot = removeIndex(pageId, hash);
+            if (slot >= 0) {
+                slotPageIds[slot] = EMPTY;
+                usage[slot] = 0;
+                size--;
+            }
+        }
+
+        private void countedEvent() {
+            if (statistics != null && ++unpublished >= STATISTICS_BATCH) {
+                flushStatistics();
+            }
+        }
+
+        void flushStatistics() {
+            if (statistics != null) {
+                statistics.addPageCacheHits(hits - publishedHits);
+                statistics.addPageCacheMisses(misses - publishedMisses);
+                statistics.addPageCacheEvictions(evictions - publishedEvictions);
+                publishedHits = hits;
+                publishedMisses = misses;
+                publishedEvictions = evictions;
+            }
+            unpublished = 0;
+        }
+
+        private int nextVictim() {
+            while (true) {
+                int slot = hand;
+                hand = hand + 1 == slots ? 0 : hand + 1;
+                if (usage[slot] == 0) {
+                    return slot;
+                }
+                usage[slot]--;
+            }
+        }
+
+        private int indexOf(long pageId, int hash) {
+            for (int i = hash & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == pageId) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        private void insertIndex(long pageId, int hash, int slot) {
+            int i = hash & mask;
+            while (keys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = pageId;
+            values[i] = slot;
+        }
+
+        private int removeIndex(long pageId, int hash) {
+            int i = hash & mask;
+            while (keys[i] != pageId) {
+                if (keys[i] == EMPTY) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+            int slot = values[i];
+
+            // shift back the entries of the probe sequence so no tombstones are needed
+            for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+                int home = (int) hash(keys[j]) & mask;
+                boolean reachable = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!reachable) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = EMPTY;
+            return slot;
+        }
+    }
+}
@@ -44,6 +44,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.Adler32;
 import java.util.zip.Checksum;
 
+import org.apache.activemq.store.PersistenceAdapterStatistics;
 import org.apache.activemq.store.kahadb.disk.util.Sequence;
 import org.apache.activemq.store.kahadb.disk.util.SequenceSet;
 import org.apache.activemq.util.DataByteArrayOutputStream;
@@ -116,6 +117,11 @@ public class PageFile {
     private boolean enablePageCaching = true;
     // How many pages will we keep in the cache?
     private int pageCacheSize = DEFAULT_PAGE_CACHE_SIZE;
+    // Cache of page images kept in direct memory, backs the page cache when enabled.
+    private OffHeapPageCache offHeapPageCache;
+    // How many bytes of direct memory the off heap page cache may use, 0 disables it.
+    private long offHeapPageCacheSize = 0;
+    private PersistenceAdapterStatistics persistenceAdapterStatistics;
 
     // Should first log the page write to the recovery buffer? Avoids partial
     // page write failures..
@@ -132,10 +138,14 @@ public class PageFile {
 
     // Keeps track of writes that are being written to disk.
     private final TreeMap<Long, PageWrite> writes = new TreeMap<Long, PageWrite>();
+    // Set while flushConcurrently() lands a write batch without holding the writes monitor.
+    private boolean writeBatchInProgress;
 
     // Keeps track of free pages.
     private final AtomicLong nextFreePageId = new AtomicLong();
     private SequenceSet freeList = new SequenceSet();
+    // Guards the free list, index updates of different destinations may allocate and free pages concurrently.
+    private final Object freeListMutex = new Object();
 
     private AtomicReference<SequenceSet> recoveredFreeList = new AtomicReference<SequenceSet>();
     private AtomicReference<SequenceSet> trackingFreeDuringRecovery = new AtomicReference<SequenceSet>();
@@ -427,6 +437,10 @@ public class PageFile {
             }
             nextFreePageId.set((writeFile.length() - PAGE_FILE_HEADER_SIZE) / pageSize);
 
+            if (offHeapPageCacheSize > 0) {
+                offHeapPageCache = new OffHeapPageCache(offHeapPageCacheSize, pageSize, persistenceAdapterStatistics);
+            }
+
             metaData.setCleanShutdown(false);
             storeMetaData();
             getFreeFile().delete();
@@ -547,6 +561,10 @@ public class PageFile {
                 if (pageCache != null) {
                     pageCache = null;
                 }
+                if (offHeapPageCache != null) {
+                    offHeapPageCache.flushStatistics();
+                    offHeapPageCache = null;
+                }
                 synchronized (writes) {
                     writes.clear();
                 }
@@ -579,17 +597,7 @@ public class PageFile {
             throw new IOException("Page file already stopped: checkpointing is not allowed");
         }
 
-        SequenceSet recovered = recoveredFreeList.get();
-        if (recovered != null) {
-            recoveredFreeList.lazySet(null);
-            SequenceSet inUse = trackingFreeDuringRecovery.get();
-            recovered.remove(inUse);
-            freeList.merge(recovered);
-
-            // all set for clean shutdown
-            trackingFreeDuringRecovery.set(null);
-            inUse.clear();
-        }
+        flushRecoveredFreeList();
 
         // Setup a latch that gets notified when all buffered writes hits the disk.
         CountDownLatch checkpointLatch;
@@ -604,6 +612,7 @@ public class PageFile {
                 checkpointLatch = this.checkpointLatch;
                 writes.notify();
             } else {
+                awaitWriteBatch();
                 writeBatch();
                 return;
             }
@@ -617,6 +626,66 @@ public class PageFile {
         }
     }
 
+    /**
+     * Flush and sync all write buffers to disk like {@link #flush()}, but without holding on
+     * to the write buffers while the pages are written, so pages can be read and updated
+     * while the flush is in progress. Pages that are updated while they are written keep
+     * their new image in the write buffer for the next write batch.
+     *
+     * @throws IOException If an disk error occurred.
+     */
+    public void flushConcurrently() throws IOException {
+        if (enabledWriteThread) {
+            // the writer thread never holds on to the write buffers while writing
+            flush();
+            return;
+        }
+
+        flushRecoveredFreeList();
+        synchronized (writes) {
+            awaitWriteBatch();
+            if (writes.isEmpty()) {
+                return;
+            }
+            writeBatchInProgress = true;
+        }
+        try {
+            writeBatch();
+        } finally {
+            synchronized (writes) {
+                writeBatchInProgress = false;
+                writes.notifyAll();
+            }
+        }
+    }
+
+    private void awaitWriteBatch() throws InterruptedIOException {
+        while (writeBatchInProgress) {
+            try {
+                writes.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+
+    private void flushRecoveredFreeList() {
+        SequenceSet recovered = recoveredFreeList.get();
+        if (recovered != null) {
+            recoveredFreeList.lazySet(null);
+            synchronized (freeListMutex) {
+                SequenceSet inUse = trackingFreeDuringRecovery.get();
+                recovered.remove(inUse);
+                freeList.merge(recovered);
+
+                // all set for clean shutdown
+                trackingFreeDuringRecovery.set(null);
+                inUse.clear();
+            }
+        }
+    }
 
     @Override
     public String toString() {
@@ -823,6 +892,40 @@ public class PageFile {
         this.pageCacheSize = pageCacheSize;
     }
 
+    /**
+     * @return the number of bytes of direct memory the off heap page cache may use.
+     */
+    public long getOffHeapPageCacheSize() {
+        return this.offHeapPageCacheSize;
+    }
+
+    /**
+     * Page images that are read from or written to the page file are kept in direct memory,
+     * up to the given number of bytes, so they can be re-read without a disk access. The direct
+     * memory limit of the JVM (-XX:MaxDirectMemorySize) has to allow for this size.
+     *
+     * @param offHeapPageCacheSize the size of the off heap page cache in bytes, 0 disables it.
+     */
+    public void setOffHeapPageCacheSize(long offHeapPageCacheSize) {
+        assertNotLoaded();
+        this.offHeapPageCacheSize = offHeapPageCacheSize;
+    }
+
+    public PersistenceAdapterStatistics getPersistenceAdapterStatistics() {
+        return persistenceAdapterStatistics;
+    }
+
+    /**
+     * @param persistenceAdapterStatistics receives the hit, miss and eviction counts of the off heap page cache.
+     */
+    public void setPersistenceAdapterStatistics(PersistenceAdapterStatistics persistenceAdapterStatistics) {
+        this.persistenceAdapterStatistics = persistenceAdapterStatistics;
+    }
+
+    OffHeapPageCache getOffHeapPageCache() {
+        return offHeapPageCache;
+    }
+
     public boolean isEnabledWriteThread() {
         return enabledWriteThread;
     }
@@ -837,7 +940,9 @@ public class PageFile {
     }
 
     public boolean isFreePage(long pageId) {
-        return freeList.contains(pageId);
+        synchronized (freeListMutex) {
+            return freeList.contains(pageId);
+        }
     }
     /**
      * @return the number of pages allocated in the PageFile
@@ -852,7 +957,9 @@ public class PageFile {
 
     public long getFreePageCount() {
         assertLoaded();
-        return freeList.rangeSize();
+        synchronized (freeListMutex) {
+            return freeList.rangeSize();
+        }
     }
 
     public void setRecoveryFileMinPageCount(int recoveryFileMinPageCount) {
@@ -926,7 +1033,10 @@ public class PageFile {
             throw new IllegalArgumentException("The allocation count must be larger than zero");
         }
 
-        Sequence seq = freeList.removeFirstSequence(count);
+        Sequence seq;
+        synchronized (freeListMutex) {
+            seq = freeList.removeFirstSequence(count);
+        }
 
         // We may need to create new free pages...
         if (seq == null) {
@@ -967,19 +1077,41 @@ public class PageFile {
         return nextTxid.incrementAndGet();
     }
 
-    synchronized void readPage(long pageId, byte[] data) throws IOException {
+    void readPage(long pageId, byte[] data) throws IOException {
+        OffHeapPageCache offHeapPageCache = this.offHeapPageCache;
+        if (offHeapPageCache != null) {
+            if (offHeapPageCache.get(pageId, data)) {
+                return;
+            }
+            if (data.length < pageSize) {
+                // partial reads are only used for page headers, cache complete pages only
+                readFromFile(pageId, data);
+                return;
+            }
+            // taken before the read, so an image that a concurrent write has outdated is not cached
+            long stamp = offHeapPageCache.writeStamp(pageId);
+            readFromFile(pageId, data);
+            offHeapPageCache.fill(pageId, data, stamp);
+        } else {
+            readFromFile(pageId, data);
+        }
+    }
+
+    private synchronized void readFromFile(long pageId, byte[] data) throws IOException {
         readFile.seek(toOffset(pageId));
         readFile.readFully(data);
     }
 
     public void freePage(long pageId) {
-        freeList.add(pageId);
-        removeFromCache(pageId);
+        synchronized (freeListMutex) {
+            freeList.add(pageId);
 
-        SequenceSet trackFreeDuringRecovery = trackingFreeDuringRecovery.get();
-        if (trackFreeDuringRecovery != null) {
-            trackFreeDuringRecovery.add(pageId);
+            SequenceSet trackFreeDuringRecovery = trackingFreeDuringRecovery.get();
+            if (trackFreeDuringRecovery != null) {
+                trackFreeDuringRecovery.add(pageId);
+            }
         }
+        removeFromCache(pageId);
     }
 
     @SuppressWarnings("unchecked")
@@ -1043,7 +1175,7 @@ public class PageFile {
 
                 if (enabledWriteThread) {
                     writes.notify();
-                } else {
+                } else if (!writeBatchInProgress) {
                     writeBatch();
                 }
             }
@@ -1091,6 +1223,10 @@ public class PageFile {
         if (enablePageCaching) {
             pageCache.remove(pageId);
         }
+        OffHeapPageCache offHeapPageCache = this.offHeapPageCache;
+        if (offHeapPageCache != null) {
+            offHeapPageCache.remove(pageId);
+        }
     }
 
     ///////////////////////////////////////////////////////////////////
@@ -1190,6 +1326,7 @@ public class PageFile {
             for (PageWrite w : batch) {
                 writeFile.seek(toOffset(w.page.getPageId()));
                 writeFile.write(w.getDiskBound(tmpFilesForRemoval), 0, pageSize);
+                updateOffHeapPageCache(w);
                 w.done();
             }
 
@@ -1227,6 +1364,18 @@ public class PageFile {
         }
     }
 
+    private void updateOffHeapPageCache(PageWrite w) throws IOException {
+        OffHeapPageCache offHeapPageCache = this.offHeapPageCache;
+        if (offHeapPageCache != null) {
+            if (w.page.getType() == Page.PAGE_FREE_TYPE) {
+                // freed pages should not hold on to off heap capacity
+                offHeapPageCache.remove(w.page.getPageId());
+            } else {
+                offHeapPageCache.put(w.page.getPageId(), w.getDiskBound(tmpFilesForRemoval));
+            }
+        }
+    }
+
     public void removeTmpFile(File file, RandomAccessFile randomAccessFile) throws IOException {
         if (!tmpFilesForRemoval.containsKey(file)) {
             tmpFilesForRemoval.put(file, randomAccessFile);
@@ -0,0 +1,373 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Keeps track of added long values like a {@link SequenceSet}, but holds the
+ * ranges of values as runs in a sorted primitive array instead of a linked list
+ * of {@link Sequence} nodes. Values are found with a binary search over the runs,
+ * and adding or removing a value allocates nothing unless the array has to grow.
+ */
+public class LongSequenceSet implements Iterable<Long> {
+
+    private static final long[] EMPTY = new long[0];
+
+    // first and last value of each run, the runs are sorted and never adjacent
+    private long[] runs;
+    private int size;
+
+    public LongSequenceSet() {
+        this.runs = EMPTY;
+    }
+
+    public LongSequenceSet(LongSequenceSet source) {
+        this.runs = Arrays.copyOf(source.runs, source.size * 2);
+        this.size = source.size;
+    }
+
+    public static class Marshaller implements org.apache.activemq.store.kahadb.disk.util.Marshaller<LongSequenceSet> {
+
+        public static final Marshaller INSTANCE = new Marshaller();
+
+        public LongSequenceSet readPayload(DataInput in) throws IOException {
+            LongSequenceSet value = new LongSequenceSet();
+            int count = in.readInt();
+            value.ensureCapacity(count);
+            long last = 0;
+            for (int i = 0; i < count; i++) {
+                long first = last + readVarLong(in);
+                last = first + readVarLong(in);
+                value.runs[i * 2] = first;
+                value.runs[i * 2 + 1] = last;
+            }
+            value.size = count;
+            return value;
+        }
+
+        public void writePayload(LongSequenceSet value, DataOutput out) throws IOException {
+            out.writeInt(value.size);
+            long last = 0;
+            for (int i = 0; i < value.size; i++) {
+                // each run as the distance from the previous run and its length
+                writeVarLong(out, value.runs[i * 2] - last);
+                writeVarLong(out, value.runs[i * 2 + 1] - value.runs[i * 2]);
+                last = value.runs[i * 2 + 1];
+            }
+        }
+
+        public int getFixedSize() {
+            return -1;
+        }
+
+        public LongSequenceSet deepCopy(LongSequenceSet value) {
+            return new LongSequenceSet(value);
+        }
+
+        public boolean isDeepCopySupported() {
+            return true;
+        }
+
+        private static void writeVarLong(DataOutput out, long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        private static long readVarLong(DataInput in) throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = in.readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed variable length long");
+        }
+    }
+
+    /**
+     * @param value
+     *            the value to add to the set
+     * @return false if the value was a duplicate.
+     */
+    public boolean add(long value) {
+        return add(value, value);
+    }
+
+    /**
+     * Adds all the values from first to last, inclusive.
+     *
+     * @return false if all the values were already in the set.
+     */
+    public boolean add(long first, long last) {
+        if (first > last) {
+            throw new IllegalArgumentException("First cannot be more than last");
+        }
+        // check for append
+        if (size == 0 || first > runs[size * 2 - 1] + 1) {
+            insertRun(size, first, last);
+            return true;
+        }
+
+        int from = find(first);
+        if (from < 0 || runs[from * 2 + 1] < first - 1) {
+            from++;
+        }
+        int to = last == Long.MAX_VALUE ? find(last) : find(last + 1);
+        if (from > to) {
+            // not adjacent to any run
+            insertRun(from, first, last);
+            return true;
+        }
+        if (from == to && runs[from * 2] <= first && last <= runs[from * 2 + 1]) {
+            return false;
+        }
+
+        // join the runs from..to with the new values
+        runs[from * 2] = Math.min(first, runs[from * 2]);
+        runs[from * 2 + 1] = Math.max(last, runs[to * 2 + 1]);
+        removeRuns(from + 1, to - from);
+        return true;
+    }
+
+    /**
+     * Adds all the values of the other set, one run at a time.
+     */
+    public void addAll(LongSequenceSet other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.runs[i * 2], other.runs[i * 2 + 1]);
+        }
+    }
+
+    /**
+     * Removes the given value from the set, splitting a contained run if necessary.
+     *
+     * @return true if the value was removed from the set, false if the set
+     *         did not contain the given value.
+     */
+    public boolean remove(long value) {
+        int index = find(value);
+        if (index < 0 || runs[index * 2 + 1] < value) {
+            return false;
+        }
+        long first = runs[index * 2];
+        long last = runs[index * 2 + 1];
+        if (first == last) {
+            removeRuns(index, 1);
+        } else if (first == value) {
+            runs[index * 2] = value + 1;
+        } else if (last == value) {
+            runs[index * 2 + 1] = value - 1;
+        } else {
+            runs[index * 2 + 1] = value - 1;
+            insertRun(index + 1, value + 1, last);
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns the first value of this set.
+     *
+     * @throws NoSuchElementException if this set is empty.
+     */
+    public long removeFirst() {
+        long first = first();
+        remove(first);
+        return first;
+    }
+
+    /**
+     * Returns true if the value given is contained within one of the runs of this set.
+     */
+    public boolean contains(long value) {
+        int index = find(value);
+        return index >= 0 && value <= runs[index * 2 + 1];
+    }
+
+    /**
+     * @throws NoSuchElementException if this set is empty.
+     */
+    public long first() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return runs[0];
+    }
+
+    /**
+     * @throws NoSuchElementException if this set is empty.
+     */
+    public long last() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return runs[size * 2 - 1];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of runs of consecutive values in this set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the total number of values contained in this set.
+     */
+    public long rangeSize() {
+        long result = 0;
+        for (int i = 0; i < size; i++) {
+            result += runs[i * 2 + 1] - runs[i * 2] + 1;
+        }
+        return result;
+    }
+
+    public void clear() {
+        runs = EMPTY;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            private int index;
+            private long next = size > 0 ? runs[0] : 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Long next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                long value = next;
+                if (value == runs[index * 2 + 1]) {
+                    index++;
+                    if (index < size) {
+                        next = runs[index * 2];
+                    }
+                } else {
+                    next++;
+                }
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LongSequenceSet)) {
+            return false;
+        }
+        LongSequenceSet other = (LongSequenceSet) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size * 2; i++) {
+            if (runs[i] != other.runs[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = size;
+        for (int i = 0; i < size * 2; i++) {
+            result = 31 * result + (int) (runs[i] ^ (runs[i] >>> 32));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            long first = runs[i * 2];
+            long last = runs[i * 2 + 1];
+            builder.append(first == last ? "" + first : first + ".." + last);
+        }
+        return builder.append("]").toString();
+    }
+
+    /**
+     * @return the index of the last run that starts at or before the value, or -1.
+     */
+    private int find(long value) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (runs[mid * 2] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private void insertRun(int index, long first, long last) {
+        ensureCapacity(size + 1);
+        System.arraycopy(runs, index * 2, runs, index * 2 + 2, (size - index) * 2);
+        runs[index * 2] = first;
+        runs[index * 2 + 1] = last;
+        size++;
+    }
+
+    private void removeRuns(int index, int count) {
+        if (count > 0) {
+            System.arraycopy(runs, (index + count) * 2, runs, index * 2, (size - index - count) * 2);
+            size -= count;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (runs.length < capacity * 2) {
+            runs = Arrays.copyOf(runs, Math.max(capacity * 2, runs.length + (runs.length >> 1)));
+        }
+    }
+}
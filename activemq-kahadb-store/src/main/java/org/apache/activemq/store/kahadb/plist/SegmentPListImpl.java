@@ -0,0 +1,273 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.plist;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.apache.activemq.store.PList;
+import org.apache.activemq.store.PListEntry;
+import org.apache.activemq.util.ByteSequence;
+
+/**
+ * A list of the {@link SegmentPListStoreImpl}. The entries are kept in a ring of
+ * primitive arrays indexed by a key, addLast takes the key after the last entry
+ * and addFirst the key before the first one. A removed entry leaves a hole until
+ * the first entry moves past it, so removing any entry is done in constant time.
+ */
+public class SegmentPListImpl implements PList {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long REMOVED = -1;
+
+    private final SegmentPListStoreImpl store;
+    private final String name;
+    // the slot of a key is key & (capacity - 1)
+    private long[] locations;
+    private int[] sizes;
+    private String[] ids;
+    private long firstKey;
+    private long nextKey;
+    private long size;
+    private long messageSize;
+
+    SegmentPListImpl(SegmentPListStoreImpl store, String name) {
+        this.store = store;
+        this.name = name;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    final class Locator {
+        final long key;
+        final long location;
+
+        Locator(long key, long location) {
+            this.key = key;
+            this.location = location;
+        }
+
+        SegmentPListImpl plist() {
+            return SegmentPListImpl.this;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+        for (long key = firstKey; key < nextKey; key++) {
+            long location = locations[slot(key)];
+            if (location != REMOVED) {
+                store.release(location);
+            }
+        }
+        allocate(INITIAL_CAPACITY);
+        firstKey = nextKey;
+        size = 0;
+        messageSize = 0;
+    }
+
+    @Override
+    public Object addLast(String id, ByteSequence bs) throws IOException {
+        long location = store.write(bs);
+        synchronized (this) {
+            ensureCapacity();
+            long key = nextKey++;
+            set(key, id, location, bs.getLength());
+            return new Locator(key, location);
+        }
+    }
+
+    @Override
+    public Object addFirst(String id, ByteSequence bs) throws IOException {
+        long location = store.write(bs);
+        synchronized (this) {
+            ensureCapacity();
+            long key = --firstKey;
+            set(key, id, location, bs.getLength());
+            return new Locator(key, location);
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(Object position) throws IOException {
+        Locator locator = (Locator) position;
+        assert locator != null;
+        assert locator.plist() == this;
+        return remove(locator.key, locator.location);
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public PListIterator iterator() throws IOException {
+        return new SegmentPListIterator();
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized long messageSize() {
+        return messageSize;
+    }
+
+    private int slot(long key) {
+        return (int) key & (locations.length - 1);
+    }
+
+    private void set(long key, String id, long location, int length) {
+        int slot = slot(key);
+        locations[slot] = location;
+        sizes[slot] = length;
+        ids[slot] = id;
+        size++;
+        messageSize += length;
+    }
+
+    /**
+     * Removes the entry of the key when it is still the one at the location, the
+     * key of a removed entry can be taken again by addFirst.
+     */
+    private boolean remove(long key, long location) {
+        if (key < firstKey || key >= nextKey) {
+            return false;
+        }
+        int slot = slot(key);
+        if (locations[slot] != location) {
+            return false;
+        }
+        store.release(location);
+        locations[slot] = REMOVED;
+        ids[slot] = null;
+        size--;
+        messageSize -= sizes[slot];
+        while (firstKey < nextKey && locations[slot(firstKey)] == REMOVED) {
+            firstKey++;
+        }
+        int capacity = locations.length;
+        if (capacity > INITIAL_CAPACITY && nextKey - firstKey < capacity / 4) {
+            resize(capacity / 2);
+        }
+        return true;
+    }
+
+    private void ensureCapacity() {
+        if (nextKey - firstKey == locations.length) {
+            resize(locations.length * 2);
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldLocations = locations;
+        int[] oldSizes = sizes;
+        String[] oldIds = ids;
+        int oldMask = oldLocations.length - 1;
+        allocate(capacity);
+        for (long key = firstKey; key < nextKey; key++) {
+            int oldSlot = (int) key & oldMask;
+            int slot = slot(key);
+            locations[slot] = oldLocations[oldSlot];
+            sizes[slot] = oldSizes[oldSlot];
+            ids[slot] = oldIds[oldSlot];
+        }
+    }
+
+    private void allocate(int capacity) {
+        locations = new long[capacity];
+        sizes = new int[capacity];
+        ids = new String[capacity];
+    }
+
+    final class SegmentPListIterator implements PListIterator {
+        private long cursor;
+        private Locator last;
+
+        SegmentPListIterator() {
+            synchronized (SegmentPListImpl.this) {
+                cursor = firstKey;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            synchronized (SegmentPListImpl.this) {
+                skipRemoved();
+                return cursor < nextKey;
+            }
+        }
+
+        @Override
+        public PListEntry next() {
+            synchronized (SegmentPListImpl.this) {
+                skipRemoved();
+                if (cursor >= nextKey) {
+                    throw new NoSuchElementException();
+                }
+                int slot = slot(cursor);
+                ByteSequence bs;
+                try {
+                    bs = store.read(locations[slot], sizes[slot]);
+                } catch (IOException unexpected) {
+                    NoSuchElementException e = new NoSuchElementException(unexpected.getLocalizedMessage());
+                    e.initCause(unexpected);
+                    throw e;
+                }
+                last = new Locator(cursor, locations[slot]);
+                cursor++;
+                return new PListEntry(ids[slot], bs, last);
+            }
+        }
+
+        @Override
+        public void remove() {
+            synchronized (SegmentPListImpl.this) {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                SegmentPListImpl.this.remove(last.key, last.location);
+                last = null;
+            }
+        }
+
+        @Override
+        public void release() {
+        }
+
+        private void skipRemoved() {
+            if (cursor < firstKey) {
+                cursor = firstKey;
+            }
+            while (cursor < nextKey && locations[slot(cursor)] == REMOVED) {
+                cursor++;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "[firstKey=" + firstKey + ", nextKey=" + nextKey + ", size=" + size() + "]";
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.plist;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.store.JournaledStore;
+import org.apache.activemq.store.PListStore;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.util.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A PListStore for the temporary data of a broker that appends the entries of all
+ * its lists to segment files, without a page file index or a journal. Each list
+ * keeps the locations of its entries in memory, in primitive arrays. The segment
+ * files are never synced to disk, the data does not outlive the store. A segment
+ * file is deleted as soon as the last of its entries is removed, so no periodic
+ * cleanup is needed.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class SegmentPListStoreImpl extends ServiceSupport implements PListStore, JournaledStore {
+    static final Logger LOG = LoggerFactory.getLogger(SegmentPListStoreImpl.class);
+
+    private File directory;
+    private int journalMaxFileLength = Journal.DEFAULT_MAX_FILE_LENGTH;
+    private final Map<String, SegmentPListImpl> lists = new HashMap<String, SegmentPListImpl>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<Integer, Segment>();
+    private final AtomicLong diskSize = new AtomicLong();
+    private Segment current;
+    private int nextSegmentId;
+
+    private static final class Segment {
+        final int id;
+        final File file;
+        final FileChannel channel;
+        // the bytes written to the segment and the entries not yet removed
+        int length;
+        int live;
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        void delete() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close " + file, e);
+            }
+            IOHelper.deleteFile(file);
+        }
+    }
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public int getJournalMaxFileLength() {
+        return journalMaxFileLength;
+    }
+
+    /**
+     * Sets the length at which a new segment file is started.
+     */
+    public void setJournalMaxFileLength(int journalMaxFileLength) {
+        this.journalMaxFileLength = journalMaxFileLength;
+    }
+
+    @Override
+    public long size() {
+        return diskSize.get();
+    }
+
+    /**
+     * @return the number of segment files of the store.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public SegmentPListImpl getPList(String name) throws Exception {
+        if (!isStarted()) {
+            throw new IllegalStateException("Not started");
+        }
+        synchronized (lists) {
+            SegmentPListImpl result = lists.get(name);
+            if (result == null) {
+                result = new SegmentPListImpl(this, name);
+                lists.put(name, result);
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public boolean removePList(String name) throws Exception {
+        SegmentPListImpl list;
+        synchronized (lists) {
+            list = lists.remove(name);
+        }
+        if (list != null) {
+            list.destroy();
+        }
+        return list != null;
+    }
+
+    /**
+     * Appends the payload to the current segment.
+     *
+     * @return the location of the payload, the id of its segment in the high int
+     *         and its offset in the low int.
+     */
+    synchronized long write(ByteSequence payload) throws IOException {
+        if (current == null || (current.length > 0 && (long) current.length + payload.getLength() > journalMaxFileLength)) {
+            roll();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload.getData(), payload.getOffset(), payload.getLength());
+        long position = current.length;
+        while (buffer.hasRemaining()) {
+            position += current.channel.write(buffer, position);
+        }
+        long location = ((long) current.id << 32) | current.length;
+        current.length += payload.getLength();
+        current.live++;
+        diskSize.addAndGet(payload.getLength());
+        return location;
+    }
+
+    ByteSequence read(long location, int length) throws IOException {
+        Segment segment = segments.get((int) (location >>> 32));
+        if (segment == null) {
+            throw new IOException("No segment for location: " + location);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = location & 0xFFFFFFFFL;
+        while (buffer.hasRemaining()) {
+            int count = segment.channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("Unexpected end of " + segment.file + " at: " + position);
+            }
+            position += count;
+        }
+        return new ByteSequence(buffer.array());
+    }
+
+    /**
+     * Called when the entry at the location is removed, deletes its segment once
+     * the segment has no entries left and is no longer written to.
+     */
+    synchronized void release(long location) {
+        Segment segment = segments.get((int) (location >>> 32));
+        if (segment != null && --segment.live == 0 && segment != current) {
+            delete(segment);
+        }
+    }
+
+    private void roll() throws IOException {
+        if (current != null && current.live == 0) {
+            delete(current);
+        }
+        IOHelper.mkdirs(directory);
+        current = new Segment(nextSegmentId, new File(directory, "plist-" + nextSegmentId + ".log"));
+        nextSegmentId++;
+        segments.put(current.id, current);
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment.id);
+        diskSize.addAndGet(-segment.length);
+        segment.delete();
+    }
+
+    @Override
+    protected synchronized void doStart() throws Exception {
+        if (directory == null) {
+            directory = new File(IOHelper.getDefaultDataDirectory(), "tmpDB");
+        }
+        // the data of a previous run cannot be read back
+        if (directory.exists()) {
+            IOHelper.deleteChildren(directory);
+        }
+        LOG.info(this + " started");
+    }
+
+    @Override
+    protected void doStop(ServiceStopper stopper) throws Exception {
+        synchronized (lists) {
+            lists.clear();
+        }
+        synchronized (this) {
+            for (Segment segment : new ArrayList<Segment>(segments.values())) {
+                delete(segment);
+            }
+            current = null;
+            nextSegmentId = 0;
+        }
+        LOG.info(this + " stopped");
+    }
+
+    @Override
+    public String toString() {
+        String path = getDirectory() != null ? getDirectory().getAbsolutePath() : "DIRECTORY_NOT_SET";
+        return "SegmentPListStore:[" + path + "]";
+    }
+}
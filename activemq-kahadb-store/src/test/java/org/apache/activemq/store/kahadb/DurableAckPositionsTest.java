@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.SubscriptionInfo;
+import org.apache.activemq.store.TopicMessageStore;
+import org.junit.Test;
+
+public class DurableAckPositionsTest extends KahaDBStoreTestSupport {
+
+    private static final int SUBSCRIBERS = 20;
+    private static final int MESSAGES = 200;
+    private static final String CLIENT_ID = "client";
+    private static final ActiveMQTopic DESTINATION = new ActiveMQTopic("Topic.AckPositions");
+
+    private KahaDBStore createStore() throws Exception {
+        KahaDBStore store = newStore();
+        store.start();
+        return store;
+    }
+
+    @Test(timeout = 120000)
+    public void testSparsePendingAcksAreRecovered() throws Exception {
+        store = createStore();
+        ConnectionContext context = new ConnectionContext();
+        TopicMessageStore topicStore = store.createTopicMessageStore(DESTINATION);
+        topicStore.start();
+        for (int s = 0; s < SUBSCRIBERS; s++) {
+            SubscriptionInfo info = new SubscriptionInfo(CLIENT_ID, subscription(s));
+            info.setDestination(DESTINATION);
+            topicStore.addSubscription(info, false);
+        }
+        for (int m = 0; m < MESSAGES; m++) {
+            topicStore.addMessage(context, message(DESTINATION, m));
+        }
+        // each subscription leaves every (s + 2)th message pending
+        for (int s = 0; s < SUBSCRIBERS; s++) {
+            for (int m = 0; m < MESSAGES; m++) {
+                if (m % (s + 2) != 0) {
+                    topicStore.acknowledge(context, CLIENT_ID, subscription(s), messageId(m), ack(DESTINATION, m));
+                }
+            }
+        }
+        assertPendingAcks(topicStore);
+
+        store.checkpoint(true);
+        store.stop();
+        store = createStore();
+        topicStore = store.createTopicMessageStore(DESTINATION);
+        topicStore.start();
+        assertPendingAcks(topicStore);
+
+        // rebuilt from the journal
+        store.stop();
+        deleteIndex();
+        store = createStore();
+        topicStore = store.createTopicMessageStore(DESTINATION);
+        topicStore.start();
+        assertPendingAcks(topicStore);
+
+        // once every subscription has acked a message it is removed
+        for (int s = 0; s < SUBSCRIBERS; s++) {
+            topicStore.acknowledge(context, CLIENT_ID, subscription(s), messageId(0), ack(DESTINATION, 0));
+        }
+        assertNull(topicStore.getMessage(messageId(0)));
+        for (int s = 0; s < SUBSCRIBERS; s++) {
+            assertEquals(pending(s) - 1, topicStore.getMessageCount(CLIENT_ID, subscription(s)));
+        }
+    }
+
+    private static void assertPendingAcks(TopicMessageStore topicStore) throws Exception {
+        for (int s = 0; s < SUBSCRIBERS; s++) {
+            assertEquals(subscription(s), pending(s), topicStore.getMessageCount(CLIENT_ID, subscription(s)));
+        }
+    }
+
+    private static int pending(int subscription) {
+        return (MESSAGES + subscription + 1) / (subscription + 2);
+    }
+
+    private static String subscription(int subscription) {
+        return "sub-" + subscription;
+    }
+}
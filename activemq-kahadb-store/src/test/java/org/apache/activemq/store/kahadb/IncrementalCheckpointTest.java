@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.store.PersistenceAdapterStatistics;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Parameterized.class)
+public class IncrementalCheckpointTest extends KahaDBStoreTestSupport {
+
+    private static final int MESSAGES = 2000;
+    private static final ActiveMQQueue DESTINATION = new ActiveMQQueue("Queue.Checkpoint");
+
+    @Parameterized.Parameters(name = "indexWriteAsync={0}")
+    public static Iterable<Object[]> parameters() {
+        return Arrays.asList(new Object[][] {{false}, {true}});
+    }
+
+    private final boolean indexWriteAsync;
+
+    public IncrementalCheckpointTest(boolean indexWriteAsync) {
+        this.indexWriteAsync = indexWriteAsync;
+    }
+
+    private KahaDBStore createStore() throws Exception {
+        KahaDBStore store = newStore();
+        store.setIncrementalCheckpoint(true);
+        store.setEnableIndexWriteAsync(indexWriteAsync);
+        store.setJournalMaxFileLength(32 * 1024);
+        store.getPersistenceAdapterStatistics().setEnabled(true);
+        store.start();
+        return store;
+    }
+
+    @Test(timeout = 120000)
+    public void testCheckpointWhileUpdatingIndex() throws Exception {
+        store = createStore();
+        assertTrue(store.isIncrementalCheckpoint());
+
+        final ConnectionContext context = new ConnectionContext();
+        final MessageStore messageStore = store.createQueueMessageStore(DESTINATION);
+        messageStore.start();
+
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> checkpoints = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!done.get()) {
+                        store.checkpoint(true);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        for (int i = 0; i < MESSAGES; i++) {
+            messageStore.addMessage(context, message(DESTINATION, i));
+            if (i >= MESSAGES / 10) {
+                messageStore.removeMessage(context, ack(DESTINATION, i));
+            }
+        }
+        done.set(true);
+        checkpoints.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+        store.checkpoint(true);
+
+        assertEquals(MESSAGES / 10, messageStore.getMessageCount());
+        PersistenceAdapterStatistics statistics = store.getPersistenceAdapterStatistics();
+        assertTrue(statistics.getCheckpointTime().getCount() > 0);
+        assertEquals(statistics.getCheckpointTime().getCount(), statistics.getCheckpointStallTime().getCount());
+        assertTrue(statistics.getCheckpointStallTime().getTotalTime() <= statistics.getCheckpointTime().getTotalTime());
+
+        // journal files of acked messages were collected
+        int dataFiles = store.getJournal().getFileMap().size();
+        assertTrue("journal files gc'd: " + dataFiles, dataFiles < store.getJournal().getCurrentDataFileId());
+
+        store.stop();
+        store = createStore();
+        MessageStore recovered = store.createQueueMessageStore(DESTINATION);
+        recovered.start();
+        assertEquals(MESSAGES / 10, recovered.getMessageCount());
+        for (int i = 0; i < MESSAGES; i++) {
+            if (i < MESSAGES / 10) {
+                assertNotNull(recovered.getMessage(messageId(i)));
+            } else {
+                assertNull(recovered.getMessage(messageId(i)));
+            }
+        }
+    }
+}
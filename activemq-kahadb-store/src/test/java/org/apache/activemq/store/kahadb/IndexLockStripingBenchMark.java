@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.store.kahadb.disk.journal.Journal.JournalDiskSyncStrategy;
+import org.apache.activemq.util.IOHelper;
+
+/**
+ * Measures the index update throughput of many destinations that are updated from
+ * an increasing number of threads, with and without index lock striping.
+ * <p>
+ * Each thread sends to and acks from its own destinations, so with striping the
+ * throughput should scale with the number of threads up to the number of cores.
+ */
+public class IndexLockStripingBenchMark extends TestCase {
+
+    // How long each thread count is measured.
+    private static final long SAMPLE_DURATION = Integer.parseInt(System.getProperty("SAMPLE_DURATION", "" + 1000 * 5));
+    private static final int DESTINATION_COUNT = Integer.parseInt(System.getProperty("DESTINATION_COUNT", "" + 2000));
+    private static final int MAX_THREADS = Integer.parseInt(System.getProperty("MAX_THREADS", "" + Runtime.getRuntime().availableProcessors()));
+    private static final int INDEX_LOCK_STRIPES = Integer.parseInt(System.getProperty("INDEX_LOCK_STRIPES", "" + 64));
+
+    private final ConnectionContext context = new ConnectionContext();
+
+    public void testSingleIndexLock() throws Exception {
+        benchmark(0);
+    }
+
+    public void testStripedIndexLock() throws Exception {
+        benchmark(INDEX_LOCK_STRIPES);
+    }
+
+    private void benchmark(int stripes) throws Exception {
+        File directory = new File(IOHelper.getDefaultDataDirectory(), getName());
+        IOHelper.delete(directory);
+
+        KahaDBStore store = new KahaDBStore();
+        store.setDirectory(directory);
+        store.setIndexLockStripes(stripes);
+        store.setJournalDiskSyncStrategy(JournalDiskSyncStrategy.NEVER.name());
+        store.start();
+        try {
+            List<MessageStore> stores = new ArrayList<MessageStore>();
+            for (int i = 0; i < DESTINATION_COUNT; i++) {
+                MessageStore messageStore = store.createQueueMessageStore(new ActiveMQQueue("Queue." + i));
+                messageStore.start();
+                stores.add(messageStore);
+            }
+
+            for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+                long rate = sample(stores, threads);
+                System.out.println("index lock stripes: " + stripes + ", threads: " + threads + ", destinations: " + DESTINATION_COUNT
+                        + ", index updates/sec: " + rate);
+            }
+        } finally {
+            store.stop();
+        }
+    }
+
+    private long sample(final List<MessageStore> stores, final int threads) throws Exception {
+        final AtomicBoolean shutdown = new AtomicBoolean();
+        final AtomicLong updates = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread("Producer: " + t) {
+                @Override
+                public void run() {
+                    try {
+                        long sequence = 0;
+                        while (!shutdown.get()) {
+                            for (int i = thread; i < stores.size() && !shutdown.get(); i += threads) {
+                                MessageStore messageStore = stores.get(i);
+                                MessageId messageId = new MessageId("ID:bench-" + thread + ":1:1:" + sequence++);
+                                ActiveMQTextMessage message = new ActiveMQTextMessage();
+                                message.setMessageId(messageId);
+                                message.setDestination(messageStore.getDestination());
+                                message.setText("benchmark");
+                                messageStore.addMessage(context, message);
+
+                                MessageAck ack = new MessageAck();
+                                ack.setLastMessageId(messageId);
+                                ack.setDestination(messageStore.getDestination());
+                                messageStore.removeMessage(context, ack);
+                                updates.addAndGet(2);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        Thread.sleep(SAMPLE_DURATION);
+        long count = updates.get();
+        shutdown.set(true);
+        done.await();
+        return count * 1000 / SAMPLE_DURATION;
+    }
+}
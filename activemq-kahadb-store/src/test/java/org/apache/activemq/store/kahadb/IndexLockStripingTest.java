@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.store.MessageStore;
+import org.junit.Test;
+
+public class IndexLockStripingTest extends KahaDBStoreTestSupport {
+
+    private static final int DESTINATIONS = 16;
+    private static final int THREADS = 8;
+    private static final int MESSAGES = 200;
+
+    private KahaDBStore createStore() throws Exception {
+        KahaDBStore store = newStore();
+        store.setIndexLockStripes(4);
+        store.start();
+        return store;
+    }
+
+    @Test(timeout = 120000)
+    public void testConcurrentUpdatesOfManyDestinations() throws Exception {
+        store = createStore();
+
+        final ConnectionContext context = new ConnectionContext();
+        final List<MessageStore> stores = new ArrayList<MessageStore>();
+        for (int i = 0; i < DESTINATIONS; i++) {
+            MessageStore messageStore = store.createQueueMessageStore(queue(i));
+            messageStore.start();
+            stores.add(messageStore);
+        }
+
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        Future<?> checkpoints = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!done.get()) {
+                        store.checkpoint(false);
+                        Thread.sleep(10);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        List<Future<?>> producers = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            producers.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = thread; i < DESTINATIONS; i += THREADS) {
+                            MessageStore messageStore = stores.get(i);
+                            for (int m = 0; m < MESSAGES; m++) {
+                                messageStore.addMessage(context, message(i, m));
+                                if (m % 2 == 0) {
+                                    messageStore.removeMessage(context, ack(i, m));
+                                }
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }));
+        }
+        for (Future<?> producer : producers) {
+            producer.get(60, TimeUnit.SECONDS);
+        }
+        done.set(true);
+        checkpoints.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        for (MessageStore messageStore : stores) {
+            assertEquals(MESSAGES / 2, messageStore.getMessageCount());
+        }
+
+        store.stop();
+        store = createStore();
+        for (int i = 0; i < DESTINATIONS; i++) {
+            MessageStore messageStore = store.createQueueMessageStore(queue(i));
+            messageStore.start();
+            assertEquals(MESSAGES / 2, messageStore.getMessageCount());
+            assertNull(messageStore.getMessage(messageId(i, 0)));
+            assertNotNull(messageStore.getMessage(messageId(i, 1)));
+        }
+        assertTrue(store.getIndexLockStripes() > 0);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.store.MessageStore;
+import org.junit.Test;
+
+public class JournalCompactionTest extends KahaDBStoreTestSupport {
+
+    private static final int MESSAGES = 2000;
+    private static final int KEEP_EVERY = 50;
+    private static final ActiveMQQueue DESTINATION = new ActiveMQQueue("Queue.Compaction");
+
+    private KahaDBStore createStore() throws Exception {
+        KahaDBStore store = newStore();
+        store.setEnableJournalCompaction(true);
+        store.setJournalCompactionThreshold(50);
+        store.setJournalMaxFileLength(32 * 1024);
+        store.getPersistenceAdapterStatistics().setEnabled(true);
+        store.start();
+        return store;
+    }
+
+    @Test(timeout = 120000)
+    public void testSparseDataFilesAreCompacted() throws Exception {
+        store = createStore();
+        ConnectionContext context = new ConnectionContext();
+        MessageStore messageStore = store.createQueueMessageStore(DESTINATION);
+        messageStore.start();
+        for (int i = 0; i < MESSAGES; i++) {
+            messageStore.addMessage(context, message(DESTINATION, i));
+            if (i % KEEP_EVERY != 0) {
+                messageStore.removeMessage(context, ack(DESTINATION, i));
+            }
+        }
+        store.checkpoint(true);
+
+        // every data file holds a few live messages, so none of them is removed
+        int dataFiles = store.getJournal().getFileMap().size();
+        assertTrue("spans several data files: " + dataFiles, dataFiles > 10);
+        Map<Integer, Integer> utilization = store.getJournalFileUtilization();
+        assertEquals(store.getJournal().getFileMap().keySet(), utilization.keySet());
+        for (Integer dataFileId : utilization.keySet()) {
+            if (dataFileId < store.getJournal().getCurrentDataFileId()) {
+                assertTrue("sparse data file " + dataFileId + ": " + utilization.get(dataFileId) + "%", utilization.get(dataFileId) < 50);
+            }
+        }
+
+        assertTrue(store.compactJournal() > 0);
+        store.checkpoint(true);
+
+        int compactedDataFiles = store.getJournal().getFileMap().size();
+        assertTrue("data files removed: " + dataFiles + " -> " + compactedDataFiles, compactedDataFiles < dataFiles / 2);
+        assertTrue(store.getPersistenceAdapterStatistics().getJournalCompactedSize().getCount() > 0);
+        assertTrue(store.getPersistenceAdapterStatistics().getJournalCompactedSize().getTotalSize() > 0);
+        assertLiveMessages(messageStore);
+
+        // the forwarded messages are recovered from the index
+        store.stop();
+        store = createStore();
+        messageStore = store.createQueueMessageStore(DESTINATION);
+        messageStore.start();
+        assertLiveMessages(messageStore);
+
+        // and from the journal
+        store.stop();
+        deleteIndex();
+        store = createStore();
+        messageStore = store.createQueueMessageStore(DESTINATION);
+        messageStore.start();
+        assertLiveMessages(messageStore);
+    }
+
+    private static void assertLiveMessages(MessageStore messageStore) throws Exception {
+        assertEquals(MESSAGES / KEEP_EVERY, messageStore.getMessageCount());
+        for (int i = 0; i < MESSAGES; i++) {
+            if (i % KEEP_EVERY == 0) {
+                assertNotNull(messageStore.getMessage(messageId(i)));
+            } else {
+                assertNull(messageStore.getMessage(messageId(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import java.io.File;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.kahadb.disk.journal.Journal.JournalDiskSyncStrategy;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Base for tests that drive a {@link KahaDBStore} directly, without a broker.
+ * <p>
+ * The store lives in a temporary directory, does not sync the journal and does not
+ * checkpoint or clean up on its own, so tests control when the index is written.
+ */
+public abstract class KahaDBStoreTestSupport {
+
+    @Rule
+    public TemporaryFolder dataDir = new TemporaryFolder(new File("target"));
+
+    protected KahaDBStore store;
+
+    @After
+    public void tearDown() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    /**
+     * @return a store in the data directory that is configured but not yet started
+     */
+    protected KahaDBStore newStore() {
+        return configure(new KahaDBStore());
+    }
+
+    protected KahaDBStore configure(KahaDBStore store) {
+        store.setDirectory(dataDir.getRoot());
+        store.setJournalDiskSyncStrategy(JournalDiskSyncStrategy.NEVER.name());
+        store.setCheckpointInterval(0);
+        store.setCleanupInterval(0);
+        return store;
+    }
+
+    /**
+     * Deletes the index of a stopped store, so the next start replays the whole journal.
+     */
+    protected void deleteIndex() {
+        if (!new File(dataDir.getRoot(), "db.data").delete()) {
+            throw new IllegalStateException("No index in " + dataDir.getRoot());
+        }
+        new File(dataDir.getRoot(), "db.redo").delete();
+    }
+
+    protected static ActiveMQQueue queue(int destination) {
+        return new ActiveMQQueue("Queue." + destination);
+    }
+
+    protected static MessageId messageId(int message) {
+        return new MessageId("ID:producer:1:1:" + message);
+    }
+
+    protected static MessageId messageId(int destination, int message) {
+        return new MessageId("ID:producer-" + destination + ":1:1:" + message);
+    }
+
+    protected static ActiveMQTextMessage message(ActiveMQDestination destination, int message) throws Exception {
+        return message(destination, messageId(message), message);
+    }
+
+    /**
+     * @return a message sent to the queue of the given destination number
+     */
+    protected static ActiveMQTextMessage message(int destination, int message) throws Exception {
+        return message(queue(destination), messageId(destination, message), message);
+    }
+
+    protected static MessageAck ack(ActiveMQDestination destination, int message) {
+        return ack(destination, messageId(message));
+    }
+
+    protected static MessageAck ack(int destination, int message) {
+        return ack(queue(destination), messageId(destination, message));
+    }
+
+    private static ActiveMQTextMessage message(ActiveMQDestination destination, MessageId messageId, int message) throws Exception {
+        ActiveMQTextMessage textMessage = new ActiveMQTextMessage();
+        textMessage.setMessageId(messageId);
+        textMessage.setDestination(destination);
+        textMessage.setText("message " + message);
+        return textMessage;
+    }
+
+    private static MessageAck ack(ActiveMQDestination destination, MessageId messageId) {
+        MessageAck ack = new MessageAck();
+        ack.setLastMessageId(messageId);
+        ack.setDestination(destination);
+        return ack;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.util.Wait;
+import org.junit.Test;
+
+public class LazyRecoveryTest extends KahaDBStoreTestSupport {
+
+    private static final int DESTINATIONS = 5;
+    private static final int MESSAGES = 500;
+
+    private final List<String> recovered = new ArrayList<String>();
+    private final List<String> recoveredBeforeCompletion = new ArrayList<String>();
+
+    private KahaDBStore createStore(boolean lazyRecovery) throws Exception {
+        KahaDBStore store = configure(new KahaDBStore() {
+            @Override
+            protected void destinationRecovered(String key) {
+                synchronized (recovered) {
+                    recovered.add(key);
+                }
+            }
+
+            @Override
+            protected void lazyRecoveryCompleted() {
+                synchronized (recovered) {
+                    recoveredBeforeCompletion.addAll(recovered);
+                    recovered.notifyAll();
+                }
+            }
+        });
+        store.setLazyRecovery(lazyRecovery);
+        store.setJournalMaxFileLength(64 * 1024);
+        store.start();
+        return store;
+    }
+
+    @Test(timeout = 120000)
+    public void testDestinationsAvailableAfterLazyRecovery() throws Exception {
+        store = createStore(false);
+        ConnectionContext context = new ConnectionContext();
+        for (int d = 0; d < DESTINATIONS; d++) {
+            MessageStore messageStore = store.createQueueMessageStore(queue(d));
+            messageStore.start();
+            for (int m = 0; m < MESSAGES; m++) {
+                messageStore.addMessage(context, message(d, m));
+                if (m % 2 == 0) {
+                    messageStore.removeMessage(context, ack(d, m));
+                }
+            }
+        }
+        store.stop();
+
+        // lose the index so the whole journal is replayed
+        deleteIndex();
+
+        store = createStore(true);
+        assertTrue(store.isLazyRecovery());
+
+        // a new destination is usable once the journal has been scanned
+        MessageStore newStore = store.createQueueMessageStore(queue(DESTINATIONS));
+        newStore.start();
+        newStore.addMessage(context, message(DESTINATIONS, 0));
+        assertEquals(1, newStore.getMessageCount());
+
+        // recovered destinations block until their journal records are replayed
+        for (int d = DESTINATIONS - 1; d >= 0; d--) {
+            MessageStore messageStore = store.createQueueMessageStore(queue(d));
+            messageStore.start();
+            assertEquals(MESSAGES / 2, messageStore.getMessageCount());
+            assertNull(messageStore.getMessage(messageId(d, 0)));
+            assertNotNull(messageStore.getMessage(messageId(d, 1)));
+        }
+        assertTrue(store.getDestinations().contains(queue(0)));
+
+        // each destination is reported as soon as it is recovered, in journal order
+        synchronized (recovered) {
+            while (recoveredBeforeCompletion.isEmpty()) {
+                recovered.wait();
+            }
+        }
+        assertEquals(DESTINATIONS, recoveredBeforeCompletion.size());
+        for (int d = 0; d < DESTINATIONS; d++) {
+            assertTrue(recoveredBeforeCompletion.get(d).endsWith(queue(d).getPhysicalName()));
+        }
+
+        // the index written by the lazy replay is used by the next start
+        store.stop();
+        store = createStore(false);
+        for (int d = 0; d < DESTINATIONS; d++) {
+            MessageStore messageStore = store.createQueueMessageStore(queue(d));
+            messageStore.start();
+            assertEquals(MESSAGES / 2, messageStore.getMessageCount());
+        }
+        MessageStore recoveredNewStore = store.createQueueMessageStore(queue(DESTINATIONS));
+        recoveredNewStore.start();
+        assertEquals(1, recoveredNewStore.getMessageCount());
+    }
+
+    @Test(timeout = 120000)
+    public void testRecoveringDestinationsOfBroker() throws Exception {
+        store = createStore(false);
+        ConnectionContext context = new ConnectionContext();
+        for (int d = 0; d < DESTINATIONS; d++) {
+            MessageStore messageStore = store.createQueueMessageStore(queue(d));
+            messageStore.start();
+            for (int m = 0; m < MESSAGES; m++) {
+                messageStore.addMessage(context, message(d, m));
+            }
+        }
+        store.stop();
+        store = null;
+        deleteIndex();
+
+        KahaDBPersistenceAdapter adapter = new KahaDBPersistenceAdapter();
+        adapter.setDirectory(dataDir.getRoot());
+        adapter.setJournalMaxFileLength(64 * 1024);
+        adapter.setLazyRecovery(true);
+        final BrokerService broker = new BrokerService();
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.setSchedulerSupport(false);
+        broker.setDataDirectoryFile(dataDir.getRoot());
+        broker.setPersistenceAdapter(adapter);
+        broker.start();
+        try {
+            // the last destination of the journal holds the destinations lock of the region while
+            // it waits, the recovery must add the destinations recovered meanwhile without it
+            for (int d = DESTINATIONS - 1; d >= 0; d--) {
+                Destination destination = broker.getDestination(queue(d));
+                assertEquals(MESSAGES, destination.getDestinationStatistics().getMessages().getCount());
+            }
+            assertTrue("recovered destinations are added to the broker", Wait.waitFor(new Wait.Condition() {
+                @Override
+                public boolean isSatisified() throws Exception {
+                    for (int d = 0; d < DESTINATIONS; d++) {
+                        if (!broker.getRegionBroker().getDestinationMap().containsKey(queue(d))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            }));
+        } finally {
+            broker.stop();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.store.MessageStore;
+import org.junit.Test;
+
+public class ParallelJournalReplayTest extends KahaDBStoreTestSupport {
+
+    private static final int DESTINATIONS = 5;
+    private static final int MESSAGES = 1000;
+
+    private KahaDBStore createStore(int journalReplayThreads) throws Exception {
+        KahaDBStore store = newStore();
+        store.setJournalReplayThreads(journalReplayThreads);
+        store.setJournalMaxFileLength(64 * 1024);
+        store.start();
+        return store;
+    }
+
+    @Test(timeout = 120000)
+    public void testReplayOfManyDataFiles() throws Exception {
+        store = createStore(0);
+        ConnectionContext context = new ConnectionContext();
+        for (int d = 0; d < DESTINATIONS; d++) {
+            MessageStore messageStore = store.createQueueMessageStore(queue(d));
+            messageStore.start();
+            for (int m = 0; m < MESSAGES; m++) {
+                messageStore.addMessage(context, message(d, m));
+                if (m % 3 == 0) {
+                    messageStore.removeMessage(context, ack(d, m));
+                }
+            }
+        }
+        assertTrue("spans several data files", store.getJournal().getFileMap().size() > 8);
+        store.stop();
+
+        // lose the index so the whole journal is replayed
+        deleteIndex();
+
+        store = createStore(4);
+        assertEquals(4, store.getJournalReplayThreads());
+        for (int d = 0; d < DESTINATIONS; d++) {
+            MessageStore messageStore = store.createQueueMessageStore(queue(d));
+            messageStore.start();
+            assertEquals(MESSAGES - (MESSAGES + 2) / 3, messageStore.getMessageCount());
+            for (int m = 0; m < MESSAGES; m++) {
+                if (m % 3 == 0) {
+                    assertNull(messageStore.getMessage(messageId(d, m)));
+                } else {
+                    assertNotNull(messageStore.getMessage(messageId(d, m)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.activemq.util.ByteSequence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DataFileMappingsTest {
+
+    private static final int MAX_FILE_LENGTH = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder dataFileDir = new TemporaryFolder(new File("target"));
+
+    private Journal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        journal = createJournal();
+        journal.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private Journal createJournal() {
+        Journal journal = new Journal();
+        journal.setDirectory(dataFileDir.getRoot());
+        journal.setMaxFileLength(MAX_FILE_LENGTH);
+        journal.setMappedReadBudget(2 * MAX_FILE_LENGTH);
+        return journal;
+    }
+
+    @Test
+    public void testReadsOfSealedFilesAreMapped() throws Exception {
+        List<Location> locations = new ArrayList<Location>();
+        for (int i = 0; i < 500; i++) {
+            locations.add(journal.write(new ByteSequence(payload(i)), true));
+        }
+        assertTrue("spans several files", journal.getFileMap().size() > 3);
+
+        for (int i = 0; i < locations.size(); i++) {
+            assertEquals(new String(payload(i)), asString(journal.read(locations.get(i))));
+        }
+
+        DataFileMappings mappings = journal.getMappings();
+        assertNotNull(mappings);
+        assertTrue("some files mapped", mappings.getMappingCount() > 0);
+        assertTrue("budget respected", mappings.getMappedSize() <= journal.getMappedReadBudget());
+    }
+
+    @Test
+    public void testRecoveryScanUsesMappingsAndRemovedFilesAreUnmapped() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            journal.write(new ByteSequence(payload(i)), true);
+        }
+        journal.close();
+        journal = createJournal();
+        journal.start();
+
+        int count = 0;
+        Location location = journal.getNextLocation(null);
+        while (location != null) {
+            assertEquals(new String(payload(count)), asString(journal.read(location)));
+            count++;
+            location = journal.getNextLocation(location);
+        }
+        assertEquals(500, count);
+
+        // make sure the first file is mapped, then remove it
+        Location head = journal.getNextLocation(null);
+        journal.read(head);
+        DataFileMappings mappings = journal.getMappings();
+        int mapped = mappings.getMappingCount();
+        assertTrue(mapped > 0);
+
+        journal.removeDataFiles(Collections.singleton(head.getDataFileId()));
+        assertNull(journal.getDataFileById(head.getDataFileId()));
+        assertEquals(mapped - 1, mappings.getMappingCount());
+    }
+
+    private static byte[] payload(int i) {
+        StringBuilder sb = new StringBuilder("DATA-").append(i).append('-');
+        while (sb.length() < 100) {
+            sb.append('x');
+        }
+        return sb.toString().getBytes();
+    }
+
+    private static String asString(ByteSequence data) {
+        return new String(data.getData(), data.getOffset(), data.getLength());
+    }
+}
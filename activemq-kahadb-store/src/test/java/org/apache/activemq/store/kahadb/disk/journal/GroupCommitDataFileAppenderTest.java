@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.store.PersistenceAdapterStatistics;
+import org.apache.activemq.util.ByteSequence;
+
+public class GroupCommitDataFileAppenderTest extends JournalTest {
+
+    private final PersistenceAdapterStatistics statistics = new PersistenceAdapterStatistics();
+
+    @Override
+    protected void configure(Journal dataManager) {
+        dataManager.setJournalAppenderType(Journal.JournalAppenderType.GROUP_COMMIT);
+        dataManager.setPersistenceAdapterStatistics(statistics);
+        dataManager.setMaxFileLength(16 * 1024);
+        dataManager.setChecksum(true);
+    }
+
+    public void testAppenderType() throws Exception {
+        assertTrue(dataManager.appender instanceof GroupCommitDataFileAppender);
+    }
+
+    public void testConcurrentSyncWritesAreReadableAfterRestart() throws Exception {
+        final int producers = 8;
+        final int iterations = 100;
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        List<Future<Void>> writers = new ArrayList<Future<Void>>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            writers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < iterations; i++) {
+                        dataManager.write(new ByteSequence(("DATA-" + producer + "-" + i).getBytes()), true);
+                    }
+                    return null;
+                }
+            }));
+        }
+        executor.shutdown();
+        assertTrue("all writes done", executor.awaitTermination(30, TimeUnit.SECONDS));
+        for (Future<Void> writer : writers) {
+            // rethrows a write failure of the producer
+            writer.get();
+        }
+
+        assertTrue("batches were recorded", statistics.getJournalWriteBatchSize().getCount() > 0);
+        assertTrue("syncs were recorded", statistics.getJournalSyncTime().getCount() > 0);
+        assertTrue("rotated over several files", dataManager.getFileMap().size() > 1);
+
+        dataManager.close();
+        dataManager = new Journal();
+        dataManager.setDirectory(dir);
+        configure(dataManager);
+        dataManager.start();
+
+        List<String> recovered = new ArrayList<String>();
+        Location location = dataManager.getNextLocation(null);
+        while (location != null) {
+            ByteSequence data = dataManager.read(location);
+            recovered.add(new String(data.getData(), data.getOffset(), data.getLength()));
+            location = dataManager.getNextLocation(location);
+        }
+        assertEquals(producers * iterations, recovered.size());
+        for (int p = 0; p < producers; p++) {
+            assertTrue(recovered.contains("DATA-" + p + "-" + (iterations - 1)));
+        }
+    }
+}
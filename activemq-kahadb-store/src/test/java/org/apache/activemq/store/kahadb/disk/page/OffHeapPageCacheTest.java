@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.page;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.apache.activemq.store.PersistenceAdapterStatistics;
+import org.apache.activemq.store.kahadb.disk.util.StringMarshaller;
+
+public class OffHeapPageCacheTest extends TestCase {
+
+    private static final int PAGE_SIZE = 64;
+
+    public void testEvictionKeepsIndexConsistent() throws Exception {
+        OffHeapPageCache cache = new OffHeapPageCache(32 * PAGE_SIZE, PAGE_SIZE, null);
+        assertEquals(32 * PAGE_SIZE, cache.getCapacity());
+
+        for (long pageId = 0; pageId < 1000; pageId++) {
+            cache.put(pageId, image(pageId));
+        }
+        assertEquals(32, cache.size());
+        assertEquals(1000 - 32, cache.getEvictions());
+
+        int cached = 0;
+        byte[] data = new byte[PAGE_SIZE];
+        for (long pageId = 0; pageId < 1000; pageId++) {
+            if (cache.get(pageId, data)) {
+                assertTrue(Arrays.equals(image(pageId), data));
+                cached++;
+            }
+        }
+        assertEquals(32, cached);
+        assertEquals(32, cache.getHits());
+        assertEquals(1000 - 32, cache.getMisses());
+
+        // frequently hit pages survive a scan of new pages
+        cache.put(5000, image(5000));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cache.get(5000, data));
+        }
+        for (long pageId = 2000; pageId < 2000 + 16; pageId++) {
+            cache.put(pageId, image(pageId));
+        }
+        assertTrue(cache.get(5000, data));
+        assertTrue(Arrays.equals(image(5000), data));
+
+        cache.remove(5000);
+        assertFalse(cache.get(5000, data));
+        assertTrue(cache.size() < 32);
+    }
+
+    public void testFillAfterWriteIsRefused() throws Exception {
+        OffHeapPageCache cache = new OffHeapPageCache(32 * PAGE_SIZE, PAGE_SIZE, null);
+        byte[] data = new byte[PAGE_SIZE];
+
+        long stamp = cache.writeStamp(1);
+        assertTrue(cache.fill(1, image(1), stamp));
+        assertTrue(cache.get(1, data));
+
+        // a write that lands between the read from disk and the fill wins
+        stamp = cache.writeStamp(2);
+        cache.put(2, image(200));
+        assertFalse(cache.fill(2, image(2), stamp));
+        assertTrue(cache.get(2, data));
+        assertTrue(Arrays.equals(image(200), data));
+
+        stamp = cache.writeStamp(3);
+        cache.remove(3);
+        assertFalse(cache.fill(3, image(3), stamp));
+        assertFalse(cache.get(3, data));
+    }
+
+    public void testPagesAreServedFromOffHeapCache() throws Exception {
+        PersistenceAdapterStatistics statistics = new PersistenceAdapterStatistics();
+        statistics.setEnabled(true);
+
+        PageFile pf = new PageFile(new File("target/test-data"), getName());
+        pf.delete();
+        pf.setEnablePageCaching(false);
+        pf.setOffHeapPageCacheSize(1024 * 1024);
+        pf.setPersistenceAdapterStatistics(statistics);
+        pf.load();
+
+        List<Long> pageIds = new ArrayList<Long>();
+        Transaction tx = pf.tx();
+        for (int i = 0; i < 100; i++) {
+            Page<String> page = tx.allocate();
+            page.set("page:" + i);
+            tx.store(page, StringMarshaller.INSTANCE, false);
+            tx.commit();
+            pageIds.add(page.getPageId());
+        }
+        pf.flush();
+
+        OffHeapPageCache cache = pf.getOffHeapPageCache();
+        assertNotNull(cache);
+        assertTrue("written pages are cached", cache.size() >= 100);
+
+        for (int round = 0; round < 2; round++) {
+            tx = pf.tx();
+            for (int i = 0; i < pageIds.size(); i++) {
+                Page<String> page = tx.load(pageIds.get(i), StringMarshaller.INSTANCE);
+                assertEquals("page:" + i, page.get());
+            }
+        }
+        assertTrue(cache.getHits() >= 200);
+
+        // updates replace the cached image
+        tx = pf.tx();
+        for (int i = 0; i < pageIds.size(); i++) {
+            Page<String> page = tx.load(pageIds.get(i), StringMarshaller.INSTANCE);
+            page.set("updated:" + i);
+            tx.store(page, StringMarshaller.INSTANCE, false);
+        }
+        tx.commit();
+        pf.flush();
+
+        tx = pf.tx();
+        for (int i = 0; i < pageIds.size(); i++) {
+            assertEquals("updated:" + i, tx.load(pageIds.get(i), StringMarshaller.INSTANCE).get());
+        }
+
+        // freed pages give their off heap slots back
+        int cached = cache.size();
+        tx = pf.tx();
+        for (int i = 0; i < 50; i++) {
+            tx.free(pageIds.get(i));
+        }
+        tx.commit();
+        pf.flush();
+        assertEquals(cached - 50, cache.size());
+
+        pf.unload();
+        assertNull(pf.getOffHeapPageCache());
+        assertEquals(cache.getHits(), statistics.getPageCacheHits().getCount());
+        assertEquals(cache.getMisses(), statistics.getPageCacheMisses().getCount());
+    }
+
+    private static byte[] image(long pageId) {
+        byte[] data = new byte[PAGE_SIZE];
+        Arrays.fill(data, (byte) pageId);
+        data[0] = (byte) (pageId >>> 8);
+        return data;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the cost of tracking the pending acks of many durable subscriptions with
+ * a {@link SequenceSet} and a {@link LongSequenceSet}.
+ * <p>
+ * Every subscription gets each message added to the topic and then acks most of them
+ * in a random order, which leaves the sparse sets of pending acks that are kept in the
+ * ack positions index of a topic with slow subscribers.
+ */
+public class AckPositionsBenchMark extends TestCase {
+
+    private static final int SUBSCRIBERS = Integer.parseInt(System.getProperty("SUBSCRIBERS", "" + 10000));
+    private static final int MESSAGES = Integer.parseInt(System.getProperty("MESSAGES", "" + 200));
+    private static final int ACK_PERCENT = Integer.parseInt(System.getProperty("ACK_PERCENT", "" + 80));
+
+    public void testSequenceSet() throws Exception {
+        // the first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            runSequenceSet(round > 0);
+        }
+    }
+
+    private void runSequenceSet(boolean report) throws Exception {
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        long marshalled = 0;
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        for (int s = 0; s < SUBSCRIBERS; s++) {
+            SequenceSet set = new SequenceSet();
+            for (long m = 0; m < MESSAGES; m++) {
+                set.add(m);
+            }
+            for (long m = 0; m < MESSAGES; m++) {
+                if (random.nextInt(100) < ACK_PERCENT) {
+                    set.remove(m);
+                }
+                set.contains(random.nextInt(MESSAGES));
+            }
+            out.reset();
+            SequenceSet.Marshaller.INSTANCE.writePayload(set, out);
+            SequenceSet.Marshaller.INSTANCE.readPayload(new DataByteArrayInputStream(out.toByteSequence()));
+            marshalled += out.size();
+        }
+        if (report) {
+            report("SequenceSet", start, marshalled);
+        }
+    }
+
+    public void testLongSequenceSet() throws Exception {
+        // the first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            runLongSequenceSet(round > 0);
+        }
+    }
+
+    private void runLongSequenceSet(boolean report) throws Exception {
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        long marshalled = 0;
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        for (int s = 0; s < SUBSCRIBERS; s++) {
+            LongSequenceSet set = new LongSequenceSet();
+            for (long m = 0; m < MESSAGES; m++) {
+                set.add(m);
+            }
+            for (long m = 0; m < MESSAGES; m++) {
+                if (random.nextInt(100) < ACK_PERCENT) {
+                    set.remove(m);
+                }
+                set.contains(random.nextInt(MESSAGES));
+            }
+            out.reset();
+            LongSequenceSet.Marshaller.INSTANCE.writePayload(set, out);
+            LongSequenceSet.Marshaller.INSTANCE.readPayload(new DataByteArrayInputStream(out.toByteSequence()));
+            marshalled += out.size();
+        }
+        if (report) {
+            report("LongSequenceSet", start, marshalled);
+        }
+    }
+
+    private void report(String type, long start, long marshalled) {
+        long elapsed = System.nanoTime() - start;
+        System.out.println(type + ": subscribers: " + SUBSCRIBERS + ", messages: " + MESSAGES + ", elapsed ms: " + (elapsed / 1000000)
+                + ", marshalled bytes per subscriber: " + (marshalled / SUBSCRIBERS));
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.activemq.store.kahadb.disk.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongSequenceSetTest {
+
+    @Test
+    public void testAddLong() {
+        LongSequenceSet set = new LongSequenceSet();
+        assertTrue(set.add(1));
+        assertFalse(set.add(1));
+        assertEquals(1, set.rangeSize());
+        set.add(10);
+        set.add(20);
+        assertEquals(3, set.rangeSize());
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void testAddJoinsRuns() {
+        LongSequenceSet set = new LongSequenceSet();
+        set.add(1);
+        set.add(3);
+        set.add(5, 8);
+        assertEquals(3, set.size());
+        set.add(2);
+        assertEquals(2, set.size());
+        set.add(4);
+        assertEquals(1, set.size());
+        assertEquals(8, set.rangeSize());
+        assertEquals(1, set.first());
+        assertEquals(8, set.last());
+
+        set.add(20, 30);
+        set.add(0, 25);
+        assertEquals(1, set.size());
+        assertEquals(0, set.first());
+        assertEquals(30, set.last());
+        assertFalse(set.add(10, 20));
+    }
+
+    @Test
+    public void testIsEmpty() {
+        LongSequenceSet set = new LongSequenceSet();
+        assertTrue(set.isEmpty());
+        set.add(1);
+        assertFalse(set.isEmpty());
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertEquals(0, set.rangeSize());
+    }
+
+    @Test
+    public void testContains() {
+        LongSequenceSet set = new LongSequenceSet();
+        set.add(0, 10);
+        set.add(21, 42);
+        set.add(47, 90);
+        set.add(142, 512);
+
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(42));
+        assertTrue(set.contains(49));
+        assertTrue(set.contains(153));
+
+        assertFalse(set.contains(43));
+        assertFalse(set.contains(99));
+        assertFalse(set.contains(-1));
+        assertFalse(set.contains(11));
+        assertFalse(set.contains(513));
+    }
+
+    @Test
+    public void testRemove() {
+        LongSequenceSet set = new LongSequenceSet();
+        set.add(0, 100);
+        assertEquals(101, set.rangeSize());
+
+        assertEquals(1, set.size());
+        assertFalse(set.remove(101));
+        assertTrue(set.remove(50));
+        assertEquals(2, set.size());
+        assertEquals(100, set.rangeSize());
+        assertFalse(set.remove(101));
+
+        set.remove(0);
+        assertEquals(2, set.size());
+        assertEquals(99, set.rangeSize());
+        set.remove(100);
+        assertEquals(2, set.size());
+        assertEquals(98, set.rangeSize());
+
+        set.remove(10);
+        assertEquals(3, set.size());
+        assertEquals(97, set.rangeSize());
+
+        assertEquals(1, set.removeFirst());
+        assertEquals(2, set.first());
+        assertEquals(99, set.last());
+    }
+
+    @Test
+    public void testIterator() {
+        LongSequenceSet set = new LongSequenceSet();
+        set.add(0, 2);
+        set.add(4, 5);
+        set.add(7);
+        set.add(20, 21);
+
+        long[] expected = new long[]{0, 1, 2, 4, 5, 7, 20, 21};
+        int index = 0;
+        Iterator<Long> iterator = set.iterator();
+        while (iterator.hasNext()) {
+            assertEquals(expected[index++], iterator.next().longValue());
+        }
+        assertEquals(expected.length, index);
+    }
+
+    @Test
+    public void testAddAll() {
+        LongSequenceSet set = new LongSequenceSet();
+        set.add(0, 5);
+        set.add(20);
+        LongSequenceSet other = new LongSequenceSet();
+        other.add(6, 10);
+        other.add(30, 40);
+        set.addAll(other);
+        assertEquals(3, set.size());
+        assertEquals(23, set.rangeSize());
+    }
+
+    @Test
+    public void testMarshaller() throws Exception {
+        LongSequenceSet set = new LongSequenceSet();
+        set.add(0, 10);
+        set.add(1000);
+        set.add(Integer.MAX_VALUE * 4L, Integer.MAX_VALUE * 4L + 2);
+
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        LongSequenceSet.Marshaller.INSTANCE.writePayload(set, out);
+        LongSequenceSet read = LongSequenceSet.Marshaller.INSTANCE.readPayload(new DataByteArrayInputStream(out.toByteSequence()));
+        assertEquals(set, read);
+        assertEquals(set, LongSequenceSet.Marshaller.INSTANCE.deepCopy(set));
+
+        out = new DataByteArrayOutputStream();
+        LongSequenceSet.Marshaller.INSTANCE.writePayload(new LongSequenceSet(), out);
+        assertTrue(LongSequenceSet.Marshaller.INSTANCE.readPayload(new DataByteArrayInputStream(out.toByteSequence())).isEmpty());
+    }
+
+    @Test
+    public void testMatchesSequenceSet() {
+        Random random = new Random(42);
+        SequenceSet expected = new SequenceSet();
+        LongSequenceSet set = new LongSequenceSet();
+        for (int i = 0; i < 20000; i++) {
+            long value = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        assertEquals(expected.rangeSize(), set.rangeSize());
+        Iterator<Long> iterator = set.iterator();
+        for (Long value : expected) {
+            assertEquals(value, iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.plist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.store.PList;
+import org.apache.activemq.store.PListStore;
+import org.apache.activemq.store.PListTestSupport;
+import org.apache.activemq.util.ByteSequence;
+import org.junit.Test;
+
+public class SegmentPListImplTest extends PListTestSupport {
+
+    @Override
+    protected SegmentPListStoreImpl createPListStore() {
+        return new SegmentPListStoreImpl();
+    }
+
+    @Override
+    protected PListStore createConcurrentAddIteratePListStore() {
+        SegmentPListStoreImpl store = createPListStore();
+        store.setJournalMaxFileLength(1024 * 1024);
+        return store;
+    }
+
+    @Override
+    protected PListStore createConcurrentAddRemovePListStore() {
+        SegmentPListStoreImpl store = createPListStore();
+        store.setJournalMaxFileLength(1024 * 5);
+        return store;
+    }
+
+    @Override
+    protected PListStore createConcurrentAddRemoveWithPreloadPListStore() {
+        SegmentPListStoreImpl store = createPListStore();
+        store.setJournalMaxFileLength(1024 * 5);
+        return store;
+    }
+
+    @Override
+    protected PListStore createConcurrentAddIterateRemovePListStore(boolean enablePageCache) {
+        SegmentPListStoreImpl store = createPListStore();
+        store.setJournalMaxFileLength(1024 * 64);
+        return store;
+    }
+
+    @Test
+    public void testSegmentsDeletedWhenEmptied() throws Exception {
+        SegmentPListStoreImpl segmentStore = (SegmentPListStoreImpl) store;
+        segmentStore.stop();
+        segmentStore = createPListStore();
+        segmentStore.setDirectory(tempFolder.newFolder());
+        segmentStore.setJournalMaxFileLength(1024);
+        segmentStore.start();
+        store = segmentStore;
+
+        PList first = segmentStore.getPList("first");
+        PList second = segmentStore.getPList("second");
+        ByteSequence payload = new ByteSequence(new byte[100]);
+        List<Object> firstEntries = new ArrayList<Object>();
+        List<Object> secondEntries = new ArrayList<Object>();
+        for (int i = 0; i < 100; i++) {
+            firstEntries.add(first.addLast("first" + i, payload));
+            secondEntries.add(second.addLast("second" + i, payload));
+        }
+        assertEquals(20, segmentStore.getSegmentCount());
+        assertEquals(20000, segmentStore.size());
+
+        for (Object entry : firstEntries) {
+            assertTrue(first.remove(entry));
+        }
+        // every segment still holds entries of the second list
+        assertEquals(20, segmentStore.getSegmentCount());
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(second.remove(secondEntries.get(i)));
+        }
+        assertEquals(10, segmentStore.getSegmentCount());
+        assertEquals(10000, segmentStore.size());
+
+        assertTrue(segmentStore.removePList("second"));
+        // the segment being written is kept
+        assertEquals(1, segmentStore.getSegmentCount());
+        assertFalse(second.remove(secondEntries.get(99)));
+    }
+
+    @Test
+    public void testStaleLocatorDoesNotRemoveNewEntry() throws Exception {
+        PList plist = store.getPList("stale");
+        Object first = plist.addLast("First", new ByteSequence("A".getBytes()));
+        assertTrue(plist.remove(first));
+        // takes the key the removed entry had
+        plist.addFirst("Second", new ByteSequence("B".getBytes()));
+        assertFalse(plist.remove(first));
+        assertEquals(1, plist.size());
+        assertEquals(1, plist.messageSize());
+    }
+}
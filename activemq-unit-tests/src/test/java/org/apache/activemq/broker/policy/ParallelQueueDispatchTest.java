@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.policy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.QueueSubscriptionTest;
+import org.apache.activemq.broker.region.Queue;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class ParallelQueueDispatchTest extends QueueSubscriptionTest {
+
+    private static final int THREADS = 4;
+
+    @Override
+    protected BrokerService createBroker() throws Exception {
+        BrokerService broker = super.createBroker();
+
+        PolicyEntry policy = new PolicyEntry();
+        policy.setParallelDispatchThreads(THREADS);
+        PolicyMap pMap = new PolicyMap();
+        pMap.setDefaultEntry(policy);
+
+        broker.setDestinationPolicy(pMap);
+
+        return broker;
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testMessageGroupsStayWithOneConsumer() throws Exception {
+        final int groups = 10;
+        final int messagesPerGroup = 50;
+        ActiveMQDestination dest = createDestination();
+
+        final CountDownLatch received = new CountDownLatch(groups * messagesPerGroup);
+        final Map<String, List<Integer>> sequences = new HashMap<String, List<Integer>>();
+        final Map<String, String> owners = new HashMap<String, String>();
+        final List<String> errors = new ArrayList<String>();
+        for (int i = 0; i < 8; i++) {
+            final String name = "consumer" + i;
+            createConsumer(dest).setMessageListener(new MessageListener() {
+                @Override
+                public void onMessage(Message message) {
+                    try {
+                        String group = message.getStringProperty("JMSXGroupID");
+                        synchronized (owners) {
+                            String owner = owners.get(group);
+                            if (owner == null) {
+                                owners.put(group, name);
+                                sequences.put(group, new ArrayList<Integer>());
+                            } else if (!owner.equals(name)) {
+                                errors.add(group + " received by " + owner + " and " + name);
+                            }
+                            sequences.get(group).add(message.getIntProperty("sequence"));
+                        }
+                    } catch (Exception e) {
+                        errors.add(e.toString());
+                    }
+                    received.countDown();
+                }
+            });
+        }
+
+        Connection connection = createConnectionFactory().createConnection();
+        connections.add(connection);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(dest);
+        for (int i = 0; i < messagesPerGroup; i++) {
+            for (int group = 0; group < groups; group++) {
+                Message message = session.createTextMessage("group " + group + " message " + i);
+                message.setStringProperty("JMSXGroupID", "group" + group);
+                message.setIntProperty("sequence", i);
+                producer.send(message);
+            }
+        }
+
+        assertTrue("all messages received", received.await(30, TimeUnit.SECONDS));
+        assertEquals(new ArrayList<String>(), errors);
+        assertEquals(groups, sequences.size());
+        for (List<Integer> sequence : sequences.values()) {
+            assertEquals(messagesPerGroup, sequence.size());
+            for (int i = 0; i < messagesPerGroup; i++) {
+                assertEquals(i, sequence.get(i).intValue());
+            }
+        }
+
+        Queue queue = (Queue) broker.getRegionBroker().getDestinationMap().get(dest);
+        assertEquals(THREADS, queue.getParallelDispatchThreads());
+        assertTrue(queue.getDispatchThreadUtilization() > 0);
+        assertTrue(queue.getParallelDispatchUtilization() > 0);
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testExclusiveConsumerReceivesAllMessages() throws Exception {
+        final int count = 200;
+        ActiveMQDestination dest = createDestination();
+        ActiveMQQueue exclusive = new ActiveMQQueue(dest.getPhysicalName() + "?consumer.exclusive=true");
+
+        final CountDownLatch received = new CountDownLatch(count);
+        final int[] counts = new int[3];
+        for (int i = 0; i < counts.length; i++) {
+            final int index = i;
+            createConsumer(exclusive).setMessageListener(new MessageListener() {
+                @Override
+                public void onMessage(Message message) {
+                    synchronized (counts) {
+                        counts[index]++;
+                    }
+                    received.countDown();
+                }
+            });
+        }
+
+        Connection connection = createConnectionFactory().createConnection();
+        connections.add(connection);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(dest);
+        for (int i = 0; i < count; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+
+        assertTrue("all messages received", received.await(30, TimeUnit.SECONDS));
+        synchronized (counts) {
+            assertEquals(count, counts[0]);
+            assertEquals(0, counts[1]);
+            assertEquals(0, counts[2]);
+        }
+    }
+
+    private MessageConsumer createConsumer(ActiveMQDestination dest) throws Exception {
+        Connection connection = createConnectionFactory().createConnection();
+        return createMessageConsumer(connection, dest);
+    }
+}
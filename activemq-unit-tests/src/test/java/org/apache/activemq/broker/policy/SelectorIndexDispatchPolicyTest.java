@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.policy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TopicSubscriptionTest;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.broker.region.Topic;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.broker.region.policy.SelectorIndexDispatchPolicy;
+import org.apache.activemq.util.MessageIdList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class SelectorIndexDispatchPolicyTest extends TopicSubscriptionTest {
+
+    private static final int PARTITIONS = 20;
+
+    @Override
+    protected BrokerService createBroker() throws Exception {
+        BrokerService broker = super.createBroker();
+
+        PolicyEntry policy = new PolicyEntry();
+        policy.setDispatchPolicy(new SelectorIndexDispatchPolicy());
+        PolicyMap pMap = new PolicyMap();
+        pMap.setDefaultEntry(policy);
+
+        broker.setDestinationPolicy(pMap);
+
+        return broker;
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testSelectiveConsumersReceiveMatchingMessages() throws Exception {
+        destination = createDestination();
+        messageCount = 200;
+
+        List<String> selectors = new ArrayList<String>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            selectors.add("partition = " + i);
+            selectors.add("region = 'r" + i + "' AND partition >= 0");
+        }
+        selectors.add("partition > 14 AND partition <= 16");
+        selectors.add("region IN ('r1', 'r2')");
+        selectors.add("partition = 3 OR region = 'r4'");
+        selectors.add(null);
+
+        List<MessageConsumer> selective = new ArrayList<MessageConsumer>();
+        for (String selector : selectors) {
+            Connection connection = createConnectionFactory().createConnection();
+            connections.add(connection);
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(destination, selector);
+            MessageIdList list = new MessageIdList();
+            list.setParent(allMessagesList);
+            consumer.setMessageListener(list);
+            consumers.put(consumer, list);
+            selective.add(consumer);
+        }
+
+        Connection connection = createConnectionFactory().createConnection();
+        connections.add(connection);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(destination);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        for (int i = 0; i < messageCount; i++) {
+            TextMessage message = session.createTextMessage("" + i);
+            message.setIntProperty("partition", i % PARTITIONS);
+            message.setStringProperty("region", "r" + (i % PARTITIONS));
+            producer.send(message);
+        }
+
+        // every partition and region consumer, the bounds, the IN, the OR and the catch all consumer
+        int perPartition = messageCount / PARTITIONS;
+        int expected = messageCount * 2 + perPartition * 2 + perPartition * 2 + perPartition * 2 + messageCount;
+        waitForAllMessagesToBeReceived(expected);
+
+        for (int i = 0; i < PARTITIONS * 2; i++) {
+            assertConsumerReceivedXMessages(selective.get(i), perPartition);
+        }
+        assertConsumerReceivedXMessages(selective.get(PARTITIONS * 2), perPartition * 2);
+        assertConsumerReceivedXMessages(selective.get(PARTITIONS * 2 + 1), perPartition * 2);
+        assertConsumerReceivedXMessages(selective.get(PARTITIONS * 2 + 2), perPartition * 2);
+        assertConsumerReceivedXMessages(selective.get(PARTITIONS * 2 + 3), messageCount);
+        assertEquals(expected, allMessagesList.getMessageCount());
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testChangedSelectorIsIndexed() throws Exception {
+        destination = createDestination();
+
+        Connection connection = createConnectionFactory().createConnection();
+        connections.add(connection);
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(destination, "partition = 1");
+        MessageIdList list = new MessageIdList();
+        consumer.setMessageListener(list);
+        consumers.put(consumer, list);
+
+        MessageProducer producer = session.createProducer(destination);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        sendToPartitions(session, producer, 10);
+        list.waitForMessagesToArrive(10);
+        Topic topic = (Topic) broker.getRegionBroker().getDestinationMap().get(destination);
+        assertNotNull("the index is kept by the topic", topic.getConsumersIndex());
+
+        // change the selector of the broker side subscription, like the subscription view does
+        Subscription subscription = topic.getConsumers().get(0);
+        subscription.setSelector("partition = 2");
+
+        sendToPartitions(session, producer, 10);
+        list.waitForMessagesToArrive(20);
+        assertConsumerReceivedXMessages(consumer, 20);
+    }
+
+    private void sendToPartitions(Session session, MessageProducer producer, int perPartition) throws Exception {
+        for (int i = 0; i < perPartition; i++) {
+            for (int partition = 0; partition < 3; partition++) {
+                TextMessage message = session.createTextMessage("" + partition);
+                message.setIntProperty("partition", partition);
+                producer.send(message);
+            }
+        }
+    }
+}
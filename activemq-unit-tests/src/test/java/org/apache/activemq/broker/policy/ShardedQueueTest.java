@@ -0,0 +1,298 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.policy;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.QueueBrowser;
+import javax.jms.Session;
+import javax.management.ObjectName;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.QueueSubscriptionTest;
+import org.apache.activemq.broker.jmx.QueueViewMBean;
+import org.apache.activemq.broker.region.Queue;
+import org.apache.activemq.broker.region.ShardedQueue;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.apache.activemq.util.IOHelper;
+import org.apache.activemq.util.Wait;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class ShardedQueueTest extends QueueSubscriptionTest {
+
+    private static final int SHARDS = 4;
+
+    @Override
+    protected BrokerService createBroker() throws Exception {
+        BrokerService broker = super.createBroker();
+
+        PolicyEntry policy = new PolicyEntry();
+        policy.setQueueShards(SHARDS);
+        PolicyMap pMap = new PolicyMap();
+        pMap.setDefaultEntry(policy);
+
+        broker.setDestinationPolicy(pMap);
+
+        return broker;
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testStatisticsIncludeAllShards() throws Exception {
+        final int count = 100;
+        ActiveMQDestination dest = createDestination();
+
+        Connection connection = createConnectionFactory().createConnection();
+        connections.add(connection);
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(dest);
+        for (int i = 0; i < count; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+
+        ShardedQueue queue = (ShardedQueue) broker.getRegionBroker().getDestinationMap().get(dest);
+        assertEquals(SHARDS, queue.getShardCount());
+        assertEquals(SHARDS - 1, queue.getShards().size());
+        for (Queue shard : queue.getShards()) {
+            assertEquals(count / SHARDS, shard.getDestinationStatistics().getMessages().getCount());
+            assertFalse(broker.getRegionBroker().getDestinationMap().containsKey(shard.getActiveMQDestination()));
+        }
+
+        QueueViewMBean view = getQueueView(dest);
+        assertEquals(SHARDS, view.getQueueShards());
+        assertEquals(count, view.getQueueSize());
+        assertEquals(count, view.getEnqueueCount());
+        assertEquals(count, view.browseMessages().size());
+
+        QueueBrowser browser = session.createBrowser((ActiveMQQueue) dest);
+        int browsed = 0;
+        for (Enumeration<?> messages = browser.getEnumeration(); messages.hasMoreElements(); messages.nextElement()) {
+            browsed++;
+        }
+        browser.close();
+        assertEquals(count, browsed);
+
+        MessageConsumer consumer = session.createConsumer(dest);
+        assertEquals(1, view.getConsumerCount());
+        for (int i = 0; i < count / 2; i++) {
+            assertTrue(consumer.receive(5000) != null);
+        }
+        consumer.close();
+        final QueueViewMBean queueView = view;
+        assertTrue("consumer removed", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return queueView.getConsumerCount() == 0;
+            }
+        }));
+
+        assertEquals(count / 2, view.getQueueSize());
+        view.purge();
+        assertEquals(0, view.getQueueSize());
+        for (Queue shard : queue.getShards()) {
+            assertEquals(0, shard.getDestinationStatistics().getMessages().getCount());
+        }
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testMessageGroupsStayInOrder() throws Exception {
+        final int groups = 10;
+        final int messagesPerGroup = 50;
+        ActiveMQDestination dest = createDestination();
+
+        final CountDownLatch received = new CountDownLatch(groups * messagesPerGroup);
+        final Map<String, List<Integer>> sequences = new HashMap<String, List<Integer>>();
+        final Map<String, String> owners = new HashMap<String, String>();
+        final List<String> errors = new ArrayList<String>();
+        for (int i = 0; i < 4; i++) {
+            final String name = "consumer" + i;
+            Connection connection = createConnectionFactory().createConnection();
+            createMessageConsumer(connection, dest).setMessageListener(new MessageListener() {
+                @Override
+                public void onMessage(Message message) {
+                    try {
+                        String group = message.getStringProperty("JMSXGroupID");
+                        synchronized (owners) {
+                            String owner = owners.get(group);
+                            if (owner == null) {
+                                owners.put(group, name);
+                                sequences.put(group, new ArrayList<Integer>());
+                            } else if (!owner.equals(name)) {
+                                errors.add(group + " received by " + owner + " and " + name);
+                            }
+                            sequences.get(group).add(message.getIntProperty("sequence"));
+                        }
+                    } catch (Exception e) {
+                        errors.add(e.toString());
+                    }
+                    received.countDown();
+                }
+            });
+        }
+
+        Connection connection = createConnectionFactory().createConnection();
+        connections.add(connection);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(dest);
+        for (int i = 0; i < messagesPerGroup; i++) {
+            for (int group = 0; group < groups; group++) {
+                Message message = session.createTextMessage("group " + group + " message " + i);
+                message.setStringProperty("JMSXGroupID", "group" + group);
+                message.setIntProperty("sequence", i);
+                producer.send(message);
+            }
+        }
+
+        assertTrue("all messages received", received.await(30, TimeUnit.SECONDS));
+        assertEquals(new ArrayList<String>(), errors);
+        assertEquals(groups, sequences.size());
+        for (List<Integer> sequence : sequences.values()) {
+            assertEquals(messagesPerGroup, sequence.size());
+            for (int i = 0; i < messagesPerGroup; i++) {
+                assertEquals(i, sequence.get(i).intValue());
+            }
+        }
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void testReducedShardsAreDrainedAfterRestart() throws Exception {
+        final int count = 40;
+        ActiveMQQueue dest = new ActiveMQQueue("sharded.restart");
+        File dataDir = new File(IOHelper.getDefaultDataDirectory(), "ShardedQueueTest");
+        IOHelper.deleteChildren(dataDir);
+
+        BrokerService persistent = startPersistentBroker(dataDir, SHARDS);
+        sendMessages(persistent, dest, 0, count / 2);
+        stopPersistentBroker(persistent);
+
+        persistent = startPersistentBroker(dataDir, 2);
+        ShardedQueue queue = (ShardedQueue) persistent.getRegionBroker().getDestinationMap().get(dest);
+        assertEquals(2, queue.getShardCount());
+        assertEquals(SHARDS - 1, queue.getShards().size());
+        sendMessages(persistent, dest, count / 2, count);
+        stopPersistentBroker(persistent);
+
+        persistent = startPersistentBroker(dataDir, 1);
+        queue = (ShardedQueue) persistent.getRegionBroker().getDestinationMap().get(dest);
+        assertEquals(1, queue.getShardCount());
+        for (ActiveMQDestination destination : persistent.getRegionBroker().getDestinationMap().keySet()) {
+            assertFalse(destination.getPhysicalName(), ShardedQueue.isShard(destination));
+        }
+        assertEquals(count, queue.getDestinationStatistics().getMessages().getCount());
+
+        Connection connection = new ActiveMQConnectionFactory(persistent.getVmConnectorURI()).createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(dest);
+            List<Integer> received = new ArrayList<Integer>();
+            for (int i = 0; i < count; i++) {
+                Message message = consumer.receive(5000);
+                assertTrue("received " + received.size() + " of " + count, message != null);
+                received.add(message.getIntProperty("sequence"));
+            }
+            assertNull(consumer.receive(500));
+            assertEquals(count, new HashSet<Integer>(received).size());
+        } finally {
+            connection.close();
+        }
+        stopPersistentBroker(persistent);
+
+        // the drained shards are removed from the store
+        persistent = startPersistentBroker(dataDir, 1);
+        try {
+            assertFalse(persistent.getRegionBroker().getDestinationMap().get(dest) instanceof ShardedQueue);
+            for (ActiveMQDestination destination : persistent.getPersistenceAdapter().getDestinations()) {
+                assertFalse(destination.getPhysicalName(), ShardedQueue.isShard(destination));
+            }
+        } finally {
+            stopPersistentBroker(persistent);
+        }
+    }
+
+    private BrokerService startPersistentBroker(File dataDir, int queueShards) throws Exception {
+        BrokerService persistent = new BrokerService();
+        persistent.setBrokerName("sharded");
+        persistent.setUseJmx(false);
+        persistent.setAdvisorySupport(false);
+        KahaDBPersistenceAdapter adapter = new KahaDBPersistenceAdapter();
+        adapter.setDirectory(dataDir);
+        persistent.setPersistenceAdapter(adapter);
+        if (queueShards > 1) {
+            PolicyEntry policy = new PolicyEntry();
+            policy.setQueueShards(queueShards);
+            PolicyMap pMap = new PolicyMap();
+            pMap.setDefaultEntry(policy);
+            persistent.setDestinationPolicy(pMap);
+        }
+        persistent.start();
+        persistent.waitUntilStarted();
+        return persistent;
+    }
+
+    private void stopPersistentBroker(BrokerService persistent) throws Exception {
+        persistent.stop();
+        persistent.waitUntilStopped();
+    }
+
+    private void sendMessages(BrokerService persistent, ActiveMQDestination dest, int from, int to) throws Exception {
+        Connection connection = new ActiveMQConnectionFactory(persistent.getVmConnectorURI()).createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(dest);
+            for (int i = from; i < to; i++) {
+                Message message = session.createTextMessage("message " + i);
+                message.setIntProperty("sequence", i);
+                producer.send(message);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private QueueViewMBean getQueueView(ActiveMQDestination dest) throws Exception {
+        ObjectName name = new ObjectName("org.apache.activemq:type=Broker,brokerName=localhost,destinationType=Queue,destinationName="
+                + dest.getPhysicalName());
+        return (QueueViewMBean) broker.getManagementContext().newProxyInstance(name, QueueViewMBean.class, true);
+    }
+}
@@ -17,6 +17,10 @@
 package org.apache.activemq.command;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import junit.framework.Test;
 import junit.textui.TestRunner;
@@ -97,4 +101,58 @@ public class MessageTest extends DataStructureTestSupport {
         ActiveMQMessage unMarshalledAgain = (ActiveMQMessage) marshalAndUnmarshall(unMarshalled, wireFormat);
         assertNull("Prop is gone", unMarshalledAgain.getProperty("RM"));
     }
+
+    public void testPeekMarshalledProperty() throws Exception {
+        Map<String, Object> nested = new HashMap<String, Object>();
+        nested.put("nested", "value");
+        char[] big = new char[70000];
+        Arrays.fill(big, 'b');
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("boolean", Boolean.TRUE);
+        properties.put("byte", (byte) 1);
+        properties.put("char", 'c');
+        properties.put("short", (short) 2);
+        properties.put("int", 3);
+        properties.put("long", 4L);
+        properties.put("float", 5.5f);
+        properties.put("double", 6.5d);
+        properties.put("bytes", new byte[] {1, 2, 3});
+        properties.put("string", "value");
+        properties.put("big string", new String(big));
+        properties.put("map", nested);
+        properties.put("list", Collections.<Object>singletonList("element"));
+        properties.put("null", null);
+        properties.put("\u00e9t\u00e9 \u20ac", "unicode");
+        properties.put("", "empty");
+
+        ActiveMQMessage message = new ActiveMQMessage();
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            message.setProperty(entry.getKey(), entry.getValue());
+        }
+        ActiveMQMessage unMarshalled = (ActiveMQMessage) marshalAndUnmarshall(message, wireFormat);
+        assertNotNull(unMarshalled.getMarshalledProperties());
+
+        ActiveMQMessage expected = (ActiveMQMessage) marshalAndUnmarshall(message, wireFormat);
+        for (String name : properties.keySet()) {
+            Object value = unMarshalled.peekProperty(name);
+            if (value instanceof byte[]) {
+                assertTrue(name, Arrays.equals((byte[]) expected.getProperty(name), (byte[]) value));
+            } else {
+                assertEquals(name, expected.getProperty(name), value);
+            }
+        }
+        assertNull(unMarshalled.peekProperty("missing"));
+        assertNull(unMarshalled.peekProperty("strin"));
+        assertNull(unMarshalled.peekProperty("string "));
+        assertNull(unMarshalled.peekProperty("\u00e9t\u00e9"));
+
+        // the properties are not unmarshalled by peeking
+        assertNull(unMarshalled.properties);
+
+        // and read from the unmarshalled properties once they are
+        unMarshalled.setProperty("added", "added");
+        assertEquals("added", unMarshalled.peekProperty("added"));
+        assertEquals("value", unMarshalled.peekProperty("string"));
+    }
 }
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.activemq.command.ActiveMQDestination;
+
+public class CopyOnWriteDestinationMapTest extends DestinationMapTest {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        map = new CopyOnWriteDestinationMap();
+    }
+
+    public void testCachedValuesAreInvalidatedByChanges() throws Exception {
+        loadSample2();
+        assertSample2();
+        // a second lookup finds the cached values
+        assertSample2();
+
+        remove("TEST.*", v2);
+        assertMapValue("TEST.FOO", v1, v3, v4);
+        assertMapValue("TEST.*", v1, v3, v4, v6);
+
+        put("TEST.*", v2);
+        assertSample2();
+
+        map.removeAll(createDestination("TEST.FOO"));
+        assertMapValue("TEST.FOO", v2, v3, v4);
+        assertMapValue("TEST.FOO.BAR", v3, v4, v5);
+
+        map.reset();
+        assertMapValue("TEST.FOO", null);
+        assertTrue(map.isEmpty());
+    }
+
+    public void testChangingTheFoundValuesDoesNotChangeTheMap() throws Exception {
+        put("TEST.FOO", v1);
+        map.get(createDestination("TEST.FOO")).add(v2);
+        assertMapValue("TEST.FOO", v1);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void testSetEntries() throws Exception {
+        DummyPolicyEntry entry1 = new DummyPolicyEntry();
+        entry1.setTopic("TEST.>");
+        entry1.setDescription("wildcard");
+        DummyPolicyEntry entry2 = new DummyPolicyEntry();
+        entry2.setTopic("TEST.FOO");
+        entry2.setDescription("foo");
+        List<DestinationMapEntry> entries = new ArrayList<DestinationMapEntry>();
+        entries.add(entry1);
+        entries.add(entry2);
+        map.setEntries(entries);
+
+        assertMapValue("TEST.FOO", "wildcard", "foo");
+        assertMapValue("TEST.BAR", "wildcard");
+    }
+
+    public void testCacheSize() throws Exception {
+        ((CopyOnWriteDestinationMap) map).setCacheSize(1);
+        put("TEST.>", v1);
+        for (int i = 0; i < 10; i++) {
+            assertMapValue("TEST.D" + i, v1);
+        }
+        put("TEST.D5", v2);
+        assertMapValue("TEST.D5", v1, v2);
+        assertMapValue("TEST.D0", v1);
+    }
+
+    public void testLookupsWhileTheMapChanges() throws Exception {
+        final int readers = 4;
+        final int changes = 500;
+        final ActiveMQDestination destination = createDestination("TEST.FOO");
+        put("TEST.>", v1);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < readers; i++) {
+            Thread thread = new Thread("reader-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        while (running.get()) {
+                            Set<?> values = map.get(destination);
+                            // the wildcard value is never removed and the
+                            // other value is either found or not
+                            if (!values.contains(v1) || values.size() > 2) {
+                                throw new AssertionError("Unexpected values: " + values);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (int i = 0; i < changes; i++) {
+            map.put(destination, v2);
+            assertMapValue(destination, Arrays.asList(v1, v2));
+            map.remove(destination, v2);
+            assertMapValue(destination, v1);
+        }
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.openwire;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.CommandTypes;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.command.SessionId;
+import org.apache.activemq.util.ByteSequence;
+
+public class CachedFrameMarshallingTest extends TestCase {
+
+    private OpenWireFormat writer;
+    private OpenWireFormat reader;
+    private ActiveMQTextMessage message;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        writer = createFormat();
+        writer.setCachedFrameEnabled(true);
+        reader = createFormat();
+
+        message = new ActiveMQTextMessage();
+        message.setText("Hello to every consumer");
+        message.setProducerId(new ProducerId("ID:producer:1:1"));
+        message.setMessageId(new MessageId(message.getProducerId(), 1));
+        message.setDestination(new ActiveMQTopic("TEST"));
+        message.setReplyTo(new ActiveMQQueue("REPLY"));
+        message.setStringProperty("color", "red");
+        message.setBrokerInTime(System.currentTimeMillis());
+        message.setBrokerOutTime(message.getBrokerInTime() + 1);
+    }
+
+    private OpenWireFormat createFormat() {
+        OpenWireFormat format = new OpenWireFormat(CommandTypes.PROTOCOL_VERSION);
+        format.setCacheEnabled(false);
+        format.setTightEncodingEnabled(true);
+        return format;
+    }
+
+    public void testDispatchesToConsumersShareTheMessageFrame() throws Exception {
+        Object frame = null;
+        for (int i = 0; i < 3; i++) {
+            MessageDispatch read = marshalDispatch(createConsumerId(i), i);
+            assertEquals(createConsumerId(i), read.getConsumerId());
+            assertEquals(i, read.getRedeliveryCounter());
+            assertMessage((ActiveMQTextMessage) read.getMessage());
+            assertEquals(message.getBrokerOutTime(), read.getMessage().getBrokerOutTime());
+
+            assertNotNull(message.getCachedMarshalledForm());
+            if (frame == null) {
+                frame = message.getCachedMarshalledForm();
+            } else {
+                assertSame("the message was marshalled again", frame, message.getCachedMarshalledForm());
+            }
+        }
+    }
+
+    public void testChangedMessageIsMarshalledAgain() throws Exception {
+        marshalDispatch(createConsumerId(1), 0);
+        Object frame = message.getCachedMarshalledForm();
+
+        message.setBrokerOutTime(message.getBrokerOutTime() + 5);
+        MessageDispatch read = marshalDispatch(createConsumerId(2), 0);
+        assertEquals(message.getBrokerOutTime(), read.getMessage().getBrokerOutTime());
+        assertNotSame(frame, message.getCachedMarshalledForm());
+
+        message.setReadOnlyProperties(false);
+        message.setStringProperty("size", "large");
+        read = marshalDispatch(createConsumerId(3), 0);
+        assertEquals("large", read.getMessage().getProperty("size"));
+        assertMessage((ActiveMQTextMessage) read.getMessage());
+    }
+
+    public void testFrameIsNotCachedWhenTheCacheIsEnabled() throws Exception {
+        writer = new OpenWireFormat(CommandTypes.PROTOCOL_VERSION);
+        writer.setCacheEnabled(true);
+        writer.setTightEncodingEnabled(true);
+        writer.setCachedFrameEnabled(true);
+        reader = new OpenWireFormat(CommandTypes.PROTOCOL_VERSION);
+        reader.setCacheEnabled(true);
+        reader.setTightEncodingEnabled(true);
+
+        for (int i = 0; i < 2; i++) {
+            MessageDispatch read = marshalDispatch(createConsumerId(i), 0);
+            assertMessage((ActiveMQTextMessage) read.getMessage());
+        }
+        assertNull(message.getCachedMarshalledForm());
+    }
+
+    public void testFrameIsNotSharedAcrossVersions() throws Exception {
+        marshalDispatch(createConsumerId(1), 0);
+        Object frame = message.getCachedMarshalledForm();
+
+        writer = createFormat();
+        writer.setVersion(CommandTypes.PROTOCOL_VERSION - 1);
+        writer.setCachedFrameEnabled(true);
+        reader = createFormat();
+        reader.setVersion(CommandTypes.PROTOCOL_VERSION - 1);
+        MessageDispatch read = marshalDispatch(createConsumerId(2), 0);
+        assertMessage((ActiveMQTextMessage) read.getMessage());
+        assertNotSame(frame, message.getCachedMarshalledForm());
+    }
+
+    private ConsumerId createConsumerId(int value) {
+        return new ConsumerId(new SessionId(new ConnectionId("ID:consumer"), 1), value);
+    }
+
+    private MessageDispatch marshalDispatch(ConsumerId consumerId, int redeliveryCounter) throws Exception {
+        MessageDispatch dispatch = new MessageDispatch();
+        dispatch.setConsumerId(consumerId);
+        dispatch.setDestination(message.getDestination());
+        dispatch.setMessage(message);
+        dispatch.setRedeliveryCounter(redeliveryCounter);
+        ByteSequence bytes = writer.marshal(dispatch);
+        return (MessageDispatch) reader.unmarshal(bytes);
+    }
+
+    private void assertMessage(ActiveMQTextMessage read) throws Exception {
+        assertEquals("Hello to every consumer", read.getText());
+        assertEquals("red", read.getStringProperty("color"));
+        assertEquals(message.getMessageId(), read.getMessageId());
+        assertEquals(message.getDestination(), read.getDestination());
+        assertEquals(message.getReplyTo(), read.getReplyTo());
+        assertEquals(message.getBrokerInTime(), read.getBrokerInTime());
+    }
+}
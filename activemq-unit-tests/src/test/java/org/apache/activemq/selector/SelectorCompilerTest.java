@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.selector;
+
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.filter.SelectorCompiler;
+
+import junit.framework.TestCase;
+
+public class SelectorCompilerTest extends TestCase {
+
+    private static final String[] SELECTORS = new String[] {
+        "value = 1",
+        "value = 1.0",
+        "value = 'x'",
+        "value <> 'x'",
+        "value > 1",
+        "value >= 1.5",
+        "value < -1",
+        "value <= 2147483648",
+        "value > 16777216",
+        "value = 9007199254740993",
+        "value > 0.1",
+        "value BETWEEN 1 AND 2",
+        "value NOT BETWEEN 1 AND 2",
+        "value IN ('x', 'y')",
+        "value NOT IN ('x', 'y')",
+        "value IS NULL",
+        "value IS NOT NULL",
+        "NOT (value = 1)",
+        "NOT (value > 1 OR other = 'y')",
+        "value > 1 AND other = 'y'",
+        "value > 1 OR other = 'y'",
+        "NOT (value > 1 AND other = 'y')",
+        "value LIKE 'x%' OR value = 2",
+        "1 < value AND value < 3",
+        "'x' = value OR value = 'x'",
+        "value + 1 > 2",
+        "flag AND value = 1",
+        "NOT (flag OR value = 'x')",
+        "JMSPriority > 4 AND JMSType = 'order'",
+        "missing = 1 OR NOT (missing = 'x')",
+    };
+
+    private static final Object[] VALUES = new Object[] {
+        null, "x", "y", "1", Boolean.TRUE, Boolean.FALSE,
+        (byte) 1, (short) 2, 1, 2, -2, 2147483647, 1L, 2L, 2147483648L, 16777217L, 9007199254740992L, 9007199254740993L,
+        1.0f, 1.5f, 16777216f, 16777217f, -0.0f, Float.NaN,
+        1.0d, 1.5d, 0.1d, -0.0d, Double.NaN, Double.POSITIVE_INFINITY,
+    };
+
+    @Override
+    protected void tearDown() throws Exception {
+        SelectorCompiler.setEnabled(false);
+        SelectorParser.clearCache();
+        super.tearDown();
+    }
+
+    public void testCompiledSelectorsMatchInterpretedSelectors() throws Exception {
+        for (String selector : SELECTORS) {
+            SelectorCompiler.setEnabled(false);
+            SelectorParser.clearCache();
+            BooleanExpression interpreted = SelectorParser.parse(selector);
+            SelectorCompiler.setEnabled(true);
+            SelectorParser.clearCache();
+            BooleanExpression compiled = SelectorParser.parse(selector);
+            assertNotSame(selector, interpreted, compiled);
+            assertEquals(interpreted.toString(), compiled.toString());
+
+            for (Object value : VALUES) {
+                for (Object other : new Object[] {null, "y", 1}) {
+                    MessageEvaluationContext context = createContext(value, other);
+                    String description = selector + " with value " + describe(value) + " and other " + describe(other);
+                    assertEquals(description, matches(interpreted, context), matches(compiled, context));
+                    assertEquals(description, evaluate(interpreted, context), evaluate(compiled, context));
+                }
+            }
+        }
+    }
+
+    public void testUncompilableSelectorsAreInterpreted() throws Exception {
+        SelectorCompiler.setEnabled(true);
+        SelectorParser.clearCache();
+        BooleanExpression expression = SelectorParser.parse("value LIKE 'x%'");
+        assertSame(expression, SelectorCompiler.getInterpretedExpression(expression));
+
+        expression = SelectorParser.parse("value LIKE 'x%' AND other = 'y'");
+        assertNotSame(expression, SelectorCompiler.getInterpretedExpression(expression));
+        assertSame(expression, SelectorCompiler.compile(expression));
+    }
+
+    private static Object matches(BooleanExpression expression, MessageEvaluationContext context) {
+        try {
+            return expression.matches(context);
+        } catch (Exception e) {
+            return e.getClass();
+        }
+    }
+
+    private static Object evaluate(BooleanExpression expression, MessageEvaluationContext context) {
+        try {
+            return expression.evaluate(context);
+        } catch (Exception e) {
+            return e.getClass();
+        }
+    }
+
+    private static String describe(Object value) {
+        return value == null ? "null" : value + " (" + value.getClass().getSimpleName() + ")";
+    }
+
+    private static MessageEvaluationContext createContext(Object value, Object other) throws Exception {
+        ActiveMQMessage message = new ActiveMQMessage();
+        message.setDestination(new ActiveMQTopic("FOO.BAR"));
+        message.setType("order");
+        message.setPriority((byte) 5);
+        if (value != null) {
+            message.setProperty("value", value);
+        }
+        if (other != null) {
+            message.setProperty("other", other);
+        }
+        message.setProperty("flag", Boolean.TRUE);
+        MessageEvaluationContext context = new MessageEvaluationContext();
+        context.setMessageReference(message);
+        return context;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.selector;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.filter.SelectorIndex;
+
+import junit.framework.TestCase;
+
+public class SelectorIndexTest extends TestCase {
+
+    private static final String[] SELECTORS = new String[] {
+        "region = 'emea'",
+        "'apac' = region",
+        "region = 'emea' AND quantity > 100",
+        "quantity > 100 AND region = 'amer'",
+        "region IN ('apac', 'amer')",
+        "region NOT IN ('apac', 'amer')",
+        "region <> 'emea'",
+        "region = 'emea' OR quantity > 100",
+        "quantity = 150",
+        "quantity = 150.0",
+        "price = 99.5",
+        "quantity > 100",
+        "quantity >= 150",
+        "quantity < 100",
+        "quantity <= 150",
+        "100 < quantity",
+        "100 >= quantity",
+        "quantity BETWEEN 100 AND 200",
+        "price > 99",
+        "price < 99.5",
+        "bigLong > 9007199254740992",
+        "bigLong = 9007199254740993",
+        "floatValue = 16777217",
+        "floatValue >= 16777217",
+        "JMSType = 'order'",
+        "JMSPriority > 4",
+        "region LIKE 'e%'",
+        "flag = TRUE",
+        "missing = 'x'",
+        "missing IS NULL",
+        "NOT (region = 'emea')",
+        "(region = 'emea' AND status = 'open') AND quantity < 1000",
+    };
+
+    public void testCandidatesIncludeAllMatches() throws Exception {
+        SelectorIndex<String> index = new SelectorIndex<String>();
+        for (String selector : SELECTORS) {
+            index.add(selector, SelectorParser.parse(selector));
+        }
+        index.add("no selector", null);
+        assertTrue(index.getUnindexed().contains("no selector"));
+        assertTrue(index.getUnindexed().contains("region = 'emea' OR quantity > 100"));
+        assertFalse(index.getUnindexed().contains("region = 'emea'"));
+        assertFalse(index.getUnindexed().contains("quantity BETWEEN 100 AND 200"));
+
+        String[] regions = new String[] {"emea", "apac", "amer", null};
+        Object[] quantities = new Object[] {50, 100L, 150, 150.0d, 151L, (short) 200, 1000, "150", null};
+        for (String region : regions) {
+            for (Object quantity : quantities) {
+                ActiveMQMessage message = createMessage(region, quantity);
+                MessageEvaluationContext context = new MessageEvaluationContext();
+                context.setMessageReference(message);
+
+                List<String> candidates = new ArrayList<String>(index.getUnindexed());
+                index.addCandidates(context, candidates);
+                assertEquals("no duplicates in " + candidates, new HashSet<String>(candidates).size(), candidates.size());
+
+                for (String selector : SELECTORS) {
+                    if (SelectorParser.parse(selector).matches(context)) {
+                        assertTrue(selector + " matches " + region + ", " + quantity, candidates.contains(selector));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testOnlyMatchingSubscribersAreCandidates() throws Exception {
+        SelectorIndex<Integer> index = new SelectorIndex<Integer>();
+        for (int i = 0; i < 5000; i++) {
+            index.add(i, SelectorParser.parse("symbol = 'S" + i + "' AND price > 10"));
+        }
+        assertTrue(index.getUnindexed().isEmpty());
+
+        ActiveMQMessage message = createMessage("emea", 1);
+        message.setProperty("symbol", "S42");
+        MessageEvaluationContext context = new MessageEvaluationContext();
+        context.setMessageReference(message);
+        Set<Integer> candidates = new HashSet<Integer>();
+        index.addCandidates(context, candidates);
+        assertEquals(1, candidates.size());
+        assertTrue(candidates.contains(42));
+    }
+
+    private ActiveMQMessage createMessage(String region, Object quantity) throws Exception {
+        ActiveMQMessage message = new ActiveMQMessage();
+        message.setDestination(new ActiveMQTopic("FOO.BAR"));
+        message.setType("order");
+        message.setPriority((byte) 5);
+        if (region != null) {
+            message.setProperty("region", region);
+        }
+        if (quantity != null) {
+            message.setProperty("quantity", quantity);
+        }
+        message.setProperty("status", "open");
+        message.setProperty("price", 99.5d);
+        message.setProperty("bigLong", 9007199254740993L);
+        message.setProperty("floatValue", 16777216f);
+        message.setProperty("flag", Boolean.TRUE);
+        return message;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.management.SizeStatisticImpl;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JDBCGroupCommitTest {
+
+    private static final int PRODUCERS = 10;
+    private static final int MESSAGES_PER_PRODUCER = 50;
+
+    private BrokerService broker;
+    private JDBCPersistenceAdapter persistenceAdapter;
+    private ActiveMQConnectionFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("groupCommit");
+        broker.setUseJmx(false);
+        broker.setDeleteAllMessagesOnStartup(true);
+
+        EmbeddedDataSource dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("derbyDb");
+        dataSource.setCreateDatabase("create");
+
+        persistenceAdapter = new JDBCPersistenceAdapter();
+        persistenceAdapter.setDataSource(dataSource);
+        persistenceAdapter.setGroupCommit(true);
+        persistenceAdapter.setGroupCommitMaxWaitMillis(20);
+        broker.setPersistenceAdapter(persistenceAdapter);
+        broker.start();
+        broker.waitUntilStarted();
+
+        factory = new ActiveMQConnectionFactory("vm://groupCommit?create=false");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test
+    public void testConcurrentSendsAreCommittedTogether() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            Thread thread = new Thread("producer-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        Connection connection = factory.createConnection();
+                        try {
+                            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                            MessageProducer producer = session.createProducer(session.createQueue("TEST"));
+                            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+                            start.await();
+                            for (int j = 0; j < MESSAGES_PER_PRODUCER; j++) {
+                                producer.send(session.createTextMessage(getName() + ":" + j));
+                            }
+                        } finally {
+                            connection.close();
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("producer errors: " + errors, errors.isEmpty());
+
+        SizeStatisticImpl batchSize = persistenceAdapter.getPersistenceAdapterStatistics().getJdbcGroupCommitBatchSize();
+        assertEquals(PRODUCERS * MESSAGES_PER_PRODUCER, batchSize.getTotalSize());
+        assertTrue("writes of concurrent producers share a batch", batchSize.getMaxSize() > 1);
+        assertTrue(batchSize.getCount() < PRODUCERS * MESSAGES_PER_PRODUCER);
+
+        assertEquals(PRODUCERS * MESSAGES_PER_PRODUCER, receive(PRODUCERS * MESSAGES_PER_PRODUCER));
+        // the acks went through the writer as well
+        assertEquals(2 * PRODUCERS * MESSAGES_PER_PRODUCER, batchSize.getTotalSize());
+    }
+
+    @Test
+    public void testTransactedSendsBypassTheWriter() throws Exception {
+        Connection connection = factory.createConnection();
+        try {
+            Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            MessageProducer producer = session.createProducer(session.createQueue("TEST"));
+            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+            for (int i = 0; i < 10; i++) {
+                producer.send(session.createTextMessage("tx:" + i));
+            }
+            session.commit();
+        } finally {
+            connection.close();
+        }
+
+        assertEquals(0, persistenceAdapter.getPersistenceAdapterStatistics().getJdbcGroupCommitBatchSize().getTotalSize());
+        assertEquals(10, receive(10));
+    }
+
+    private int receive(int expected) throws Exception {
+        Connection connection = factory.createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("TEST");
+            MessageConsumer consumer = session.createConsumer(queue);
+            int received = 0;
+            for (int i = 0; i < expected; i++) {
+                assertNotNull("message " + i, consumer.receive(5000));
+                received++;
+            }
+            consumer.close();
+            return received;
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.Topic;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.util.Wait;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JDBCIncrementalCleanupTest {
+
+    private static final int MESSAGES = 200;
+
+    private BrokerService broker;
+    private JDBCPersistenceAdapter persistenceAdapter;
+    private EmbeddedDataSource dataSource;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("derbyDb");
+        dataSource.setCreateDatabase("create");
+
+        broker = new BrokerService();
+        broker.setBrokerName("cleanup");
+        broker.setUseJmx(false);
+        broker.setDeleteAllMessagesOnStartup(true);
+        PolicyEntry prioritized = new PolicyEntry();
+        prioritized.setPrioritizedMessages(true);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.put(new ActiveMQTopic("PRIORITIZED"), prioritized);
+        broker.setDestinationPolicy(policyMap);
+        persistenceAdapter = new JDBCPersistenceAdapter();
+        persistenceAdapter.setDataSource(dataSource);
+        persistenceAdapter.setCleanupPeriod(0);
+        persistenceAdapter.setCleanupBatchSize(7);
+        persistenceAdapter.setCleanupBatchDelay(1);
+        broker.setPersistenceAdapter(persistenceAdapter);
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory("vm://cleanup?create=false").createConnection();
+        connection.setClientID("cleanup");
+        connection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test
+    public void testCleanupDeletesAcknowledgedMessagesInBatches() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Topic topic = session.createTopic("TEST");
+        MessageConsumer consumer = session.createDurableSubscriber(topic, "sub");
+        send(session, topic);
+        assertEquals(MESSAGES, countMessages());
+
+        for (int i = 0; i < MESSAGES; i++) {
+            assertNotNull("message " + i, consumer.receive(5000));
+        }
+        waitForAcks();
+        persistenceAdapter.cleanup();
+        assertEquals(0, countMessages());
+    }
+
+    @Test
+    public void testCleanupDeletesAcknowledgedMessagesOfEveryPriority() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Topic topic = session.createTopic("PRIORITIZED");
+        MessageConsumer consumer = session.createDurableSubscriber(topic, "sub");
+        send(session, topic);
+        assertEquals(MESSAGES, countMessages());
+
+        for (int i = 0; i < MESSAGES; i++) {
+            assertNotNull("message " + i, consumer.receive(5000));
+        }
+        consumer.close();
+        assertTrue("acks stored", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return query("SELECT COUNT(*) FROM ACTIVEMQ_ACKS WHERE SUB_NAME='sub' AND LAST_ACKED_ID < "
+                    + "(SELECT MAX(ID) FROM ACTIVEMQ_MSGS M WHERE M.PRIORITY = ACTIVEMQ_ACKS.PRIORITY)") == 0;
+            }
+        }));
+        persistenceAdapter.cleanup();
+        assertEquals(0, countMessages());
+    }
+
+    @Test
+    public void testCleanupKeepsMessagesPendingForASubscriber() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Topic topic = session.createTopic("TEST");
+        MessageConsumer consumer = session.createDurableSubscriber(topic, "sub");
+        session.createDurableSubscriber(topic, "idle").close();
+        send(session, topic);
+
+        for (int i = 0; i < MESSAGES; i++) {
+            assertNotNull("message " + i, consumer.receive(5000));
+        }
+        waitForAcks();
+        persistenceAdapter.cleanup();
+        assertEquals(MESSAGES, countMessages());
+    }
+
+    private void send(Session session, Topic topic) throws Exception {
+        MessageProducer producer = session.createProducer(topic);
+        for (int i = 0; i < MESSAGES; i++) {
+            producer.send(session.createTextMessage("message " + i), DeliveryMode.PERSISTENT, i % 10, 0);
+        }
+        producer.close();
+    }
+
+    private void waitForAcks() throws Exception {
+        assertTrue("acks stored", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return query("SELECT MAX(LAST_ACKED_ID) FROM ACTIVEMQ_ACKS WHERE SUB_NAME='sub'")
+                    == query("SELECT MAX(ID) FROM ACTIVEMQ_MSGS");
+            }
+        }));
+    }
+
+    private int countMessages() throws Exception {
+        return (int) query("SELECT COUNT(*) FROM ACTIVEMQ_MSGS");
+    }
+
+    private long query(String sql) throws Exception {
+        java.sql.Connection c = dataSource.getConnection();
+        try {
+            Statement s = c.createStatement();
+            ResultSet rs = s.executeQuery(sql);
+            rs.next();
+            return rs.getLong(1);
+        } finally {
+            c.close();
+        }
+    }
+}
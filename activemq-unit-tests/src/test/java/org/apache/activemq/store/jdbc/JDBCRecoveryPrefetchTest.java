@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Test;
+
+public class JDBCRecoveryPrefetchTest {
+
+    private static final int MESSAGES = 2000;
+
+    private BrokerService broker;
+    private JDBCPersistenceAdapter persistenceAdapter;
+
+    @After
+    public void tearDown() throws Exception {
+        stopBroker();
+    }
+
+    @Test
+    public void testQueueDrainsInOrderFromPrefetchedPages() throws Exception {
+        startBroker(true, false);
+        send(MESSAGES, false);
+        stopBroker();
+
+        startBroker(false, false);
+        Connection connection = createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(session.createQueue("TEST"));
+            for (int i = 0; i < MESSAGES; i++) {
+                Message message = consumer.receive(5000);
+                assertNotNull("message " + i, message);
+                assertEquals(i, message.getIntProperty("seq"));
+            }
+            assertNull(consumer.receive(500));
+            assertServedFromPrefetchedPages();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testPrioritizedQueueDrainsByPriorityFromPrefetchedPages() throws Exception {
+        startBroker(true, true);
+        send(MESSAGES, true);
+        stopBroker();
+
+        startBroker(false, true);
+        Connection connection = createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(session.createQueue("TEST"));
+            int lastPriority = 9;
+            int lastSeq = -1;
+            for (int i = 0; i < MESSAGES; i++) {
+                Message message = consumer.receive(5000);
+                assertNotNull("message " + i, message);
+                int priority = message.getJMSPriority();
+                int seq = message.getIntProperty("seq");
+                assertTrue("priority " + priority + " after " + lastPriority, priority <= lastPriority);
+                if (priority == lastPriority) {
+                    assertTrue("seq " + seq + " after " + lastSeq, seq > lastSeq);
+                }
+                lastPriority = priority;
+                lastSeq = seq;
+            }
+            assertNull(consumer.receive(500));
+            assertServedFromPrefetchedPages();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void assertServedFromPrefetchedPages() throws Exception {
+        // only the first batch is queried by the cursor itself
+        long hits = persistenceAdapter.getPersistenceAdapterStatistics().getJdbcRecoveryPrefetchHits().getCount();
+        assertTrue("messages served from prefetched pages: " + hits, hits >= MESSAGES / 2);
+
+        final Destination queue = broker.getDestination(new ActiveMQQueue("TEST"));
+        assertTrue("memory of the prefetched pages released", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return queue.getMemoryUsage().getUsage() == 0;
+            }
+        }));
+    }
+
+    private void send(int count, boolean mixedPriorities) throws Exception {
+        Connection connection = createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(session.createQueue("TEST"));
+            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+            for (int i = 0; i < count; i++) {
+                Message message = session.createTextMessage("message " + i);
+                message.setIntProperty("seq", i);
+                producer.send(message, DeliveryMode.PERSISTENT, mixedPriorities ? i % 10 : 4, 0);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private Connection createConnection() throws Exception {
+        return new ActiveMQConnectionFactory("vm://prefetch?create=false").createConnection();
+    }
+
+    private void startBroker(boolean deleteAllMessages, boolean prioritizedMessages) throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("prefetch");
+        broker.setUseJmx(false);
+        broker.setDeleteAllMessagesOnStartup(deleteAllMessages);
+
+        PolicyEntry policy = new PolicyEntry();
+        policy.setPrioritizedMessages(prioritizedMessages);
+        policy.setMaxPageSize(100);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(policy);
+        broker.setDestinationPolicy(policyMap);
+
+        EmbeddedDataSource dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("derbyDb");
+        dataSource.setCreateDatabase("create");
+
+        persistenceAdapter = new JDBCPersistenceAdapter();
+        persistenceAdapter.setDataSource(dataSource);
+        persistenceAdapter.setRecoveryPrefetchDepth(2);
+        persistenceAdapter.getPersistenceAdapterStatistics().setEnabled(true);
+        broker.setPersistenceAdapter(persistenceAdapter);
+        broker.start();
+        broker.waitUntilStarted();
+    }
+
+    private void stopBroker() throws Exception {
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+            broker = null;
+        }
+    }
+}